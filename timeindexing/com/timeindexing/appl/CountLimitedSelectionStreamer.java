@@ -53,11 +53,13 @@ public class CountLimitedSelectionStreamer extends SelectionStreamer  {
 	// output the selection
 	long writeCount = 0;
 	long length = selection.getLength();
+	// items before the first position have been removed
+	long first = selection.getFirstPosition();
 	Count countLimit = null;
 	long count = 0;
 
 	// if there's any items in the selection
-        if (length > 0) {
+        if (length > first) {
 	    // get the count limit for selection from the properties
 	    //SelectionProcessor processor = new SelectionProcessor();
 	    System.err.println("IndexProperties = " + outputProperties);
@@ -80,7 +82,7 @@ public class CountLimitedSelectionStreamer extends SelectionStreamer  {
 	    }
 
 	    // output the items
-	    for (long i=0; i<length; i++) {
+	    for (long i=first; i<length; i++) {
 		IndexItem itemN = selection.getItem(i);
 
 		// if there is a countLimit then process the relvant data
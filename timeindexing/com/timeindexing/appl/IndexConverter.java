@@ -0,0 +1,355 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+// IndexConverter.java
+
+package com.timeindexing.appl;
+
+import com.timeindexing.index.Index;
+import com.timeindexing.index.IndexView;
+import com.timeindexing.index.IndexItem;
+import com.timeindexing.index.IndexType;
+import com.timeindexing.index.DataType;
+import com.timeindexing.index.ManagedIndex;
+import com.timeindexing.index.ManagedIndexItem;
+import com.timeindexing.index.IndexReference;
+import com.timeindexing.index.TimeIndexFactory;
+import com.timeindexing.index.TimeIndexDirectory;
+import com.timeindexing.index.TimeIndexException;
+import com.timeindexing.index.IndexSpecificationException;
+import com.timeindexing.data.ByteBufferItem;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Copy an index into a new index, which can be of a different type.
+ * <p>
+ * The items are read from the source index by a reader thread,
+ * a block of items at a time, and passed through a bounded queue
+ * to the thread doing the convert, which adds them to the new index.
+ * So the reading and the writing overlap, and no more than
+ * the queue size of blocks are held in memory.
+ * <p>
+ * The index timestamps, data timestamps, IDs, and annotations of
+ * the items are kept.  References are copied as references,
+ * unless they are resolved, when the data they refer to is copied.
+ * The data of the new index is written one item after another,
+ * so any gaps in the data of the source index are removed.
+ * <p>
+ * The source index is read sequentially, so it should be opened
+ * with a 'readahead' of the block size to get large block reads.
+ */
+public class IndexConverter {
+    // The source index
+    Index source = null;
+
+    // Resolve references
+    boolean resolveReferences = false;
+
+    // The no of items in a block
+    int blockSize = DEFAULT_BLOCK_SIZE;
+
+    // The no of blocks in the queue
+    int queueSize = DEFAULT_QUEUE_SIZE;
+
+    // The no of items copied
+    long copied = 0;
+
+    /**
+     * The default no of items in a block.
+     */
+    public final static int DEFAULT_BLOCK_SIZE = 1024;
+
+    /**
+     * The default no of blocks that can be waiting to be written.
+     */
+    public final static int DEFAULT_QUEUE_SIZE = 4;
+
+    /**
+     * Construct an IndexConverter for a source index.
+     */
+    public IndexConverter(Index source) {
+	this.source = source;
+    }
+
+    /**
+     * Set whether references are resolved,
+     * so the data they refer to is copied.
+     */
+    public IndexConverter setResolveReferences(boolean resolve) {
+	resolveReferences = resolve;
+	return this;
+    }
+
+    /**
+     * Set the no of items in a block.
+     */
+    public IndexConverter setBlockSize(int size) {
+	blockSize = Math.max(1, size);
+	return this;
+    }
+
+    /**
+     * Set the no of blocks that can be waiting to be written.
+     */
+    public IndexConverter setQueueSize(int size) {
+	queueSize = Math.max(1, size);
+	return this;
+    }
+
+    /**
+     * Get the no of items copied so far.
+     */
+    public long getCopied() {
+	return copied;
+    }
+
+    /**
+     * Copy the source index into a new index.
+     * A shadow index does not hold its own data, so an index
+     * can not be converted into one.
+     * If the convert fails, the new index is closed
+     * with the items copied so far.
+     * @param kind the type of the new index
+     * @param createProperties the properties to create the new index with
+     * @return a view of the new index
+     */
+    public IndexView convert(IndexType kind, Properties createProperties) throws TimeIndexException {
+	if (kind == IndexType.SHADOW) {
+	    throw new IndexSpecificationException("An index can not be converted into a shadow index");
+	}
+
+	TimeIndexFactory factory = new TimeIndexFactory();
+
+	IndexView newIndexView = factory.create(kind, createProperties);
+
+	boolean converted = false;
+
+	try {
+	    // Get a direct handle on the index
+	    ManagedIndex newIndex = TimeIndexDirectory.find(newIndexView.getID());
+
+	    // the reader fills the data in when it gets an item
+	    source.setLoadDataAutomatically(true);
+
+	    BlockReader reader = new BlockReader(source, blockSize, queueSize, resolveReferences);
+	    reader.start();
+
+	    try {
+		ItemBlock block = null;
+
+		while ((block = reader.take()) != null) {
+		    for (int i=0; i<block.count; i++) {
+			copyItem(newIndex, block.items[i], block.data[i], block.types[i]);
+			copied++;
+		    }
+		}
+
+	    } catch (InterruptedException ie) {
+		throw new TimeIndexException("Interrupted converting index " + source.getURI());
+	    } finally {
+		reader.finish();
+	    }
+
+	    if (reader.error != null) {
+		throw reader.error;
+	    }
+
+	    newIndex.commit();
+
+	    converted = true;
+
+	    return newIndexView;
+
+	} finally {
+	    if (! converted) {
+		// close the half written new index,
+		// so its files are not left open.
+		// the error that stopped the convert is the one thrown
+		try {
+		    factory.close((Index)newIndexView);
+		} catch (TimeIndexException tie) {
+		}
+	    }
+	}
+    }
+
+    /**
+     * Add an item to the new index, with the timestamps,
+     * ID, and annotation of the item from the source index.
+     * @param data the data of the item, or null if the item is
+     * copied as a reference
+     * @param type the type of the data, which is the type of the
+     * item a resolved reference refers to
+     */
+    protected void copyItem(ManagedIndex newIndex, IndexItem item, ByteBuffer data, DataType type) throws TimeIndexException {
+	if (data == null) {
+	    // copy the reference
+	    IndexReference reference = (IndexReference)((ManagedIndexItem)item).getDataAbstraction();
+
+	    // keep the URI of the referenced index
+	    URI otherURI = TimeIndexDirectory.find(source.getID()).getIndexURI(reference.getIndexID());
+
+	    if (otherURI != null && ! newIndex.hasIndexURI(otherURI)) {
+		newIndex.addIndexURI(reference.getIndexID(), otherURI);
+	    }
+
+	    newIndex.addReference(reference, item.getDataTimestamp(), item.getIndexTimestamp(),
+				  item.getItemID(), item.getAnnotationMetaData());
+	} else {
+	    newIndex.addItem(new ByteBufferItem(data, type), item.getDataTimestamp(), item.getIndexTimestamp(),
+			     item.getItemID(), item.getAnnotationMetaData());
+	}
+    }
+}
+
+/**
+ * A block of items and their data.
+ */
+class ItemBlock {
+    IndexItem[] items = null;
+    ByteBuffer[] data = null;
+    DataType[] types = null;
+    int count = 0;
+
+    ItemBlock(int size) {
+	items = new IndexItem[size];
+	data = new ByteBuffer[size];
+	types = new DataType[size];
+    }
+}
+
+/**
+ * A thread that reads the items of an index a block at a time,
+ * and puts the blocks on a bounded queue.
+ */
+class BlockReader extends Thread {
+    Index index = null;
+    int blockSize = 0;
+    boolean resolveReferences = false;
+
+    // the blocks read
+    BlockingQueue queue = null;
+
+    // the block put on the queue when there are no more
+    final static ItemBlock END = new ItemBlock(0);
+
+    // has the reader been stopped
+    volatile boolean stopped = false;
+
+    // the error the reader got, if any
+    TimeIndexException error = null;
+
+    BlockReader(Index index, int blockSize, int queueSize, boolean resolveReferences) {
+	super("TimeIndex-Converter");
+	setDaemon(true);
+
+	this.index = index;
+	this.blockSize = blockSize;
+	this.resolveReferences = resolveReferences;
+
+	queue = new ArrayBlockingQueue(queueSize);
+    }
+
+    public void run() {
+	long length = index.getLength();
+
+	try {
+	    for (long position=index.getFirstPosition(); position<length && ! stopped; ) {
+		ItemBlock block = new ItemBlock((int)Math.min((long)blockSize, length - position));
+
+		for (int i=0; i<block.items.length; i++, position++) {
+		    IndexItem item = index.getItem(position);
+
+		    block.items[i] = item;
+
+		    IndexItem dataItem = getDataItem(item);
+
+		    if (dataItem != null) {
+			block.data[i] = dataItem.getData();
+			block.types[i] = dataItem.getDataType();
+		    }
+
+		    block.count++;
+		}
+
+		queue.put(block);
+	    }
+	} catch (TimeIndexException tie) {
+	    error = tie;
+	} catch (RuntimeException re) {
+	    error = new TimeIndexException("Can't read index " + index.getURI() + ": " + re.getMessage());
+	} catch (InterruptedException ie) {
+	    return;
+	}
+
+	try {
+	    queue.put(END);
+	} catch (InterruptedException ie) {
+	}
+    }
+
+    /**
+     * Get the item that holds the data of an item,
+     * following references if they are resolved.
+     * @return the item, or null if the item is copied as a reference
+     */
+    IndexItem getDataItem(IndexItem item) throws TimeIndexException {
+	if (item.isReference()) {
+	    if (! resolveReferences) {
+		return null;
+	    }
+
+	    // follow all references until we find the real data
+	    while (item.isReference()) {
+		item = item.follow();
+	    }
+	}
+
+	return item;
+    }
+
+    /**
+     * Take the next block.
+     * @return the block, or null if there are no more
+     */
+    ItemBlock take() throws InterruptedException {
+	ItemBlock block = (ItemBlock)queue.take();
+
+	return block == END ? null : block;
+    }
+
+    /**
+     * Stop the reader, and wait for it to finish.
+     * The reader is not interrupted, as that would close the
+     * channels of the index if it is reading, so the queue
+     * is emptied until the reader sees it has been stopped.
+     */
+    void finish() {
+	stopped = true;
+
+	try {
+	    while (isAlive()) {
+		queue.clear();
+		join(100);
+	    }
+	} catch (InterruptedException ie) {
+	}
+    }
+}
@@ -55,6 +55,8 @@ public class IndexInputStream extends InputStream {
     public IndexInputStream(Index anIndex) {
 	index = anIndex;
 	length = index.getLength();
+	// start at the first item still in the index
+	currentItem = index.getFirstPosition() - 1;
     }
 
 
@@ -24,6 +24,8 @@ import com.timeindexing.index.Index;
 import com.timeindexing.index.TimeIndex;
 import com.timeindexing.index.IndexItem;
 import com.timeindexing.index.IndexView;
+import com.timeindexing.index.FileIndex;
+import com.timeindexing.index.ManagedFileIndexItem;
 import com.timeindexing.index.IndexProperties;
 import com.timeindexing.index.TimeIndexException;
 import com.timeindexing.plugin.OutputPlugin;
@@ -34,7 +36,10 @@ import com.timeindexing.event.OutputEventListener;
 import com.timeindexing.event.OutputEventGenerator;
 
 import java.io.OutputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 
 
 /**
@@ -89,12 +94,26 @@ public class OutputStreamer extends OutputEventGenerator {
      * Process the TimeIndex
      */
     public long processTimeIndex(IndexView index) throws IOException, TimeIndexException {
+	return processTimeIndex(index, index.getLength());
+    }
+
+    /**
+     * Process the items of the TimeIndex up to length.
+     * It starts at the first position, as any items
+     * before it have been removed from the index.
+     */
+    protected long processTimeIndex(IndexView index, long length) throws IOException, TimeIndexException {
+	// if the data is output as it is, it can go straight
+	// from the data file to the output
+	if (canTransfer()) {
+	    return transferTimeIndex(index, length);
+	}
+
 	// output the selection
 	long writeCount = 0;
 	long writeTotal = 0;
-	long length = index.getLength();
 
-	for (long i=0; i<length; i++) {
+	for (long i=index.getFirstPosition(); i<length; i++) {
 	    IndexItem itemN = fetchIndexItem(i, index);
 
 	    writeCount = outputPlugin.write(itemN, outputProperties);
@@ -115,6 +134,171 @@ public class OutputStreamer extends OutputEventGenerator {
 	return writeTotal;
     }
 
+    /**
+     * Process the TimeIndex by transferring the data
+     * straight from the data file to the output.
+     * The data for items that are next to each other
+     * in the data file is transferred in one go.
+     * Items whose data is not in a file, or has a checksum,
+     * are written by the output plugin.
+     * Only the items up to length are output.
+     */
+    protected long transferTimeIndex(IndexView index, long length) throws IOException, TimeIndexException {
+	long writeCount = 0;
+	long writeTotal = 0;
+
+	// anything already written goes first
+	out.flush();
+
+	WritableByteChannel channel = getOutputChannel();
+
+	// the run of data waiting to be transferred
+	FileIndex runIndex = null;
+	long runOffset = 0;
+	long runSize = 0;
+
+	for (long i=index.getFirstPosition(); i<length; i++) {
+	    IndexItem itemN = fetchIndexItem(i, index);
+
+	    if (isTransferable(itemN)) {
+		FileIndex itemIndex = (FileIndex)itemN.getIndex();
+		long offset = ((ManagedFileIndexItem)itemN).getDataOffset().value();
+		long size = itemN.getDataSize().value();
+
+		if (itemIndex == runIndex && offset == runOffset + runSize) {
+		    // the data follows on from the run
+		    runSize += size;
+		    continue;
+		}
+
+		writeTotal += transferRun(index, runIndex, runOffset, runSize, channel);
+
+		// start a new run
+		runIndex = itemIndex;
+		runOffset = offset;
+		runSize = size;
+
+	    } else {
+		writeTotal += transferRun(index, runIndex, runOffset, runSize, channel);
+
+		runIndex = null;
+		runSize = 0;
+
+		writeCount = outputPlugin.write(itemN, outputProperties);
+		writeTotal += writeCount;
+
+		if (hasOutputEventListeners()) {
+		    fireOutputEvent(new OutputEvent(index.getURI().toString(), index.getID(), writeCount, this));
+		}
+	    }
+	}
+
+	writeTotal += transferRun(index, runIndex, runOffset, runSize, channel);
+
+	writeCount = outputPlugin.flush();
+	writeTotal += writeCount;
+
+	if (hasOutputEventListeners()) {
+	    fireOutputEvent(new OutputEvent(index.getURI().toString(), index.getID(), writeCount, this));
+	}
+
+	return writeTotal;
+    }
+
+    /**
+     * Transfer a run of data from a FileIndex to the output.
+     * @return the number of bytes written
+     */
+    protected long transferRun(IndexView index, FileIndex runIndex, long runOffset, long runSize, WritableByteChannel channel) throws IOException {
+	if (runIndex == null || runSize == 0) {
+	    return 0;
+	}
+
+	long writeCount = runIndex.transferData(runOffset, runSize, channel);
+
+	if (hasOutputEventListeners()) {
+	    fireOutputEvent(new OutputEvent(index.getURI().toString(), index.getID(), writeCount, this));
+	}
+
+	return writeCount;
+    }
+
+    /**
+     * Get the no of bytes the items of an index up to length
+     * will output, without doing the output.
+     * This can only be worked out when the data is output as it is,
+     * and then it comes from the data volumes of the index.
+     * The index is not read to find the volumes, so if they
+     * are not known yet, the size is not worked out.
+     * @return the no of bytes, or -1 if it can't be worked out
+     */
+    protected long outputSize(IndexView index, long length) throws TimeIndexException {
+	if (! canTransfer()) {
+	    return -1;
+	} else if (length <= index.getFirstPosition()) {
+	    return 0;
+	} else if (! index.hasDataVolume(length - 1)) {
+	    return -1;
+	} else {
+	    return index.getDataVolume(index.getFirstPosition(), length - 1);
+	}
+    }
+
+    /**
+     * Can the data be transferred straight from the data file
+     * to the output.
+     * This is only done when the DefaultWriter is used
+     * and no newlines are added, so the data is output as it is.
+     */
+    protected boolean canTransfer() {
+	if (! (outputPlugin instanceof DefaultOutputPlugin)) {
+	    return false;
+	}
+
+	if (((DefaultOutputPlugin)outputPlugin).getWriterPlugin().getClass() != DefaultWriter.class) {
+	    return false;
+	}
+
+	if (outputProperties != null && Boolean.valueOf((String)outputProperties.get("newline")).booleanValue()) {
+	    return false;
+	}
+
+	return true;
+    }
+
+    /**
+     * Is the data for an IndexItem in a file.
+     */
+    protected boolean isInFile(IndexItem item) {
+	return item instanceof ManagedFileIndexItem &&
+	    item.getIndex() instanceof FileIndex &&
+	    ((ManagedFileIndexItem)item).getDataOffset() != null;
+    }
+
+    /**
+     * Can the data for an IndexItem be transferred straight
+     * from its data file.
+     * The data of an index with checksums is not, as a transfer
+     * does not check it, so it is written by the output plugin,
+     * which reads the data and checks it.
+     */
+    protected boolean isTransferable(IndexItem item) {
+	return isInFile(item) && ! ((FileIndex)item.getIndex()).hasChecksums();
+    }
+
+    /**
+     * Get a channel onto the output.
+     * A file is written through its own FileChannel,
+     * so the data can be transferred by the operating system.
+     */
+    protected WritableByteChannel getOutputChannel() {
+	if (out instanceof FileOutputStream) {
+	    return ((FileOutputStream)out).getChannel();
+	} else {
+	    return Channels.newChannel(out);
+	}
+    }
+
     /**
      * Set an output plugin, to write to output.
      */
@@ -75,8 +75,10 @@ public class Selecter extends OutputEventGenerator implements OutputEventListene
      * Display the output.
      */
     public Selecter select(IndexProperties selectionProperties) throws IOException, TimeIndexException {
-	// open
-	open();
+	// open, unless outputSize() has already
+	if (index == null) {
+	    open();
+	}
 
 	// do the output    
 	output(selectionProperties);
@@ -103,7 +105,11 @@ public class Selecter extends OutputEventGenerator implements OutputEventListene
 
 	long total = 0;
 
-	outputter = new SelectionStreamer(index, output);
+	// use the SelectionStreamer from outputSize(), if there is one,
+	// as it has already made the selection
+	if (outputter == null) {
+	    outputter = allocateStreamer();
+	}
 
 	// listen to SelectionStreamer to get OutputEvents
 	outputter.addOutputEventListener(this);
@@ -111,13 +117,42 @@ public class Selecter extends OutputEventGenerator implements OutputEventListene
 	total = outputter.doOutput(selectionProperties);
     }
 
+    /**
+     * Get the no of bytes a selection will output,
+     * without doing the output.
+     * The index and the selection are kept for the select(),
+     * so it outputs the same items.
+     * @return the no of bytes, or -1 if it can't be worked out
+     */
+    public long outputSize(IndexProperties selectionProperties) throws TimeIndexException {
+	if (index == null) {
+	    open();
+	}
+
+	outputter = allocateStreamer();
+
+	return outputter.outputSize(selectionProperties);
+    }
+
+    /**
+     * Allocate the SelectionStreamer that does the output.
+     */
+    protected SelectionStreamer allocateStreamer() {
+	return new SelectionStreamer(index, output);
+    }
+
     /**
      * Close 
      */
     public void close() throws TimeIndexException {
 	//System.err.println("Selecter: " + hashCode() + " close." + " Thread " + Thread.currentThread().getName());
 
-	factory.close(index);
+	if (index != null) {
+	    factory.close(index);
+	    index = null;
+	}
+
+	outputter = null;
     }
 
     /**
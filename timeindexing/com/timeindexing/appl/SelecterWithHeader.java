@@ -45,9 +45,20 @@ public class SelecterWithHeader extends Selecter {
      * Do the output
      */
     protected void output(IndexProperties selectionProperties) throws IOException, TimeIndexException {
-	SelectionStreamer outputter = new SelectionWithHeaderStreamer(index, output);
 	long total = 0;
 
+	// use the SelectionStreamer from outputSize(), if there is one
+	if (outputter == null) {
+	    outputter = allocateStreamer();
+	}
+
 	total = outputter.doOutput(selectionProperties);
     }
+
+    /**
+     * Allocate the SelectionStreamer that does the output.
+     */
+    protected SelectionStreamer allocateStreamer() {
+	return new SelectionWithHeaderStreamer(index, output);
+    }
 }
@@ -34,6 +34,13 @@ import java.io.IOException;
  * A class to output a selctino of the data.
  */
 public class SelectionStreamer extends OutputStreamer  {
+    // The selection made by outputSize(), which doOutput()
+    // streams, so the output is the size that was worked out
+    IndexView selection = null;
+
+    // The IndexProperties the selection was made from
+    IndexProperties selectionProperties = null;
+
     /**
      * Construct an SelectionStreamer object given
      * an index and an output stream.
@@ -54,9 +61,7 @@ public class SelectionStreamer extends OutputStreamer  {
 
 	outputPlugin.begin();
 
-	SelectionProcessor selector = new SelectionProcessor();
- 
-	IndexView selection = selector.select((IndexView)index, properties);
+	IndexView selection = selectionOf(properties);
 
 	writeCount = processTimeIndex((IndexView)selection);
 
@@ -67,4 +72,42 @@ public class SelectionStreamer extends OutputStreamer  {
 	return writeCount;
     }
 
+    /**
+     * Get the no of bytes that doOutput() will output,
+     * given the same IndexProperties, without doing the output.
+     * @return the no of bytes, or -1 if it can't be worked out
+     */
+    public long outputSize(IndexProperties properties) throws TimeIndexException {
+	outputProperties = properties;
+
+	IndexView selection = selectionOf(properties);
+
+	return selectionSize(selection);
+    }
+
+    /**
+     * Get the selection for some IndexProperties.
+     * If outputSize() has already made a selection from the same
+     * IndexProperties, that one is used, so items added to the index
+     * since then are not output.
+     */
+    protected IndexView selectionOf(IndexProperties properties) {
+	if (selection == null || properties != selectionProperties) {
+	    SelectionProcessor selector = new SelectionProcessor();
+
+	    selection = selector.select((IndexView)index, properties);
+	    selectionProperties = properties;
+	}
+
+	return selection;
+    }
+
+    /**
+     * Get the no of bytes a selection will output.
+     * @return the no of bytes, or -1 if it can't be worked out
+     */
+    protected long selectionSize(IndexView selection) throws TimeIndexException {
+	return outputSize(selection, selection.getLength());
+    }
+
 }
@@ -25,7 +25,6 @@ import com.timeindexing.index.IndexItem;
 import com.timeindexing.index.IndexView;
 import com.timeindexing.index.IndexProperties;
 import com.timeindexing.index.TimeIndexException;
-import com.timeindexing.appl.SelectionProcessor;
 import java.io.OutputStream;
 import java.io.IOException;
 
@@ -58,9 +57,7 @@ public class SelectionWithHeaderStreamer extends SelectionStreamer  {
 
 
 	// output main selection
-	SelectionProcessor selector = new SelectionProcessor();
- 
-	IndexView selection = selector.select((IndexView)index, properties);
+	IndexView selection = selectionOf(properties);
 
 	writeCount += processTimeIndex((IndexView)selection);
 
@@ -70,6 +67,22 @@ public class SelectionWithHeaderStreamer extends SelectionStreamer  {
 	return writeCount;
     }
 
+    /**
+     * Get the no of bytes that doOutput() will output,
+     * which includes the header.
+     * @return the no of bytes, or -1 if it can't be worked out
+     */
+    public long outputSize(IndexProperties properties) throws TimeIndexException {
+	long size = super.outputSize(properties);
+
+	if (size < 0 || ! index.hasDataVolume(0)) {
+	    return -1;
+	} else {
+	    // the header is the data of the first item
+	    return index.getDataVolume(0, 0) + size;
+	}
+    }
+
     /**
      * Process the header and output it.
      * @return the no of bytes output
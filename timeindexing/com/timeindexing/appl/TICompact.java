@@ -0,0 +1,157 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+// TICompact.java
+
+package com.timeindexing.appl;
+
+import com.timeindexing.index.Index;
+import com.timeindexing.index.IndexView;
+import com.timeindexing.index.IndexType;
+import com.timeindexing.index.TimeIndexFactory;
+import com.timeindexing.index.TimeIndexException;
+import java.io.PrintStream;
+import java.util.Properties;
+
+/**
+ * Copy a TimeIndex into a new TimeIndex, converting it to
+ * another index type, and removing any gaps in the data.
+ * <p>
+ * Args are
+ * -t type,  one of external, inline, segmented.  Default is external
+ * -c use the compact index record format, for an external index
+ * -r resolve references, so the data they refer to is copied
+ * -n index name.  Default is the name of the source index
+ * -b no of items read in one block
+ * -q no of blocks that can be waiting to be written
+ * -o name=value, an extra property to create the new index with
+ * source index file
+ * new index file
+ * <p>
+ * The timestamps, IDs, and annotations of the items are kept.
+ */
+public class TICompact {
+    public static void main(String [] args) {
+	/*
+	 * Process args
+	 */
+	String type = "external";
+	String name = null;
+	boolean resolveReferences = false;
+	int blockSize = IndexConverter.DEFAULT_BLOCK_SIZE;
+	int queueSize = IndexConverter.DEFAULT_QUEUE_SIZE;
+
+	Properties createProperties = new Properties();
+
+	int argc = 0;
+
+	try {
+	    for (argc=0; argc<args.length; argc++) {
+		if (args[argc].startsWith("-")) {    // it's a flag
+		    if (args[argc].equals("-t") && argc+1 < args.length) {
+			argc++;
+			type = args[argc];
+		    } else if (args[argc].equals("-c")) {
+			createProperties.setProperty("compactindex", "true");
+		    } else if (args[argc].equals("-r")) {
+			resolveReferences = true;
+		    } else if (args[argc].equals("-n") && argc+1 < args.length) {
+			argc++;
+			name = args[argc];
+		    } else if (args[argc].equals("-b") && argc+1 < args.length) {
+			argc++;
+			blockSize = Integer.parseInt(args[argc]);
+		    } else if (args[argc].equals("-q") && argc+1 < args.length) {
+			argc++;
+			queueSize = Integer.parseInt(args[argc]);
+		    } else if (args[argc].equals("-o") && argc+1 < args.length && args[argc+1].indexOf('=') > 0) {
+			argc++;
+			String option = args[argc];
+			createProperties.setProperty(option.substring(0, option.indexOf('=')), option.substring(option.indexOf('=') + 1));
+		    } else {
+			help(System.err);
+			System.exit(1);
+		    }
+		} else {
+		    break;
+		}
+	    }
+	} catch (NumberFormatException nfe) {
+	    help(System.err);
+	    System.exit(1);
+	}
+
+	if (argc != args.length - 2) {
+	    help(System.err);
+	    System.exit(1);
+	}
+
+	IndexType indexType = null;
+
+	if (type.equals("external")) {
+	    indexType = IndexType.EXTERNAL;
+	} else if (type.equals("inline")) {
+	    indexType = IndexType.INLINE;
+	} else if (type.equals("segmented")) {
+	    indexType = IndexType.SEGMENTED;
+	} else {
+	    help(System.err);
+	    System.exit(1);
+	}
+
+	/*
+	 * Go for it
+	 */
+	try {
+	    TimeIndexFactory factory = new TimeIndexFactory();
+
+	    Properties properties = new Properties();
+	    properties.setProperty("indexpath", args[argc]);
+	    properties.setProperty("loadstyle", "none");
+	    properties.setProperty("readonly", "true");
+	    // the items are read in blocks as they are got one after another
+	    properties.setProperty("readahead", Integer.toString(blockSize));
+
+	    IndexView source = factory.open(properties);
+
+	    createProperties.setProperty("indexpath", args[argc+1]);
+	    createProperties.setProperty("name", name == null ? source.getName() : name);
+
+	    IndexConverter converter = new IndexConverter(source);
+	    converter.setResolveReferences(resolveReferences);
+	    converter.setBlockSize(blockSize);
+	    converter.setQueueSize(queueSize);
+
+	    IndexView newIndex = converter.convert(indexType, createProperties);
+
+	    factory.close((Index)newIndex);
+	    factory.close((Index)source);
+
+	    System.out.println(args[argc] + ": copied " + converter.getCopied() + " items to " + args[argc+1]);
+
+	    System.exit(0);
+
+	} catch (TimeIndexException tie) {
+	    System.err.println("TICompact: error " + tie.getMessage());
+	    System.exit(1);
+	}
+    }
+
+    static void help(PrintStream out) {
+	out.println("ticompact [-t external|inline|segmented] [-c] [-r] [-n index name] [-b block items] [-q queued blocks] [-o name=value] <tifile> <newtifile>");
+    }
+
+}
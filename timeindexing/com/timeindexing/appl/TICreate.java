@@ -57,7 +57,7 @@ import sun.misc.SignalHandler;
  * Create a timeindex file from a file or stdin.
  * <p>
  * Args are
- * -t type,  one of external, shadow, inline
+ * -t type,  one of external, shadow, inline, segmented
  * -e == -t external
  * -s == -t shadow
  * -i == -t inline
@@ -180,7 +180,7 @@ public class TICreate {
      * Print out some help
      */
     public static void help(PrintStream out) {
-	out.println("ticreate [-e] [-s] [-e] [-t external|shadow|inline] [-p line|web|mail|ftp|file] [-c plugin_class] [-n index name] <tifile> [<file> | -]");
+	out.println("ticreate [-e] [-s] [-e] [-t external|shadow|inline|segmented] [-p line|web|mail|ftp|file] [-c plugin_class] [-n index name] <tifile> [<file> | -]");
     }
 
     /**
@@ -392,15 +392,17 @@ public class TICreate {
 
 
 	if (type == null) {
-	    throw new Error("Set system propery -Dindextype=[inline|external|shadow]");
+	    throw new Error("Set system propery -Dindextype=[inline|external|shadow|segmented]");
 	} else if (type.equals("inline")) {
 	    indexType = IndexType.INLINE;
 	} else if (type.equals("external")) {
 	    indexType = IndexType.EXTERNAL;
 	} else if (type.equals("shadow")) {
 	    indexType = IndexType.SHADOW;
+	} else if (type.equals("segmented")) {
+	    indexType = IndexType.SEGMENTED;
 	} else {
-	   throw new Error("Set flag -t [inline|external|shadow]");
+	   throw new Error("Set flag -t [inline|external|shadow|segmented]");
 	} 
 
 	return factory.create(indexType, indexProperties);
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+// TIVerify.java
+
+package com.timeindexing.appl;
+
+import com.timeindexing.index.Index;
+import com.timeindexing.index.IndexView;
+import com.timeindexing.index.FileIndex;
+import com.timeindexing.index.TimeIndexDirectory;
+import com.timeindexing.index.TimeIndexFactory;
+import com.timeindexing.index.TimeIndexException;
+import java.io.PrintStream;
+import java.util.Properties;
+
+/**
+ * Verify the checksums of a TimeIndex.
+ * The index is split into one range of positions for each thread,
+ * and each thread reads the index records and the data in its range
+ * straight from the files, with positional reads of a block of records
+ * at a time, so the threads don't share anything.
+ * The items are not read into the index, so its cache is not filled.
+ * Each index record and its data is checked against its checksum
+ * as it is read.
+ */
+public class TIVerify {
+    public static void main(String [] args) {
+	/*
+	 * Process args
+	 */
+	int threadCount = Runtime.getRuntime().availableProcessors();
+	boolean verbose = false;
+
+	int argc = 0;
+
+	for (argc=0; argc<args.length; argc++) {
+	    if (args[argc].startsWith("-")) {    // it's a flag
+		if (args[argc].equals("-t") && argc+1 < args.length) {
+		    argc++;
+		    threadCount = Integer.parseInt(args[argc]);
+		} else if (args[argc].equals("-v")) {
+		    verbose = true;
+		} else {
+		    help(System.err);
+		    System.exit(1);
+		}
+	    } else {
+		break;
+	    }
+	}
+
+	if (argc != args.length - 1 || threadCount < 1) {
+	    help(System.err);
+	    System.exit(1);
+	}
+
+	/*
+	 * Go for it
+	 */
+	try {
+	    TimeIndexFactory factory = new TimeIndexFactory();
+
+	    Properties properties = new Properties();
+	    properties.setProperty("indexpath", args[argc]);
+	    properties.setProperty("loadstyle", "none");
+	    properties.setProperty("readonly", "true");
+
+	    IndexView index = factory.open(properties);
+
+	    // the records are read from the files of the index.
+	    // an index without checksums is only checked for readability
+	    FileIndex fileIndex = (FileIndex)TimeIndexDirectory.find(index.getID());
+
+	    long first = index.getFirstPosition();
+	    long length = index.getLength();
+	    long chunk = (length - first + threadCount - 1) / threadCount;
+
+	    Verifier[] verifiers = new Verifier[threadCount];
+
+	    for (int t=0; t<threadCount; t++) {
+		long start = Math.min(length, first + t * chunk);
+		long end = Math.min(length, start + chunk);
+
+		verifiers[t] = new Verifier(fileIndex, start, end, verbose);
+		verifiers[t].start();
+	    }
+
+	    long checked = 0;
+	    long failed = 0;
+
+	    for (int t=0; t<threadCount; t++) {
+		verifiers[t].join();
+
+		checked += verifiers[t].checked;
+		failed += verifiers[t].failed;
+	    }
+
+	    factory.close((Index)index);
+
+	    System.out.println(args[argc] + ": checked " + checked + " items, " + failed + " failed");
+
+	    System.exit(failed == 0 ? 0 : 2);
+
+	} catch (TimeIndexException tie) {
+	    System.err.println("TIVerify: error " + tie.getMessage());
+	    System.exit(1);
+	} catch (InterruptedException ie) {
+	    System.err.println("TIVerify: interrupted");
+	    System.exit(1);
+	}
+    }
+
+    static void help(PrintStream out) {
+	out.println("tiverify [-t threads] [-v] <tifile>");
+    }
+
+}
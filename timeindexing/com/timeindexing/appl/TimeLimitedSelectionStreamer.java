@@ -53,12 +53,14 @@ public class TimeLimitedSelectionStreamer extends SelectionStreamer  {
 	// output the selection
 	long writeCount = 0;
 	long length = selection.getLength();
+	// items before the first position have been removed
+	long first = selection.getFirstPosition();
 	Timestamp timeLimit = null;
 	Timestamp startTime = null;
 	Timestamp elapsedTime = null;
 
 	// if there's any items in the selection
-        if (length > 0) {
+        if (length > first) {
 	    // get the time limit for selection from the properties
 	    //SelectionProcessor processor = new SelectionProcessor();
 	    System.err.println("IndexProperties = " + outputProperties);
@@ -81,12 +83,12 @@ public class TimeLimitedSelectionStreamer extends SelectionStreamer  {
 	    }
 
 	    // get the start time from the dataTS
-	    startTime = selection.getItem(0).getDataTimestamp();
+	    startTime = selection.getItem(first).getDataTimestamp();
 
 	    System.err.println("Start Time = " + startTime);
 
 	    // output the items
-	    for (long i=0; i<length; i++) {
+	    for (long i=first; i<length; i++) {
 		IndexItem itemN = selection.getItem(i);
 
 		// if there is a timeLimit then process the relvant data
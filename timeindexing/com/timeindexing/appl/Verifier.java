@@ -0,0 +1,76 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+// Verifier.java
+
+package com.timeindexing.appl;
+
+import com.timeindexing.index.FileIndex;
+
+/**
+ * A thread that verifies a range of positions of an index,
+ * reading the records and the data straight from the index files.
+ * The records are read a block at a time, with positional reads.
+ */
+class Verifier extends Thread {
+    FileIndex index = null;
+    long start = 0;
+    long end = 0;
+    boolean verbose = false;
+
+    long checked = 0;
+    long failed = 0;
+
+    /**
+     * Verify the items from start up to, but not including, end.
+     */
+    Verifier(FileIndex index, long start, long end, boolean verbose) {
+	this.index = index;
+	this.start = start;
+	this.end = end;
+	this.verbose = verbose;
+    }
+
+    /*
+     * The no of records read at a time
+     */
+    final static int BLOCK_ITEMS = 1024;
+
+    public void run() {
+	String[] failures = new String[BLOCK_ITEMS];
+
+	for (long position=start; position<end; position += BLOCK_ITEMS) {
+	    int count = (int)Math.min((long)BLOCK_ITEMS, end - position);
+
+	    index.verifyRecords(position, count, failures);
+
+	    for (int k=0; k<count; k++) {
+		if (failures[k] != null) {
+		    failed++;
+		    report(position + k, failures[k]);
+		}
+	    }
+
+	    checked += count;
+	}
+    }
+
+    void report(long position, String message) {
+	if (verbose) {
+	    System.err.println("TIVerify: item " + position + " failed: " + message);
+	}
+    }
+}
@@ -53,33 +53,33 @@ public class VolumeLimitedSelectionStreamer extends SelectionStreamer  {
 	// output the selection
 	long writeCount = 0;
 	long length = selection.getLength();
+	// items before the first position have been removed
+	long first = selection.getFirstPosition();
 	Count volumeLimit = null;
 
 	// if there's any items in the selection
-        if (length > 0) {
-	    // get the count limit for selection from the properties
+        if (length > first) {
+	    // get the volume limit for selection from the properties
 	    //SelectionProcessor processor = new SelectionProcessor();
 	    System.err.println("IndexProperties = " + outputProperties);
-	    String volumeLimitStr = (String)outputProperties.get("volumelimit");
-
-	    // if a count limit was specified
-	    if (volumeLimitStr != null) {
-		// parse the volune
-		volumeLimit = new CountParser().parse(volumeLimitStr);
-
-		// if the count was unparsabe or was zero
-		if (volumeLimit.value() == 0) {
-		    // set volumeLimit to null
-		    volumeLimit = null;
-		}
+	    volumeLimit = getVolumeLimit();
 
+	    // if a volume limit was specified
+	    if (volumeLimit != null) {
 		System.err.println("VolumeLimit = " + volumeLimit);
 	    } else {
 		System.err.println("No VolumeLimit specified");
 	    }
 
+	    // if the data is output as it is, the data volumes
+	    // of the index say where the volume limit is,
+	    // so the output stops exactly at the cut point
+	    if (volumeLimit != null && canTransfer()) {
+		return processTimeIndex(selection, limitedLength(selection, volumeLimit));
+	    }
+
 	    // output the items
-	    for (long i=0; i<length; i++) {
+	    for (long i=first; i<length; i++) {
 		IndexItem itemN = selection.getItem(i);
 
 		// if there is a volumeLimit then process the relvant data
@@ -98,4 +98,59 @@ public class VolumeLimitedSelectionStreamer extends SelectionStreamer  {
 	return writeCount;
     }
 
+    /**
+     * Get the no of bytes a selection will output,
+     * which is cut at the volume limit.
+     * @return the no of bytes, or -1 if it can't be worked out
+     */
+    protected long selectionSize(IndexView selection) throws TimeIndexException {
+	Count volumeLimit = getVolumeLimit();
+
+	if (volumeLimit == null) {
+	    return outputSize(selection, selection.getLength());
+	} else if (selection.getLength() > 0 && ! selection.hasDataVolume(selection.getLength() - 1)) {
+	    // the cut can't be found without reading the index
+	    return -1;
+	} else {
+	    return outputSize(selection, limitedLength(selection, volumeLimit));
+	}
+    }
+
+    /**
+     * Get the volume limit from the output properties.
+     * @return the limit, or null if there is no limit
+     */
+    protected Count getVolumeLimit() {
+	String volumeLimitStr = (String)outputProperties.get("volumelimit");
+
+	// if a volume limit was specified
+	if (volumeLimitStr == null) {
+	    return null;
+	}
+
+	// parse the volune
+	Count volumeLimit = new CountParser().parse(volumeLimitStr);
+
+	// if the count was unparsabe or was zero
+	if (volumeLimit.value() == 0) {
+	    return null;
+	} else {
+	    return volumeLimit;
+	}
+    }
+
+    /**
+     * Get the position just after the items from the start of a selection
+     * whose data is no more than the volume limit.
+     */
+    protected long limitedLength(IndexView selection, Count volumeLimit) throws TimeIndexException {
+	long first = selection.getFirstPosition();
+
+	if (selection.getLength() <= first) {
+	    return first;
+	} else {
+	    return selection.locateDataVolume(first, volumeLimit.value()) + 1;
+	}
+    }
+
 }
@@ -20,7 +20,15 @@
 
 package com.timeindexing.appl.playlist;
 
+import com.timeindexing.index.Index;
+import com.timeindexing.index.IndexTimestampSelector;
+import com.timeindexing.basic.AbsoluteInterval;
+import com.timeindexing.basic.EndPointInterval;
+import com.timeindexing.time.Lifetime;
 import java.util.LinkedList;
+import java.util.LinkedHashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Iterator;
 
 /**
@@ -72,6 +80,75 @@ public class PlayList {
 	return list.iterator();
     }
 
+    /**
+     * Resolve the Intervals of all the PlayListItems.
+     * The items for each Index are resolved together, so each
+     * Index is searched in one pass, rather than once per Interval.
+     * An Interval that can't be resolved is left as it is.
+     */
+    public PlayList resolve(IndexTimestampSelector selector, Lifetime lifetime) {
+	// the items for each index, in the order the indexes are seen
+	LinkedHashMap itemsForIndex = new LinkedHashMap();
+
+	Iterator itemsI = list.iterator();
+
+	while (itemsI.hasNext()) {
+	    PlayListItem item = (PlayListItem)itemsI.next();
+
+	    if (item instanceof AbstractPlayListItem && item.getInterval() instanceof AbsoluteInterval &&
+		! ((AbsoluteInterval)item.getInterval()).isResolved()) {
+		List items = (List)itemsForIndex.get(item.getIndex());
+
+		if (items == null) {
+		    items = new ArrayList();
+		    itemsForIndex.put(item.getIndex(), items);
+		}
+
+		items.add(item);
+	    }
+	}
+
+	Iterator indexI = itemsForIndex.keySet().iterator();
+
+	while (indexI.hasNext()) {
+	    Index index = (Index)indexI.next();
+	    List items = (List)itemsForIndex.get(index);
+
+	    // the EndPointIntervals are resolved together
+	    List endPointItems = new ArrayList();
+
+	    for (int i=0; i<items.size(); i++) {
+		AbstractPlayListItem item = (AbstractPlayListItem)items.get(i);
+
+		if (item.getInterval() instanceof EndPointInterval) {
+		    endPointItems.add(item);
+		} else {
+		    AbsoluteInterval resolved = ((AbsoluteInterval)item.getInterval()).resolve(index, selector, lifetime);
+
+		    if (resolved != null) {
+			item.setInterval(resolved);
+		    }
+		}
+	    }
+
+	    EndPointInterval[] intervals = new EndPointInterval[endPointItems.size()];
+
+	    for (int i=0; i<intervals.length; i++) {
+		intervals[i] = (EndPointInterval)((AbstractPlayListItem)endPointItems.get(i)).getInterval();
+	    }
+
+	    AbsoluteInterval[] resolved = EndPointInterval.resolveAll(intervals, index, selector, lifetime);
+
+	    for (int i=0; i<resolved.length; i++) {
+		if (resolved[i] != null) {
+		    ((AbstractPlayListItem)endPointItems.get(i)).setInterval(resolved[i]);
+		}
+	    }
+	}
+
+	return this;
+    }
+
     /**
      * Create a String view of a PlayList.
      */
@@ -31,6 +31,8 @@ import com.timeindexing.index.Index;
 import com.timeindexing.index.IndexItem;
 import com.timeindexing.index.IndexTimestampSelector;
 import com.timeindexing.index.GetItemException;
+import java.util.Arrays;
+import java.util.Comparator;
 
 /**
  * An end point interval is an interval where the arguments
@@ -105,7 +107,6 @@ public class EndPointInterval extends AbsoluteInterval implements Interval, Clon
      * Returns a clone with resolved positions.
      */
     public AbsoluteInterval resolve(Index index, IndexTimestampSelector selector, Lifetime lifetime) {
-	EndPointInterval newInterval = null;
 	Position startPos = null;
 	Position endPos = null;
 
@@ -139,23 +140,180 @@ public class EndPointInterval extends AbsoluteInterval implements Interval, Clon
 
 	    //System.err.println("EndPointInterval: startPos = " + startPos + ". endPos = " + endPos);
 
-	    // allocate a new Interval for the result
-	    newInterval = (EndPointInterval)this.clone();
+	    return resolved(startPos, endPos);
 
-	    // now fill in the resulting new interval
-	    if (startPos.value() < endPos.value()) {  // startPos before endPos
-		newInterval.start = startPos;
-		newInterval.end = endPos;
-		newInterval.resolved = true;
+	} catch (CloneNotSupportedException cnse) {
+	    return null;
+	}
+    }
+
+    /**
+     * Resolve many intervals w.r.t a specified index.
+     * The Timestamps of all the start points are located in one pass
+     * of the index, using Index.locateAll(), and then the Timestamps
+     * of all the end points are located in another pass.
+     * This is much quicker than resolving each interval on its own
+     * when there are many intervals.
+     * Returns a resolved clone of each interval, or null
+     * for an interval that can't be resolved.
+     */
+    public static AbsoluteInterval[] resolveAll(EndPointInterval[] intervals, Index index, IndexTimestampSelector selector, Lifetime lifetime) {
+	AbsoluteInterval[] result = new AbsoluteInterval[intervals.length];
+
+	// locate all the start points
+	Timestamp[] startTimes = new Timestamp[intervals.length];
+
+	for (int i=0; i<intervals.length; i++) {
+	    if (intervals[i].startPointIsTimestamp) {
+		startTimes[i] = intervals[i].startTimestamp;
+	    }
+	}
+
+	TimestampMapping[] starts = locateAll(index, startTimes, selector, lifetime);
+
+	for (int i=0; i<intervals.length; i++) {
+	    if (! intervals[i].startPointIsTimestamp) {
+		starts[i] = index.locate(intervals[i].startPosition, selector, lifetime);
+	    }
+	}
+
+	// locate all the end points that are Timestamps
+	Timestamp[] endTimes = new Timestamp[intervals.length];
+
+	for (int i=0; i<intervals.length; i++) {
+	    if (starts[i] != null) {
+		endTimes[i] = intervals[i].endTimestamp(starts[i], intervals[i].endValue);
+	    }
+	}
+
+	TimestampMapping[] ends = locateAll(index, endTimes, selector, Lifetime.CONTINUOUS);
+
+	// now fill in the intervals
+	for (int i=0; i<intervals.length; i++) {
+	    if (starts[i] == null) {
+		// it couldn't be found
+		continue;
+	    }
+
+	    Position startPos = null;
+	    Position endPos = null;
+
+	    if (intervals[i].startPointIsTimestamp) {
+		startPos = starts[i].position();
 	    } else {
-		newInterval.start = endPos;
-		newInterval.end = startPos;
-		newInterval.resolved = true;
+		startPos = intervals[i].startPosition;
 	    }
 
-	    return newInterval;
+	    if (endTimes[i] == null) {
+		endPos = intervals[i].resolveValue(index, starts[i], intervals[i].endValue, selector, Lifetime.CONTINUOUS);
+	    } else {
+		endPos = ends[i];
+	    }
 
-	} catch (CloneNotSupportedException cnse) {
+	    if (endPos == null) {
+		continue;
+	    }
+
+	    try {
+		result[i] = intervals[i].resolved(startPos, endPos);
+	    } catch (CloneNotSupportedException cnse) {
+		result[i] = null;
+	    }
+	}
+
+	return result;
+    }
+
+    /**
+     * Locate some Timestamps, which are in any order, in one pass.
+     * A null Timestamp gets a null mapping.
+     */
+    private static TimestampMapping[] locateAll(Index index, final Timestamp[] times, IndexTimestampSelector selector, Lifetime lifetime) {
+	TimestampMapping[] mappings = new TimestampMapping[times.length];
+
+	// find the order of the Timestamps
+	int count = 0;
+
+	for (int i=0; i<times.length; i++) {
+	    if (times[i] != null) {
+		count++;
+	    }
+	}
+
+	Integer[] order = new Integer[count];
+
+	for (int i=0, o=0; i<times.length; i++) {
+	    if (times[i] != null) {
+		order[o++] = Integer.valueOf(i);
+	    }
+	}
+
+	Arrays.sort(order, new Comparator() {
+		public int compare(Object o1, Object o2) {
+		    Timestamp t1 = times[((Integer)o1).intValue()];
+		    Timestamp t2 = times[((Integer)o2).intValue()];
+
+		    if (TimeCalculator.lessThan(t1, t2)) {
+			return -1;
+		    } else if (TimeCalculator.greaterThan(t1, t2)) {
+			return 1;
+		    } else {
+			return 0;
+		    }
+		}
+	    });
+
+	Timestamp[] sorted = new Timestamp[count];
+
+	for (int o=0; o<count; o++) {
+	    sorted[o] = times[order[o].intValue()];
+	}
+
+	TimestampMapping[] found = index.locateAll(sorted, selector, lifetime);
+
+	// put them back in the original order
+	for (int o=0; o<count; o++) {
+	    mappings[order[o].intValue()] = found[o];
+	}
+
+	return mappings;
+    }
+
+    /**
+     * Get a resolved clone of this interval, with a start and an end.
+     */
+    protected AbsoluteInterval resolved(Position startPos, Position endPos) throws CloneNotSupportedException {
+	// allocate a new Interval for the result
+	EndPointInterval newInterval = (EndPointInterval)this.clone();
+
+	// now fill in the resulting new interval
+	if (startPos.value() < endPos.value()) {  // startPos before endPos
+	    newInterval.start = startPos;
+	    newInterval.end = endPos;
+	    newInterval.resolved = true;
+	} else {
+	    newInterval.start = endPos;
+	    newInterval.end = startPos;
+	    newInterval.resolved = true;
+	}
+
+	return newInterval;
+    }
+
+    /**
+     * Get the Timestamp of an end Value w.r.t a start.
+     * @return the Timestamp, or null if the Value is not a time
+     */
+    protected Timestamp endTimestamp(TimestampMapping posStart, Value value) {
+	if (value instanceof RelativeTimestamp) {
+	    // calculate a new TS given the start pos and a RelativeTimestamp
+	    return TimeCalculator.addTimestamp(posStart.timestamp(), (RelativeTimestamp)value);
+	} else if (value instanceof AbsoluteTimestamp) {
+	    return (AbsoluteTimestamp)value;
+	} else if (value instanceof TimeSpecifier) {
+	    // instantiate the time specifier w.r.t the starttime
+	    return ((TimeSpecifier)value).instantiate(posStart.timestamp());
+	} else {
 	    return null;
 	}
     }
@@ -97,11 +97,11 @@ public class HollowAfterTimeoutPolicy extends AbstractCachePolicy implements Cac
 	    
 	    ManagedIndexItem first = (ManagedIndexItem)monitorList.getFirst();
 
-	    Timestamp firstTimeout = TimeCalculator.elapsedSince(first.getLastAccessTime());
+	    long firstTimeout = Clock.time.timeAsNanos() - first.getLastAccessNanos();
 	    //System.err.println("firstTimeout = " + firstTimeout);
 
 
-	    if (TimeCalculator.greaterThan(firstTimeout, timeout)) {
+	    if (firstTimeout > TimeCalculator.asNanos(timeout)) {
 		// the first element has a big enough timeout
 		//System.err.print("Hollowing " + first.getPosition() + ". Last accesse time: " + first.getLastAccessTime() + ".Timeout = " + firstTimeout);
 		monitorList.remove(first);
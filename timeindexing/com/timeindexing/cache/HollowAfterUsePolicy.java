@@ -22,8 +22,6 @@ package com.timeindexing.cache;
 
 import com.timeindexing.index.IndexItem;
 import com.timeindexing.index.ManagedIndexItem;
-import com.timeindexing.time.Timestamp;
-import com.timeindexing.time.TimeCalculator;
 import com.timeindexing.util.DoubleLinkedList;
 import java.util.Comparator;
 import java.util.Iterator;
@@ -128,11 +126,11 @@ public class HollowAfterUsePolicy extends AbstractCachePolicy implements CachePo
 	    ManagedIndexItem item1 = (ManagedIndexItem)o1;
 	    ManagedIndexItem item2 = (ManagedIndexItem)o2;
 
-	    if (TimeCalculator.lessThan(item1.getLastAccessTime(), item2.getLastAccessTime())) {
+	    if (item1.getLastAccessNanos() < item2.getLastAccessNanos()) {
 		//System.err.println("Item " + item1.getPosition() + " < " + item2.getPosition());
 		return -1;
 	    } else 
-	    if (TimeCalculator.greaterThan(item1.getLastAccessTime(), item2.getLastAccessTime())) {
+	    if (item1.getLastAccessNanos() > item2.getLastAccessNanos()) {
 		//System.err.println("Item " + item1.getPosition() + " > " + item2.getPosition());
 		return 1;
 	    } else {
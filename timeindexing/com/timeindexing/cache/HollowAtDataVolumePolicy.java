@@ -58,7 +58,9 @@ public class HollowAtDataVolumePolicy extends AbstractCachePolicy implements Cac
      */
     public Object notifyAddItemBegin(IndexItem item,long pos) {
 	//System.err.print("notifyAddItemBegin: ");
-	notifyGetItemBegin(item, pos);
+	// a new item is not in the monitorList,
+	// so there is no need to look for it
+	checkVolume();
 	return null;
     }
 
@@ -81,13 +83,25 @@ public class HollowAtDataVolumePolicy extends AbstractCachePolicy implements Cac
 	// if the item is in the monitorList remove it.
 	monitorList.remove(item);
 
+	checkVolume();
+
+	return null;
+    }
+
+    /**
+     * Hollow items whilst the data volume is over the threshold.
+     */
+    protected void checkVolume() {
 	// if the first item in the monitorList
 	// was last accessed with an elapsed time greater
 	// than the timeout, then remove it
 	// remove one item
 	if (monitorList.size() > 0) {
 
- 	    while (cache.getDataVolume() > volumeThreshold) {
+	    // items being read by other threads may refill
+	    // their data without being in the monitorList,
+	    // so stop when there is nothing left to hollow
+ 	    while (cache.getDataVolume() > volumeThreshold && monitorList.size() > 0) {
 		ManagedIndexItem first = (ManagedIndexItem)monitorList.getFirst();
 
 		if (cache.getDataVolume() > volumeThreshold) {
@@ -98,8 +112,6 @@ public class HollowAtDataVolumePolicy extends AbstractCachePolicy implements Cac
 		}
 	    }
 	}
-
-	return null;
     }
 
     /**
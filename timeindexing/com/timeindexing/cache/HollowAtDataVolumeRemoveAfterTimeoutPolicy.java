@@ -79,7 +79,9 @@ public class HollowAtDataVolumeRemoveAfterTimeoutPolicy extends AbstractCachePol
      */
     public Object notifyAddItemBegin(IndexItem item,long pos) {
 	//System.err.print("notifyAddItemBegin: ");
-	notifyGetItemBegin(item, pos);
+	// a new item is not in the monitorList or the removeList,
+	// so there is no need to look for it
+	checkCache();
 	return null;
     }
 
@@ -105,6 +107,16 @@ public class HollowAtDataVolumeRemoveAfterTimeoutPolicy extends AbstractCachePol
 	// if the item is in the removeList remove it.
 	removeList.remove(item);
 
+	checkCache();
+
+	return null;
+    }
+
+    /**
+     * Hollow items whilst the data volume is over the threshold,
+     * and remove hollowed items that have timed out.
+     */
+    protected void checkCache() {
 	// if the first item in the monitorList
 	// was last accessed with an elapsed time greater
 	// than the timeout, then remove it
@@ -113,7 +125,10 @@ public class HollowAtDataVolumeRemoveAfterTimeoutPolicy extends AbstractCachePol
 
 	    //System.err.println("Hollowing " + "MonitorList = " + monitorList.size() + ". Volume = " + cache.getDataVolume());
 
- 	    while (cache.getDataVolume() > volumeThreshold) {
+	    // items being read by other threads may refill
+	    // their data without being in the monitorList,
+	    // so stop when there is nothing left to hollow
+ 	    while (cache.getDataVolume() > volumeThreshold && monitorList.size() > 0) {
 		ManagedIndexItem first = (ManagedIndexItem)monitorList.getFirst();
 
 		//System.err.println("Hollowing " + first.getPosition() + ". Last accesse time: " + first.getLastAccessTime() + ". Volume = " + cache.getDataVolume() + " Hollow list size = " + monitorList.size());
@@ -136,11 +151,11 @@ public class HollowAtDataVolumeRemoveAfterTimeoutPolicy extends AbstractCachePol
 	    // loop until we break out
 	    ManagedIndexItem first = (ManagedIndexItem)removeList.getFirst();
 
-	    Timestamp firstTimeout = TimeCalculator.elapsedSince(first.getLastAccessTime());
+	    long firstTimeout = Clock.time.timeAsNanos() - first.getLastAccessNanos();
 	    //System.err.println("firstTimeout = " + firstTimeout);
 
 
-	    if (TimeCalculator.greaterThan(firstTimeout, timeout)) {
+	    if (firstTimeout > TimeCalculator.asNanos(timeout)) {
 		// the first element has a big enough timeout
 		// System.err.println("Removing " + first.getPosition() + ". Last accesse time: " + first.getLastAccessTime() + ".Timeout = " + firstTimeout + ". Remove list size = " + removeList.size());
 		    
@@ -151,8 +166,6 @@ public class HollowAtDataVolumeRemoveAfterTimeoutPolicy extends AbstractCachePol
 		break;
 	    }
 	}
-
-	return null;
     }
 
     /**
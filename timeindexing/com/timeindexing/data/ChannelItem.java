@@ -0,0 +1,139 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+// ChannelItem.java
+
+package com.timeindexing.data;
+
+import java.io.IOException;
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.Channels;
+
+import com.timeindexing.index.DataType;
+
+/**
+ * A item of data presented by a data reader as a channel.
+ * The data is read from the channel, a chunk at a time,
+ * when the item is written to a file-based index,
+ * so data bigger than a ByteBuffer can be added to an index.
+ */
+public class ChannelItem implements DataItem {
+    // The channel the data is read from
+    ReadableByteChannel channel = null;
+
+    // The size of the data
+    long size = 0;
+
+    // the data type
+    DataType dataType = null;
+
+    // The data, if it has been read from the channel by getBytes()
+    ByteBuffer bytes = null;
+
+    /**
+     * Construct a ChannelItem for size bytes from a channel.
+     */
+    public ChannelItem(ReadableByteChannel channel, long size) {
+	this(channel, size, DataType.ANY);
+    }
+
+    /**
+     * Construct a ChannelItem for size bytes from a channel, and a DataType
+     */
+    public ChannelItem(ReadableByteChannel channel, long size, DataType type) {
+	this.channel = channel;
+	this.size = size;
+	dataType = type;
+    }
+
+    /**
+     * Get the channel the data is read from.
+     * If getBytes() has read the data, the channel is onto that.
+     */
+    public ReadableByteChannel getChannel() {
+	if (bytes == null) {
+	    return channel;
+	} else {
+	    return Channels.newChannel(new ByteArrayInputStream(bytes.array(), 0, bytes.limit()));
+	}
+    }
+
+    /**
+     * Get the data itself.
+     * The data is read from the channel into a ByteBuffer
+     * the first time, so it can only be got for data of less than 2G.
+     * @throws IOException if the data is too big for a ByteBuffer,
+     * or the channel can't be read
+     */
+    public synchronized ByteBuffer readBytes() throws IOException {
+	if (bytes == null) {
+	    if (size >= Integer.MAX_VALUE) {
+		throw new IOException("ChannelItem of " + size + " bytes is too big for a ByteBuffer, use getChannel()");
+	    }
+
+	    ByteBuffer buffer = ByteBuffer.allocate((int)size);
+
+	    while (buffer.hasRemaining()) {
+		if (channel.read(buffer) < 0) {
+		    throw new IOException("ChannelItem: channel ended after " + buffer.position() + " of " + size + " bytes");
+		}
+	    }
+
+	    buffer.flip();
+	    bytes = buffer;
+	}
+
+	return bytes.duplicate();
+    }
+
+    /**
+     * Get the data itself, as readBytes() does.
+     * Use readBytes() to get a failure as an IOException.
+     * @throws IllegalStateException if the data is too big for a ByteBuffer,
+     * or the channel can't be read
+     */
+    public ByteBuffer getBytes() {
+	try {
+	    return readBytes();
+	} catch (IOException ioe) {
+	    throw new IllegalStateException(ioe.getMessage(), ioe);
+	}
+    }
+
+    /**
+     * Get the size of the item
+     */
+    public long getSize() {
+	return size;
+    }
+
+    /**
+     * Get the DataType of the DataItem.
+     */
+    public DataType getDataType() {
+	return dataType;
+    }
+
+    /**
+     * Get the channel object from this ChannelItem.
+     * @return a ReadableByteChannel
+     */
+    public Object getObject() {
+	return getChannel();
+    }
+}
@@ -121,6 +121,9 @@ public class IndexEventMulticaster implements IndexEventGenerator {
 
 		} else if (ipE.getEventSpecifier() == IndexPrimaryEvent.REMOVE_VIEW) {
 		    ipeL.viewRemoved(ipE);
+
+		} else if (ipE.getEventSpecifier() == IndexPrimaryEvent.RECOVERED) {
+		    ipeL.recovered(ipE);
 		} else {
 		    throw new Error("IndexEventMulticaster: cant fire event when IndexPrimaryEvent specifier == " + ipE.getEventSpecifier());
 		}
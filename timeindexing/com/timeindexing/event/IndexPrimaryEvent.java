@@ -25,7 +25,8 @@ import com.timeindexing.basic.ID;
 /**
  * An Index Primary Event, which is generated 
  * at primary moments.
- * These include: open , close, committed, create, add a view, remove a view.
+ * These include: open , close, committed, create, add a view, remove a view,
+ * and recovery on open.
  */
 public class IndexPrimaryEvent extends IndexEvent {
     /**
@@ -58,6 +59,12 @@ public class IndexPrimaryEvent extends IndexEvent {
      */
     public static final int REMOVE_VIEW = 6;
 
+    /**
+     * Used when an Index is opened, and the header did not
+     * agree with the index file, so the index was recovered.
+     */
+    public static final int RECOVERED = 7;
+
 
     /*
      * The specifier for this event
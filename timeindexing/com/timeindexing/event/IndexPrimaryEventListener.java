@@ -57,4 +57,9 @@ public interface IndexPrimaryEventListener extends EventListener {
      * A notification that a view has been removed to an Index.
      */
     public void viewRemoved(IndexPrimaryEvent ipe);
+
+    /**
+     * A notification that an Index has been recovered when it was opened.
+     */
+    public void recovered(IndexPrimaryEvent ipe);
 } 
@@ -22,6 +22,7 @@ package com.timeindexing.index;
 
 import com.timeindexing.time.Timestamp;
 import com.timeindexing.time.AbsoluteTimestamp;
+import com.timeindexing.time.RelativeTimestamp;
 import com.timeindexing.time.Clock;
 import com.timeindexing.time.TimestampMapping;
 import com.timeindexing.time.Lifetime;
@@ -46,8 +47,8 @@ import com.timeindexing.event.*;
 
 import java.util.Properties;
 import java.util.Iterator;
-import java.util.TreeMap;
-import java.util.Comparator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 import java.net.URI;
 
 /**
@@ -87,19 +88,28 @@ public abstract class AbstractIndex implements ExtendedIndex, ExtendedIndexHeade
     // Should the data for an IndexItem be loaded with the Item itself
     boolean loadDataAutomatically = true;
 
-    // The last time that an index item was accessed from the index.
-    Timestamp lastAccessTime = null;
+    // The last time that an index item was accessed from the index,
+    // as nanoseconds.
+    long lastAccessTime = 0;
 
     // an event multicaster
     IndexEventMulticaster eventMulticaster = new IndexEventMulticaster();
 
+    // How locate() searches the index
+    SearchStrategy searchStrategy = SearchStrategy.BINARY;
+
+    // The running totals of the data sizes of the items.
+    // They are kept as items are added and read.
+    DataVolumes volumes = new DataVolumes();
+
+    // The metrics for the searches
+    SearchMetrics searchMetrics = new SearchMetrics();
+
     // Local variables for temporary use
     // index type
     //int indexType = -1;
 
 
-    TreeMap searchTree = null;
-
 
     protected AbstractIndex() {
 	;
@@ -324,11 +334,12 @@ public abstract class AbstractIndex implements ExtendedIndex, ExtendedIndexHeade
 	//     throw new AddItemException("IndexItem not later than end item");
 	// }
 
-	if (TimeCalculator.lessThan(itemDataTime, dataLast)) {
+	// the times are compared as nanoseconds
+	if (timeOf(item, IndexTimestampSelector.DATA) < TimeCalculator.asNanos(dataLast)) {
 	    throw new AddItemException("IndexItem data time not later than last data time.");
 	}
 
-	if (TimeCalculator.lessThan(itemIndexTime, indexLast)) {
+	if (timeOf(item, IndexTimestampSelector.INDEX) < TimeCalculator.asNanos(indexLast)) {
 	    throw new AddItemException("IndexItem index time not later than last index time.");
 	}
 
@@ -346,6 +357,9 @@ public abstract class AbstractIndex implements ExtendedIndex, ExtendedIndexHeade
 	// the new size of the cache is returned
 	long cacheSize = indexCache.addItem(item, itemPosition);
 
+	// keep the running total of the data sizes
+	noteDataSize(indexSize, item);
+
 	long newSize = indexSize+1;
 
 	// tell the header how big the index is now
@@ -397,6 +411,31 @@ public abstract class AbstractIndex implements ExtendedIndex, ExtendedIndexHeade
      */
     public abstract IndexItem getItem(long n) throws GetItemException, IndexClosedException;
 
+    /**
+     * Get the position of the first item in the index.
+     * Items are only removed from the front of a SegmentedIndex,
+     * so this is 0.
+     */
+    public long getFirstPosition() {
+	return 0;
+    }
+
+    /**
+     * Remove the items whose data is all before a cutoff time.
+     * Only a SegmentedIndex removes items, so this
+     * does nothing and returns the first position.
+     */
+    public long removeBefore(Timestamp cutoff) throws IndexActivationException, IndexCommitException {
+	return getFirstPosition();
+    }
+
+    /**
+     * Remove the items whose data is all older than a retention period.
+     */
+    public long removeOlderThan(RelativeTimestamp retention) throws IndexActivationException, IndexCommitException {
+	return removeBefore(TimeCalculator.subtractTimestamp(Clock.time.time(), retention));
+    }
+
     /**
      * Get an Index Item from the Index.
      */
@@ -435,12 +474,49 @@ public abstract class AbstractIndex implements ExtendedIndex, ExtendedIndexHeade
 	return getItem(tsm.position());
     }
 
+    /**
+     * Get an Index Item from the Index, without waiting for it.
+     * The item is read by a ReadExecutor thread.
+     * @return a Future for the IndexItem
+     */
+    public Future getItemAsync(final long n) {
+	return ReadExecutor.submit(new Callable() {
+		public Object call() throws Exception {
+		    return getItem(n);
+		}
+	    });
+    }
+
+    /**
+     * Get count Index Items from the Index, starting at position start,
+     * without waiting for them.
+     * The items are read in order by a ReadExecutor thread.
+     * @return a Future for an array of IndexItems
+     */
+    public Future getItemsAsync(final long start, final int count) {
+	return ReadExecutor.submit(new Callable() {
+		public Object call() throws Exception {
+		    IndexItem[] items = new IndexItem[count];
+
+		    for (int i=0; i<count; i++) {
+			items[i] = getItem(start + i);
+		    }
+
+		    return items;
+		}
+	    });
+    }
+
     
     /**
      * Get the  last time an IndexItem was accessed from the index.
      */
     public Timestamp getLastAccessTime() {
-	return lastAccessTime;
+	if (lastAccessTime == 0) {
+	    return null;
+	} else {
+	    return TimeCalculator.fromNanos(lastAccessTime);
+	}
     }
 
 
@@ -448,7 +524,7 @@ public abstract class AbstractIndex implements ExtendedIndex, ExtendedIndexHeade
      * Set the  last time an IndexItem was accessed from the index.
      */
     protected Index setLastAccessTime() {
-	lastAccessTime = Clock.time.time();
+	lastAccessTime = Clock.time.timeAsNanos();
 	return this;
     }
 
@@ -601,15 +677,20 @@ public abstract class AbstractIndex implements ExtendedIndex, ExtendedIndexHeade
 	    }
 
 	} else {
-	    // ensure the searchTree i set up
-	    if (searchTree == null) {
-		searchTree = new TreeMap(itemComparator);
-
-	    }
 	    // now search for the timestamp
-	    // and build up a tree cache for later reuse.
 	    try {
-		TimestampMapping mapping = binarySearch(t, 0, getLength()-1, selector, lifetime, 0);
+		long[] bounds = searchBounds(t, selector);
+		TimestampMapping mapping = null;
+
+		if (searchStrategy == SearchStrategy.INTERPOLATION) {
+		    mapping = interpolationSearch(t, bounds[0], bounds[1], selector, lifetime);
+		} else {
+		    // the no of items probed
+		    long[] probes = new long[1];
+		    mapping = binarySearch(t, bounds[0], bounds[1], selector, lifetime, 0, probes);
+		    searchMetrics.record(probes[0], false);
+		}
+
 		//System.err.println("Index " + getName() + ": location of " + t +  " => " + mapping);
 		return mapping;
 	    } catch (GetItemException gie) {
@@ -622,6 +703,81 @@ public abstract class AbstractIndex implements ExtendedIndex, ExtendedIndexHeade
 	}	
     }
 
+    /**
+     * Try and determine the positions associated
+     * with many Timestamps, which must be in time order.
+     * The index is walked once, from one Timestamp to the next.
+     * The search for each Timestamp gallops up from the position
+     * found for the one before, probing 1, 2, 4, 8 ... items on,
+     * and then does a binary search of the last step.
+     * So Timestamps that are close together only touch a few items,
+     * and most of those are in the cache already.
+     * @return a TimestampMapping for each Timestamp, the same as locate()
+     */
+    public TimestampMapping[] locateAll(Timestamp[] sorted, IndexTimestampSelector selector, Lifetime lifetime) {
+	TimestampMapping[] mappings = new TimestampMapping[sorted.length];
+
+	// a position whose time is at or before the next Timestamp
+	long low = -1;
+
+	for (int i=0; i<sorted.length; i++) {
+	    Timestamp t = sorted[i];
+	    long end = getLength() - 1;
+
+	    if (end < 1 || ! contains(t, selector)) {
+		// there is nothing to search
+		mappings[i] = locate(t, selector, lifetime);
+		continue;
+	    }
+
+	    try {
+		// the no of items probed
+		long[] probes = new long[1];
+		long time = TimeCalculator.asNanos(t);
+
+		if (low < 0) {
+		    // start where a locate() would
+		    low = searchBounds(t, selector)[0];
+		} else if (low >= end) {
+		    low = end - 1;
+		}
+
+		// gallop up until an item is at or after the Timestamp
+		long step = 1;
+		long high = low + 1;
+
+		while (high < end && probe(high, selector, probes) < time) {
+		    low = high;
+		    step *= 2;
+		    high = Math.min(low + step, end);
+		}
+
+		TimestampMapping mapping = binarySearch(time, low, high, selector, lifetime, 0, probes);
+		searchMetrics.record(probes[0], false);
+
+		mappings[i] = mapping;
+
+		// the next search starts from here
+		long position = mapping.position().value();
+
+		if (TimeCalculator.asNanos(mapping.timestamp()) <= time) {
+		    low = Math.max(low, position);
+		} else {
+		    low = Math.max(low, position - 1);
+		}
+
+	    } catch (GetItemException gie) {
+		System.err.println("Index " + getName() + ": location of " + t +  " threw " + gie.getMessage());
+		mappings[i] = null;
+	    } catch (IndexClosedException ice) {
+		System.err.println("Index " + getName() + ": location of " + t +  " threw " + ice.getMessage());
+		mappings[i] = null;
+	    }
+	}
+
+	return mappings;
+    }
+
     /**
      * Try and determine the Timestamp associated with the speicifed Position.
      * Uses IndexTimestampSelector.DATA and Lifetime.CONTINUOUS as defaults.
@@ -646,7 +802,12 @@ public abstract class AbstractIndex implements ExtendedIndex, ExtendedIndexHeade
 
 	// Get the index item at position p
 	try {
-	    item = getItem(pos);
+	    if (pos.value() >= 0 && pos.value() < getFirstPosition()) {
+		// the item has been removed, so use the first item
+		item = getItem(getFirstPosition());
+	    } else {
+		item = getItem(pos);
+	    }
 	} catch (GetItemException gie) {
 	    // there was no item at Position p
 	    return null;
@@ -665,31 +826,295 @@ public abstract class AbstractIndex implements ExtendedIndex, ExtendedIndexHeade
     }
 
 
+    /**
+     * Get the size of the data of the items from start to end.
+     * The sizes are kept as running totals, so once the items
+     * have been seen, this is just the difference of two totals.
+     */
+    public long getDataVolume(long start, long end) throws GetItemException, IndexClosedException {
+	if (start < 0 || end >= getLength()) {
+	    throw new PositionOutOfBoundsException("Data volume of " + start + " - " + end + " is outside index " + getName());
+	}
+
+	if (end < start) {
+	    return 0;
+	}
+
+	return fillDataVolumes(end, Long.MAX_VALUE).getVolume(start, end);
+    }
+
+    /**
+     * Find the last item from start onwards, where the data of
+     * the items from start up to it is no more than a volume.
+     * The totals are searched with a binary search.
+     * Returns start - 1 if the item at start is bigger than the volume.
+     */
+    public long locateDataVolume(long start, long volume) throws GetItemException, IndexClosedException {
+	if (start < 0 || start > getLength()) {
+	    throw new PositionOutOfBoundsException("Data volume from " + start + " is outside index " + getName());
+	}
+
+	if (start == getLength()) {
+	    return start - 1;
+	}
+
+	// the total of the items before start
+	long before = 0;
+
+	if (start > 0) {
+	    before = fillDataVolumes(start - 1, Long.MAX_VALUE).getVolume(0, start - 1);
+	}
+
+	// the totals only need to go just past the volume
+	long limit = (volume > Long.MAX_VALUE - before ? Long.MAX_VALUE : before + volume);
+
+	return fillDataVolumes(getLength() - 1, limit).locate(start, volume);
+    }
+
+    /**
+     * Are the data sizes of the items up to end known,
+     * so getDataVolume() can answer without reading the index.
+     */
+    public boolean hasDataVolume(long end) {
+	DataVolumes totals = getDataVolumes();
+
+	totals.skip(Math.min(getFirstPosition(), end + 1));
+
+	return totals.size() > end;
+    }
+
+    /**
+     * Get the running totals of the data sizes.
+     */
+    protected DataVolumes getDataVolumes() {
+	return volumes;
+    }
+
+    /**
+     * Make sure the running totals are known up to an item.
+     * The items not seen yet are got from the index,
+     * and the filling stops once the total is past a limit.
+     * The items before the first position have been removed,
+     * so they are not got, and count as having no data.
+     */
+    protected DataVolumes fillDataVolumes(long end, long limit) throws GetItemException, IndexClosedException {
+	DataVolumes totals = getDataVolumes();
+
+	totals.skip(Math.min(getFirstPosition(), end + 1));
+
+	for (long p=totals.size(); p<=end; p=totals.size()) {
+	    if (p > 0 && totals.getVolume(0, p-1) > limit) {
+		break;
+	    }
+
+	    addDataSizes(totals, p, end);
+	}
+
+	return totals;
+    }
+
+    /**
+     * Add the data sizes of the items from position p
+     * to the running totals.
+     * At least the item at p is added, and no more than up to end.
+     */
+    protected void addDataSizes(DataVolumes totals, long p, long end) throws GetItemException, IndexClosedException {
+	IndexItem item = getItem(p);
+
+	// follow all references until we find the real data
+	while (item.isReference()) {
+	    item = item.follow();
+	}
+
+	totals.add(p, item.getDataSize().value());
+    }
+
+    /**
+     * Note the data size of an item at a position.
+     * The size comes from the index record, so the data
+     * does not have to be read.
+     * The size of a reference is not known until it is followed,
+     * so that is left until the totals are asked for.
+     */
+    protected void noteDataSize(long position, IndexItem item) {
+	if (! item.isReference()) {
+	    volumes.skip(Math.min(getFirstPosition(), position));
+	    volumes.add(position, item.getDataSize().value());
+	}
+    }
+
+    /**
+     * Get the first and last positions to search for a Timestamp.
+     * The Timestamp has to be between the times of the items
+     * at these positions.  This is the whole index.
+     */
+    protected long[] searchBounds(Timestamp t, IndexTimestampSelector selector) {
+	return new long[] { getFirstPosition(), getLength()-1 };
+    }
+
+    /**
+     * Do an interpolation search of the list.
+     * The position of the Timestamp is guessed from the times
+     * at the ends of the range, assuming the items are evenly spaced
+     * in time, and the range is cut down to one side of the guess.
+     * If a guess does not at least halve the range twice,
+     * the rest of the range is searched with a binary search.
+     * For the whole index the times at the ends come from the header,
+     * so a regularly sampled index is often found in one probe.
+     */
+    protected TimestampMapping interpolationSearch(Timestamp t, long start, long end, IndexTimestampSelector selector, Lifetime lifetime) throws GetItemException, IndexClosedException {
+	// the no of items probed
+	long[] probes = new long[1];
+	int misses = 0;
+
+	long time = TimeCalculator.asNanos(t);
+
+	// get the times at the ends of the range
+	long lowTime = 0;
+	long highTime = 0;
+
+	if (start == getFirstPosition() && end == getLength()-1) {
+	    if (selector == IndexTimestampSelector.DATA) {
+		lowTime = TimeCalculator.asNanos(getFirstDataTime());
+		highTime = TimeCalculator.asNanos(getLastDataTime());
+	    } else {
+		lowTime = TimeCalculator.asNanos(getFirstTime());
+		highTime = TimeCalculator.asNanos(getLastTime());
+	    }
+	} else {
+	    lowTime = probe(start, selector, probes);
+	    highTime = probe(end, selector, probes);
+	}
+
+	long low = start;
+	long high = end;
+
+	while (high - low > 1 && lowTime < time && time < highTime) {
+	    // guess where the time is
+	    double fraction = (double)(time - lowTime) / (double)(highTime - lowTime);
+	    long guess = low + (long)(fraction * (high - low));
+
+	    // keep the guess inside the range
+	    if (guess <= low) {
+		guess = low + 1;
+	    } else if (guess >= high) {
+		guess = high - 1;
+	    }
+
+	    long guessTime = probe(guess, selector, probes);
+
+	    long oldRange = high - low;
+
+	    if (guessTime == time) {
+		searchMetrics.record(probes[0], false);
+		return mappingOf(getItem(guess), selector);
+	    } else if (guessTime < time) {
+		low = guess;
+		lowTime = guessTime;
+	    } else {
+		high = guess;
+		highTime = guessTime;
+	    }
+
+	    // did the guess miss by too much
+	    if ((high - low) * 2 > oldRange) {
+		misses++;
+
+		if (misses == 2 && high - low > 1) {
+		    //System.err.println("Index " + getName() + ": interpolation of " + t +  " fell back after " + probes[0] + " probes in " + low + " - " + high);
+		    TimestampMapping mapping = binarySearch(t, low, high, selector, lifetime, 0, probes);
+		    searchMetrics.record(probes[0], true);
+		    return mapping;
+		}
+	    }
+	}
+
+	searchMetrics.record(probes[0], false);
+
+	// the time is now at or between low and high
+	if (time == lowTime) {
+	    return mappingOf(getItem(low), selector);
+	} else if (time == highTime) {
+	    return mappingOf(getItem(high), selector);
+	} else if (lifetime == Lifetime.CONTINUOUS) {
+	    // low has a lifetime up to high's timestamp
+	    return mappingOf(getItem(low), selector);
+	} else {
+	    // low's lifetime is a point in time, so high is the one
+	    return mappingOf(getItem(high), selector);
+	}
+    }
+
+    /**
+     * Get the relevant time of the item at a position,
+     * as nanoseconds, and count the probe.
+     */
+    private long probe(long position, IndexTimestampSelector selector, long[] probes) throws GetItemException, IndexClosedException {
+	IndexItem item = getItem(position);
+
+	probes[0]++;
+
+	return timeOf(item, selector);
+    }
+
+    /**
+     * Get the relevant time of an IndexItem as nanoseconds.
+     * The items of an index hold their times as nanoseconds,
+     * so no Timestamp is decoded to compare them.
+     */
+    static long timeOf(IndexItem item, IndexTimestampSelector selector) {
+	if (item instanceof ManagedIndexItem) {
+	    if (selector == IndexTimestampSelector.DATA) {
+		return ((ManagedIndexItem)item).getDataTime();
+	    } else {
+		return ((ManagedIndexItem)item).getIndexTime();
+	    }
+	} else {
+	    if (selector == IndexTimestampSelector.DATA) {
+		return TimeCalculator.asNanos(item.getDataTimestamp());
+	    } else {
+		return TimeCalculator.asNanos(item.getIndexTimestamp());
+	    }
+	}
+    }
+
+    /**
+     * Get a TimestampMapping for an IndexItem found by a search.
+     * This is the only place a search builds a Timestamp.
+     */
+    private static TimestampMapping mappingOf(IndexItem item, IndexTimestampSelector selector) {
+	if (selector == IndexTimestampSelector.DATA) {
+	    return new TimestampMapping(item.getDataTimestamp(), item.getPosition());
+	} else {
+	    return new TimestampMapping(item.getIndexTimestamp(), item.getPosition());
+	}
+    }
+
     /**
      * Do a binary search of the list.
+     * The times are compared as nanoseconds.
+     * @param probes the no of items probed is added to probes[0]
      */
-    protected TimestampMapping binarySearch(Timestamp t, long start, long end, IndexTimestampSelector selector, Lifetime lifetime, int depth) throws GetItemException, IndexClosedException {
+    protected TimestampMapping binarySearch(Timestamp t, long start, long end, IndexTimestampSelector selector, Lifetime lifetime, int depth, long[] probes) throws GetItemException, IndexClosedException {
+	return binarySearch(TimeCalculator.asNanos(t), start, end, selector, lifetime, depth, probes);
+    }
+
+    /**
+     * Do a binary search of the list for a time in nanoseconds.
+     */
+    private TimestampMapping binarySearch(long time, long start, long end, IndexTimestampSelector selector, Lifetime lifetime, int depth, long[] probes) throws GetItemException, IndexClosedException {
 	IndexItem item = null;
 	IndexItem itemN = null;
 
-	Timestamp itemTS = null;
-	Timestamp itemTSN = null;
-	
-
-	//System.err.print("binarySearch " + depth + ": " + t + "\t" + start + "\t" + end + "\t");
+	//System.err.print("binarySearch " + depth + ": " + time + "\t" + start + "\t" + end + "\t");
 
 	// if there is only 1 item in the index
 	// there is nothing to search for
 	if (getLength() == 1) {
 	    item = getItem(0);
-	    // get the relevant timestamps out of the IndexItem
-	    if (selector == IndexTimestampSelector.DATA) {
-		itemTS = item.getDataTimestamp();
-	    } else {
-		itemTS = item.getIndexTimestamp();
-	    }
+	    probes[0]++;
 
-	    return new TimestampMapping(itemTS,  item.getPosition());
+	    return mappingOf(item, selector);
 	} else {
 
 	/*
@@ -697,57 +1122,27 @@ public abstract class AbstractIndex implements ExtendedIndex, ExtendedIndexHeade
 	 */
 	    long halfway = (start + end) / 2;
 	    long halfwayN = halfway+1;
-	    AbsolutePosition halfwayPos = new AbsolutePosition(halfway);
-	    AbsolutePosition halfwayPosNext = new AbsolutePosition(halfway+1);
-	
-	    // try and find index item in search tree, if not found
-	    // go and get it from list
-	    if (searchTree.get(halfwayPos) == null) {
-		// position not in the tree
-		// so get it from the index and put it in the tree
-		item = getItem(halfway);
-		searchTree.put(halfwayPos, halfwayPos);
-		//System.err.print("GET " + halfway + "\t");
-	    } else {
-		item = getItem(halfway);
-		//System.err.print("TREE " + halfway + "\t");
-	    }
 
-	    // try and find index item in search tree, if not found
-	    // go and get it from list
-	    if (searchTree.get(halfwayPosNext) == null) {
-		// position not in the tree
-		// so get it from the index and put it in the tree
-		itemN = getItem(halfwayN);
-		searchTree.put(halfwayPosNext, halfwayPosNext);
-		//System.err.print("GET " + halfwayN + "\t");
-	    } else {
-		itemN = getItem(halfwayN);
-		//System.err.print("TREE " + halfwayN + "\t");
-	    }
-
-	    // get the relevant timestamps out of rge Index Items
-	    if (selector == IndexTimestampSelector.DATA) {
-		itemTS = item.getDataTimestamp();
-		itemTSN =itemN.getDataTimestamp();
-	    } else {
-		itemTS = item.getIndexTimestamp();
-		itemTSN = itemN.getIndexTimestamp();
-	    }
+	    // the items come from the cache if they have been got before
+	    item = getItem(halfway);
+	    itemN = getItem(halfwayN);
+	    probes[0] += 2;
 
+	    // get the relevant times out of the Index Items
+	    long itemTime = timeOf(item, selector);
+	    long itemTimeN = timeOf(itemN, selector);
 
-	    //System.err.print(itemTS + "\t" + itemTSN);
+	    //System.err.print(itemTime + "\t" + itemTimeN);
 	    //System.err.println();
 	    
 
-	    if (TimeCalculator.equals(t, itemTS)) {
-		// if the timestamp equals  itemTS
+	    if (time == itemTime) {
+		// if the time equals  itemTime
 		// we are there
-		return new TimestampMapping(itemTS,  item.getPosition());
-	    } else if (TimeCalculator.greaterThan(t, itemTS) &&
-		       TimeCalculator.lessThan(t, itemTSN)) {
+		return mappingOf(item, selector);
+	    } else if (time > itemTime && time < itemTimeN) {
 
-		// if the timestamp is between itemTS and itemTSN
+		// if the time is between itemTime and itemTimeN
 		// then we are close
 
 		// the time is between two timestamps
@@ -755,23 +1150,23 @@ public abstract class AbstractIndex implements ExtendedIndex, ExtendedIndexHeade
 		    // if lifetimes are continuous then item has a lifetime
 		    // from its own timestamp upto itemN's timestamp
 		    // which means that item is the IndexItem to return
-		    return new TimestampMapping(itemTS, item.getPosition());
+		    return mappingOf(item, selector);
 		} else {
 		    // if lifetimes are discrete then item's lifetime
-		    // is a point in time and Timestamp t is after item,
+		    // is a point in time and the time is after item,
 		    // which means that itemN is the IndexItem to return
-		    return new TimestampMapping(itemTSN,  itemN.getPosition());
+		    return mappingOf(itemN, selector);
 		}
-	    } else if (TimeCalculator.equals(t, itemTSN)) {
-		// if the timestamp equals  itemTSN
+	    } else if (time == itemTimeN) {
+		// if the time equals  itemTimeN
 		// we are there
-		return new TimestampMapping(itemTSN,  itemN.getPosition());
-	    } else if (TimeCalculator.lessThan(t, itemTS)) {
-		// the timestamp is in first half, so search that half
-		return binarySearch(t, start, halfway, selector, lifetime, depth+1);
+		return mappingOf(itemN, selector);
+	    } else if (time < itemTime) {
+		// the time is in first half, so search that half
+		return binarySearch(time, start, halfway, selector, lifetime, depth+1, probes);
 	    } else {
-		// the timestamp is in second half, so search that half
-		return binarySearch(t, halfway, end, selector, lifetime, depth+1);
+		// the time is in second half, so search that half
+		return binarySearch(time, halfway, end, selector, lifetime, depth+1, probes);
 	    }
 	}
     }
@@ -859,12 +1254,12 @@ public abstract class AbstractIndex implements ExtendedIndex, ExtendedIndexHeade
 
 		    } else if (intervalStart == Position.TOO_LOW && intervalEnd == Position.TOO_HIGH) { // start too low, end too high
 		 	//System.err.println("intervalStart == Position.TOO_LOW && intervalEnd == Position.TOO_HIGH");
-			intervalStart =  new AbsolutePosition(0); //getStartPosition(); // new AbsolutePosition(0);
+			intervalStart =  new AbsolutePosition(getFirstPosition()); //getStartPosition(); // new AbsolutePosition(0);
 			intervalEnd = new AbsolutePosition(getLength()-1); //getEndPosition();     // new AbsolutePosition(getLength()-1);
 			selectionLength = intervalEnd.value() - intervalStart.value() + 1;
 
 		    } else if (intervalStart == Position.TOO_LOW) { // intervalStart TOO_LOW
-			intervalStart =  new AbsolutePosition(0);  //getStartPosition();  // new AbsolutePosition(0);
+			intervalStart =  new AbsolutePosition(getFirstPosition());  //getStartPosition();  // new AbsolutePosition(0);
 
 			// check the end position also
 			if (intervalEnd.value() >= getLength()) {
@@ -911,6 +1306,18 @@ public abstract class AbstractIndex implements ExtendedIndex, ExtendedIndexHeade
 
 		}
 
+		// the items before the first position have been removed
+		if (selectionLength > 0 && intervalStart.value() < getFirstPosition()) {
+		    if (overlap == Overlap.STRICT) {
+			throw new PositionOutOfBoundsException("Can't select before the start of an Index");
+		    } else if (intervalEnd.value() < getFirstPosition()) {
+			selectionLength = 0;
+		    } else {
+			intervalStart = new AbsolutePosition(getFirstPosition());
+			selectionLength = intervalEnd.value() - intervalStart.value() + 1;
+		    }
+		}
+
 		//System.err.println("Index " + getName() + ": resolved intervalStart = " + intervalStart + " intervalEnd = " + intervalEnd + " selectionLength = " + selectionLength);
 
 		// The interval has been determined
@@ -1043,28 +1450,6 @@ public abstract class AbstractIndex implements ExtendedIndex, ExtendedIndexHeade
     }
 
 
-    /**
-     * Determine if one Position is lessthan another Position.
-     */
-    private Comparator itemComparator = new Comparator() {
-	    public int compare(Object o1, Object o2) {
-		Position p1 = (Position)o1;
-		Position p2 = (Position)o2;
-		
-		long vp1 = p1.value();
-		long vp2 = p2.value();
-
-		if (vp1 < vp2) {
-		    return -1;
-		} else if (vp1 > vp2) {
-		    return 1;
-		} else { // vp1 == vp2
-		    return 0;
-		}
-	    }
-
-	};
-		
     /**
      * Is the Index activated.
      */
@@ -1190,6 +1575,48 @@ public abstract class AbstractIndex implements ExtendedIndex, ExtendedIndexHeade
 	return oldLoadValue;
     }
 
+    /**
+     * Get how locate() searches the index.
+     */
+    public SearchStrategy getSearchStrategy() {
+	return searchStrategy;
+    }
+
+    /**
+     * Set how locate() searches the index.
+     * @return the previous strategy
+     */
+    public SearchStrategy setSearchStrategy(SearchStrategy strategy) {
+	SearchStrategy oldStrategy = searchStrategy;
+
+	searchStrategy = strategy;
+
+	return oldStrategy;
+    }
+
+    /**
+     * Get the metrics for the searches done by locate().
+     */
+    public SearchMetrics getSearchMetrics() {
+	return searchMetrics;
+    }
+
+    /**
+     * Set up the search strategy from the 'searchstrategy' property,
+     * which is binary or interpolation.
+     */
+    protected void processSearchOptions(Properties properties) throws IndexSpecificationException {
+	String strategy = properties.getProperty("searchstrategy");
+
+	if (strategy == null || strategy.equalsIgnoreCase("binary")) {
+	    searchStrategy = SearchStrategy.BINARY;
+	} else if (strategy.equalsIgnoreCase("interpolation")) {
+	    searchStrategy = SearchStrategy.INTERPOLATION;
+	} else {
+	    throw new IndexSpecificationException("Bad 'searchstrategy' for index: " + strategy);
+	}
+    }
+
     /**
      * Get the event listener.
      */
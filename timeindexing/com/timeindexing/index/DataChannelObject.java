@@ -0,0 +1,70 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+// DataChannelObject.java
+
+package com.timeindexing.index;
+
+import com.timeindexing.basic.Size;
+
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * An implementation for objects that hold a channel
+ * that the data of an index item is read from.
+ * These are used for data that is streamed into an index,
+ * until the data has been written.
+ */
+public class DataChannelObject implements DataAbstraction {
+    /*
+     * The channel
+     */
+    ReadableByteChannel channel = null;
+
+    /*
+     * The size of the data
+     */
+    Size size = null;
+
+    /**
+     * Construct a DataChannelObject
+     */
+    public DataChannelObject(ReadableByteChannel channelC, Size sizeC) {
+	channel = channelC;
+	size = sizeC;
+    }
+
+    /**
+     * Get the channel the data is read from.
+     */
+    public ReadableByteChannel getChannel() {
+	return channel;
+    }
+
+    /**
+     * Get the size of the data.
+     */
+    public Size getSize() {
+	return size;
+    }
+
+    /**
+     * String version.
+     */
+    public String toString() {
+	return "DataChannelObject: size = " + size;
+    }
+}
@@ -40,6 +40,11 @@ public class DataReferenceObject implements DataReference  {
      */
     Size size = null;
 
+    /*
+     * The checksum of the data, or -1 if there isn't one
+     */
+    long checksum = -1;
+
     /**
      * Construct a DataReference
      */
@@ -48,6 +53,15 @@ public class DataReferenceObject implements DataReference  {
 	size = sizeR;
     }
 
+    /**
+     * Construct a DataReference for data with a checksum
+     */
+    public DataReferenceObject(Offset offsetR, Size sizeR, long checksumR) {
+	offset = offsetR;
+	size = sizeR;
+	checksum = checksumR;
+    }
+
     /**
      * Get the offset in the underlying storage.
      */
@@ -62,6 +76,13 @@ public class DataReferenceObject implements DataReference  {
 	return size;
     }
 
+    /**
+     * Get the checksum of the data, or -1 if there isn't one.
+     */
+    public long getChecksum() {
+	return checksum;
+    }
+
     /**
      * String version.
      */
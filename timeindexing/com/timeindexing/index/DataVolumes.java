@@ -0,0 +1,173 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+// DataVolumes.java
+
+package com.timeindexing.index;
+
+import java.util.Arrays;
+
+/**
+ * The running total of the data sizes of the items of an index,
+ * held in memory as a long per item.
+ * <p>
+ * Total p is the size of the data of the items from 0 to p.
+ * So the volume of any run of items is the difference of two totals,
+ * and the last item before a volume is found with a binary search.
+ * The totals are only known for the items from 0 up to size() - 1,
+ * and they are added to as the sizes of the following items are seen.
+ * Items removed from the front of an index count as having no data.
+ */
+public class DataVolumes {
+    // The running totals
+    long[] totals = null;
+
+    // The no of items whose total is known
+    int count = 0;
+
+    /**
+     * Construct an empty DataVolumes.
+     */
+    public DataVolumes() {
+	totals = new long[1024];
+    }
+
+    /**
+     * Get the no of items whose total is known.
+     */
+    public synchronized long size() {
+	return count;
+    }
+
+    /**
+     * Note the data size of the item at a position.
+     * Only the item just after the known ones is added,
+     * so the totals have no gaps.
+     */
+    public synchronized void add(long position, long size) {
+	if (position != count) {
+	    return;
+	}
+
+	if (count == totals.length) {
+	    long[] newTotals = new long[totals.length * 2];
+	    System.arraycopy(totals, 0, newTotals, 0, count);
+	    totals = newTotals;
+	}
+
+	totals[count] = (count == 0 ? 0 : totals[count-1]) + size;
+	count++;
+    }
+
+    /**
+     * Note that the items from the known ones up to a position
+     * have no data, as they have been removed from the index.
+     */
+    public synchronized void skip(long position) {
+	if (position <= count) {
+	    return;
+	}
+
+	if (position > totals.length) {
+	    long[] newTotals = new long[(int)Math.max(position, totals.length * 2L)];
+	    System.arraycopy(totals, 0, newTotals, 0, count);
+	    totals = newTotals;
+	}
+
+	Arrays.fill(totals, count, (int)position, before(count));
+	count = (int)position;
+    }
+
+    /**
+     * Get the size of the data of the items from start to end.
+     * Both of the items must be known.
+     */
+    public synchronized long getVolume(long start, long end) {
+	if (end < start) {
+	    return 0;
+	} else {
+	    return totals[(int)end] - before(start);
+	}
+    }
+
+    /**
+     * Find the last item from start onwards
+     * whose data, with the data of the items from start,
+     * is no more than a volume.
+     * Only the known items are searched.
+     * @return the position, or start - 1 if the item at start
+     * is bigger than the volume
+     */
+    public synchronized long locate(long start, long volume) {
+	long before = before(start);
+	long limit = (volume > Long.MAX_VALUE - before ? Long.MAX_VALUE : before + volume);
+
+	// find the last total at or below the limit
+	int low = (int)start - 1;
+	int high = count;
+
+	while (high - low > 1) {
+	    int mid = (low + high) >>> 1;
+
+	    if (totals[mid] <= limit) {
+		low = mid;
+	    } else {
+		high = mid;
+	    }
+	}
+
+	return low;
+    }
+
+    /**
+     * Get the totals of the known items.
+     */
+    public synchronized long[] toArray() {
+	long[] values = new long[count];
+
+	System.arraycopy(totals, 0, values, 0, count);
+
+	return values;
+    }
+
+    /**
+     * Set the totals from the values made by toArray().
+     * Only the totals for the first length items are set.
+     */
+    public synchronized void fromArray(long[] values, long length) {
+	int known = (int)Math.min((long)values.length, length);
+
+	if (known > count) {
+	    if (known > totals.length) {
+		long[] newTotals = new long[known];
+		System.arraycopy(totals, 0, newTotals, 0, count);
+		totals = newTotals;
+	    }
+
+	    System.arraycopy(values, count, totals, count, known - count);
+	    count = known;
+	}
+    }
+
+    /**
+     * The total of the items before a position.
+     */
+    private long before(long position) {
+	return position == 0 ? 0 : totals[(int)position - 1];
+    }
+}
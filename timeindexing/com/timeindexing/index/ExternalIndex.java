@@ -105,15 +105,39 @@ public class ExternalIndex extends FileIndex implements ManagedIndex  {
 
 	    indexProperties.put("indexpath", indexPathName);
 	    indexProperties.put("readonly", readOnly);
+
+	    // process optional properties
+
+	    // read the index file through a memory map
+	    if (properties.containsKey("mappedindex")) {
+		indexProperties.put("mappedindex" , properties.getProperty("mappedindex"));
+	    }
+
+	    processDurabilityOptions(properties, indexProperties);
+	    processReadAheadOptions(properties);
+	    processFenceOptions(properties);
+	    processVolumeOptions(properties);
+	    processSearchOptions(properties);
 	    
 	    // open the index and the data
 	    indexInteractor.open(indexProperties);
 
+	    // get the fences from the fence file
+	    openFences();
+
+	    // get the data volumes from the volume file
+	    openVolumes();
+
 	    // load the index
 	    indexInteractor.loadIndex(loadStyle);
 
 	    eventMulticaster().firePrimaryEvent(new IndexPrimaryEvent(getURI().toString(), header.getID(), IndexPrimaryEvent.OPENED, this));
 
+	    // the header did not agree with the index file
+	    if (getRecoveredFrom() >= 0) {
+		eventMulticaster().firePrimaryEvent(new IndexPrimaryEvent(getURI().toString(), header.getID(), IndexPrimaryEvent.RECOVERED, this));
+	    }
+
 	    // now we're open
 	    closed = false;
 
@@ -175,11 +199,12 @@ public class ExternalIndex extends FileIndex implements ManagedIndex  {
 	    indexProperties.put("canonicalpath", headerPathName);
 
 	    // process optional properties
-
-	    // don;t put a timeindexing header  on the data file
-	    if (properties.containsKey("nodatafileheader")) {
-		indexProperties.put("nodatafileheader" , properties.getProperty("nodatafileheader"));
-	    }
+	    processCreateOptions(properties, indexProperties);
+	    processDurabilityOptions(properties, indexProperties);
+	    processReadAheadOptions(properties);
+	    processFenceOptions(properties);
+	    processVolumeOptions(properties);
+	    processSearchOptions(properties);
 		
 	    // create the relevant objects
 	    indexInteractor.create(indexProperties);	
@@ -212,6 +237,31 @@ public class ExternalIndex extends FileIndex implements ManagedIndex  {
 	}	    
     }
 
+    /**
+     * Pass the optional create properties on to the index interactor.
+     */
+    protected void processCreateOptions(Properties properties, IndexProperties indexProperties) {
+	// don;t put a timeindexing header  on the data file
+	if (properties.containsKey("nodatafileheader")) {
+	    indexProperties.put("nodatafileheader" , properties.getProperty("nodatafileheader"));
+	}
+
+	// use compact index records
+	if (properties.containsKey("compactindex")) {
+	    indexProperties.put("compactindex" , properties.getProperty("compactindex"));
+	}
+
+	// compress the data in blocks
+	if (properties.containsKey("compression")) {
+	    indexProperties.put("compression" , properties.getProperty("compression"));
+	}
+
+	// add checksums to the index records
+	if (properties.containsKey("checksums")) {
+	    indexProperties.put("checksums" , properties.getProperty("checksums"));
+	}
+    }
+
     /**
      * Check that all the properties needed to open are passed in.
      */
@@ -230,6 +280,8 @@ public class ExternalIndex extends FileIndex implements ManagedIndex  {
 		loadStyle = LoadStyle.ALL;
 	    } else if (loadstyle.equals("hollow")) {
 		loadStyle = LoadStyle.HOLLOW;
+	    } else if (loadstyle.equals("parallel")) {
+		loadStyle = LoadStyle.PARALLEL;
 	    } else if (loadstyle.equals("none")) {
 		loadStyle = LoadStyle.NONE;
 	    } else {
@@ -303,6 +355,8 @@ public class ExternalIndex extends FileIndex implements ManagedIndex  {
 		loadStyle = LoadStyle.ALL;
 	    } else if (loadstyle.equals("hollow")) {
 		loadStyle = LoadStyle.HOLLOW;
+	    } else if (loadstyle.equals("parallel")) {
+		loadStyle = LoadStyle.PARALLEL;
 	    } else if (loadstyle.equals("none")) {
 		loadStyle = LoadStyle.NONE;
 	    } else {
@@ -311,6 +365,13 @@ public class ExternalIndex extends FileIndex implements ManagedIndex  {
 	} else {
 	    loadStyle = LoadStyle.NONE;
 	}
+
+	// a compact index can't have checksums,
+	// so this is found out before any files are made
+	if (Boolean.valueOf(indexProperties.getProperty("checksums")).booleanValue() &&
+	    Boolean.valueOf(indexProperties.getProperty("compactindex")).booleanValue()) {
+	    throw new IndexSpecificationException("A compact index can't have checksums");
+	}
     }
 
 
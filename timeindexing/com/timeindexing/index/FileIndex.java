@@ -21,6 +21,7 @@
 package com.timeindexing.index;
 
 import com.timeindexing.time.Timestamp;
+import com.timeindexing.time.TimeCalculator;
 import com.timeindexing.time.Clock;
 import com.timeindexing.basic.ID;
 import com.timeindexing.basic.UID;
@@ -32,11 +33,16 @@ import com.timeindexing.data.DataItem;
 import com.timeindexing.io.LoadStyle;
 import com.timeindexing.io.IndexFileInteractor;
 import com.timeindexing.io.FileUtils;
+import com.timeindexing.io.SyncMetrics;
 import com.timeindexing.event.*;
 
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -56,38 +62,65 @@ public abstract class FileIndex extends AbstractManagedIndex implements StoredIn
     LoadStyle loadStyle = LoadStyle.NONE;
     // The path name of the header
     String headerPathName = null;
+    // The read ahead for sequential gets
+    ReadAhead readAhead = null;
+    // The timestamp fences for locates
+    TimestampFences fences = null;
+    // Are the fences kept in a fence file
+    boolean fenceFile = false;
+    // Are the running totals of the data sizes kept in a volume file
+    boolean volumeFile = false;
+
+    /*
+     * The no of index records read at a time for the data volumes
+     */
+    final static int VOLUME_BLOCK_ITEMS = 4096;
 
     /**
      * Commit this index.
+     * Once the changes are flushed, the commit waits for them
+     * to get to disk, as the 'durability' property says.
+     * The wait does not hold the index, so commits from
+     * other threads can share a group sync.
      * @return true if the index isActivated and isChanged, otherwise return false
      */
-    public synchronized boolean commit() throws IndexCommitException  {
-	// if the index is activated and has changed
-	// then flush out any changes
-	if (this.isActivated() && isChanged()) {
-	    lastFlushTime = Clock.time.time();
-	    //lastFlushPosition = indexCache.length();
+    public boolean commit() throws IndexCommitException  {
+	synchronized (this) {
+	    // if the index is activated and has changed
+	    // then flush out any changes
+	    if (this.isActivated() && isChanged()) {
+		lastFlushTime = Clock.time.time();
+		//lastFlushPosition = indexCache.length();
 
-	    try {
+		try {
 		
-		// get the index interactor to flush out the data
-		indexInteractor.flush();
+		    // get the index interactor to flush out the data
+		    indexInteractor.flush();
 
-		// mark as NOT being changed
-		changed = false;
+		    // mark as NOT being changed
+		    changed = false;
 
-		if (eventMulticaster.hasPrimaryEventListeners()) {
-		    eventMulticaster().firePrimaryEvent(new IndexPrimaryEvent(getURI().toString(), header.getID(), IndexPrimaryEvent.COMMITTED, this));
+		} catch (IOException ioe) {
+		    throw new IndexCommitException("Got IOException message '" + ioe.getMessage() + "' from index " + getURI().toString() + " when attemting to commit");
 		}
-
-		return true;
-	    } catch (IOException ioe) {
-		throw new IndexCommitException("Got IOException message '" + ioe.getMessage() + "' from index " + getURI().toString() + " when attemting to commit");
+	    } else {
+		// nothing to do, and notihg flushed
+		return false;
 	    }
-	} else {
-	    // nothing to do, and notihg flushed
-	    return false;
 	}
+
+	try {
+	    // wait for the data to get to disk
+	    indexInteractor.sync();
+	} catch (IOException ioe) {
+	    throw new IndexCommitException("Got IOException message '" + ioe.getMessage() + "' from index " + getURI().toString() + " when attemting to sync");
+	}
+
+	if (eventMulticaster.hasPrimaryEventListeners()) {
+	    eventMulticaster().firePrimaryEvent(new IndexPrimaryEvent(getURI().toString(), header.getID(), IndexPrimaryEvent.COMMITTED, this));
+	}
+
+	return true;
     }
 
    /**
@@ -103,7 +136,29 @@ public abstract class FileIndex extends AbstractManagedIndex implements StoredIn
 	    changed = true;
 	}
 
+	// stop any read ahead
+	if (readAhead != null) {
+	    readAhead.stop();
+	}
+
 	try {
+	    // get everything written so far to disk,
+	    // as the durability mode says
+	    if (this.isActivated()) {
+		indexInteractor.flush();
+		indexInteractor.sync();
+	    }
+
+	    // keep the fences for next time
+	    if (fenceFile && fences != null && ! isReadOnly()) {
+		indexInteractor.writeFences(fences.toArray());
+	    }
+
+	    // keep the data volumes for next time
+	    if (volumeFile && volumes != null && ! isReadOnly()) {
+		indexInteractor.writeVolumes(volumes.toArray());
+	    }
+
 	    // now tell the file interactor to close
 	    indexInteractor.close();
 	    
@@ -170,12 +225,28 @@ public abstract class FileIndex extends AbstractManagedIndex implements StoredIn
 	long id = getLength();
 	// the record Timestamp is now (as microseconds)
 	Timestamp recordTS = Clock.time.time();
+
+	return addItem(dataitem, dataTS, recordTS, new SID(id), annotation);
+    }
+
+    /**
+     * Add a Data Item to the Index, with the Timestamps, ID and
+     * annotation of an IndexItem from another Index.
+     * @param dataitem the IndexItem to add
+     * @param dataTS the Timestamp for the data, null implies that
+     * the data Timestamp is the same as the record Timestamp
+     * @param indexTS the record Timestamp
+     * @param id the ID of the item
+     * @param annotation the annotation meta data
+     * @return the no of items in the index.
+     */
+    public IndexItem addItem(DataItem dataitem, Timestamp dataTS, Timestamp indexTS, ID id, long annotation) throws IndexTerminatedException, IndexClosedException, IndexActivationException, AddItemException {
 	// the actual data Timestamp is the record Timestamp
 	// if the dataTS param is null, it is the speicifed value otherwise
-	Timestamp actualTS = (dataTS == null ? recordTS : dataTS);
+	Timestamp actualTS = (dataTS == null ? indexTS : dataTS);
 	
 	// create a FileIndexItem
-	FileIndexItem item = new FileIndexItem(actualTS, recordTS, dataitem, dataitem.getDataType(), new SID(id), annotation);
+	FileIndexItem item = new FileIndexItem(actualTS, indexTS, dataitem, dataitem.getDataType(), id, annotation);
 
 	synchronized (this) {
 
@@ -253,6 +324,20 @@ public abstract class FileIndex extends AbstractManagedIndex implements StoredIn
      * It is used internally when doing a TimeIndexFactory.save().
      */
     public synchronized IndexItem addReference(IndexReference reference, Timestamp dataTS, long annotation) throws IndexTerminatedException, IndexClosedException, IndexActivationException, AddItemException {
+	// set the ID to be the length
+	// as it's unique
+	long id = getLength();
+	// the record Timestamp is now (as microseconds)
+	Timestamp recordTS = Clock.time.time();
+
+	return addReference(reference, dataTS, recordTS, new SID(id), annotation);
+    }
+
+    /**
+     * Add a Referemnce to an IndexItem in a Index, with the Timestamps,
+     * ID and annotation of an IndexItem from another Index.
+     */
+    public synchronized IndexItem addReference(IndexReference reference, Timestamp dataTS, Timestamp indexTS, ID id, long annotation) throws IndexTerminatedException, IndexClosedException, IndexActivationException, AddItemException {
 
         IndexReferenceDataHolder dataHolder = null;
 
@@ -268,17 +353,12 @@ public abstract class FileIndex extends AbstractManagedIndex implements StoredIn
 	    dataHolder = new IndexReferenceDataHolder(indexID, itemPosition);
 	}
 
-	// set the ID to be the length
-	// as it's unique
-	long id = getLength();
-	// the record Timestamp is now (as microseconds)
-	Timestamp recordTS = Clock.time.time();
 	// the actual data Timestamp is the record Timestamp
 	// if the dataTS param is null, it is the speicifed value otherwise
-	Timestamp actualTS = (dataTS == null ? recordTS : dataTS);
+	Timestamp actualTS = (dataTS == null ? indexTS : dataTS);
 
 	// create a FileIndexItem
-	FileIndexItem item = new FileIndexItem(actualTS, recordTS, dataHolder, DataType.REFERENCE, new SID(id), annotation);
+	FileIndexItem item = new FileIndexItem(actualTS, indexTS, dataHolder, DataType.REFERENCE, id, annotation);
 
 	dataHolder.setIndexItem(item);
 
@@ -295,6 +375,121 @@ public abstract class FileIndex extends AbstractManagedIndex implements StoredIn
 	return item;
     }
 
+    /**
+     * Add an Index Item to the Index.
+     * The timestamps of the item are kept if it is at a fence.
+     */
+    protected synchronized IndexItem addItem(IndexItem item) throws IndexTerminatedException, IndexClosedException, IndexActivationException, AddItemException {
+	super.addItem(item);
+
+	if (fences != null) {
+	    fences.add(item.getPosition().value(), item);
+	}
+
+	return item;
+    }
+
+    /**
+     * Get the first and last positions to search for a Timestamp.
+     * The bounds are narrowed down by the fences.
+     */
+    protected long[] searchBounds(Timestamp t, IndexTimestampSelector selector) {
+	return fenceBounds(t, selector, super.searchBounds(t, selector));
+    }
+
+    /**
+     * Narrow down the first and last positions to search for a Timestamp.
+     * The fences are searched in memory, so only the items
+     * between two fences need to be searched.  Those items are
+     * read in one go, if they are not in the cache already.
+     * Any fence that is not known yet is got from the index,
+     * and is known from then on.
+     */
+    protected long[] fenceBounds(Timestamp t, IndexTimestampSelector selector, long[] bounds) {
+	if (fences == null || bounds[1] - bounds[0] <= fences.getStride()) {
+	    return bounds;
+	}
+
+	int stride = fences.getStride();
+	long time = TimeCalculator.asNanos(t);
+
+	// the fences inside the bounds
+	int first = (int)((bounds[0] + stride - 1) / stride);
+	int low = first;
+	int high = (int)(bounds[1] / stride);
+
+	// find the last fence at or before the time
+	int found = -1;
+
+	try {
+	    while (low <= high) {
+		int mid = (low + high) >>> 1;
+
+		if (fenceTime(mid, selector) <= time) {
+		    found = mid;
+		    low = mid + 1;
+		} else {
+		    high = mid - 1;
+		}
+	    }
+	} catch (TimeIndexException tie) {
+	    // can't get a fence, so search all of it
+	    return bounds;
+	}
+
+	long start = bounds[0];
+	long end = bounds[1];
+
+	if (found >= 0) {
+	    // the time is between this fence and the next one
+	    start = Math.max(start, (long)found * stride);
+	    end = Math.min(end, (long)(found + 1) * stride);
+
+	    if (start == end) {
+		// the last item is on the fence
+		start = end - 1;
+	    }
+	} else {
+	    // the time is before the first fence
+	    end = Math.min(end, (long)first * stride);
+	}
+
+	//System.err.println("Index " + getName() + ": fences for " + t + " => " + start + " - " + end);
+
+	// read the items between the fences in one go
+	try {
+	    boolean cached = false;
+
+	    synchronized (indexCache) {
+		cached = indexCache.containsItem(start);
+	    }
+
+	    if (! cached) {
+		indexInteractor.readAhead(start, (int)(end - start + 1), false);
+	    }
+	} catch (IOException ioe) {
+	    // the items will be got one by one
+	}
+
+	return new long[] { start, end };
+    }
+
+    /**
+     * Get the timestamp of a fence, as nanoseconds.
+     * If the fence is not known, its item is got from the index.
+     */
+    private long fenceTime(int fence, IndexTimestampSelector selector) throws GetItemException, IndexClosedException {
+	long time = fences.get(fence, selector);
+
+	if (time == TimestampFences.UNKNOWN) {
+	    IndexItem item = getItem((long)fence * fences.getStride());
+
+	    time = timeOf(item, selector);
+	}
+
+	return time;
+    }
+
     /**
      * Get an Index Item from the Index.
      */
@@ -311,8 +506,32 @@ public abstract class FileIndex extends AbstractManagedIndex implements StoredIn
 	    if (indexCache.containsItem(n)) { 	// if the cache has the item
 		// get it from the cache
 		item = indexCache.getItem(n);
-	    } else {
-		//System.err.println("FileIndex: " + getName() + " load-on-demand item: " + n);
+	    }
+	}
+
+	if (item != null) {
+	    if (readAhead != null) {
+		readAhead.hit(n);
+	    }
+	} else {
+	    //System.err.println("FileIndex: " + getName() + " load-on-demand item: " + n);
+	    // The cache is not held whilst the item is read,
+	    // so many threads can read from the index at once.
+	    try {
+		// if the gets are sequential, read ahead
+		// and get the item out of the cache
+		if (readAhead != null && readAhead.miss(n)) {
+		    synchronized (indexCache) {
+			if (indexCache.containsItem(n)) {
+			    item = indexCache.getItem(n);
+			}
+		    }
+		}
+	    } catch (IOException ioe) {
+		// the read ahead failed, so get the item on its own
+	    }
+
+	    if (item == null) {
 		try {
 		    // get the IndexItem from the index interactor.
 		    // This automatically gets placed in the cache
@@ -387,11 +606,22 @@ public abstract class FileIndex extends AbstractManagedIndex implements StoredIn
 	long cacheSize = 0;
 
 	synchronized (indexCache) {
-	    // add the item to the index item cache
-	    // the cache will return the size of the index
-	    cacheSize = indexCache.addItem(item, position);
+	    if (indexCache.containsItem(position)) {
+		// another reader got there first
+		cacheSize = indexCache.size();
+	    } else {
+		// add the item to the index item cache
+		// the cache will return the size of the index
+		cacheSize = indexCache.addItem(item, position);
+	    }
 	}
 
+	if (fences != null) {
+	    fences.add(position, item);
+	}
+
+	noteDataSize(position, item);
+
 	//System.err.print("R");
 	//System.err.flush();
 
@@ -400,6 +630,49 @@ public abstract class FileIndex extends AbstractManagedIndex implements StoredIn
     }
 
 
+    /**
+     * Retrieve a run of Index Items into the Index.
+     * The cache is held once for the whole run.
+     * @param items the IndexItems to add
+     * @param position the position to load the first IndexItem at
+     * @param count the no of items to add
+     * @return the no of items in the cache
+     */
+    public long retrieveItems(IndexItem[] items, long position, int count) {
+	// set the items' positions and
+	// bind them to the index
+	for (int i=0; i<count; i++) {
+	    ManagedIndexItem itemM = (ManagedIndexItem)items[i];
+	    itemM.setPosition(new AbsolutePosition(position + i));
+	    itemM.setIndex(this);
+	}
+
+	long cacheSize = 0;
+
+	synchronized (indexCache) {
+	    for (int i=0; i<count; i++) {
+		if (indexCache.containsItem(position + i)) {
+		    // another reader got there first
+		    cacheSize = indexCache.size();
+		} else {
+		    cacheSize = indexCache.addItem(items[i], position + i);
+		}
+	    }
+	}
+
+	if (fences != null) {
+	    for (int i=0; i<count; i++) {
+		fences.add(position + i, items[i]);
+	    }
+	}
+
+	for (int i=0; i<count; i++) {
+	    noteDataSize(position + i, items[i]);
+	}
+
+	return cacheSize;
+    }
+
     /**
      * Read data for an index item
      * given a DataReference.
@@ -409,8 +682,226 @@ public abstract class FileIndex extends AbstractManagedIndex implements StoredIn
 	//System.err.print("D");
 	//System.err.flush();
 
-	synchronized (indexInteractor) {
-	    return indexInteractor.convertDataReference(dataReference);
+	// reads are positional, so there is no
+	// need to hold the interactor
+	return indexInteractor.convertDataReference(dataReference);
+    }
+
+    /**
+     * Read data for an index item, without waiting for it,
+     * given an index position and a DataReference.
+     * The data is read by a ReadExecutor thread.
+     * @return a Future for the DataHolderObject
+     */
+    public Future readDataAsync(final long pos, final DataReference dataReference) {
+	return ReadExecutor.submit(new Callable() {
+		public Object call() throws Exception {
+		    return readData(pos, dataReference);
+		}
+	    });
+    }
+
+    /**
+     * Get a channel onto the data for an index item
+     * given a DataReference.
+     */
+    public ReadableByteChannel readDataChannel(long pos, DataReference dataReference) throws IOException {
+	return indexInteractor.openDataChannel(dataReference);
+    }
+
+    /**
+     * Write some data straight from the index's data to a channel,
+     * given the offset and the size of the data.
+     * The data of many items can be written in one go,
+     * if they are next to each other.
+     * @return the number of bytes written
+     */
+    public long transferData(long offset, long size, WritableByteChannel channel) throws IOException {
+	return indexInteractor.transferData(offset, size, channel);
+    }
+
+    /**
+     * Get the offset of the record of the item at a position,
+     * from the index files rather than the items in the index.
+     */
+    public long recordOffset(long position) throws IOException {
+	return indexInteractor.recordOffset(position);
+    }
+
+    /**
+     * Verify the item whose record is at an offset, straight from
+     * the index files, without reading it into the index.
+     * @return the offset of the record of the next item
+     * @throws IOException if the item can't be read, or fails its checksums
+     */
+    public long verifyRecord(long offset) throws IOException {
+	return indexInteractor.verifyRecord(offset);
+    }
+
+    /**
+     * Verify a run of items, from a position, straight from
+     * the index files, without reading them into the index.
+     * The records are read in one positional read, if they can be.
+     * @param failures the message for each item that fails is put here,
+     * and the others are set to null
+     */
+    public void verifyRecords(long position, int count, String[] failures) {
+	indexInteractor.verifyRecords(position, count, failures);
+    }
+
+    /**
+     * Get the length in the header when the index was opened,
+     * if the header did not agree with the index file,
+     * and the index was recovered.
+     * @return the length in the header, or -1 if the index was not recovered
+     */
+    public long getRecoveredFrom() {
+	return indexInteractor.getRecoveredFrom();
+    }
+
+    /**
+     * Do the index items have checksums.
+     */
+    public boolean hasChecksums() {
+	return indexInteractor.hasChecksums();
+    }
+
+    /**
+     * Get the metrics for the syncs of this index.
+     */
+    public SyncMetrics getSyncMetrics() {
+	return indexInteractor.getSyncMetrics();
+    }
+
+    /**
+     * Set up the read ahead from the 'readahead' property,
+     * which is the most items to read ahead.
+     * If it is 0, there is no read ahead.
+     */
+    protected void processReadAheadOptions(Properties properties) throws IndexSpecificationException {
+	int maxWindow = ReadAhead.DEFAULT_MAX_WINDOW;
+
+	if (properties.containsKey("readahead")) {
+	    try {
+		maxWindow = Integer.parseInt(properties.getProperty("readahead"));
+	    } catch (NumberFormatException nfe) {
+		throw new IndexSpecificationException("Bad 'readahead' for index: " + nfe.getMessage());
+	    }
+	}
+
+	if (maxWindow > 1) {
+	    readAhead = new ReadAhead(this, maxWindow);
+	} else {
+	    readAhead = null;
+	}
+    }
+
+    /**
+     * Set up the timestamp fences.
+     * The 'fencestride' property is the no of items between fences,
+     * and 0 turns the fences off.
+     * If the 'fencefile' property is true, the fences are kept
+     * in a fence file when the index is closed.
+     */
+    protected void processFenceOptions(Properties properties) throws IndexSpecificationException {
+	int stride = TimestampFences.DEFAULT_STRIDE;
+
+	if (properties.containsKey("fencestride")) {
+	    try {
+		stride = Integer.parseInt(properties.getProperty("fencestride"));
+	    } catch (NumberFormatException nfe) {
+		throw new IndexSpecificationException("Bad 'fencestride' for index: " + nfe.getMessage());
+	    }
+	}
+
+	if (stride > 0) {
+	    fences = new TimestampFences(stride);
+	} else {
+	    fences = null;
+	}
+
+	fenceFile = "true".equalsIgnoreCase(properties.getProperty("fencefile"));
+    }
+
+    /**
+     * Read the fences from the fence file, if there is one.
+     * This is called once the index interactor is open.
+     */
+    protected void openFences() throws IOException {
+	if (fenceFile && fences != null) {
+	    long[] values = indexInteractor.readFences();
+
+	    if (values != null) {
+		fences.fromArray(values, getLength());
+	    }
+	}
+    }
+
+    /**
+     * Set up the running totals of the data sizes.
+     * The totals are kept up to date as items are added and read.
+     * If the 'volumefile' property is true, they are kept
+     * in a volume file when the index is closed.
+     */
+    protected void processVolumeOptions(Properties properties) {
+	volumeFile = "true".equalsIgnoreCase(properties.getProperty("volumefile"));
+    }
+
+    /**
+     * Add the data sizes of the items from position p
+     * to the running totals.
+     * The index records are read a block at a time, without their data,
+     * and retrieving them notes their sizes.
+     */
+    protected void addDataSizes(DataVolumes totals, long p, long end) throws GetItemException, IndexClosedException {
+	try {
+	    indexInteractor.readAhead(p, (int)Math.min(VOLUME_BLOCK_ITEMS, end - p + 1), false);
+
+	    if (totals.size() == p) {
+		// get the record on its own
+		indexInteractor.getItem(p, false);
+	    }
+	} catch (IOException ioe) {
+	    // the item will be got from the index
+	}
+
+	if (totals.size() == p) {
+	    // it is a reference, so it is followed to its data
+	    super.addDataSizes(totals, p, end);
+	}
+    }
+
+    /**
+     * Read the data volumes from the volume file, if there is one.
+     * The file is read even if the 'volumefile' property is not set,
+     * so a reader gets the totals the writer kept.
+     * This is called once the index interactor is open.
+     */
+    protected void openVolumes() throws IOException {
+	long[] values = indexInteractor.readVolumes();
+
+	if (values != null) {
+	    getDataVolumes().fromArray(values, getLength());
+	}
+    }
+
+    /**
+     * Pass the durability properties on to the index interactor.
+     */
+    protected void processDurabilityOptions(Properties properties, IndexProperties indexProperties) {
+	// how sure a commit is that the data is on disk
+	if (properties.containsKey("durability")) {
+	    indexProperties.put("durability" , properties.getProperty("durability"));
+	}
+
+	// the most time a commit waits for a group sync
+	if (properties.containsKey("syncinterval")) {
+	    indexProperties.put("syncinterval" , properties.getProperty("syncinterval"));
+	}
+
+	// the most bytes written between group syncs
+	if (properties.containsKey("syncbytes")) {
+	    indexProperties.put("syncbytes" , properties.getProperty("syncbytes"));
 	}
     }
      
@@ -28,12 +28,14 @@ import com.timeindexing.basic.UID;
 import com.timeindexing.basic.Size;
 import com.timeindexing.basic.Offset;
 import com.timeindexing.data.DataItem;
+import com.timeindexing.data.ChannelItem;
 
 import java.io.Serializable;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.io.ObjectInputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 
 /**
  * An implementatio of an IndexItem that is saved in a file.
@@ -54,8 +56,19 @@ public class FileIndexItem extends IncoreIndexItem implements IndexItem, Managed
      */
     public FileIndexItem(Timestamp dataTS, Timestamp indexTS, DataItem dataitem,
 			DataType type, ID id, long annotationValue) {
-	this(dataTS, indexTS,  new DataHolderObject(dataitem.getBytes(),  dataitem.getSize()),
-	     type, id, annotationValue);
+	this(dataTS, indexTS,  holdData(dataitem), type, id, annotationValue);
+    }
+
+    /**
+     * Get a DataAbstraction for the data of a DataItem.
+     * The data of a ChannelItem is read when the item is written.
+     */
+    static DataAbstraction holdData(DataItem dataitem) {
+	if (dataitem instanceof ChannelItem) {
+	    return new DataChannelObject(((ChannelItem)dataitem).getChannel(), new Size(dataitem.getSize()));
+	} else {
+	    return new DataHolderObject(dataitem.getBytes(),  dataitem.getSize());
+	}
     }
 	
     /**
@@ -86,6 +99,22 @@ public class FileIndexItem extends IncoreIndexItem implements IndexItem, Managed
 			 Size size, DataType type, ID id, long annotationValue) {
 	super(dataTS, indexTS,  data, size, type, id, annotationValue);
     }
+
+    /**
+     * Construct a FileIndexItem from the values read from an index file.
+     * The Timestamps are only decoded when they are asked for.
+     * @param dataTSValue a data timestamp, as encoded in an index file
+     * @param indexTSValue an index timestamp, as encoded in an index file
+     * @param data some data as a DataAbstraction
+     * @param size the size of the DataAbstraction
+     * @param type the type of the data
+     * @param id an index ID
+     * @param annotationValue the meta data for annotations
+     */
+    public FileIndexItem(long dataTSValue, long indexTSValue, DataAbstraction data, 
+			 Size size, DataType type, ID id, long annotationValue) {
+	super(dataTSValue, indexTSValue,  data, size, type, id, annotationValue);
+    }
 	
     /**
      * A ByteBuffer of the Data being indexed.
@@ -142,6 +171,27 @@ public class FileIndexItem extends IncoreIndexItem implements IndexItem, Managed
 	}
     }
 
+    /**
+     * A channel onto the Data being indexed.
+     * If the data is not held, it is read from the index
+     * a chunk at a time, so it can be bigger than a ByteBuffer.
+     */
+    public synchronized ReadableByteChannel getDataChannel() {
+	setLastAccessTime();
+
+	if (data instanceof DataReference) {
+	    FileIndex index  = (FileIndex)getIndex();
+
+	    try {
+		return index.readDataChannel(position.value(), (DataReference)data);
+	    } catch (IOException ioe) {
+		throw new RuntimeException("FileIndexItem: DateReference " +  getPosition() + " " + data + " can't be read: " + ioe.getMessage());
+	    }
+	} else {
+	    return super.getDataChannel();
+	}
+    }
+
     /**
      * Does this IndexItem actually hold the data.
      */
@@ -124,6 +124,38 @@ public interface HeaderOption {
 
 
 
+    /**
+     * Compression.
+     * This means that the data file holds blocks of data,
+     * compressed with the named codec.
+     */
+    public final static byte COMPRESSION = 7;
+    public final static HeaderOption COMPRESSION_HO = new HeaderOption() {
+	    public String toString() {
+		return "compression";
+	    }
+
+	    public byte value() {
+		return COMPRESSION;
+	    }
+	};
+
+    /**
+     * Checksums.
+     * This means that each index record ends with a checksum
+     * of the data and a checksum of the record itself.
+     */
+    public final static byte CHECKSUMS = 8;
+    public final static HeaderOption CHECKSUMS_HO = new HeaderOption() {
+	    public String toString() {
+		return "checksums";
+	    }
+
+	    public byte value() {
+		return CHECKSUMS;
+	    }
+	};
+
     /**
      * Type Mapping
      */
@@ -29,9 +29,11 @@ import com.timeindexing.basic.Offset;
 import com.timeindexing.basic.Position;
 import com.timeindexing.basic.AbsolutePosition;
 import com.timeindexing.data.DataItem;
+import com.timeindexing.data.ChannelItem;
 import com.timeindexing.cache.DefaultIndexCache;
 import com.timeindexing.event.*;
 import java.util.Properties;
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 
@@ -69,6 +71,9 @@ public class IncoreIndex extends AbstractManagedIndex implements ManagedIndex {
 	// check the passed in properties
 	checkOpenProperties(properties);
 
+	// choose how locate() searches
+	processSearchOptions(properties);
+
 	// check to see if this index is already open and registered
 	try {
 	    String uri = generateURI(getName()).toString();
@@ -99,6 +104,9 @@ public class IncoreIndex extends AbstractManagedIndex implements ManagedIndex {
 	// check the passed in properties
 	checkCreateProperties(properties);
 
+	// choose how locate() searches
+	processSearchOptions(properties);
+
 	// init the objects
 	init();
 
@@ -248,11 +256,36 @@ public class IncoreIndex extends AbstractManagedIndex implements ManagedIndex {
 	long id = getLength();
 	// the record Timestamp is now (as microseconds)
 	Timestamp recordTS = Clock.time.time();
+
+	return addItem(dataitem, dataTS, recordTS, new SID(id), annotation);
+    }
+
+    /**
+     * Add a Data Item to the Index, with the Timestamps, ID and
+     * annotation of an IndexItem from another Index.
+     * @param dataitem the IndexItem to add
+     * @param dataTS the Timestamp for the data, null implies that
+     * the data Timestamp is the same as the record Timestamp
+     * @param indexTS the record Timestamp
+     * @param id the ID of the item
+     * @param annotation the annotation meta data
+     * @return the no of items in the index.
+     */
+    public synchronized IndexItem addItem(DataItem dataitem, Timestamp dataTS, Timestamp indexTS, ID id, long annotation) throws IndexTerminatedException, IndexClosedException, IndexActivationException, AddItemException {
 	// the actual data Timestamp is the record Timestamp
 	// if the dataTS param is null, it is the speicifed value otherwise
-	Timestamp actualTS = (dataTS == null ? recordTS : dataTS);
+	Timestamp actualTS = (dataTS == null ? indexTS : dataTS);
+
+	// the data of a channel is read into the item now
+	if (dataitem instanceof ChannelItem) {
+	    try {
+		((ChannelItem)dataitem).readBytes();
+	    } catch (IOException ioe) {
+		throw new AddItemException(ioe);
+	    }
+	}
 
-	IncoreIndexItem item = new IncoreIndexItem(actualTS, recordTS, dataitem, dataitem.getDataType(), new SID(id), annotation);
+	IncoreIndexItem item = new IncoreIndexItem(actualTS, indexTS, dataitem, dataitem.getDataType(), id, annotation);
 
 	// mark as being changed
 	changed = true;
@@ -312,6 +345,20 @@ public class IncoreIndex extends AbstractManagedIndex implements ManagedIndex {
      * It is used internally when doing a TimeIndexFactory.save().
      */
     public synchronized IndexItem addReference(IndexReference reference, Timestamp dataTS, long annotation) throws IndexTerminatedException, IndexClosedException, IndexActivationException, AddItemException {
+	// set the ID to be the length
+	// as it's unique
+	long id = getLength();
+	// the record Timestamp is now (as microseconds)
+	Timestamp recordTS = Clock.time.time();
+
+	return addReference(reference, dataTS, recordTS, new SID(id), annotation);
+    }
+
+    /**
+     * Add a Referemnce to an IndexItem in a Index, with the Timestamps,
+     * ID and annotation of an IndexItem from another Index.
+     */
+    public synchronized IndexItem addReference(IndexReference reference, Timestamp dataTS, Timestamp indexTS, ID id, long annotation) throws IndexTerminatedException, IndexClosedException, IndexActivationException, AddItemException {
 
         IndexReferenceDataHolder dataHolder = null;
 
@@ -327,16 +374,11 @@ public class IncoreIndex extends AbstractManagedIndex implements ManagedIndex {
 	    dataHolder = new IndexReferenceDataHolder(indexID, itemPosition);
 	}
 
-	// set the ID to be the length
-	// as it's unique
-	long id = getLength();
-	// the record Timestamp is now (as microseconds)
-	Timestamp recordTS = Clock.time.time();
 	// the actual data Timestamp is the record Timestamp
 	// if the dataTS param is null, it is the speicifed value otherwise
-	Timestamp actualTS = (dataTS == null ? recordTS : dataTS);
+	Timestamp actualTS = (dataTS == null ? indexTS : dataTS);
 
-	IncoreIndexItem item = new IncoreIndexItem(actualTS, recordTS, dataHolder, DataType.REFERENCE, new SID(id), annotation);
+	IncoreIndexItem item = new IncoreIndexItem(actualTS, indexTS, dataHolder, DataType.REFERENCE, id, annotation);
 
 	dataHolder.setIndexItem(item);
 
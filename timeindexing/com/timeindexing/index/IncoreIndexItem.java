@@ -22,6 +22,7 @@ package com.timeindexing.index;
 
 import com.timeindexing.time.Timestamp;
 import com.timeindexing.time.TimestampDecoder;
+import com.timeindexing.time.TimeCalculator;
 import com.timeindexing.time.Clock;
 import com.timeindexing.basic.ID;
 import com.timeindexing.basic.UID;
@@ -31,12 +32,14 @@ import com.timeindexing.basic.Position;
 import com.timeindexing.basic.AbsolutePosition;
 import com.timeindexing.data.DataItem;
 import com.timeindexing.data.DataItemFactory;
+import com.timeindexing.util.ByteBufferChannel;
 
 import java.io.Serializable;
 import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.io.ObjectInputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 import java.net.URI;
 import java.util.Properties;
 
@@ -47,6 +50,13 @@ import java.util.Properties;
 public class IncoreIndexItem implements IndexItem, ManagedIndexItem {
     transient Timestamp dataTS = null;
     transient Timestamp indexTS = null;
+    // the timestamps as they are encoded in an index file.
+    // A Timestamp is only made from these when it is asked for.
+    transient long dataTSValue = 0;
+    transient long indexTSValue = 0;
+    // the timestamps as nanoseconds
+    transient long dataTime = 0;
+    transient long indexTime = 0;
     transient DataAbstraction data = null;
     transient Size size = null;
     transient DataType type = DataType.ANY;
@@ -54,11 +64,14 @@ public class IncoreIndexItem implements IndexItem, ManagedIndexItem {
     transient long annotationValue = 0;
     transient AbsolutePosition position = null;
     transient Index theIndex = null;
-    transient Timestamp lastAccessTime = null;
+    // the last access time as nanoseconds
+    transient long lastAccessTime = 0;
 
 
     final static ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0);
 
+    final static TimestampDecoder timestampDecoder = new TimestampDecoder();
+
     /**
      * Construct a IncoreIndexItem from
      * @param dataTS a data timestamp. The Data timestamp is the same as the Sender timestamp.
@@ -101,12 +114,35 @@ public class IncoreIndexItem implements IndexItem, ManagedIndexItem {
 			    Size dataSize, DataType type, ID id, long annotationValue) {
 	this.dataTS = dataTS;
 	this.indexTS = indexTS;
+	this.dataTime = TimeCalculator.asNanos(dataTS);
+	this.indexTime = TimeCalculator.asNanos(indexTS);
+	this.data = data;
+	this.size = dataSize;
+        this.type = type;
+	this.id = id;
+	this.annotationValue = annotationValue;
+    }
+
+    /**
+     * Construct a IncoreIndexItem from
+     * @param dataTSValue a data timestamp, as encoded in an index file
+     * @param indexTSValue an index timestamp, as encoded in an index file
+     * @param data some data as a Item
+     * @param type the type of the data
+     * @param id an index ID
+     * @param annotationValue the meta data for annotations
+     */
+    protected IncoreIndexItem(long dataTSValue, long indexTSValue, DataAbstraction data, 
+			    Size dataSize, DataType type, ID id, long annotationValue) {
+	this.dataTSValue = dataTSValue;
+	this.indexTSValue = indexTSValue;
+	this.dataTime = timestampDecoder.decodeNanos(dataTSValue);
+	this.indexTime = timestampDecoder.decodeNanos(indexTSValue);
 	this.data = data;
 	this.size = dataSize;
         this.type = type;
 	this.id = id;
 	this.annotationValue = annotationValue;
-	lastAccessTime = Timestamp.ZERO;
     }
 	
     /**
@@ -114,6 +150,11 @@ public class IncoreIndexItem implements IndexItem, ManagedIndexItem {
      */
     public Timestamp getIndexTimestamp() {
 	setLastAccessTime();
+
+	if (indexTS == null) {
+	    indexTS = timestampDecoder.decode(indexTSValue);
+	}
+
 	return indexTS;
     }
 
@@ -122,9 +163,28 @@ public class IncoreIndexItem implements IndexItem, ManagedIndexItem {
      */
     public Timestamp getDataTimestamp() {
 	setLastAccessTime();
+
+	if (dataTS == null) {
+	    dataTS = timestampDecoder.decode(dataTSValue);
+	}
+
 	return dataTS;
     }
 
+    /**
+     * The index timestamp of the IndexItem, as nanoseconds.
+     */
+    public long getIndexTime() {
+	return indexTime;
+    }
+
+    /**
+     * The data timestamp of the IndexItem, as nanoseconds.
+     */
+    public long getDataTime() {
+	return dataTime;
+    }
+
     /**
      * A ByteBuffer of the Data being indexed.
      */
@@ -134,6 +194,13 @@ public class IncoreIndexItem implements IndexItem, ManagedIndexItem {
 	return ((DataHolder)data).getBytes();
     }
 
+    /**
+     * A channel onto the Data being indexed.
+     */
+    public ReadableByteChannel getDataChannel() {
+	return new ByteBufferChannel(getData());
+    }
+
     /**
      * The size of the data item being referenced.
      */
@@ -225,6 +292,17 @@ public class IncoreIndexItem implements IndexItem, ManagedIndexItem {
      * Get the last time this IndexItem was accessed.
      */
     public Timestamp getLastAccessTime() {
+	if (lastAccessTime == 0) {
+	    return Timestamp.ZERO;
+	} else {
+	    return TimeCalculator.fromNanos(lastAccessTime);
+	}
+    }
+
+    /**
+     * Get the last time this IndexItem was accessed, as nanoseconds.
+     */
+    public long getLastAccessNanos() {
 	return lastAccessTime;
     }
 
@@ -232,7 +310,7 @@ public class IncoreIndexItem implements IndexItem, ManagedIndexItem {
      * Set the last access time of the item.
      */
     public ManagedIndexItem setLastAccessTime() {
-	lastAccessTime = Clock.time.time();
+	lastAccessTime = Clock.time.timeAsNanos();
 	//System.err.println("Set last access time for IndexItem: " + position + " to " + getLastAccessTime());
 	return this;
     }
@@ -356,8 +434,8 @@ public class IncoreIndexItem implements IndexItem, ManagedIndexItem {
      * Write out the IncoreIndexItem.
      */
     private void writeObject(ObjectOutputStream out) throws IOException {
-	out.writeLong(dataTS.value());
-	out.writeLong(indexTS.value());
+	out.writeLong(getDataTimestamp().value());
+	out.writeLong(getIndexTimestamp().value());
 	out.writeLong(size.value());
 	out.write(((DataHolder)data).getBytes().array());
 	out.writeInt(type.value());
@@ -375,9 +453,11 @@ public class IncoreIndexItem implements IndexItem, ManagedIndexItem {
 
 	ts = in.readLong();
 	dataTS = timestampD.decode(ts);
+	dataTime = TimeCalculator.asNanos(dataTS);
 
 	ts = in.readLong();
 	indexTS = timestampD.decode(ts);
+	indexTime = TimeCalculator.asNanos(indexTS);
 
 	long sizeRead = in.readLong();
 	size = new Size(sizeRead);
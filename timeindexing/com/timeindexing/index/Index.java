@@ -34,6 +34,7 @@ import com.timeindexing.util.DoubleLinkedList;
 import com.timeindexing.cache.CachePolicy;
 
 import java.util.Iterator;
+import java.util.concurrent.Future;
 
 /**
  * An index.
@@ -117,6 +118,13 @@ public interface Index extends IndexHeader {
      */
     public IndexItem getItem(long n) throws GetItemException, IndexClosedException;
 
+    /**
+     * Get the position of the first item in the index.
+     * This is 0, unless items have been removed from the front
+     * of the index, when the items from 0 up to it can not be got.
+     */
+    public long getFirstPosition();
+
     /**
      * Get an Index Item from the Index.
      */
@@ -133,6 +141,22 @@ public interface Index extends IndexHeader {
      */
     public IndexItem getItem(Timestamp t, IndexTimestampSelector sel, Lifetime lifetime) throws GetItemException, IndexClosedException;
 
+    /**
+     * Get an Index Item from the Index, without waiting for it.
+     * The item is read by a ReadExecutor thread.
+     * @return a Future for the IndexItem.  If the read fails, the
+     * Future throws an ExecutionException holding the GetItemException.
+     */
+    public Future getItemAsync(long n);
+
+    /**
+     * Get count Index Items from the Index, starting at position start,
+     * without waiting for them.
+     * The items are read in order by a ReadExecutor thread.
+     * @return a Future for an array of IndexItems
+     */
+    public Future getItemsAsync(long start, int count);
+
 
     /**
      * Does a timestamp fall within the bounds of the Index.
@@ -165,6 +189,15 @@ public interface Index extends IndexHeader {
      */
     public TimestampMapping locate(Timestamp t, IndexTimestampSelector sel, Lifetime lifetime);
 
+    /**
+     * Try and determine the positions associated
+     * with many Timestamps, which must be in time order.
+     * This is the same as a locate() of each Timestamp,
+     * but the index is searched in one pass.
+     * Returns a TimestampMapping for each Timestamp.
+     */
+    public TimestampMapping[] locateAll(Timestamp[] sorted, IndexTimestampSelector sel, Lifetime lifetime);
+
     /**
      * Try and determine the Timestamp associated with the speicifed Position.
      * Uses IndexTimestampSelector.DATA and Lifetime.CONTINUOUS as defaults.
@@ -181,6 +214,26 @@ public interface Index extends IndexHeader {
      */
     public TimestampMapping locate(Position p, IndexTimestampSelector sel, Lifetime lifetime);
 
+    /**
+     * Get the size of the data of the items from start to end.
+     * References are followed, so the size of the data
+     * they refer to is counted.
+     */
+    public long getDataVolume(long start, long end) throws GetItemException, IndexClosedException;
+
+    /**
+     * Find the last item from start onwards, where the data of
+     * the items from start up to it is no more than a volume.
+     * Returns start - 1 if the item at start is bigger than the volume.
+     */
+    public long locateDataVolume(long start, long volume) throws GetItemException, IndexClosedException;
+
+    /**
+     * Are the data sizes of the items up to end known,
+     * so getDataVolume() can answer without reading the index.
+     */
+    public boolean hasDataVolume(long end);
+
 
     /**
      * Select an Interval given an Interval object.
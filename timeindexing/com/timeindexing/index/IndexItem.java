@@ -27,6 +27,7 @@ import com.timeindexing.time.Timestamp;
 import com.timeindexing.data.DataItem;
 
 import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 
 /**
  * Values that an index item must return.
@@ -49,6 +50,12 @@ public interface IndexItem {
      */
     public ByteBuffer getData();
 
+    /**
+     * A channel onto the Data being indexed.
+     * The data can be bigger than a ByteBuffer.
+     */
+    public ReadableByteChannel getDataChannel();
+
     /**
      * The size of the data item being referenced.
      */
@@ -27,6 +27,7 @@ import com.timeindexing.time.Timestamp;
 import com.timeindexing.data.DataItem;
 
 import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 
 /**
  * A view onto an IndexItem.
@@ -64,6 +65,13 @@ public class IndexItemView implements IndexItem {
 	return item.getData();
     }
 
+    /**
+     * A channel onto the Data being indexed.
+     */
+    public ReadableByteChannel getDataChannel() {
+	return item.getDataChannel();
+    }
+
     /**
      * The size of the data item being referenced.
      */
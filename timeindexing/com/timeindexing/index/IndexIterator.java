@@ -21,6 +21,7 @@
 package com.timeindexing.index;
 
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 /**
  * An iterator over the IndexItems in an Index.
@@ -34,10 +35,11 @@ public class IndexIterator implements Iterator {
 
     /**
      * Construct the Iterator given an Index.
+     * It starts at the first item still in the Index.
      */
     protected IndexIterator(Index anIndex) {
 	index = anIndex;
-	position = 0;
+	position = index.getFirstPosition();
     }
 
     /**
@@ -53,15 +55,20 @@ public class IndexIterator implements Iterator {
 
     /**
      * Get the next element.
+     * The Iterator moves on even if the IndexItem can not be got.
      * @return null if it was not possible to get a particular IndexItem
      */
     public Object next() {
-	try {
-	    Object nextObject = index.getItem(position);
+	if (! hasNext()) {
+	    throw new NoSuchElementException("Index Iterator is at the end of the index");
+	}
 
-	    position++;
+	long current = position;
 
-	    return nextObject;
+	position++;
+
+	try {
+	    return index.getItem(current);
 	} catch (GetItemException gie) {
 	    // it was not possible to get the item
 	    return null;
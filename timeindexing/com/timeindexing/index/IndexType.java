@@ -93,6 +93,23 @@ public interface IndexType {
 	};   
 
 
+    /**
+     * A separate file based TimeIndex whose index and data
+     * are split over many segment files.
+     */
+    public final int SEGMENTED_VALUE = 4;
+    public final static IndexType SEGMENTED = new IndexType() {
+	 public int value() {
+		return SEGMENTED_VALUE;
+	    }
+
+
+	    public String toString() {
+		return "SEGMENTED";
+	    }
+	};   
+
+
 
 }
 
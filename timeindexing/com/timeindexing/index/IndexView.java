@@ -25,6 +25,7 @@ import com.timeindexing.basic.Interval;
 import com.timeindexing.basic.Overlap;
 import com.timeindexing.basic.Position;
 import com.timeindexing.time.Timestamp;
+import com.timeindexing.time.RelativeTimestamp;
 import com.timeindexing.time.TimeSpecifier;
 import com.timeindexing.time.Lifetime;
 import com.timeindexing.data.DataItem;
@@ -92,6 +93,21 @@ public interface IndexView extends Index {
      */
     public Position getEndPosition();
 
+    /**
+     * Remove the items whose data is all before a cutoff time
+     * from the front of the index this is a view of.
+     * Only a SegmentedIndex removes items, a whole segment at a time.
+     * @return the new first position of this IndexView
+     */
+    public long removeBefore(Timestamp cutoff) throws IndexActivationException, IndexCommitException;
+
+    /**
+     * Remove the items whose data is all older than a retention period
+     * from the front of the index this is a view of.
+     * @return the new first position of this IndexView
+     */
+    public long removeOlderThan(RelativeTimestamp retention) throws IndexActivationException, IndexCommitException;
+
     /**
      * Move the current navigation position in the IndexView
      * using the TimeSpecifier.
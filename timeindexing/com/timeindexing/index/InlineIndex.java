@@ -105,14 +105,38 @@ public class InlineIndex extends FileIndex implements ManagedIndex  {
 	    indexProperties.put("indexpath", indexPathName);
 	    indexProperties.put("readonly", readOnly);
 
+	    // process optional properties
+
+	    // don't use a position offset file
+	    if (properties.containsKey("nooffsetfile")) {
+		indexProperties.put("nooffsetfile" , properties.getProperty("nooffsetfile"));
+	    }
+
+	    processDurabilityOptions(properties, indexProperties);
+	    processReadAheadOptions(properties);
+	    processFenceOptions(properties);
+	    processVolumeOptions(properties);
+	    processSearchOptions(properties);
+
 	    // open the index 
 	    indexInteractor.open(indexProperties);
 
+	    // get the fences from the fence file
+	    openFences();
+
+	    // get the data volumes from the volume file
+	    openVolumes();
+
 	    // load the index
 	    indexInteractor.loadIndex(loadStyle);
 
 
 	    eventMulticaster().firePrimaryEvent(new IndexPrimaryEvent(getURI().toString(), header.getID(), IndexPrimaryEvent.OPENED, this));
+
+	    // the header did not agree with the index file
+	    if (getRecoveredFrom() >= 0) {
+		eventMulticaster().firePrimaryEvent(new IndexPrimaryEvent(getURI().toString(), header.getID(), IndexPrimaryEvent.RECOVERED, this));
+	    }
 	    
 	    // now we're open
 	    closed = false;
@@ -169,6 +193,19 @@ public class InlineIndex extends FileIndex implements ManagedIndex  {
 	    indexProperties.put("indexpath", indexPathName);
 	    indexProperties.put("canonicalpath", headerPathName);
 
+	    // process optional properties
+
+	    // don't use a position offset file
+	    if (properties.containsKey("nooffsetfile")) {
+		indexProperties.put("nooffsetfile" , properties.getProperty("nooffsetfile"));
+	    }
+
+	    processDurabilityOptions(properties, indexProperties);
+	    processReadAheadOptions(properties);
+	    processFenceOptions(properties);
+	    processVolumeOptions(properties);
+	    processSearchOptions(properties);
+
 	    // create the relevant objects
 	    indexInteractor.create(indexProperties);
 
@@ -215,6 +252,8 @@ public class InlineIndex extends FileIndex implements ManagedIndex  {
 		loadStyle = LoadStyle.ALL;
 	    } else if (loadstyle.equals("hollow")) {
 		loadStyle = LoadStyle.HOLLOW;
+	    } else if (loadstyle.equals("parallel")) {
+		loadStyle = LoadStyle.PARALLEL;
 	    } else if (loadstyle.equals("none")) {
 		loadStyle = LoadStyle.NONE;
 	    } else {
@@ -271,6 +310,8 @@ public class InlineIndex extends FileIndex implements ManagedIndex  {
 		loadStyle = LoadStyle.ALL;
 	    } else if (loadstyle.equals("hollow")) {
 		loadStyle = LoadStyle.HOLLOW;
+	    } else if (loadstyle.equals("parallel")) {
+		loadStyle = LoadStyle.PARALLEL;
 	    } else if (loadstyle.equals("none")) {
 		loadStyle = LoadStyle.NONE;
 	    } else {
@@ -280,6 +321,12 @@ public class InlineIndex extends FileIndex implements ManagedIndex  {
 	    loadStyle = LoadStyle.HOLLOW;
 	}
 
+	// only the records of an external index have checksums,
+	// so this is found out before any files are made
+	if (Boolean.valueOf(indexProperties.getProperty("checksums")).booleanValue()) {
+	    throw new IndexSpecificationException("An InlineIndex can't have checksums");
+	}
+
     }
 
 }
@@ -21,9 +21,11 @@
 package com.timeindexing.index;
 
 import com.timeindexing.time.Timestamp;
+import com.timeindexing.time.RelativeTimestamp;
 import com.timeindexing.basic.ID;
 import com.timeindexing.basic.Position;
 import com.timeindexing.basic.Offset;
+import com.timeindexing.data.DataItem;
 import com.timeindexing.event.IndexEventGenerator;
 import java.util.Properties;
 import java.util.Collection;
@@ -53,6 +55,20 @@ public interface ManagedIndex extends ExtendedIndex, ManagedIndexHeader, IndexEv
      */
     public IndexItem addReference(IndexReference reference, Timestamp dataTS) throws IndexTerminatedException, IndexClosedException, IndexActivationException, AddItemException;
 
+    /**
+     * Add a Data Item to the Index, with the Timestamps, ID and
+     * annotation of an IndexItem from another Index.
+     * It is used when copying an Index, such as by an IndexConverter.
+     */
+    public IndexItem addItem(DataItem item, Timestamp dataTS, Timestamp indexTS, ID id, long annotation) throws IndexTerminatedException, IndexClosedException, IndexActivationException, AddItemException;
+
+    /**
+     * Add a Referemnce to an IndexItem in a Index, with the Timestamps,
+     * ID and annotation of an IndexItem from another Index.
+     * It is used when copying an Index, such as by an IndexConverter.
+     */
+    public IndexItem addReference(IndexReference reference, Timestamp dataTS, Timestamp indexTS, ID id, long annotation) throws IndexTerminatedException, IndexClosedException, IndexActivationException, AddItemException;
+
     /**
      * Track a Referenced Index.
      */
@@ -103,5 +119,20 @@ public interface ManagedIndex extends ExtendedIndex, ManagedIndexHeader, IndexEv
      */
     public long removeView(IndexView view);
 
+    /**
+     * Remove the items whose data is all before a cutoff time
+     * from the front of the index.
+     * The positions of the remaining items stay the same.
+     * Not all indexes can remove items.
+     * @return the new first position
+     */
+    public long removeBefore(Timestamp cutoff) throws IndexActivationException, IndexCommitException;
+
+    /**
+     * Remove the items whose data is all older than a retention period
+     * from the front of the index.
+     * @return the new first position
+     */
+    public long removeOlderThan(RelativeTimestamp retention) throws IndexActivationException, IndexCommitException;
 
 }
@@ -44,6 +44,23 @@ public interface ManagedIndexItem extends IndexItem {
      */
     public ManagedIndexItem setLastAccessTime();
 
+    /**
+     * Get the last access time of the item, as nanoseconds.
+     */
+    public long getLastAccessNanos();
+
+    /**
+     * Get the index timestamp of the item, as nanoseconds.
+     * This does not make a Timestamp, so it is used for searching.
+     */
+    public long getIndexTime();
+
+    /**
+     * Get the data timestamp of the item, as nanoseconds.
+     * This does not make a Timestamp, so it is used for searching.
+     */
+    public long getDataTime();
+
     /**
      * Get the DataAbstraction held by the IndexItem.
      */
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+// ReadAhead.java
+
+package com.timeindexing.index;
+
+import com.timeindexing.io.IndexFileInteractor;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.io.IOException;
+
+/**
+ * This class watches the positions that are got from a FileIndex,
+ * and reads ahead when the items are got one after another.
+ * <p>
+ * When there is a run of sequential cache misses, the next window
+ * of items is read by the index interactor in one go, and put in
+ * the cache.  The window starts at MIN_WINDOW items and doubles,
+ * up to the max window, whilst the access stays sequential.
+ * As the reader gets into a window, the next window is read
+ * by a ReadExecutor loading thread, so it is in the cache
+ * before the reader gets there.
+ * <p>
+ * A reader never waits for a background read.
+ * If the background read has not started, it is cancelled
+ * and the reader does it; if it has started, the reader
+ * gets its own item.
+ */
+public class ReadAhead {
+    // The index
+    FileIndex index = null;
+
+    // The most items to read ahead
+    int maxWindow = 0;
+
+    // The current no of items to read ahead
+    int window = MIN_WINDOW;
+
+    // The position expected next, if the access is sequential
+    long next = -1;
+
+    // The no of sequential misses
+    int run = 0;
+
+    // The position after the last item read ahead
+    long windowEnd = -1;
+
+    // The background read ahead, and the positions it reads
+    Future pending = null;
+    long pendingStart = -1;
+    long pendingEnd = -1;
+
+    /*
+     * The no of items read ahead when the access becomes sequential
+     */
+    final static int MIN_WINDOW = 16;
+
+    /*
+     * The default most no of items to read ahead
+     */
+    public final static int DEFAULT_MAX_WINDOW = 1024;
+
+    /*
+     * The no of sequential misses before reading ahead
+     */
+    final static int SEQUENTIAL_MISSES = 2;
+
+    /**
+     * Construct a ReadAhead for a FileIndex.
+     * @param index the index to read ahead in
+     * @param maxWindow the most items to read ahead
+     */
+    public ReadAhead(FileIndex index, int maxWindow) {
+	this.index = index;
+	this.maxWindow = maxWindow;
+	this.window = Math.min(MIN_WINDOW, maxWindow);
+    }
+
+    /**
+     * Called when the item at position n is in the cache.
+     * If the reader is well into the last window read ahead,
+     * the next window is read in the background.
+     */
+    public void hit(long n) {
+	synchronized (this) {
+	    if (! sequential(n) || windowEnd < 0 || n < windowEnd - (window / 2)) {
+		return;
+	    }
+
+	    if (pending != null && ! pending.isDone()) {
+		return;
+	    }
+
+	    readAheadInBackground(windowEnd);
+	}
+    }
+
+    /**
+     * Called when the item at position n is not in the cache.
+     * If the access is sequential, the window of items starting at n
+     * is read in one go.
+     * @return true if item n should now be in the cache
+     */
+    public boolean miss(long n) throws IOException {
+	int count = 0;
+
+	synchronized (this) {
+	    if (! sequential(n)) {
+		return false;
+	    }
+
+	    run++;
+
+	    if (pending != null && ! pending.isDone() && n >= pendingStart && n < pendingEnd) {
+		// it's being read already
+		if (pending.cancel(false)) {
+		    // it has not started, so read the rest of it here
+		    count = (int)(pendingEnd - n);
+		    pending = null;
+		} else {
+		    // it has started, so get item n on its own
+		    return false;
+		}
+	    } else if (run >= SEQUENTIAL_MISSES) {
+		count = windowSize(n);
+
+		if (count > 1) {
+		    // set up the window after this one
+		    windowEnd = n + count;
+		    window = Math.min(window * 2, maxWindow);
+		}
+	    }
+	}
+
+	if (count > 1) {
+	    //System.err.println("ReadAhead: " + index.getName() + " read " + n + " + " + count);
+	    int got = index.indexInteractor.readAhead(n, count, index.getLoadDataAutomatically());
+
+	    if (got > 0) {
+		hit(n);
+	    }
+
+	    return got > 0;
+	} else {
+	    return false;
+	}
+    }
+
+    /**
+     * Stop reading ahead.
+     * A background read that has not started is cancelled,
+     * and one that has started is not waited for.
+     */
+    public void stop() {
+	synchronized (this) {
+	    if (pending != null) {
+		pending.cancel(false);
+	    }
+
+	    pending = null;
+	    windowEnd = -1;
+	    next = -1;
+	}
+    }
+
+    /**
+     * Is the access to position n sequential.
+     * If it is not, the read ahead starts again.
+     */
+    private boolean sequential(long n) {
+	if (n == next || n + 1 == next) {
+	    // the next item, or the same item again
+	    next = n + 1;
+	    return true;
+	} else {
+	    next = n + 1;
+	    run = 0;
+	    window = Math.min(MIN_WINDOW, maxWindow);
+	    windowEnd = -1;
+	    return false;
+	}
+    }
+
+    /**
+     * Get the no of items in the window starting at position start,
+     * which stops at the end of the index.
+     */
+    private int windowSize(long start) {
+	return (int)Math.max(0, Math.min((long)window, index.getLength() - start));
+    }
+
+    /**
+     * Read the window starting at position start with a ReadExecutor loading thread.
+     */
+    private void readAheadInBackground(final long start) {
+	final int count = windowSize(start);
+
+	if (count <= 1) {
+	    return;
+	}
+
+	pendingStart = start;
+	pendingEnd = start + count;
+
+	windowEnd = pendingEnd;
+	window = Math.min(window * 2, maxWindow);
+
+	pending = ReadExecutor.submitLoad(new Callable() {
+		public Object call() throws Exception {
+		    //System.err.println("ReadAhead: " + index.getName() + " background read " + start + " + " + count);
+		    if (index.isClosed()) {
+			return Integer.valueOf(0);
+		    } else {
+			return Integer.valueOf(index.indexInteractor.readAhead(start, count, index.getLoadDataAutomatically()));
+		    }
+		}
+	    });
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+// ReadExecutor.java
+
+package com.timeindexing.index;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The bounded pools of threads that do the asynchronous reads
+ * for all the indexes.
+ * Reads wait in a queue for a thread, so many reads
+ * can be in flight without a thread each.
+ * <p>
+ * The reads asked for by users, with getItemAsync() and the like,
+ * are done by one pool.  The read ahead and loading done inside
+ * the indexes are done by another pool, so a user read never
+ * waits in the queue behind them, and a task never waits for
+ * a task in its own pool.
+ * <p>
+ * The no of threads for user reads is set by the system property
+ * 'timeindexing.readthreads', and is twice the no of
+ * processors by default.
+ * The no of threads for loading is set by the system property
+ * 'timeindexing.loadthreads', and is the no of processors by default.
+ */
+public class ReadExecutor {
+    // the pool of threads for user reads
+    static ExecutorService executor = null;
+
+    // the pool of threads for read ahead and loading
+    static ExecutorService loader = null;
+
+    // the no of threads created so far
+    static int threadCount = 0;
+
+    /**
+     * Submit a user read to be done by the pool.
+     * @return a Future for the result of the read
+     */
+    public static Future submit(Callable read) {
+	return getExecutor().submit(read);
+    }
+
+    /**
+     * Submit a read ahead or a load to be done by the loading pool.
+     * The read must not wait for any other read in that pool.
+     * @return a Future for the result of the read
+     */
+    public static Future submitLoad(Callable read) {
+	return getLoader().submit(read);
+    }
+
+    /**
+     * Get the pool for user reads, creating it on first use.
+     */
+    public static synchronized ExecutorService getExecutor() {
+	if (executor == null) {
+	    int size = poolSize("timeindexing.readthreads", Runtime.getRuntime().availableProcessors() * 2);
+
+	    executor = newPool(size, "TimeIndex-Reader-");
+	}
+
+	return executor;
+    }
+
+    /**
+     * Get the pool for read ahead and loading, creating it on first use.
+     */
+    public static synchronized ExecutorService getLoader() {
+	if (loader == null) {
+	    int size = poolSize("timeindexing.loadthreads", Runtime.getRuntime().availableProcessors());
+
+	    loader = newPool(size, "TimeIndex-Loader-");
+	}
+
+	return loader;
+    }
+
+    /**
+     * Get the size of a pool from a system property.
+     */
+    static int poolSize(String property, int size) {
+	String sizeProperty = System.getProperty(property);
+
+	if (sizeProperty != null) {
+	    try {
+		size = Math.max(1, Integer.parseInt(sizeProperty));
+	    } catch (NumberFormatException nfe) {
+		System.err.println("ReadExecutor: bad " + property + " " + sizeProperty);
+	    }
+	}
+
+	return size;
+    }
+
+    /**
+     * Create a pool of size threads.
+     */
+    static ExecutorService newPool(int size, final String name) {
+	return new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS,
+				      new LinkedBlockingQueue(),
+				      new ThreadFactory() {
+					  public Thread newThread(Runnable r) {
+					      Thread thread = new Thread(r, name + nextThreadNo());
+
+					      // don't keep the runtime going
+					      thread.setDaemon(true);
+
+					      return thread;
+					  }
+				      });
+    }
+
+    /**
+     * Get the no for the next thread.
+     */
+    static synchronized int nextThreadNo() {
+	return threadCount++;
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+// RetentionTask.java
+
+package com.timeindexing.index;
+
+import com.timeindexing.time.RelativeTimestamp;
+
+/**
+ * This class is a background thread that removes the
+ * segments of a SegmentedIndex whose data is older
+ * than a retention period.
+ * It only removes segments while the index is activated.
+ */
+public class RetentionTask extends Thread {
+    // The index
+    SegmentedIndex index = null;
+
+    // How long to keep data for
+    RelativeTimestamp retention = null;
+
+    // How often to check, in milliseconds
+    long interval = 0;
+
+    // Is the task running
+    volatile boolean running = false;
+
+    /**
+     * Construct a RetentionTask for a SegmentedIndex.
+     * @param index the index to remove segments from
+     * @param retention how long to keep data for
+     * @param interval how often to check, in milliseconds
+     */
+    public RetentionTask(SegmentedIndex index, RelativeTimestamp retention, long interval) {
+	super(index.getName() + "-RetentionTask");
+	this.index = index;
+	this.retention = retention;
+	this.interval = interval;
+
+	// don't keep the runtime going
+	setDaemon(true);
+    }
+
+    /**
+     * Start the task.
+     */
+    public void start() {
+	running = true;
+	super.start();
+    }
+
+    /**
+     * Stop the task.
+     */
+    public void stopTask() {
+	running = false;
+	interrupt();
+    }
+
+    /**
+     * Check the index every interval milliseconds.
+     */
+    public void run() {
+	while (running) {
+	    try {
+		Thread.sleep(interval);
+	    } catch (InterruptedException ie) {
+		continue;
+	    }
+
+	    if (running && index.isActivated() && ! index.isClosed()) {
+		try {
+		    index.removeOlderThan(retention);
+		} catch (TimeIndexException tie) {
+		    System.err.println("RetentionTask: " + index.getName() + " failed to remove segments: " + tie.getMessage());
+		}
+	    }
+	}
+    }
+}
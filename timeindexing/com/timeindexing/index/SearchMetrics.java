@@ -0,0 +1,116 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+// SearchMetrics.java
+
+package com.timeindexing.index;
+
+/**
+ * The metrics for the searches done by locate() on an index.
+ * A probe is getting an item to look at its timestamp.
+ */
+public class SearchMetrics {
+    // the no of searches
+    long searches = 0;
+
+    // the total no of probes
+    long probes = 0;
+
+    // the most probes in one search
+    long maxProbes = 0;
+
+    // the no of interpolation searches that fell back to binary chop
+    long fallbacks = 0;
+
+    /**
+     * Record a search.
+     * @param probeCount how many items were probed
+     * @param fellBack true if an interpolation search fell back to binary chop
+     */
+    public synchronized void record(long probeCount, boolean fellBack) {
+	searches++;
+	probes += probeCount;
+
+	if (probeCount > maxProbes) {
+	    maxProbes = probeCount;
+	}
+
+	if (fellBack) {
+	    fallbacks++;
+	}
+    }
+
+    /**
+     * Get the no of searches.
+     */
+    public synchronized long getSearchCount() {
+	return searches;
+    }
+
+    /**
+     * Get the total no of probes.
+     */
+    public synchronized long getProbeCount() {
+	return probes;
+    }
+
+    /**
+     * Get the mean no of probes for a search.
+     */
+    public synchronized double getMeanProbes() {
+	if (searches == 0) {
+	    return 0;
+	} else {
+	    return (double)probes / searches;
+	}
+    }
+
+    /**
+     * Get the most probes in one search.
+     */
+    public synchronized long getMaxProbes() {
+	return maxProbes;
+    }
+
+    /**
+     * Get the no of interpolation searches that fell back to binary chop.
+     */
+    public synchronized long getFallbackCount() {
+	return fallbacks;
+    }
+
+    /**
+     * Reset the metrics.
+     */
+    public synchronized void reset() {
+	searches = 0;
+	probes = 0;
+	maxProbes = 0;
+	fallbacks = 0;
+    }
+
+    /**
+     * String
+     */
+    public synchronized String toString() {
+	return "SearchMetrics " +
+	    "searches: " + searches +
+	    " probes: " + probes +
+	    " mean: " + getMeanProbes() +
+	    " max: " + maxProbes +
+	    " fallbacks: " + fallbacks;
+    }
+}
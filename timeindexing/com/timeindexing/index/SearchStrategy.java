@@ -0,0 +1,47 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+// SearchStrategy.java
+
+package com.timeindexing.index;
+
+
+/**
+ * An enumeration of the ways a locate() searches
+ * an index for a Timestamp.
+ */
+public interface SearchStrategy {
+    /**
+     * Binary chop between the first and last positions.
+     */
+    public static final SearchStrategy BINARY = new SearchStrategy() {
+	    public String toString() {
+		return "BINARY";
+	    }
+	};
+
+    /**
+     * Guess the position from the times at the first and last positions,
+     * assuming the items are evenly spaced in time.
+     * This is good for indexes of regularly sampled data.
+     * If the guesses keep missing, a binary chop is done instead.
+     */
+    public static final SearchStrategy INTERPOLATION = new SearchStrategy() {
+	    public String toString() {
+		return "INTERPOLATION";
+	    }
+	};
+}
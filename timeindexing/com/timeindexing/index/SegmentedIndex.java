@@ -0,0 +1,231 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+// SegmentedIndex.java
+
+package com.timeindexing.index;
+
+import com.timeindexing.io.SegmentedIndexIO;
+import com.timeindexing.cache.*;
+import com.timeindexing.time.Timestamp;
+import com.timeindexing.time.ElapsedMillisecondTimestamp;
+import com.timeindexing.time.ElapsedSecondTimestamp;
+import java.util.Properties;
+import java.io.IOException;
+
+/**
+ * An implementation of a segmented Index object.
+ * It is an external index whose index and data are split over
+ * many segment files.  A new segment is started when the current
+ * one gets to the size set by the 'segmentsize' property, or when
+ * the data timestamps cross a boundary of 'segmentperiod' seconds.
+ * <p>
+ * The segments are seen as one index, with the same positions
+ * as an external index.  A manifest holds the first and last times
+ * of each segment, so a locate only searches the segment that
+ * the timestamp is in.
+ * <p>
+ * Whole segments can be removed from the front of the index,
+ * with removeBefore(), when their data is older than a cutoff time.
+ * If the 'retention' property is set, in seconds, a RetentionTask
+ * removes old segments every 'retentioninterval' seconds.
+ */
+public class SegmentedIndex extends ExternalIndex  implements ManagedIndex  {
+    // The task that removes old segments
+    RetentionTask retentionTask = null;
+
+    /**
+     * Create an SegmentedIndex
+     */
+    public SegmentedIndex() throws IndexSpecificationException {
+    }
+
+    /**
+     * Initialize the object.
+     */
+    protected void init() {
+	header = new IncoreIndexHeader(this, indexName);
+	indexCache = new FileIndexCache(this);
+
+	setCachePolicy(new HollowAtDataVolumeRemoveAfterTimeoutPolicy(1024*1024, new ElapsedMillisecondTimestamp(200)));
+
+	setIndexType(IndexType.SEGMENTED);
+
+	indexInteractor = new SegmentedIndexIO(this);
+
+    }
+
+    /**
+     * Called when a SegmentedIndex needs to be opend.
+     */
+    public boolean open(Properties properties) throws IndexSpecificationException, IndexOpenException {
+	boolean opened = super.open(properties);
+
+	startRetention(properties);
+
+	return opened;
+    }
+
+    /**
+     * Called when a SegmentedIndex needs to be created.
+     */
+    public synchronized boolean create(Properties properties) throws IndexSpecificationException, IndexCreateException {
+	boolean created = super.create(properties);
+
+	startRetention(properties);
+
+	return created;
+    }
+
+    /**
+     * Close this index.
+     * The retention task is stopped first.
+     */
+    public synchronized boolean reallyClose() throws IndexCloseException  {
+	if (retentionTask != null) {
+	    retentionTask.stopTask();
+	    retentionTask = null;
+	}
+
+	return super.reallyClose();
+    }
+
+    /**
+     * Start a RetentionTask if the 'retention' property is set.
+     */
+    protected void startRetention(Properties properties) throws IndexSpecificationException {
+	if (properties.containsKey("retention")) {
+	    try {
+		long retention = Long.parseLong(properties.getProperty("retention"));
+		long interval = 60;
+
+		if (properties.containsKey("retentioninterval")) {
+		    interval = Long.parseLong(properties.getProperty("retentioninterval"));
+		}
+
+		retentionTask = new RetentionTask(this, new ElapsedSecondTimestamp(retention), interval * 1000);
+		retentionTask.start();
+
+	    } catch (NumberFormatException nfe) {
+		throw new IndexSpecificationException("Bad 'retention' for SegmentedIndex: " + nfe.getMessage());
+	    }
+	}
+    }
+
+    /**
+     * Remove the segments whose data is all before a cutoff time.
+     * The positions of the remaining items stay the same,
+     * and the first position moves up to the first remaining item.
+     * IndexItems already in use from the removed segments can still be
+     * read until the next removal, when the segments are closed.
+     * @return the new first position
+     */
+    public synchronized long removeBefore(Timestamp cutoff) throws IndexActivationException, IndexCommitException {
+	if (! isActivated()) {
+	    throw new IndexActivationException("Index " + getName() + " must be activated to remove segments");
+	}
+
+	SegmentedIndexIO segmentedIO = (SegmentedIndexIO)indexInteractor;
+
+	try {
+	    if (segmentedIO.removeSegmentsBefore(cutoff) > 0) {
+		long start = segmentedIO.getStartPosition();
+
+		// the index now starts at the first remaining item
+		ManagedFileIndexItem first = (ManagedFileIndexItem)getItem(start);
+
+		header.setFirstOffset(first.getIndexOffset());
+		header.setFirstTime(first.getIndexTimestamp());
+		header.setFirstDataTime(first.getDataTimestamp());
+
+		changed = true;
+
+		commit();
+	    }
+
+	    return segmentedIO.getStartPosition();
+
+	} catch (IOException ioe) {
+	    throw new IndexCommitException("Got IOException message '" + ioe.getMessage() + "' from index " + getURI().toString() + " when removing segments");
+	} catch (GetItemException gie) {
+	    throw new IndexCommitException("Got GetItemException message '" + gie.getMessage() + "' from index " + getURI().toString() + " when removing segments");
+	} catch (IndexClosedException ice) {
+	    throw new IndexCommitException("Index " + getURI().toString() + " closed when removing segments");
+	}
+    }
+
+    /**
+     * Get the no of removed segments whose files are still open.
+     */
+    public int getRemovedSegmentCount() {
+	return ((SegmentedIndexIO)indexInteractor).getRemovedSegmentCount();
+    }
+
+    /**
+     * Get the position of the first item in the index.
+     * This moves up when segments are removed.
+     */
+    public long getFirstPosition() {
+	return ((SegmentedIndexIO)indexInteractor).getStartPosition();
+    }
+
+    /**
+     * Pass the optional create properties on to the index interactor.
+     * The segment files are plain index records and plain data,
+     * so only the segment options and checksums are passed on.
+     */
+    protected void processCreateOptions(Properties properties, IndexProperties indexProperties) {
+	// the size at which a new segment is started
+	if (properties.containsKey("segmentsize")) {
+	    indexProperties.put("segmentsize" , properties.getProperty("segmentsize"));
+	}
+
+	// the time boundary, in seconds, at which a new segment is started
+	if (properties.containsKey("segmentperiod")) {
+	    indexProperties.put("segmentperiod" , properties.getProperty("segmentperiod"));
+	}
+
+	// add checksums to the index records
+	if (properties.containsKey("checksums")) {
+	    indexProperties.put("checksums" , properties.getProperty("checksums"));
+	}
+    }
+
+    /**
+     * Get the first and last positions to search for a Timestamp.
+     * The manifest has the first time of each segment, so
+     * only the segment that holds the Timestamp is searched,
+     * and the fences narrow the search down within the segment.
+     */
+    protected long[] searchBounds(Timestamp t, IndexTimestampSelector selector) {
+	long[] bounds = null;
+
+	if (getLength() > 1) {
+	    bounds = ((SegmentedIndexIO)indexInteractor).segmentBounds(t, selector, getLength());
+	}
+
+	if (bounds == null) {
+	    bounds = new long[] { getFirstPosition(), getLength()-1 };
+	}
+
+	//System.err.println("Index " + getName() + ": search for " + t +  " in " + bounds[0] + " - " + bounds[1]);
+
+	// narrow down the search with the fences
+	return fenceBounds(t, selector, bounds);
+    }
+}
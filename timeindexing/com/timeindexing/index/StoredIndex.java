@@ -20,6 +20,8 @@
 
 package com.timeindexing.index;
 
+import java.util.concurrent.Future;
+
 /**
  * An interface for classes that need to process
  * Indexes that are saved in stores.
@@ -36,9 +38,26 @@ public interface StoredIndex extends ManagedIndex  {
      */
     public long retrieveItem(IndexItem item, long position);
 
+    /**
+     * Retrieve a run of Index Items into the Index.
+     * This is a callback for the IOInteractor.
+     * @param items the IndexItems to add
+     * @param position the position to add the first item at
+     * @param count the no of items to add
+     * @return the no of items in the cache
+     */
+    public long retrieveItems(IndexItem[] items, long position, int count);
+
     /**
      * Read data for an index item
      * given an index position and a DataReference.
      */
     public DataHolderObject readData(long pos, DataReference dataReference);
+
+    /**
+     * Read data for an index item, without waiting for it,
+     * given an index position and a DataReference.
+     * @return a Future for the DataHolderObject
+     */
+    public Future readDataAsync(long pos, DataReference dataReference);
 }
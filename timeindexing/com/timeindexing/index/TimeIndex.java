@@ -26,6 +26,7 @@ import com.timeindexing.index.IndexTimestampSelector;
 import com.timeindexing.time.Timestamp;
 import com.timeindexing.time.TimeSpecifier;
 import com.timeindexing.time.AbsoluteTimestamp;
+import com.timeindexing.time.RelativeTimestamp;
 import com.timeindexing.time.TimeCalculator;
 import com.timeindexing.time.TimestampMapping;
 import com.timeindexing.time.Lifetime;
@@ -47,6 +48,8 @@ import com.timeindexing.event.IndexAddEvent;
 import com.timeindexing.event.IndexAddEventListener;
 
 import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
 import java.net.URI;
 
 /**
@@ -124,7 +127,7 @@ public  class TimeIndex implements Index, IndexView, IndexAddEventListener, Clon
 	}
 
 	// set up the current navigation position of this view 
-	position = new AbsoluteAdjustablePosition(0);
+	position = new AbsoluteAdjustablePosition(indexModel.getFirstPosition());
     }
 
     /**
@@ -422,6 +425,21 @@ public  class TimeIndex implements Index, IndexView, IndexAddEventListener, Clon
 	}
     }
 
+    /**
+     * Get the position of the first item in the Index.
+     * For a selection, this is past 0 if items at the start
+     * of the selection have been removed from the index.
+     */
+    public long getFirstPosition() {
+	if (isSelection) {
+	    long first = indexModel.getFirstPosition() - start.value();
+
+	    return Math.min(Math.max(first, 0), getLength());
+	} else {
+	    return indexModel.getFirstPosition();
+	}
+    }
+
     /**
      * Get an Index Item from the Index.
      */
@@ -450,6 +468,40 @@ public  class TimeIndex implements Index, IndexView, IndexAddEventListener, Clon
 	return getItem(tsm.position());
     }
 
+    /**
+     * Get an Index Item from the Index, without waiting for it.
+     * The item is read by a ReadExecutor thread,
+     * using the positions of this view.
+     * @return a Future for the IndexItem
+     */
+    public Future getItemAsync(final long n) {
+	return ReadExecutor.submit(new Callable() {
+		public Object call() throws Exception {
+		    return getItem(n);
+		}
+	    });
+    }
+
+    /**
+     * Get count Index Items from the Index, starting at position start,
+     * without waiting for them.
+     * The items are read in order by a ReadExecutor thread.
+     * @return a Future for an array of IndexItems
+     */
+    public Future getItemsAsync(final long start, final int count) {
+	return ReadExecutor.submit(new Callable() {
+		public Object call() throws Exception {
+		    IndexItem[] items = new IndexItem[count];
+
+		    for (int i=0; i<count; i++) {
+			items[i] = getItem(start + i);
+		    }
+
+		    return items;
+		}
+	    });
+    }
+
     /**
      * Get the  last time an IndexItem was accessed from the index.
      */
@@ -615,6 +667,80 @@ public  class TimeIndex implements Index, IndexView, IndexAddEventListener, Clon
 	}
     }
 
+    /**
+     * Try and determine the positions associated
+     * with many Timestamps, which must be in time order.
+     */
+    public TimestampMapping[] locateAll(Timestamp[] sorted, IndexTimestampSelector sel, Lifetime lifetime) {
+	if (isSelection) {
+	    TimestampMapping[] mappings = new TimestampMapping[sorted.length];
+
+	    // find the times of the first and last items.
+	    // if we cant get both the items
+	    // then the selection doesn't contain any of the timestamps
+	    // so all the mappings are null
+	    IndexItem first = null;
+	    IndexItem last = null;
+	    Timestamp firstTS =  null;
+	    Timestamp lastTS = null;
+
+	    try {
+		first = getItem(0);
+		last = getItem(getLength()-1);
+	    } catch (GetItemException gie) {
+		return mappings;
+	    } catch (IndexClosedException ice) {
+		return mappings;
+	    } catch (PositionOutOfBoundsException poobe) {
+		return mappings;
+	    }
+
+	    if (sel == IndexTimestampSelector.DATA) {
+		firstTS = first.getDataTimestamp();
+		lastTS = last.getDataTimestamp();
+	    } else {
+		firstTS =  first.getIndexTimestamp();
+		lastTS = last.getIndexTimestamp();
+	    }
+
+	    // the timestamps before and after the selection
+	    int low = 0;
+	    int high = sorted.length;
+
+	    while (low < high && TimeCalculator.lessThan(sorted[low], firstTS)) {
+		mappings[low] = new TimestampMapping(sorted[low], Position.TOO_LOW);
+		low++;
+	    }
+
+	    while (high > low && TimeCalculator.greaterThan(sorted[high-1], lastTS)) {
+		mappings[high-1] = new TimestampMapping(sorted[high-1], Position.TOO_HIGH);
+		high--;
+	    }
+
+	    if (high > low) {
+		// locate the rest in the underlying index, in one go
+		Timestamp[] within = new Timestamp[high - low];
+		System.arraycopy(sorted, low, within, 0, high - low);
+
+		TimestampMapping[] underlyingMappings = indexModel.locateAll(within, sel, lifetime);
+
+		// now map the positions into ones in this selection
+		for (int i=0; i<within.length; i++) {
+		    TimestampMapping underlyingMapping = underlyingMappings[i];
+
+		    if (underlyingMapping != null) {
+			Position selectionPosition = (Position)new AbsoluteAdjustablePosition(underlyingMapping.position()).adjust(- (start.value()));
+			mappings[low + i] = new TimestampMapping(underlyingMapping.timestamp(), selectionPosition);
+		    }
+		}
+	    }
+
+	    return mappings;
+	} else {
+	    return indexModel.locateAll(sorted, sel, lifetime);
+	}
+    }
+
     /**
      * Try and determine the Timestamp associated with the speicifed Position.
      * Uses IndexTimestampSelector.DATA and Lifetime.CONTINUOUS as defaults.
@@ -649,6 +775,55 @@ public  class TimeIndex implements Index, IndexView, IndexAddEventListener, Clon
 	}
     }
 
+    /**
+     * Get the size of the data of the items from start to end.
+     */
+    public long getDataVolume(long start, long end) throws GetItemException, IndexClosedException {
+	if (isSelection) {
+	    if (start < 0 || end >= getLength()) {
+		throw new PositionOutOfBoundsException("Data volume of " + start + " - " + end + " is outside selection " + getName());
+	    }
+
+	    // map selection positions into underlying positions
+	    return indexModel.getDataVolume(start + this.start.value(), end + this.start.value());
+	} else {
+	    return indexModel.getDataVolume(start, end);
+	}
+    }
+
+    /**
+     * Find the last item from start onwards, where the data of
+     * the items from start up to it is no more than a volume.
+     * Returns start - 1 if the item at start is bigger than the volume.
+     */
+    public long locateDataVolume(long start, long volume) throws GetItemException, IndexClosedException {
+	if (isSelection) {
+	    if (start < 0 || start > getLength()) {
+		throw new PositionOutOfBoundsException("Data volume from " + start + " is outside selection " + getName());
+	    }
+
+	    // locate in underlying index, and map the position
+	    // back into this selection
+	    long last = indexModel.locateDataVolume(start + this.start.value(), volume) - this.start.value();
+
+	    return Math.min(last, getLength() - 1);
+	} else {
+	    return indexModel.locateDataVolume(start, volume);
+	}
+    }
+
+    /**
+     * Are the data sizes of the items up to end known,
+     * so getDataVolume() can answer without reading the index.
+     */
+    public boolean hasDataVolume(long end) {
+	if (isSelection) {
+	    return indexModel.hasDataVolume(end + this.start.value());
+	} else {
+	    return indexModel.hasDataVolume(end);
+	}
+    }
+
 
     /**
      * Select an Interval given an Interval object.
@@ -949,7 +1124,7 @@ public  class TimeIndex implements Index, IndexView, IndexAddEventListener, Clon
 
 	if (pos == Position.TOO_LOW) {
 	    System.err.println("TimeIndex: position located = " + pos);
-	    position = new AbsolutePosition(0);
+	    position = new AbsolutePosition(getFirstPosition());
 	    return this;
 	} else if (pos == Position.TOO_HIGH) {
 	    System.err.println("TimeIndex: position located = " + pos);
@@ -975,6 +1150,32 @@ public  class TimeIndex implements Index, IndexView, IndexAddEventListener, Clon
 	return end;
     }
 
+    /**
+     * Remove the items whose data is all before a cutoff time
+     * from the front of the index.
+     * @return the new first position of this IndexView
+     */
+    public long removeBefore(Timestamp cutoff) throws IndexActivationException, IndexCommitException {
+	if (indexModel instanceof ManagedIndex) {
+	    ((ManagedIndex)indexModel).removeBefore(cutoff);
+	}
+
+	return getFirstPosition();
+    }
+
+    /**
+     * Remove the items whose data is all older than a retention period
+     * from the front of the index.
+     * @return the new first position of this IndexView
+     */
+    public long removeOlderThan(RelativeTimestamp retention) throws IndexActivationException, IndexCommitException {
+	if (indexModel instanceof ManagedIndex) {
+	    ((ManagedIndex)indexModel).removeOlderThan(retention);
+	}
+
+	return getFirstPosition();
+    }
+
     /**
      * Move the current navigation position in the IndexView
      * using the TimeSpecifier.
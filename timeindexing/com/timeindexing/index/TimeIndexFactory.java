@@ -68,7 +68,7 @@ public class TimeIndexFactory implements IndexPrimaryEventListener, IndexAddEven
      * Create a new Time Index object given an IndexType.
      * If the index already exists then an IndexView onto
      * that index will be returned.
-     * @param kind One of IndexType.INLINE, IndexType.EXTERNAL, IndexType.SHADOW, IndexType.INCORE.
+     * @param kind One of IndexType.INLINE, IndexType.EXTERNAL, IndexType.SHADOW, IndexType.SEGMENTED, IndexType.INCORE.
      * @param indexFile  the file spec of the index
      */
     public IndexView create(IndexType kind, File indexFile) throws TimeIndexFactoryException, IndexSpecificationException, IndexCreateException {
@@ -83,7 +83,7 @@ public class TimeIndexFactory implements IndexPrimaryEventListener, IndexAddEven
      * Create a new Time Index object given an IndexType.
      * If the index already exists then an IndexView onto
      * that index will be returned.
-     * @param kind One of IndexType.INLINE, IndexType.EXTERNAL, IndexType.SHADOW, IndexType.INCORE.
+     * @param kind One of IndexType.INLINE, IndexType.EXTERNAL, IndexType.SHADOW, IndexType.SEGMENTED, IndexType.INCORE.
      * @param uri the uri spec of the index
      */
     public IndexView create(IndexType kind, URI uri) throws TimeIndexFactoryException, IndexSpecificationException, IndexCreateException {
@@ -98,7 +98,7 @@ public class TimeIndexFactory implements IndexPrimaryEventListener, IndexAddEven
      * Create a new Time Index object given an IndexType.
      * If the index already exists then an IndexView onto
      * that index will be returned.
-     * @param kind One of IndexType.INLINE, IndexType.EXTERNAL, IndexType.SHADOW, IndexType.INCORE.
+     * @param kind One of IndexType.INLINE, IndexType.EXTERNAL, IndexType.SHADOW, IndexType.SEGMENTED, IndexType.INCORE.
      * @param indexMap map of the index needed at creat time, such as  its name.
      */
     public IndexView create(IndexType kind, Map indexMap) throws TimeIndexFactoryException, IndexSpecificationException, IndexCreateException {
@@ -112,7 +112,7 @@ public class TimeIndexFactory implements IndexPrimaryEventListener, IndexAddEven
      * Create a new Time Index object given an IndexType.
      * If the index already exists then an IndexView onto
      * that index will be returned.
-     * @param kind One of IndexType.INLINE, IndexType.EXTERNAL, IndexType.SHADOW, IndexType.INCORE.
+     * @param kind One of IndexType.INLINE, IndexType.EXTERNAL, IndexType.SHADOW, IndexType.SEGMENTED, IndexType.INCORE.
      * @param indexProperties properties of the index needed at creat time, such as  its name.
      */
     public IndexView create(IndexType kind, Properties indexProperties) throws TimeIndexFactoryException, IndexSpecificationException, IndexCreateException {
@@ -347,51 +347,87 @@ public class TimeIndexFactory implements IndexPrimaryEventListener, IndexAddEven
 	 */
 	ManagedIndex newIndex = null;
 
-	switch (kind.value()) {
-	case IndexType.INLINE_VALUE: {
-	    newIndex = new InlineIndex(); 
+	try {
+	    switch (kind.value()) {
+	    case IndexType.INLINE_VALUE: {
+		newIndex = new InlineIndex(); 
 
-	    newIndex.addPrimaryEventListener(this);
+		newIndex.addPrimaryEventListener(this);
 
-	    newIndex.create(indexProperties);
+		newIndex.create(indexProperties);
 
-	    break;
-	}
+		break;
+	    }
 
-	case IndexType.EXTERNAL_VALUE: {
-	    newIndex = new ExternalIndex(); 
+	    case IndexType.EXTERNAL_VALUE: {
+		newIndex = new ExternalIndex(); 
 
-	    newIndex.addPrimaryEventListener(this);
+		newIndex.addPrimaryEventListener(this);
 
-	    newIndex.create(indexProperties);
+		newIndex.create(indexProperties);
 
-	    break;
-	}
+		break;
+	    }
 
-	case IndexType.SHADOW_VALUE: {
-	    newIndex = new ShadowIndex(); 
+	    case IndexType.SHADOW_VALUE: {
+		newIndex = new ShadowIndex(); 
 
-	    newIndex.addPrimaryEventListener(this);
+		newIndex.addPrimaryEventListener(this);
 
-	    newIndex.create(indexProperties);
+		newIndex.create(indexProperties);
 
-	    break;
-	}
+		break;
+	    }
 
-	case IndexType.INCORE_VALUE: {
-	    newIndex = new IncoreIndex();
+	    case IndexType.SEGMENTED_VALUE: {
+		newIndex = new SegmentedIndex(); 
 
-	    newIndex.addPrimaryEventListener(this);
+		newIndex.addPrimaryEventListener(this);
 
-	    newIndex.create(indexProperties);
+		newIndex.create(indexProperties);
 
-	    break;
-	}
+		break;
+	    }
+
+	    case IndexType.INCORE_VALUE: {
+		newIndex = new IncoreIndex();
+
+		newIndex.addPrimaryEventListener(this);
+
+		newIndex.create(indexProperties);
+
+		break;
+	    }
+
+	    default:
+		throw new TimeIndexFactoryException("TimeIndexFactory: Illegal value for kind: " + kind);
+	    }
+	} catch (TimeIndexFactoryException tife) {
+	    // if the create fails
+	    // unlock the index and throw the exception again
+	    if (indexLocked) {
+		TimeIndexDirectory.unlockI(indexURI);
+	    }
+
+	    throw tife;
+	} catch (IndexSpecificationException ise) {
+	    // if the create fails
+	    // unlock the index and throw the exception again
+	    if (indexLocked) {
+		TimeIndexDirectory.unlockI(indexURI);
+	    }
 
-	default:
-	    throw new TimeIndexFactoryException("TimeIndexFactory: Illegal value for kind: " + kind);
+	    throw ise;
+	} catch (IndexCreateException ice) {
+	    // if the create fails
+	    // unlock the index and throw the exception again
+	    if (indexLocked) {
+		TimeIndexDirectory.unlockI(indexURI);
+	    }
+
+	    throw ice;
 	}
-	    
+
 	// get the view
 	IndexView view = newIndex.addView();
 
@@ -659,6 +695,16 @@ public class TimeIndexFactory implements IndexPrimaryEventListener, IndexAddEven
 		    break;
 		}
 
+		case IndexType.SEGMENTED_VALUE: {
+		    newIndex = new SegmentedIndex(); 
+
+		    newIndex.addPrimaryEventListener(this);
+
+		    newIndex.open(indexProperties);
+
+		    break;
+		}
+
 		case IndexType.INCORE_VALUE: {
 		    throw new TimeIndexFactoryException("TimeIndexFactory: Unexpected value for kind: " + kind + ". A stored index cant have this kind??");
 		}
@@ -684,7 +730,7 @@ public class TimeIndexFactory implements IndexPrimaryEventListener, IndexAddEven
      * Create a new Index object from an existing Index object.
      * The type of the new Index is based on a constant, as defined in TimeType.
      * @param index the original index to convert
-     * @param kind One of IndexType.INLINE, IndexType.EXTERNAL, IndexType.INCORE.
+     * @param kind One of IndexType.INLINE, IndexType.EXTERNAL, IndexType.SEGMENTED, IndexType.INCORE.
      * @param indexMap property map of the index needed at create time, such as  its name.
      */
     public IndexView save(Index index, IndexType kind, Map indexMap) throws TimeIndexFactoryException, IndexSpecificationException, IndexCreateException, TimeIndexException {
@@ -698,7 +744,7 @@ public class TimeIndexFactory implements IndexPrimaryEventListener, IndexAddEven
      * Create a new Index object from an existing Index object.
      * The type of the new Index is based on a constant, as defined in TimeType.
      * @param index the original index to convert
-     * @param kind One of IndexType.INLINE, IndexType.EXTERNAL, IndexType.INCORE.
+     * @param kind One of IndexType.INLINE, IndexType.EXTERNAL, IndexType.SEGMENTED, IndexType.INCORE.
      * @param indexProperties properties of the index needed at creat time, such as  its name.
      */
     public IndexView save(Index index, IndexType kind, Properties indexProperties) throws TimeIndexFactoryException, IndexSpecificationException, IndexCreateException, TimeIndexException {
@@ -998,6 +1044,15 @@ public class TimeIndexFactory implements IndexPrimaryEventListener, IndexAddEven
 	eventMulticaster.firePrimaryEvent(ipe);
     }
 
+    /**
+     * A notification that an Index has been recovered when it was opened.
+     */
+    public void recovered(IndexPrimaryEvent ipe) {
+	logger.warning(Clock.time.time() + " " + ipe.getName() + ". RECOVERED" + ". Thread " + Thread.currentThread().getName() );
+
+	eventMulticaster.firePrimaryEvent(ipe);
+    }
+
     /**
      * A notification that an IndexItem has been added to an Index.
      */
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+// TimestampFences.java
+
+package com.timeindexing.index;
+
+/**
+ * The data and index timestamps of every stride'th item of an index,
+ * held in memory as longs of nanoseconds.
+ * <p>
+ * Fence f is the item at position f * stride.
+ * A locate searches the fences first, and then only has to search
+ * the items between two fences.
+ * The fences are filled in as items are added to the index,
+ * and as they are read from the index file.
+ * A fence that is not known yet is UNKNOWN.
+ */
+public class TimestampFences {
+    // The no of items between fences
+    int stride = 0;
+
+    // The data timestamps of the fences
+    long[] dataTimes = null;
+
+    // The index timestamps of the fences
+    long[] indexTimes = null;
+
+    // The no of fences held
+    int count = 0;
+
+    /**
+     * The value of a fence that is not known.
+     */
+    public final static long UNKNOWN = Long.MIN_VALUE;
+
+    /**
+     * The default no of items between fences.
+     */
+    public final static int DEFAULT_STRIDE = 256;
+
+    /**
+     * Construct a TimestampFences with a fence every stride items.
+     */
+    public TimestampFences(int stride) {
+	this.stride = stride;
+	dataTimes = new long[64];
+	indexTimes = new long[64];
+    }
+
+    /**
+     * Get the no of items between fences.
+     */
+    public int getStride() {
+	return stride;
+    }
+
+    /**
+     * Get the no of fences held.
+     * Some of them may be UNKNOWN.
+     */
+    public synchronized int size() {
+	return count;
+    }
+
+    /**
+     * Note the timestamps of an IndexItem at a position.
+     * Only the items at a fence position are kept.
+     */
+    public void add(long position, IndexItem item) {
+	if (position % stride == 0) {
+	    set((int)(position / stride), AbstractIndex.timeOf(item, IndexTimestampSelector.DATA), AbstractIndex.timeOf(item, IndexTimestampSelector.INDEX));
+	}
+    }
+
+    /**
+     * Set the timestamps of a fence.
+     */
+    public synchronized void set(int fence, long dataTime, long indexTime) {
+	if (fence >= dataTimes.length) {
+	    grow(fence + 1);
+	}
+
+	// any fences skipped over are not known
+	for (int f=count; f<fence; f++) {
+	    dataTimes[f] = UNKNOWN;
+	    indexTimes[f] = UNKNOWN;
+	}
+
+	dataTimes[fence] = dataTime;
+	indexTimes[fence] = indexTime;
+
+	count = Math.max(count, fence + 1);
+    }
+
+    /**
+     * Get the timestamp of a fence, as nanoseconds.
+     * @return the timestamp, or UNKNOWN
+     */
+    public synchronized long get(int fence, IndexTimestampSelector selector) {
+	if (fence >= count) {
+	    return UNKNOWN;
+	} else if (selector == IndexTimestampSelector.DATA) {
+	    return dataTimes[fence];
+	} else {
+	    return indexTimes[fence];
+	}
+    }
+
+    /**
+     * Get the fences as pairs of data and index timestamps,
+     * up to the first one that is not known.
+     */
+    public synchronized long[] toArray() {
+	int known = 0;
+
+	while (known < count && dataTimes[known] != UNKNOWN) {
+	    known++;
+	}
+
+	long[] values = new long[known * 2];
+
+	for (int f=0; f<known; f++) {
+	    values[f * 2] = dataTimes[f];
+	    values[f * 2 + 1] = indexTimes[f];
+	}
+
+	return values;
+    }
+
+    /**
+     * Set the fences from pairs of data and index timestamps,
+     * as made by toArray().
+     * Only the fences for the first length items are set.
+     */
+    public synchronized void fromArray(long[] values, long length) {
+	int fences = (int)Math.min((long)(values.length / 2), (length + stride - 1) / stride);
+
+	for (int f=0; f<fences; f++) {
+	    if (f >= count || dataTimes[f] == UNKNOWN) {
+		set(f, values[f * 2], values[f * 2 + 1]);
+	    }
+	}
+    }
+
+    /**
+     * Make the arrays big enough to hold a no of fences.
+     */
+    private void grow(int needed) {
+	int size = Math.max(needed, dataTimes.length * 2);
+
+	long[] newData = new long[size];
+	long[] newIndex = new long[size];
+
+	System.arraycopy(dataTimes, 0, newData, 0, count);
+	System.arraycopy(indexTimes, 0, newIndex, 0, count);
+
+	dataTimes = newData;
+	indexTimes = newIndex;
+    }
+}
@@ -32,6 +32,7 @@ import com.timeindexing.index.DataHolder;
 import com.timeindexing.index.DataHolderObject;
 import com.timeindexing.index.DataReference;
 import com.timeindexing.index.DataReferenceObject;
+import com.timeindexing.index.DataChannelObject;
 import com.timeindexing.index.IndexReferenceDataHolder;
 import com.timeindexing.index.DataTypeDirectory;
 import com.timeindexing.index.IndexProperties;
@@ -55,6 +56,9 @@ import java.io.FileNotFoundException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.CRC32;
 import java.util.LinkedList;
 
 /**
@@ -99,9 +103,6 @@ public abstract class AbstractFileIO extends AbstractIndexIO implements IndexFil
     // Was the Index locked when we tried to activate it
     boolean hasBeenLocked = false;
 
-    // has a timeout happened whilst waiting for some work
-    boolean timeoutHappened = false;
-
     /*
      * The size of a header
      */
@@ -112,12 +113,71 @@ public abstract class AbstractFileIO extends AbstractIndexIO implements IndexFil
      */
     int INDEX_ITEM_SIZE = 52;
 
+    /*
+     * Do the index items have checksums
+     */
+    boolean checksums = false;
+
+    /*
+     * The length in the header, if the index was recovered
+     * when it was opened, or -1 if it was not
+     */
+    long recoveredFrom = -1;
+
 
     /*
      * The size of a flush buffer
      */
     final static int FLUSH_SIZE = 8 * 1024;
 
+    /*
+     * How sure a commit is that the data is on disk
+     */
+    Durability durability = Durability.NONE;
+
+    /*
+     * For group syncs, the most time a commit waits, in milliseconds,
+     * and the most bytes written between syncs.
+     */
+    long syncInterval = DEFAULT_SYNC_INTERVAL;
+    long syncBytes = DEFAULT_SYNC_BYTES;
+
+    /*
+     * The group sync state.
+     * Each commit takes a ticket, and waits until a sync
+     * has completed its ticket.
+     */
+    final Object syncLock = new Object();
+    long syncRequested = 0;
+    long syncCompleted = 0;
+    long syncWindowStart = 0;
+
+    // the bytes written by the IO thread since the last sync
+    volatile long unsyncedBytes = 0;
+
+    // the sync metrics
+    SyncMetrics syncMetrics = new SyncMetrics();
+
+    /*
+     * The default group sync interval, in milliseconds
+     */
+    final static long DEFAULT_SYNC_INTERVAL = 10;
+
+    /*
+     * The default no of bytes between group syncs
+     */
+    final static long DEFAULT_SYNC_BYTES = 4 * 1024 * 1024;
+
+    /*
+     * The most data read in one go when reading ahead
+     */
+    final static int READAHEAD_DATA_SIZE = 1024 * 1024;
+
+    /*
+     * The no of items read in one go when loading an index
+     */
+    final static int LOAD_BLOCK_ITEMS = 64 * 1024;
+
 
     /**
      * Read an index header from the header stream.
@@ -146,6 +206,12 @@ public abstract class AbstractFileIO extends AbstractIndexIO implements IndexFil
 	    versionMajor = (int)indexFile.readByte();
 	    versionMinor = (int)indexFile.readByte();
 
+	    // check we know how to read the records
+	    if (versionMajor != FileType.FIXED_RECORDS &&
+		versionMajor != FileType.COMPACT_RECORDS) {
+		throw new IndexOpenException("Index file version " + versionMajor + "." + versionMinor + " is not supported");
+	    }
+
 	    // get the index ID
 	    indexID = new SID(indexFile.readLong());
 
@@ -209,6 +275,8 @@ public abstract class AbstractFileIO extends AbstractIndexIO implements IndexFil
 	long writeCount = indexChannel.write(headerBuf);
 
 	indexChannelPosition = indexChannel.position();
+	// the first item goes after the header
+	indexFirstPosition = indexChannelPosition;
 
 	
 	//System.err.println("Index Header size = " + writeCount);
@@ -244,6 +312,10 @@ public abstract class AbstractFileIO extends AbstractIndexIO implements IndexFil
      * It assumes the index file is alreayd open for writing.
      */
     public long writeNormal(ManagedIndexItem itemM) throws IOException {
+	if (itemM.getDataAbstraction() instanceof DataChannelObject) {
+	    // the data comes from a channel
+	    return writeChannel(itemM);
+	}
 
 	// cast the item to the correct class
 	ManagedFileIndexItem item = (ManagedFileIndexItem)itemM;
@@ -254,8 +326,8 @@ public abstract class AbstractFileIO extends AbstractIndexIO implements IndexFil
 
 	if (actualSize >= Integer.MAX_VALUE) {
 	    // buffers can only be so big
-	    // check we can allocate one big enough
-		throw new Error("InlineIndexIO: writeItem() has not YET implemented reading of data > " + Integer.MAX_VALUE + ". Actual size is " + actualSize);
+	    // so the data is copied from a channel onto it
+	    return writeChannel(itemM, itemM.getDataChannel(), actualSize);
 	} else {
 
 	    // where are we in the file
@@ -266,6 +338,9 @@ public abstract class AbstractFileIO extends AbstractIndexIO implements IndexFil
 	    // tell the IndexItem where its index is
 	    item.setIndexOffset(new Offset(currentIndexPosition));
 
+	    // record where the index item is
+	    processIndexOffset(currentIndexPosition);
+
 	    // set the data position
 	    long currentDataPosition = alignForData();
 
@@ -284,18 +359,23 @@ public abstract class AbstractFileIO extends AbstractIndexIO implements IndexFil
 	    indexBufWrite.putLong(item.getItemID().value());
 	    indexBufWrite.putLong(item.getAnnotationMetaData());
 
-	    // make it ready for writing
-	    indexBufWrite.flip();
-
-	    // write the index item
-	    count +=  processIndexItem(indexBufWrite);
-	
 	    // make the data ready for writing
             ByteBuffer dataBuf = item.getData();
 
 	    if (dataBuf.position() == dataBuf.limit()) {
 		dataBuf.flip();
 	    }
+
+	    // add the checksums
+	    if (checksums) {
+		RecordChecksum.put(indexBufWrite, RecordChecksum.checksum(dataBuf));
+	    }
+
+	    // make it ready for writing
+	    indexBufWrite.flip();
+
+	    // write the index item
+	    count +=  processIndexItem(indexBufWrite);
 	    
 
             // write the data
@@ -307,68 +387,188 @@ public abstract class AbstractFileIO extends AbstractIndexIO implements IndexFil
     }
 
     /**
-     * Write the contents of the item with a reference.
+     * Write the contents of the item with data from a channel.
+     * The data is copied from the channel a chunk at a time,
+     * so it can be bigger than a ByteBuffer.
+     * Once written, the item refers to its data in the file.
      * It assumes the index file is alreayd open for writing.
      */
-    public long writeReference(ManagedIndexItem itemM) throws IOException {
+    public long writeChannel(ManagedIndexItem itemM) throws IOException {
+	DataChannelObject channelData = (DataChannelObject)itemM.getDataAbstraction();
+
+	return writeChannel(itemM, channelData.getChannel(), channelData.getSize().value());
+    }
+
+    /**
+     * Write the contents of the item with size bytes of data from a channel.
+     * It assumes the index file is alreayd open for writing.
+     */
+    protected long writeChannel(ManagedIndexItem itemM, ReadableByteChannel channel, long actualSize) throws IOException {
 
 	// cast the item to the correct class
 	ManagedFileIndexItem item = (ManagedFileIndexItem)itemM;
 
 	long count = 0;
 
-	long actualSize = REFERENCE_BUFFER_SIZE;
+	// where are we in the file
+	long currentIndexPosition = alignForIndexItem();
 
-	if (actualSize >= Integer.MAX_VALUE) {
-	    // buffers can only be so big
-	    // check we can allocate one big enough
-		throw new Error("InlineIndexIO: writeItem() has not YET implemented reading of data > " + Integer.MAX_VALUE + ". Actual size is " + actualSize);
-	} else {
+	// tell the IndexItem where its index is
+	item.setIndexOffset(new Offset(currentIndexPosition));
 
-	    // where are we in the file
-	    long currentIndexPosition = alignForIndexItem();
+	// record where the index item is
+	processIndexOffset(currentIndexPosition);
 
-	    //System.err.println("P(W) = " + currentIndexPosition);
+	// set the data position
+	long currentDataPosition = alignForData();
 
-	    // tell the IndexItem where its index is
-	    item.setIndexOffset(new Offset(currentIndexPosition));
+	// tell the IndexItem where its data is
+	item.setDataOffset(new Offset(currentDataPosition));
 
-	    // set the data position
-	    long currentDataPosition = alignForData();
+	// clear the index buf
+	indexBufWrite.clear();
 
-	    // tell the IndexItem where its data is
-	    item.setDataOffset(new Offset(currentDataPosition));
+	// fill the buffer
+	indexBufWrite.putLong(item.getIndexTimestamp().value());
+	indexBufWrite.putLong(item.getDataTimestamp().value());
+	indexBufWrite.putLong(currentDataPosition);
+	indexBufWrite.putLong(actualSize);
+	indexBufWrite.putInt(item.getDataType().value());
+	indexBufWrite.putLong(item.getItemID().value());
+	indexBufWrite.putLong(item.getAnnotationMetaData());
 
-	    // clear the index buf
-	    indexBufWrite.clear();
+	long dataChecksum = -1;
 
-	    // fill the buffer
-	    indexBufWrite.putLong(item.getIndexTimestamp().value());
-	    indexBufWrite.putLong(item.getDataTimestamp().value());
-	    indexBufWrite.putLong(currentDataPosition);
-	    indexBufWrite.putLong(REFERENCE_BUFFER_SIZE);
-	    indexBufWrite.putInt(DataType.REFERENCE_VALUE);
-	    indexBufWrite.putLong(item.getItemID().value());
-	    indexBufWrite.putLong(item.getAnnotationMetaData());
+	if (checksums) {
+	    // the data checksum goes in the index item,
+	    // so the data is written first
+	    CRC32 crc = new CRC32();
+
+	    count += processChannel(channel, actualSize, crc);
+
+	    dataChecksum = crc.getValue();
+
+	    RecordChecksum.put(indexBufWrite, dataChecksum);
 
-	    // make it ready for writing
 	    indexBufWrite.flip();
+	    count +=  processIndexItem(indexBufWrite);
 
-	    // write the index item
+	} else {
+	    indexBufWrite.flip();
 	    count +=  processIndexItem(indexBufWrite);
-	
-	    // write the data
-	    IndexReferenceDataHolder reference = (IndexReferenceDataHolder)itemM.getDataAbstraction();
-	    ByteBuffer referenceBuffer = ByteBuffer.allocate(REFERENCE_BUFFER_SIZE);
-	    referenceBuffer.putLong(reference.getIndexID().value());
-	    referenceBuffer.putLong(reference.getIndexItemPosition().value());
-	    referenceBuffer.flip();
 
-	    count += processData(referenceBuffer);
+	    count += processChannel(channel, actualSize, null);
+	}
 
-	    // return how many bytes were written
-	    return count;
+	// the data is in the file now
+	item.setData(new DataReferenceObject(new Offset(currentDataPosition), new Size(actualSize), dataChecksum));
+
+	// return how many bytes were written
+	return count;
+    }
+
+    /**
+     * Copy size bytes from a channel to the data, a chunk at a time.
+     * Each chunk fits in a flush buffer, so it is copied, and
+     * the writer waits for the IO thread when the buffers are full.
+     * @param crc a checksum to add the data to, or null
+     */
+    protected long processChannel(ReadableByteChannel channel, long size, CRC32 crc) throws IOException {
+	ByteBuffer chunk = ByteBuffer.allocate(FLUSH_SIZE);
+	long done = 0;
+	long count = 0;
+
+	while (done < size) {
+	    chunk.clear();
+
+	    if (size - done < chunk.capacity()) {
+		chunk.limit((int)(size - done));
+	    }
+
+	    // fill the chunk
+	    while (chunk.hasRemaining()) {
+		if (channel.read(chunk) < 0) {
+		    throw new IOException("Data channel ended after " + (done + chunk.position()) + " bytes of " + size);
+		}
+	    }
+
+	    chunk.flip();
+
+	    if (crc != null) {
+		RecordChecksum.update(crc, chunk);
+	    }
+
+	    done += chunk.limit();
+
+	    count += processData(chunk);
+	}
+
+	return count;
+    }
+
+    /**
+     * Write the contents of the item with a reference.
+     * It assumes the index file is alreayd open for writing.
+     */
+    public long writeReference(ManagedIndexItem itemM) throws IOException {
+
+	// cast the item to the correct class
+	ManagedFileIndexItem item = (ManagedFileIndexItem)itemM;
+
+	long count = 0;
+
+	// where are we in the file
+	long currentIndexPosition = alignForIndexItem();
+
+	//System.err.println("P(W) = " + currentIndexPosition);
+
+	// tell the IndexItem where its index is
+	item.setIndexOffset(new Offset(currentIndexPosition));
+
+	// record where the index item is
+	processIndexOffset(currentIndexPosition);
+
+	// set the data position
+	long currentDataPosition = alignForData();
+
+	// tell the IndexItem where its data is
+	item.setDataOffset(new Offset(currentDataPosition));
+
+	// clear the index buf
+	indexBufWrite.clear();
+
+	// fill the buffer
+	indexBufWrite.putLong(item.getIndexTimestamp().value());
+	indexBufWrite.putLong(item.getDataTimestamp().value());
+	indexBufWrite.putLong(currentDataPosition);
+	indexBufWrite.putLong(REFERENCE_BUFFER_SIZE);
+	indexBufWrite.putInt(DataType.REFERENCE_VALUE);
+	indexBufWrite.putLong(item.getItemID().value());
+	indexBufWrite.putLong(item.getAnnotationMetaData());
+
+	// build the reference
+	IndexReferenceDataHolder reference = (IndexReferenceDataHolder)itemM.getDataAbstraction();
+	ByteBuffer referenceBuffer = ByteBuffer.allocate(REFERENCE_BUFFER_SIZE);
+	referenceBuffer.putLong(reference.getIndexID().value());
+	referenceBuffer.putLong(reference.getIndexItemPosition().value());
+	referenceBuffer.flip();
+
+	// add the checksums
+	if (checksums) {
+	    RecordChecksum.put(indexBufWrite, RecordChecksum.checksum(referenceBuffer));
 	}
+
+	// make it ready for writing
+	indexBufWrite.flip();
+
+	// write the index item
+	count +=  processIndexItem(indexBufWrite);
+	
+	// write the data
+	count += processData(referenceBuffer);
+
+	// return how many bytes were written
+	return count;
     }
 
     /**
@@ -387,6 +587,15 @@ public abstract class AbstractFileIO extends AbstractIndexIO implements IndexFil
      */
     protected abstract long alignForData() throws IOException ;
 
+    /**
+     * Processing of the offset of an index item.
+     * This is done differently for each type of index.
+     * By default, there is nothing to do.
+     */
+    protected long processIndexOffset(long indexOffset) throws IOException {
+	return 0;
+    }
+
     /**
      * Processing of the idnex item.
      */
@@ -420,6 +629,12 @@ public abstract class AbstractFileIO extends AbstractIndexIO implements IndexFil
 
 	//System.err.println("bufferedWrite: ring = " + ring);
 
+	if (buffer.remaining() > ring.getBufferSize()) {
+	    // the buffer is bigger than a flush buffer,
+	    // so don't copy it, write it with the pending data
+	    return gatheringWrite(buffer, channel, ring);
+	}
+
 	// get the current buffer from the ring
 	flushBuffer = ring.current();
 
@@ -451,10 +666,7 @@ public abstract class AbstractFileIO extends AbstractIndexIO implements IndexFil
                 flushBuffer.put(slice);
                 
                 // this should have filled the flushBuffer
-		// lock it
-                // and then flush the buffer
-
-		ring.lock();
+                // so flush the buffer
 
                 written += flushBuffer(channel, flushBuffer, ring);
 
@@ -477,16 +689,71 @@ public abstract class AbstractFileIO extends AbstractIndexIO implements IndexFil
     }
 
 
+    /**
+     * Write a large buffer of data.
+     * The pending data in the current flush buffer and the buffer
+     * itself are written out together by the IO thread,
+     * in one gathering write, so the buffer is never copied.
+     * The caller may reuse the buffer as soon as this returns,
+     * so this waits until the IO thread has written it,
+     * but not for any writes requested after it.
+     * Returns how many bytes were written,
+     * including the pending data.
+     */
+    protected long gatheringWrite(ByteBuffer buffer, FileChannel channel, ByteBufferRing ring) throws IOException {
+	long written = 0;
+	long request = 0;
+
+	// get the current buffer from the ring
+	ByteBuffer flushBuffer = ring.current();
+
+	// take a view of the buffer, so the
+	// IO thread has its own position and limit
+	ByteBuffer payload = buffer.duplicate();
+
+	// the whole of the buffer has been taken
+	buffer.position(buffer.limit());
+
+	if (flushBuffer.position() > 0) {
+	    // there is pending data, so lock the flush buffer.
+	    // it is unlocked by the IO thread after the write
+	    ring.lock();
+	    flushBuffer.flip();
+
+	    written = flushBuffer.remaining() + payload.remaining();
+
+	    request = requestWriteWork(channel, new ByteBuffer[] { flushBuffer, payload }, ring);
+	} else {
+	    // there is no pending data, so just write the buffer
+	    written = payload.remaining();
+
+	    request = requestWriteWork(channel, new ByteBuffer[] { payload }, null);
+	}
+
+	// the payload is still the caller's data,
+	// so wait for it to go out
+	awaitWriteWork(request);
+
+	return written;
+    }
+
     static int count = 0;
 
     /**
      * Actually flush the buffer out.
+     * The flushBuffer must be the current buffer of the ring.
+     * If it has any data in it, it is locked and passed
+     * to the IO thread, which unlocks it after the write.
      * Returns how man bytes were written.
      */
-    protected synchronized long flushBuffer(FileChannel channel, ByteBuffer flushBuffer, ByteBufferRing ring)  throws IOException {
+    protected long flushBuffer(FileChannel channel, ByteBuffer flushBuffer, ByteBufferRing ring)  throws IOException {
 	long written = 0;
 
 	if (flushBuffer.position() > 0) {
+	    // lock it, which may wait for
+	    // the IO thread to free a buffer
+	    ring.lock();
+
 	    flushBuffer.flip();
 
 	    /* WAS
@@ -500,10 +767,6 @@ public abstract class AbstractFileIO extends AbstractIndexIO implements IndexFil
 	    //System.err.println("Added WriteRequest [" + (count++) + "] " + channel + " for " + flushBuffer);
 
 	    //System.err.println("flushBuffer() writeQueue length = " + writeQueue.size());
-
-	    timeoutHappened = false;
-	    notifyAll();
-
 	}
 
 	return written;
@@ -514,20 +777,114 @@ public abstract class AbstractFileIO extends AbstractIndexIO implements IndexFil
      */
     public ManagedIndexItem getItem(Position position, boolean doLoadData) throws IOException {
 	return getItem(position.value(), doLoadData);  // sclayman 7/9/04
-	/*
-	  requestReadWork(position, doLoadData);
+	// asynchronous reads are done by the index, with a ReadExecutor
+    }
+
+    /**
+     * Get the item at index position Position.
+     */
+    public abstract ManagedIndexItem getItem(long position, boolean doLoadData) throws IOException ;
 
-	notifyAll();
+    /**
+     * Read ahead a run of items, starting at index position Position,
+     * and post them into the index.
+     * The records, and their data, are read with as few reads as possible.
+     * This index does not read ahead, so no items are read.
+     * @return the no of items read
+     */
+    public int readAhead(long position, int count, boolean doLoadData) throws IOException {
+	return 0;
+    }
 
-	ManagedIndexItem item = awaitItem(position);
-	*/
+    /**
+     * Read the timestamp fences of the index from its fence file.
+     * The fence file is a sidecar to the header, with the same
+     * layout as a position offset file.
+     * @return the fences, or null if there is no fence file for this index
+     */
+    public long[] readFences() throws IOException {
+	return readSidecar(".tif", FileType.TIMESTAMP_FENCES);
+    }
 
+    /**
+     * Write the timestamp fences of the index to its fence file.
+     * The file is written directly, without going via the I/O thread.
+     */
+    public void writeFences(long[] fences) throws IOException {
+	writeSidecar(".tif", FileType.TIMESTAMP_FENCES, fences);
     }
 
     /**
-     * Get the item at index position Position.
+     * Read the running totals of the data sizes of the index
+     * from its volume file.
+     * The volume file is a sidecar to the header, like the fence file.
+     * @return the totals, or null if there is no volume file for this index
      */
-    public abstract ManagedIndexItem getItem(long position, boolean doLoadData) throws IOException ;
+    public long[] readVolumes() throws IOException {
+	return readSidecar(".tiv", FileType.DATA_VOLUMES);
+    }
+
+    /**
+     * Write the running totals of the data sizes of the index
+     * to its volume file.
+     */
+    public void writeVolumes(long[] volumes) throws IOException {
+	writeSidecar(".tiv", FileType.DATA_VOLUMES, volumes);
+    }
+
+    /**
+     * Read the longs in a sidecar file of the header.
+     * @return the values, or null if there is no such file for this index
+     */
+    protected long[] readSidecar(String extension, byte fileType) throws IOException {
+	PositionOffsetIO sidecarInteractor = new PositionOffsetIO(this, extension, fileType);
+
+	if (! sidecarInteractor.open(headerFileName, indexID, false)) {
+	    return null;
+	}
+
+	try {
+	    long[] values = new long[(int)sidecarInteractor.length()];
+	    int count = sidecarInteractor.getOffsets(values);
+
+	    if (count < values.length) {
+		// the file is short
+		long[] got = new long[count];
+		System.arraycopy(values, 0, got, 0, count);
+		return got;
+	    } else {
+		return values;
+	    }
+	} finally {
+	    sidecarInteractor.close();
+	}
+    }
+
+    /**
+     * Write some longs to a sidecar file of the header.
+     * The file is written directly, without going via the I/O thread.
+     */
+    protected void writeSidecar(String extension, byte fileType, long[] values) throws IOException {
+	PositionOffsetIO sidecarInteractor = new PositionOffsetIO(this, extension, fileType);
+
+	if (! sidecarInteractor.create(headerFileName, indexID)) {
+	    return;
+	}
+
+	try {
+	    ByteBuffer sidecarBuf = ByteBuffer.allocate(values.length * 8);
+
+	    for (int v=0; v<values.length; v++) {
+		sidecarBuf.putLong(values[v]);
+	    }
+
+	    sidecarBuf.flip();
+
+	    sidecarInteractor.appendBlock(sidecarBuf);
+	} finally {
+	    sidecarInteractor.close();
+	}
+    }
 
     /**
      * Read the contents of the item
@@ -548,35 +905,181 @@ public abstract class AbstractFileIO extends AbstractIndexIO implements IndexFil
      * the data needs to be read at a later time, otherwise
      */
     public ManagedIndexItem readItem(long startOffset, boolean withData) throws IOException {
+	// read an IndexItem
+	// readIndexItem() goes to the right place in the index
+	ByteBuffer itemBuf = readIndexItem(startOffset);
+
+	return decodeItem(startOffset, itemBuf, withData, null, 0);
+    }
+
+    /**
+     * Get the offset of the record of the item at a position.
+     * The record is found from the index files,
+     * and not from the items in the index.
+     */
+    public abstract long recordOffset(long position) throws IOException;
+
+    /**
+     * Verify a run of items, from a position, straight from the files.
+     * If the index can, the records are read with one positional read,
+     * otherwise they are read one at a time.
+     * Nothing is posted into the index.
+     * @param failures the message for each item that fails is put here,
+     * and the others are set to null
+     */
+    public void verifyRecords(long position, int count, String[] failures) {
+	long offset = -1;
+	ByteBuffer records = null;
+
+	try {
+	    offset = recordOffset(position);
+	    records = readIndexRecords(offset, count);
+	} catch (IOException ioe) {
+	    // the records are read one at a time
+	    offset = -1;
+	}
+
+	int got = (records == null ? 0 : records.limit() / INDEX_ITEM_SIZE);
+
+	for (int k=0; k<count; k++) {
+	    failures[k] = null;
+
+	    try {
+		if (offset < 0) {
+		    // the next record is found from its position
+		    offset = recordOffset(position + k);
+		}
+
+		if (k < got) {
+		    ByteBuffer itemBuf = records.duplicate();
+		    itemBuf.limit((k + 1) * INDEX_ITEM_SIZE);
+		    itemBuf.position(k * INDEX_ITEM_SIZE);
+
+		    offset = verifyRecord(offset, itemBuf.slice());
+		} else {
+		    offset = verifyRecord(offset);
+		}
+	    } catch (IOException ioe) {
+		failures[k] = ioe.getMessage();
+		offset = -1;
+	    }
+	}
+    }
+
+    /**
+     * Read a run of index records, from a byte offset, in one read.
+     * This index can't, as its records are not next to each other.
+     * @return a buffer with the records, or null if there are none
+     */
+    protected ByteBuffer readIndexRecords(long offset, int count) throws IOException {
+	return null;
+    }
+
+    /**
+     * Verify the item whose record is at an offset, straight from the files.
+     * The record is read with a positional read, or from the memory map,
+     * and the data is read a chunk at a time, so it can be any size.
+     * Both are checked against their checksums, if the index has them,
+     * otherwise the item is only checked for readability.
+     * Nothing is posted into the index.
+     * @return the offset of the record of the next item
+     * @throws IOException if the item can't be read, or fails a check
+     */
+    public long verifyRecord(long offset) throws IOException {
+	return verifyRecord(offset, readIndexItem(offset));
+    }
+
+    /**
+     * Verify the item whose record is at an offset,
+     * given the record.
+     * @return the offset of the record of the next item
+     * @throws IOException if the item can't be read, or fails a check
+     */
+    protected long verifyRecord(long offset, ByteBuffer itemBuf) throws IOException {
+	long dataChecksum = -1;
+
+	if (checksums) {
+	    if (! RecordChecksum.checkRecord(itemBuf)) {
+		throw new IOException("Index Item checksum failed: position = " + offset);
+	    }
+
+	    dataChecksum = RecordChecksum.getDataChecksum(itemBuf);
+	}
+
+	// the data offset and the data size
+	// follow the index and data timestamps
+	int start = itemBuf.position();
+	long dataOffset = itemBuf.getLong(start + 16);
+	long dataSize = itemBuf.getLong(start + 24);
+
+	if (dataOffset < 0 || dataSize < 0 || dataOffset + dataSize > dataLimit()) {
+	    throw new IOException("Index Item Data not in the data file: offset = " + dataOffset + " size = " + dataSize);
+	}
+
+	// the data is checked by the read that gets the last of it
+	ItemDataChannel channel = new ItemDataChannel(this, dataOffset, dataSize, dataChecksum);
+	ByteBuffer chunk = ByteBuffer.allocate((int)Math.min(dataSize, 64 * 1024));
+
+	while (channel.read(chunk) >= 0) {
+	    chunk.clear();
+	}
+
+	return nextRecordOffset(offset, dataOffset + dataSize);
+    }
+
+    /**
+     * Get the offset of the record which follows the record at an offset.
+     * @param dataEnd the offset just after the data of the record
+     */
+    protected abstract long nextRecordOffset(long offset, long dataEnd) throws IOException;
+
+    /**
+     * Decode the contents of an item from a buffer that holds its record.
+     * If the data of the item is in the window, it is taken from there,
+     * otherwise it is read from the file.
+     * @param startOffset the byte offset in the file of the item
+     * @param itemBuf the record of the item
+     * @param withData read the data for this IndexItem if withData is true,
+     * the data needs to be read at a later time, otherwise
+     * @param window some data already read from the file, or null
+     * @param windowStart the offset of the window in the file
+     */
+    protected ManagedIndexItem decodeItem(long startOffset, ByteBuffer itemBuf, boolean withData, ByteBuffer window, long windowStart) throws IOException {
 	// tmp var for reading index item values
-	Timestamp indexTS = null;
-	Timestamp dataTS = null;
+	// the timestamps are kept as they are encoded,
+	// and only decoded if they are asked for
+	long indexTS = 0;
+	long dataTS = 0;
 	DataAbstraction data = null;
 	long offset = -1;
 	long size = 0;
 	int type = DataType.NOTSET_VALUE;
 	long id = 0;
 	long annotationValue = 0;
+	long dataChecksum = -1;
 	ManagedFileIndexItem indexItem = null;
 	
-	// goto an offset in the index
-	seekToIndex(startOffset);
-
 	// where are we in the index file
-	long currentIndexPosition = indexChannelPosition;
+	long currentIndexPosition = startOffset;
+
+	// check the record, if it has checksums
+	if (checksums) {
+	    if (! RecordChecksum.checkRecord(itemBuf)) {
+		throw new IOException("Index Item checksum failed: position = " + currentIndexPosition);
+	    }
 
-	// read an IndexItem into indexBufRead
-	readIndexItem(currentIndexPosition);
+	    dataChecksum = RecordChecksum.getDataChecksum(itemBuf);
+	}
 
 	// we read the right amount, so carry on
 
-	indexTS = timestampDecoder.decode(indexBufRead.getLong());
-	dataTS = timestampDecoder.decode(indexBufRead.getLong());
-	offset = indexBufRead.getLong();
-	size = indexBufRead.getLong();
-	type = indexBufRead.getInt();
-	id = indexBufRead.getLong();
-	annotationValue = indexBufRead.getLong();
+	indexTS = itemBuf.getLong();
+	dataTS = itemBuf.getLong();
+	offset = itemBuf.getLong();
+	size = itemBuf.getLong();
+	type = itemBuf.getInt();
+	id = itemBuf.getLong();
+	annotationValue = itemBuf.getLong();
 
 	if (type == DataType.REFERENCE_VALUE) {
 	    data = readReferenceData(offset, size);
@@ -584,8 +1087,8 @@ public abstract class AbstractFileIO extends AbstractIndexIO implements IndexFil
 	    ((IndexReferenceDataHolder)data).setIndexItem(indexItem);
 
 	} else {
-	    data = readNormalData(offset, size, withData);
-	    indexItem = new FileIndexItem(dataTS, indexTS, data, DataTypeDirectory.find(type), new SID(id), annotationValue);
+	    data = readNormalData(offset, size, withData, dataChecksum, window, windowStart);
+	    indexItem = new FileIndexItem(dataTS, indexTS, data, data.getSize(), DataTypeDirectory.find(type), new SID(id), annotationValue);
 
 	}
 
@@ -604,17 +1107,47 @@ public abstract class AbstractFileIO extends AbstractIndexIO implements IndexFil
 
     /**
      * Read some data, from a specified offset for a number of bytes.
+     * If the data is read now, it is checked against the checksum,
+     * otherwise the checksum is kept in the DataReferenceObject
+     * and the data is checked when it is read.
+     * @param checksum the checksum of the data, or -1 if there isn't one
+     */
+    protected DataAbstraction readNormalData(long offset, long size, boolean withData, long checksum) throws IOException{
+	return readNormalData(offset, size, withData, checksum, null, 0);
+    }
+
+    /**
+     * Read some data, from a specified offset for a number of bytes.
+     * If all of the data is in the window, it is a view of the window,
+     * so it does not have to be read again.
+     * @param checksum the checksum of the data, or -1 if there isn't one
+     * @param window some data already read from the file, or null
+     * @param windowStart the offset of the window in the file
      */
-    protected DataAbstraction readNormalData(long offset, long size, boolean withData) throws IOException{
+    protected DataAbstraction readNormalData(long offset, long size, boolean withData, long checksum, ByteBuffer window, long windowStart) throws IOException{
 	DataAbstraction data = null;
 
-	if (withData) {	// go and get the data now, if it's needed
+	if (withData && window != null && offset >= windowStart && offset + size <= windowStart + window.limit()) {
+	    // the data has been read ahead
+	    ByteBuffer buffer = window.duplicate();
+	    buffer.limit((int)(offset - windowStart + size));
+	    buffer.position((int)(offset - windowStart));
+	    buffer = buffer.slice();
+
+	    checkData(buffer, offset, checksum);
+
+	    data = new DataHolderObject(buffer, new Size(size));
+
+	} else if (withData && size < Integer.MAX_VALUE) {	// go and get the data now, if it's needed
+	    // data bigger than a ByteBuffer is always left in the file
 	    // TODO: add code that checks how big the data
 	    // actually is.
 	    // only read it if the index isn't too big
 	    // and the data isn't too big
 	    ByteBuffer buffer = readData(offset, size);
 
+	    checkData(buffer, offset, checksum);
+
 	    // we got the data successfully, so build a DataHolderObject
 	    //System.err.println("AbstractIndexIO: readNormalData. size=" + size);
 	    data = new DataHolderObject(buffer, new Size(size));
@@ -623,7 +1156,7 @@ public abstract class AbstractFileIO extends AbstractIndexIO implements IndexFil
 
 	    //System.err.println("AbstractIndexIO: readNormalData. DataReferenceObject offset=" + offset + " size="+size);
 	    // no need to get the  data, so build a DataReferenceObject
-	    data = new DataReferenceObject(new Offset(offset), new Size(size));
+	    data = new DataReferenceObject(new Offset(offset), new Size(size), checksum);
 	}
 
 	return data;
@@ -666,28 +1199,43 @@ public abstract class AbstractFileIO extends AbstractIndexIO implements IndexFil
     public ByteBuffer readIndexItem(long offset) throws IOException {
 	int readCount = 0;
 
-
-	// goto a position in the index
-	seekToIndex(offset);
-
-	//System.err.println("P(R) = " + indexChannel.position());
-
-	// clear the index buf
-	indexBufRead.clear();
+	// each read gets its own buffer
+	// so concurrent readers don't share one
+	ByteBuffer itemBuf = ByteBuffer.allocate(INDEX_ITEM_SIZE);
 
 	// read a block of data
-	if ((readCount = indexChannel.read(indexBufRead)) != INDEX_ITEM_SIZE) {
+	// this is a positional read, so the index channel does not move
+	if ((readCount = readFully(indexChannel, itemBuf, offset)) != INDEX_ITEM_SIZE) {
 	    throw new IOException("Index Item too short: position = " +
 				  offset + " read count = " + readCount);
 	}
 
 	// make buffer ready to get data from
-	indexBufRead.flip();
+	itemBuf.flip();
+
+	return itemBuf;
+    }
+
+    /**
+     * Read from a channel into a buffer, starting at a specified position.
+     * The read does not depend on, or change, the position of the channel,
+     * so many threads can read from one channel at the same time.
+     * @return the number of bytes read
+     */
+    protected int readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+	int total = 0;
+	int readCount = 0;
+
+	while (buffer.hasRemaining()) {
+	    if ((readCount = channel.read(buffer, position + total)) < 0) {
+		// hit EOF
+		break;
+	    }
 
-	// update indexChannelPosition
-	indexChannelPosition += readCount;
+	    total += readCount;
+	}
 
-	return indexBufRead;
+	return total;
     }
 
     /**
@@ -713,18 +1261,15 @@ public abstract class AbstractFileIO extends AbstractIndexIO implements IndexFil
 	    throw new Error("InlineIndexIO: readItem() can;t have size < 0");
 	} else if (size >= Integer.MAX_VALUE) {
 	    // buffers can only be so big
-	    // check we can allocate one big enough
-		throw new Error("InlineIndexIO: readItem() has not YET implemented reading of data > " + Integer.MAX_VALUE + ". Actual size is " + size);
+	    // so the data has to be read from a channel
+	    throw new IOException("Index Item Data too big for a buffer: size = " + size + ". Use a data channel");
 	} else if (size <= 4096) {
 	    // the data is less than a page size so read it
 	    // allocate a buffer
 	    buffer = ByteBuffer.allocate((int)size);
 
-	    // seek to the right place
-	    seekToData(offset);
-
 	    // read some data
-	    readCount = readDataIntoBuffer(buffer, size);
+	    readCount = readDataIntoBuffer(buffer, offset, size);
 
 	    // check got correct amount
 	    if (readCount == size) {
@@ -742,7 +1287,6 @@ public abstract class AbstractFileIO extends AbstractIndexIO implements IndexFil
 	    // so its better to
 	    // getting data using memory mapping
 	    buffer = memoryMapData(offset, size);
-	    seekToData(offset+size);
 	    return buffer;
 
 	}
@@ -750,9 +1294,10 @@ public abstract class AbstractFileIO extends AbstractIndexIO implements IndexFil
 
 
     /**
-     * Actually read in the data.
+     * Actually read in the data, starting at a specified offset.
+     * This should be a positional read, which does not move the channel.
      */
-    protected abstract long readDataIntoBuffer(ByteBuffer buffer, long size) throws IOException;
+    protected abstract long readDataIntoBuffer(ByteBuffer buffer, long offset, long size) throws IOException;
 
     /**
      * Read some data, given a DataReference.
@@ -761,7 +1306,25 @@ public abstract class AbstractFileIO extends AbstractIndexIO implements IndexFil
 	long offset = ref.getOffset().value();
 	long size = ref.getSize().value();
 
-	return readData(offset, size);	
+	ByteBuffer buffer = readData(offset, size);
+
+	// check the data, if the reference has a checksum
+	if (ref instanceof DataReferenceObject) {
+	    checkData(buffer, offset, ((DataReferenceObject)ref).getChecksum());
+	}
+
+	return buffer;
+    }
+
+    /**
+     * Check some data against its checksum.
+     * @param checksum the checksum of the data, or -1 if there isn't one
+     * @throws IOException if the checksum does not match
+     */
+    protected void checkData(ByteBuffer buffer, long offset, long checksum) throws IOException {
+	if (checksum >= 0 && RecordChecksum.checksum(buffer) != checksum) {
+	    throw new IOException("Index Item Data checksum failed: offset = " + offset + " size = " + buffer.remaining());
+	}
     }
 
     /**
@@ -808,12 +1371,129 @@ public abstract class AbstractFileIO extends AbstractIndexIO implements IndexFil
      * @param size the number of bytes to read
      */
     public boolean skipData(long offset, long size) throws IOException {
-	// skip to right place
-	seekToData(offset + size);
-
+	// reads are positional, so there is
+	// no need to move to the right place
 	return true;
     }
 
+    /**
+     * Get a channel onto some data, given a DataReference.
+     * The data is read from the channel a chunk at a time,
+     * so it can be bigger than a ByteBuffer.
+     */
+    public ReadableByteChannel openDataChannel(DataReference ref) throws IOException {
+	long checksum = -1;
+
+	if (ref instanceof DataReferenceObject) {
+	    checksum = ((DataReferenceObject)ref).getChecksum();
+	}
+
+	long offset = ref.getOffset().value();
+	long size = ref.getSize().value();
+
+	ensureDataWritten(offset + size);
+
+	return new ItemDataChannel(this, offset, size, checksum);
+    }
+
+    /**
+     * Write some data straight to a channel, given an offset and a size.
+     * The data of many items can be written in one go,
+     * if they are next to each other in the file.
+     * The data is not checked against any checksums,
+     * so the data of an index with checksums should be read instead.
+     * @return the number of bytes written
+     */
+    public long transferData(long offset, long size, WritableByteChannel channel) throws IOException {
+	ensureDataWritten(offset + size);
+
+	long writeCount = copyData(offset, size, channel);
+
+	if (writeCount != size) {
+	    throw new IOException("Index Item Data too short: position = " +
+				  offset + " expected " +
+				  size + " got transfer count = " + writeCount);
+	}
+
+	return writeCount;
+    }
+
+    /**
+     * Copy some data to a channel, a chunk at a time.
+     * Subclasses which have the data in a plain file
+     * use transferFully() instead.
+     * @return the number of bytes written
+     */
+    protected long copyData(long offset, long size, WritableByteChannel channel) throws IOException {
+	ByteBuffer buffer = ByteBuffer.allocate((int)Math.min(size, FLUSH_SIZE));
+	long total = 0;
+
+	while (total < size) {
+	    int count = (int)Math.min(buffer.capacity(), size - total);
+
+	    buffer.clear();
+	    buffer.limit(count);
+
+	    readDataIntoBuffer(buffer, offset + total, count);
+	    buffer.flip();
+
+	    while (buffer.hasRemaining()) {
+		total += channel.write(buffer);
+	    }
+	}
+
+	return total;
+    }
+
+    /**
+     * Transfer some data from a file channel to another channel,
+     * starting at a specified position.
+     * Like readFully(), the transfer does not change the position
+     * of the file channel.
+     * @return the number of bytes transferred
+     */
+    protected long transferFully(FileChannel from, long position, long size, WritableByteChannel to) throws IOException {
+	long total = 0;
+	long count = 0;
+
+	while (total < size) {
+	    if ((count = from.transferTo(position + total, size - total, to)) <= 0) {
+		// hit EOF
+		break;
+	    }
+
+	    total += count;
+	}
+
+	return total;
+    }
+
+    /**
+     * Make sure the data up to an offset is in the file,
+     * as it may still be in the flush buffers or the write queue.
+     * This waits for the writes up to the flush, but not for
+     * any that a writer adds after it.
+     */
+    protected void ensureDataWritten(long end) throws IOException {
+	if (end > dataLimit()) {
+	    long request = 0;
+
+	    synchronized (this) {
+		flush();
+
+		// the data is in this request, or one before it
+		request = writeQueue.lastRequest();
+	    }
+
+	    awaitWriteWork(request);
+	}
+    }
+
+    /**
+     * Get the offset of the end of the data that is in the file.
+     */
+    protected abstract long dataLimit() throws IOException;
+
     /**
      * Read some data, given a DataReference
      * and return it as a DataHolderObject.
@@ -837,13 +1517,20 @@ public abstract class AbstractFileIO extends AbstractIndexIO implements IndexFil
 	gotoFirstPosition();
 
 	if (loadStyle == LoadStyle.ALL) {
-	    indexAppendPosition = loadAll(true);
-	    setAppendPosition();
+	    loadAll(true);
+	    // reads are positional, so the append position is
+	    // worked out from the last item
+	    calculateAppendPosition();
 	    return indexAppendPosition;
 
 	} else if (loadStyle == LoadStyle.HOLLOW) {
-	    indexAppendPosition = loadAll(false);
-	    setAppendPosition();
+	    loadAll(false);
+	    calculateAppendPosition();
+	    return indexAppendPosition;
+
+	} else if (loadStyle == LoadStyle.PARALLEL) {
+	    loadParallel();
+	    calculateAppendPosition();
 	    return indexAppendPosition;
 
 	} else if (loadStyle == LoadStyle.NONE) {
@@ -862,8 +1549,19 @@ public abstract class AbstractFileIO extends AbstractIndexIO implements IndexFil
 	}
     }
 
+    /**
+     * Load all of the items, and none of the data, with many threads.
+     * Only indexes whose records are all the same size can be split
+     * up, so by default the index is loaded as HOLLOW.
+     */
+    protected void loadParallel() throws IOException {
+	loadAll(false);
+    }
+
     /**
      * Load all of the items.
+     * The items are read a block of LOAD_BLOCK_ITEMS at a time,
+     * with readAhead(), if the index can do that.
      * @return the position in the index after loading all the items
      */
     private long loadAll(boolean doLoadData) throws IOException {
@@ -881,25 +1579,70 @@ public abstract class AbstractFileIO extends AbstractIndexIO implements IndexFil
 	    // the index has zero items
 	    // so there is nothing to read
 	    gotoFirstPosition();
-	} else {
-	    for (count=0; count < itemCount; count++) {
-		// read an item
-		item =  readItem(position, doLoadData);
-		//item = getItem(count, doLoadData);
+	    return indexChannelPosition;
+	}
 
-		// set the position for next time
-		position = indexChannelPosition;
+	// read the items a block at a time
+	while (count < itemCount) {
+	    int got = readAhead(count, (int)Math.min(LOAD_BLOCK_ITEMS, itemCount - count), doLoadData);
 
-		// post the read item into the index
-		// this is the Index callback
-		getIndex().retrieveItem(item, count);
+	    if (got == 0) {
+		break;
+	    } else {
+		count += got;
 	    }
 	}
 
+	if (count == itemCount) {
+	    // all the items were read in blocks
+	    return indexChannelPosition;
+	} else if (count > 0) {
+	    // carry on from the item after the last block
+	    item = getItem(count - 1, false);
+	    position = nextIndexPosition(((ManagedFileIndexItem)item).getIndexOffset().value(), item);
+	}
+
+	// read the rest of the items one by one
+	for (; count < itemCount; count++) {
+	    // read an item
+	    item =  readItem(position, doLoadData);
+	    //item = getItem(count, doLoadData);
+
+	    // set the position for next time
+	    position = nextIndexPosition(position, item);
+
+	    // post the read item into the index
+	    // this is the Index callback
+	    getIndex().retrieveItem(item, count);
+	}
+
+	// make sure the index is at the position after the last item
+	seekToIndex(position);
+
 	return indexChannelPosition;
 
     }
 
+    /**
+     * Get the position in the index of the item which follows
+     * the item that has just been read from position.
+     * This is done differently for each type of index.
+     */
+    protected abstract long nextIndexPosition(long position, ManagedIndexItem item) throws IOException;
+
+    /**
+     * Get the position just after the data of an IndexItem.
+     * References have no data size, but take up
+     * REFERENCE_BUFFER_SIZE bytes.
+     */
+    protected long dataEndPosition(ManagedFileIndexItem item) {
+	if (item.isReference()) {
+	    return item.getDataOffset().value() + REFERENCE_BUFFER_SIZE;
+	} else {
+	    return item.getDataOffset().value() + item.getDataSize().value();
+	}
+    }
+
     /**
      * Get the append position
      */
@@ -947,6 +1690,27 @@ public abstract class AbstractFileIO extends AbstractIndexIO implements IndexFil
 	return this;
     }
 
+    /**
+     * Use index items that have checksums.
+     * The index items get bigger, and the header records the new size.
+     */
+    protected void useChecksums() {
+	checksums = true;
+
+	setItemSize(RecordChecksum.CHECKSUM_ITEM_SIZE);
+	headerInteractor.setItemSize(RecordChecksum.CHECKSUM_ITEM_SIZE);
+
+	indexBufWrite = ByteBuffer.allocate(INDEX_ITEM_SIZE);
+	indexBufRead = ByteBuffer.allocate(INDEX_ITEM_SIZE);
+    }
+
+    /**
+     * Do the index items have checksums.
+     */
+    public boolean hasChecksums() {
+	return checksums;
+    }
+
     /**
      * Get a write-lock on this index.
      */
@@ -1026,16 +1790,42 @@ public abstract class AbstractFileIO extends AbstractIndexIO implements IndexFil
 
     /**
      * Add some work to the write queue.
+     * The write queue is lock-free, so this does not
+     * hold the interactor.  If the queue is full, this waits
+     * for the IO thread to free a slot.
+     * @return the sequence no of the request
+     */
+    public long requestWriteWork(FileChannel channel, ByteBuffer flushBuffer, ByteBufferRing ring) {
+	return writeQueue.add(channel, flushBuffer, ring);
+    }
+
+    /**
+     * Add some gathering write work to the write queue.
+     * @return the sequence no of the request
      */
-    public synchronized void requestWriteWork(FileChannel channel, ByteBuffer flushBuffer, ByteBufferRing ring) {
-	writeQueue.add(new WriteRequest(channel, flushBuffer, ring));
+    public long requestWriteWork(FileChannel channel, ByteBuffer[] buffers, ByteBufferRing ring) {
+	return writeQueue.add(channel, buffers, ring);
     }
 
     /**
-     * Add some work to the read queue.
+     * Wait for one WriteRequest to be written,
+     * and the ones before it.
+     * If this is not called by the IO thread, it waits for
+     * the IO thread to write it, and is woken as soon as it has.
+     * @param request the sequence no of the request
      */
-    public synchronized void requestReadWork(Position position, boolean doLoadData) {
-	readQueue.add(new ReadRequest(position, doLoadData));
+    protected void awaitWriteWork(long request) throws IOException {
+	if (myThread != null && Thread.currentThread() != myThread && myThread.isAlive()) {
+	    // wait for the IO thread to do the work
+	    if (writeQueue.awaitDone(request, myThread)) {
+		return;
+	    }
+	}
+
+	// there is no IO thread, so do the work here
+	while (! writeQueue.isDone(request)) {
+	    writeFromWorkQueue();
+	}
     }
 
     /**
@@ -1043,15 +1833,14 @@ public abstract class AbstractFileIO extends AbstractIndexIO implements IndexFil
      * to a FileChannel.
      * It assumes the index file is alreayd open for writing.
      */
-    public synchronized long writeFromWorkQueue() throws IOException  {
+    public long writeFromWorkQueue() throws IOException  {
 	long written = 0;
 
 	//System.err.println("writeFromWorkQueue() writeQueue length = " + writeQueue.size());
 
 	// get the buffer from the queue
-	WriteRequest writeRequest = (WriteRequest)writeQueue.getFirst();
-	// remove the buffer from the queue
-	writeQueue.removeFirst();
+	// it stays in the queue until it has been written
+	WriteRequest writeRequest = writeQueue.peek();
 
 	// get the write request details
 	FileChannel channel = writeRequest.channel;
@@ -1059,13 +1848,30 @@ public abstract class AbstractFileIO extends AbstractIndexIO implements IndexFil
 	ByteBufferRing ring = writeRequest.ring;
 
 	// write out the buffer
-	written += channel.write(buffer);
+	if (writeRequest.buffers == null) {
+	    written += channel.write(buffer);
+	} else {
+	    // a gathering write of all the buffers
+	    ByteBuffer[] buffers = writeRequest.buffers;
+	    ByteBuffer last = buffers[buffers.length - 1];
+
+	    while (last.hasRemaining()) {
+		written += channel.write(buffers);
+	    }
+	}
+
+	if (ring != null) {
+	    // clear it
+	    buffer.clear();
+
+	    // unlock it, and make it ready for use
+	    ring.unlock(buffer);
+	}
 
-	// clear it
-	buffer.clear();
+	// remove the request from the queue
+	writeQueue.release();
 
-	// unlock it, and make it ready for use
-	ring.unlock(buffer);
+	unsyncedBytes += written;
 
 	return written;
     }
@@ -1073,63 +1879,290 @@ public abstract class AbstractFileIO extends AbstractIndexIO implements IndexFil
     /**
      * This drains the write request queue by processing
      * all the WriteRequests.
+     * If this is not called by the IO thread, it waits for
+     * the IO thread to process them.
      */
     public  void drainWriteQueue() throws IOException {
 	//System.err.println(getThread() + ": drainWriteQueue length = " + writeQueue.size());
 
-	while (writeQueue.size() > 0) {
+	if (myThread != null && Thread.currentThread() != myThread && myThread.isAlive()) {
+	    // wait for the IO thread to do the work
+	    if (writeQueue.awaitEmpty(myThread)) {
+		return;
+	    }
+	}
+
+	// there is no IO thread, so do the work here
+	while (! writeQueue.isEmpty()) {
 	    writeFromWorkQueue();
 	}
     }
 
     /**
-     * Wait for the timeout to go off.
-     * @return true if the timeout happened, false if it dod not.
+     * Wait for some work.
+     * The IO thread parks until a WriteRequest is added,
+     * or the timeout goes off.
+     * @return true if there is work, false if the timeout happened
      */
-    public synchronized boolean timeOut(long timeout) {
-	try {
-	    timeoutHappened = true;
-
-	    // Now wait.
-	    // Other methods can set timeoutHappened
-	    // during the wait.
-	    wait(timeout);
-
-	    // if we get to here an timeoutHappened is still true
-	    // the wait ended because the amount of time has expired
-	    // if timeoutHappened is false, then it was set false
-	    // by a sendItem() or a receiveItem().
-	    if (timeoutHappened) {
-		return true;
-	    } else {
-		return false;
-	    }
-	} catch (InterruptedException ie) {
-	    //System.err.println("sleep interrupted");
-	    // a timeout didn;t happen, it was an interrupt
-	    timeoutHappened = false;
+    public boolean awaitWork() {
+	if (writeQueue.await(workTimeout())) {
+	    // we got some work
+	    return true;
+	} else if (! isRunning()) {
+	    // we've been stopped
+	    return true;
+	} else {
+	    // there was a timeout, i.e. no work
+	    //System.err.println("Sleep finished. No work");
 	    return false;
 	}
     }
 
-    public synchronized boolean awaitWork() {
-	// wait for some work
-	timeOut(5 * 1000);
+    /**
+     * How long the IO thread waits for work, in milliseconds.
+     * If commits are waiting for a group sync, it only waits
+     * until the end of their window.
+     */
+    protected long workTimeout() {
+	if (durability == Durability.GROUP) {
+	    synchronized (syncLock) {
+		if (syncRequested > syncCompleted) {
+		    long left = syncInterval - (System.nanoTime() - syncWindowStart) / 1000000;
+
+		    return Math.max(1, left);
+		}
+	    }
+	}
 
-	if (timeoutHappened) {
-	    // there was a timeout, i.e. no work
-	    //System.err.println("Sleep finished. No work");
-	    return false;
+	return 5 * 1000;
+    }
+
+    /**
+     * Process the durability options.
+     * The 'durability' property is one of none, group, or sync.
+     * For group syncs, 'syncinterval' is the most time a commit
+     * waits for a sync, in milliseconds, and 'syncbytes' is the most
+     * bytes written between syncs.
+     */
+    protected void processDurabilityOption(IndexProperties indexProperties) throws IOException {
+	String mode = (String)indexProperties.get("durability");
+
+	if (mode == null || mode.equalsIgnoreCase("none")) {
+	    durability = Durability.NONE;
+	} else if (mode.equalsIgnoreCase("group")) {
+	    durability = Durability.GROUP;
+	} else if (mode.equalsIgnoreCase("sync")) {
+	    durability = Durability.SYNC;
 	} else {
-	    // we got some work
-	    return true;
+	    throw new IOException("Unknown durability: " + mode);
+	}
+
+	try {
+	    if (indexProperties.containsKey("syncinterval")) {
+		syncInterval = Long.parseLong((String)indexProperties.get("syncinterval"));
+	    }
+
+	    if (indexProperties.containsKey("syncbytes")) {
+		syncBytes = Long.parseLong((String)indexProperties.get("syncbytes"));
+	    }
+	} catch (NumberFormatException nfe) {
+	    throw new IOException("Bad sync option: " + nfe.getMessage());
+	}
+    }
+
+    /**
+     * Get the durability mode.
+     */
+    public Durability getDurability() {
+	return durability;
+    }
+
+    /**
+     * Make sure everything flushed so far is on disk,
+     * as the durability mode says.
+     * With NONE this does nothing.  With SYNC the files are forced
+     * out now.  With GROUP this waits for the IO thread to do a sync
+     * for all the commits that arrived in the same window.
+     * This does not hold the interactor.
+     * @return the no of nanoseconds this waited
+     */
+    public long sync() throws IOException {
+	if (durability == Durability.NONE) {
+	    return 0;
+	}
+
+	long start = System.nanoTime();
+
+	if (durability == Durability.GROUP && myThread != null && myThread.isAlive()) {
+	    long ticket = 0;
+
+	    synchronized (syncLock) {
+		if (syncRequested == syncCompleted) {
+		    // this commit starts a new window
+		    syncWindowStart = System.nanoTime();
+		}
+
+		ticket = ++syncRequested;
+	    }
+
+	    // get the IO thread to look at the window
+	    writeQueue.wakeConsumer();
+
+	    synchronized (syncLock) {
+		while (syncCompleted < ticket && myThread.isAlive()) {
+		    try {
+			syncLock.wait(syncInterval);
+		    } catch (InterruptedException ie) {
+		    }
+		}
+
+		if (syncCompleted >= ticket) {
+		    return System.nanoTime() - start;
+		}
+	    }
+	}
+
+	// do the sync here
+	drainWriteQueue();
+	forceAndRecord(1);
+
+	return System.nanoTime() - start;
+    }
+
+    /**
+     * Do a group sync, if the window of the oldest waiting commit
+     * has ended, or enough bytes have been written since the last sync.
+     * Called by the IO thread.
+     */
+    protected void groupSync() throws IOException {
+	long target = 0;
+
+	synchronized (syncLock) {
+	    boolean windowEnded = syncRequested > syncCompleted &&
+		(System.nanoTime() - syncWindowStart) / 1000000 >= syncInterval;
+
+	    if (! windowEnded && unsyncedBytes < syncBytes) {
+		return;
+	    }
+
+	    target = syncRequested;
+	}
+
+	// write out everything flushed before the commits
+	drainWriteQueue();
+
+	forceAndRecord(target - syncCompleted);
+
+	synchronized (syncLock) {
+	    syncCompleted = target;
+	    syncLock.notifyAll();
+	}
+    }
+
+    /**
+     * Force the files out to disk, and record how long it took.
+     * @param commitCount the no of commits this completes
+     */
+    protected void forceAndRecord(long commitCount) throws IOException {
+	long start = System.nanoTime();
+
+	// bytes written from now on need another sync
+	unsyncedBytes = 0;
+
+	forceFiles();
+
+	syncMetrics.record(System.nanoTime() - start, commitCount);
+    }
+
+    /**
+     * Force the files of the index out to disk.
+     */
+    protected void forceFiles() throws IOException {
+	if (indexChannel != null && indexChannel.isOpen()) {
+	    indexChannel.force(false);
+	}
+
+	headerInteractor.force();
+    }
+
+    /**
+     * Set the header from the items found when the index was recovered.
+     * @param headerLength the length in the header
+     * @param length the no of items found
+     * @param lastOffset the offset of the record of the last item found
+     */
+    protected void setRecoveredHeader(long headerLength, long length, long lastOffset) throws IOException {
+	recoveredFrom = headerLength;
+
+	headerInteractor.setLength(length);
+
+	if (length > 0) {
+	    // the header values for the last item
+	    ByteBuffer lastItem = readIndexItem(lastOffset);
+	    Timestamp lastTime = timestampDecoder.decode(lastItem.getLong(lastItem.position()));
+
+	    headerInteractor.setLastOffset(new Offset(lastOffset));
+	    headerInteractor.setLastTime(lastTime);
+	    headerInteractor.setEndTime(lastTime);
+	    headerInteractor.setLastDataTime(timestampDecoder.decode(lastItem.getLong(lastItem.position() + 8)));
+
+	    if (headerLength == 0) {
+		// and for the first item
+		ByteBuffer firstItem = readIndexItem(indexFirstPosition);
+
+		headerInteractor.setFirstOffset(new Offset(indexFirstPosition));
+		headerInteractor.setFirstTime(timestampDecoder.decode(firstItem.getLong(firstItem.position())));
+		headerInteractor.setFirstDataTime(timestampDecoder.decode(firstItem.getLong(firstItem.position() + 8)));
+	    }
 	}
     }
 
+    /**
+     * Get the length in the header when the index was opened,
+     * if the header and the index file did not agree,
+     * and the index was recovered.
+     * @return the length in the header, or -1 if the index was not recovered
+     */
+    public long getRecoveredFrom() {
+	return recoveredFrom;
+    }
+
+    /**
+     * Get the sync metrics.
+     */
+    public SyncMetrics getSyncMetrics() {
+	return syncMetrics;
+    }
+
+    /**
+     * Get the no of WriteRequests waiting for the IO thread.
+     */
+    public long getWriteQueueOccupancy() {
+	return writeQueue.size();
+    }
+
+    /**
+     * Get the most WriteRequests that have waited
+     * for the IO thread at once.
+     */
+    public long getWriteQueueMaxOccupancy() {
+	return writeQueue.getMaxOccupancy();
+    }
+
+    /**
+     * Get the no of times a writer had to wait
+     * because the write queue was full.
+     */
+    public long getWriteQueueStalls() {
+	return writeQueue.getStalls();
+    }
+
     /**
      * The Thread run method.
+     * This is not synchronized, so writers never wait
+     * for the IO thread to release the interactor.
      */
-    public synchronized void run() {
+    public void run() {
 	try {
 	    while (isRunning()) {
 
@@ -1142,6 +2175,11 @@ public abstract class AbstractFileIO extends AbstractIndexIO implements IndexFil
 			headerInteractor.flush();
 		    }
 		}
+
+		// complete the commits waiting for a group sync
+		if (durability == Durability.GROUP) {
+		    groupSync();
+		}
 	    }
 
 	} catch (IOException ioe) {
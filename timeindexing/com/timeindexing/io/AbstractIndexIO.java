@@ -24,7 +24,6 @@ import com.timeindexing.index.StoredIndex;
 import com.timeindexing.index.ManagedIndexItem;
 import com.timeindexing.basic.Position;
 
-import java.util.LinkedList;
 import java.io.IOException;
 
 /**
@@ -40,14 +39,16 @@ public abstract class AbstractIndexIO implements IndexInteractor,  Runnable {
     Thread myThread = null;
 
     // Should the thread be running
-    boolean threadRunning = false;
-
-    // A work queue for read requests
-    LinkedList readQueue = null;
+    volatile boolean threadRunning = false;
 
 
     // A work queue for write requests
-    LinkedList writeQueue = null;
+    WriteRequestRing writeQueue = null;
+
+    /*
+     * The no of slots in the write queue
+     */
+    final static int WRITE_QUEUE_SIZE = 256;
 
     /**
      * Get the index which this is doing I/O for.
@@ -62,8 +63,7 @@ public abstract class AbstractIndexIO implements IndexInteractor,  Runnable {
      */
     public Thread initThread(String name) {
 	myThread = new Thread(this, name);
-	readQueue = new LinkedList();
-	writeQueue = new LinkedList();
+	writeQueue = new WriteRequestRing(WRITE_QUEUE_SIZE);
 	return myThread;
     }
 
@@ -80,8 +80,10 @@ public abstract class AbstractIndexIO implements IndexInteractor,  Runnable {
      */
     public Thread startThread() {
 	if (myThread != null) {
-	    myThread.start();
+	    // set running before the start, so the thread
+	    // doesn't see it as stopped
 	    threadRunning = true;
+	    myThread.start();
 	    //System.err.println("Started Thread " + myThread);
 	    return myThread;
 	} else {
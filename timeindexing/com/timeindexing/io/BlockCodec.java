@@ -0,0 +1,54 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+// BlockCodec.java
+
+package com.timeindexing.io;
+
+import java.io.IOException;
+
+/**
+ * A BlockCodec compresses and decompresses blocks of data
+ * for a compressed data file.
+ * Codecs are looked up by name in the BlockCodecDirectory,
+ * and the name is kept in the index header.
+ */
+public interface BlockCodec {
+    /**
+     * Get the name of the codec.
+     */
+    public String getName();
+
+    /**
+     * Compress some bytes.
+     * @param in the bytes to compress
+     * @param length the no of bytes to compress
+     * @param out the buffer for the compressed bytes
+     * @return the no of compressed bytes, or -1 if they
+     * don't fit in out
+     */
+    public int compress(byte[] in, int length, byte[] out);
+
+    /**
+     * Decompress some bytes.
+     * @param in the compressed bytes
+     * @param length the no of compressed bytes
+     * @param out the buffer for the decompressed bytes
+     * @param outLength the no of bytes expected
+     * @throws IOException if the bytes don't decompress to outLength bytes
+     */
+    public void decompress(byte[] in, int length, byte[] out, int outLength) throws IOException;
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+// BlockCodecDirectory.java
+
+package com.timeindexing.io;
+
+import java.util.HashMap;
+
+/**
+ * This is the BlockCodecDirectory, which holds the BlockCodecs
+ * that can be used for compressed data files.
+ * A codec is looked up by the name kept in the index header,
+ * so other codecs can be registered before an index is opened.
+ */
+public class BlockCodecDirectory {
+    /**
+     * The codecs, by name.
+     */
+    protected static HashMap codecs = new HashMap();
+
+    /*
+     * The name of the default codec
+     */
+    public final static String DEFAULT = "deflate";
+
+    static {
+	register(new DeflateBlockCodec());
+    }
+
+    /**
+     * Register a BlockCodec.
+     */
+    public synchronized static BlockCodec register(BlockCodec codec) {
+	codecs.put(codec.getName(), codec);
+	return codec;
+    }
+
+    /**
+     * Find a BlockCodec by name.
+     * @return null if there is no codec with that name
+     */
+    public synchronized static BlockCodec find(String name) {
+	return (BlockCodec)codecs.get(name);
+    }
+}
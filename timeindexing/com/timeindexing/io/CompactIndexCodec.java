@@ -0,0 +1,327 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+// CompactIndexCodec.java
+
+package com.timeindexing.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.BufferUnderflowException;
+
+/**
+ * This encodes and decodes index records in the compact format.
+ * <p>
+ * A fixed size index record holds the index timestamp, the data timestamp,
+ * the data offset, the data size, the data type, the item ID, and the
+ * annotation, in 52 bytes.
+ * A compact record holds the same values, each one as a varint of
+ * the difference from the value that was expected.
+ * The timestamps and the annotation are expected to be the same as the
+ * previous record, the data offset is expected to follow on from the
+ * previous data, and the item ID is expected to be the position.
+ * <p>
+ * Records are grouped into blocks of BLOCK_ITEMS.
+ * The first record of a block is relative to zero, so it
+ * holds the base values, and a block can be decoded on its own.
+ */
+class CompactIndexCodec {
+    // the previous record encoded
+    long lastIndexTS = 0;
+    long lastDataTS = 0;
+    long lastDataEnd = 0;
+    long lastAnnotation = 0;
+
+    // the no of records encoded
+    long count = 0;
+
+    /*
+     * The no of records in a block
+     */
+    final static int BLOCK_ITEMS = 64;
+
+    /*
+     * The size of a fixed size index record
+     */
+    final static int RECORD_SIZE = 52;
+
+    /*
+     * The longest a compact record can be: 7 varints of upto 10 bytes
+     */
+    final static int MAX_RECORD_SIZE = 7 * 10;
+
+    /**
+     * Construct a CompactIndexCodec.
+     */
+    public CompactIndexCodec() {
+    }
+
+    /**
+     * Is the next record encoded the first in a block.
+     */
+    public boolean isBlockStart() {
+	return count % BLOCK_ITEMS == 0;
+    }
+
+    /**
+     * Encode a fixed size record into a compact record.
+     * @param record the fixed size record, which is not moved
+     * @param out the buffer to put the compact record in
+     * @return the size of the compact record
+     */
+    public int encode(ByteBuffer record, ByteBuffer out) {
+	if (isBlockStart()) {
+	    // start the block from zero
+	    lastIndexTS = 0;
+	    lastDataTS = 0;
+	    lastDataEnd = 0;
+	    lastAnnotation = 0;
+	}
+
+	int start = out.position();
+
+	long indexTS = record.getLong(0);
+	long dataTS = record.getLong(8);
+	long offset = record.getLong(16);
+	long size = record.getLong(24);
+	int type = record.getInt(32);
+	long id = record.getLong(36);
+	long annotation = record.getLong(44);
+
+	putVarLong(out, zigZag(indexTS - lastIndexTS));
+	putVarLong(out, zigZag(dataTS - lastDataTS));
+	putVarLong(out, zigZag(offset - lastDataEnd));
+	putVarLong(out, zigZag(size));
+	putVarLong(out, zigZag(type));
+	putVarLong(out, zigZag(id - count));
+	putVarLong(out, zigZag(annotation - lastAnnotation));
+
+	lastIndexTS = indexTS;
+	lastDataTS = dataTS;
+	lastDataEnd = offset + size;
+	lastAnnotation = annotation;
+
+	count++;
+
+	return out.position() - start;
+    }
+
+    /**
+     * Carry on encoding after a record that is already in the index.
+     * This is used when an existing index is opened for appending.
+     * @param record the last fixed size record in the index
+     * @param recordCount the no of records in the index
+     */
+    public void restore(ByteBuffer record, long recordCount) {
+	lastIndexTS = record.getLong(0);
+	lastDataTS = record.getLong(8);
+	lastDataEnd = record.getLong(16) + record.getLong(24);
+	lastAnnotation = record.getLong(44);
+
+	count = recordCount;
+    }
+
+    /**
+     * Decode a block of compact records into fixed size records.
+     * Decoding stops after BLOCK_ITEMS records, or when the input
+     * runs out.  A record at the end which has not all been written
+     * out yet, or which has a bad varint, is not decoded.
+     * @param in the bytes of the block, starting at position 0
+     * @param block the block no
+     * @param start the offset of the block in the index file
+     */
+    public static Block decode(ByteBuffer in, long block, long start) {
+	ByteBuffer records = ByteBuffer.allocate(BLOCK_ITEMS * RECORD_SIZE);
+	long[] offsets = new long[BLOCK_ITEMS + 1];
+	int decoded = 0;
+
+	long indexTS = 0;
+	long dataTS = 0;
+	long dataEnd = 0;
+	long annotation = 0;
+	long position = block * BLOCK_ITEMS;
+
+	offsets[0] = start;
+
+	try {
+	    while (decoded < BLOCK_ITEMS && in.hasRemaining()) {
+		// get all the values before using any of them
+		long nextIndexTS = indexTS + unZigZag(getVarLong(in));
+		long nextDataTS = dataTS + unZigZag(getVarLong(in));
+		long offset = dataEnd + unZigZag(getVarLong(in));
+		long size = unZigZag(getVarLong(in));
+		int type = (int)unZigZag(getVarLong(in));
+		long id = position + unZigZag(getVarLong(in));
+		long nextAnnotation = annotation + unZigZag(getVarLong(in));
+
+		records.putLong(nextIndexTS);
+		records.putLong(nextDataTS);
+		records.putLong(offset);
+		records.putLong(size);
+		records.putInt(type);
+		records.putLong(id);
+		records.putLong(nextAnnotation);
+
+		indexTS = nextIndexTS;
+		dataTS = nextDataTS;
+		dataEnd = offset + size;
+		annotation = nextAnnotation;
+
+		position++;
+		decoded++;
+		offsets[decoded] = start + in.position();
+	    }
+	} catch (BufferUnderflowException bue) {
+	    // the last record has not all been written out yet
+	} catch (IOException ioe) {
+	    // the last record is not a record
+	}
+
+	return new Block(block, decoded, offsets, records);
+    }
+
+    /**
+     * Put a long as a varint.
+     * 7 bits are put in each byte, lowest first, and the top bit
+     * is set if there are more bytes to come.
+     */
+    static void putVarLong(ByteBuffer out, long value) {
+	while ((value & ~0x7FL) != 0) {
+	    out.put((byte)((value & 0x7F) | 0x80));
+	    value >>>= 7;
+	}
+
+	out.put((byte)value);
+    }
+
+    /**
+     * Get a long from a varint.
+     */
+    static long getVarLong(ByteBuffer in) throws IOException {
+	long value = 0;
+	int shift = 0;
+	byte b;
+
+	do {
+	    if (shift > 63) {
+		throw new IOException("Compact index record has a bad varint at " + in.position());
+	    }
+
+	    b = in.get();
+	    value |= (long)(b & 0x7F) << shift;
+	    shift += 7;
+	} while ((b & 0x80) != 0);
+
+	return value;
+    }
+
+    /**
+     * ZigZag encode a value, so small negative values
+     * are small varints too.
+     */
+    static long zigZag(long value) {
+	return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * ZigZag decode a value.
+     */
+    static long unZigZag(long value) {
+	return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * A block of compact records, decoded into fixed size records.
+     * A Block is not changed once it is decoded, so
+     * it can be shared by many readers.
+     */
+    static class Block {
+	// the block no
+	long block;
+
+	// the no of records decoded
+	int count;
+
+	// the offset of each record in the index file,
+	// plus the offset just after the last one
+	long[] offsets;
+
+	// the decoded records
+	ByteBuffer records;
+
+	/**
+	 * Construct a Block.
+	 */
+	Block(long block, int count, long[] offsets, ByteBuffer records) {
+	    this.block = block;
+	    this.count = count;
+	    this.offsets = offsets;
+	    this.records = records;
+	}
+
+	/**
+	 * Does this block hold a record that starts at offset.
+	 */
+	public boolean holds(long offset) {
+	    return count > 0 && offset >= offsets[0] && offset < offsets[count];
+	}
+
+	/**
+	 * Get the index in the block of the record that starts at offset.
+	 * @return -1 if no record starts at offset
+	 */
+	public int indexOf(long offset) {
+	    int low = 0;
+	    int high = count - 1;
+
+	    while (low <= high) {
+		int mid = (low + high) >>> 1;
+
+		if (offsets[mid] < offset) {
+		    low = mid + 1;
+		} else if (offsets[mid] > offset) {
+		    high = mid - 1;
+		} else {
+		    return mid;
+		}
+	    }
+
+	    return -1;
+	}
+
+	/**
+	 * Get the offset in the index file of the record at index.
+	 * An index of count gives the offset just after the last record.
+	 */
+	public long getOffset(int index) {
+	    return offsets[index];
+	}
+
+	/**
+	 * Get the fixed size record at index.
+	 */
+	public ByteBuffer getRecord(int index) {
+	    ByteBuffer record = records.duplicate();
+
+	    record.limit((index + 1) * RECORD_SIZE);
+	    record.position(index * RECORD_SIZE);
+
+	    return record.slice();
+	}
+    }
+}
@@ -0,0 +1,592 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+// CompressedDataIO.java
+
+package com.timeindexing.io;
+
+import com.timeindexing.basic.ID;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.LinkedHashMap;
+
+/**
+ * This does I/O for a compressed data file.
+ * <p>
+ * The data is a stream of bytes, and the data offsets held
+ * in the index are offsets into the stream.
+ * The stream is cut into blocks of BLOCK_SIZE bytes, and each block
+ * is compressed on its own, so a read only needs to
+ * decompress the blocks it touches.
+ * In the data file, each block has an 8 byte header, which is the
+ * size of the compressed bytes and the size of the block,
+ * followed by the compressed bytes.
+ * If a block does not get any smaller, it is kept as-is, and
+ * both sizes are the same.
+ * <p>
+ * The offset of each block in the data file is kept in a block map,
+ * which is held in memory, and in a sidecar to the data file.
+ * <p>
+ * The last block is held in memory while it is being filled.
+ * It is written out on each flush, at the same place,
+ * until it is full.
+ */
+public class CompressedDataIO {
+    // The interactor, which does the reads, and the block map writes
+    AbstractFileIO interactor = null;
+
+    // the codec
+    BlockCodec codec = null;
+
+    // the data file
+    FileChannel dataChannel = null;
+    boolean writable = false;
+
+    // the offset of the first block
+    long firstPosition = 0;
+
+    // the block map
+    PositionOffsetIO blockMapInteractor = null;
+    long[] blockOffsets = null;
+    int blockCount = 0;
+
+    // the last block, which is still being filled
+    byte[] pending = null;
+    int pendingSize = 0;
+    // the size of the last block in the file
+    int pendingDiskSize = 0;
+    // has the last block changed since it was written
+    boolean pendingDirty = false;
+
+    // the buffer for compressed bytes
+    byte[] compressed = null;
+
+    // a cache of decompressed blocks
+    LinkedHashMap blockCache = null;
+
+    /*
+     * The size of a block of data, before compression
+     */
+    public final static int BLOCK_SIZE = 64 * 1024;
+
+    /*
+     * The size of the header on each block
+     */
+    final static int BLOCK_HEADER_SIZE = 8;
+
+    /*
+     * The no of decompressed blocks to cache
+     */
+    final static int CACHE_BLOCKS = 8;
+
+    /**
+     * Construct a CompressedDataIO.
+     */
+    public CompressedDataIO(AbstractFileIO fileInteractor, BlockCodec blockCodec) {
+	interactor = fileInteractor;
+	codec = blockCodec;
+
+	pending = new byte[BLOCK_SIZE];
+	compressed = new byte[BLOCK_HEADER_SIZE + BLOCK_SIZE + (BLOCK_SIZE / 8) + 64];
+
+	blockOffsets = new long[1024];
+
+	blockCache = new LinkedHashMap(CACHE_BLOCKS * 2, 0.75f, true) {
+		protected boolean removeEldestEntry(Map.Entry eldest) {
+		    return size() > CACHE_BLOCKS;
+		}
+	    };
+    }
+
+    /**
+     * Get the codec.
+     */
+    public BlockCodec getCodec() {
+	return codec;
+    }
+
+    /**
+     * Start a new compressed data file.
+     * @param channel the data file
+     * @param mapFileName the name of the block map file
+     * @param indexID the ID of the index
+     * @param position the offset in the data file of the first block
+     */
+    public long create(FileChannel channel, String mapFileName, ID indexID, long position) throws IOException {
+	dataChannel = channel;
+	writable = true;
+	firstPosition = position;
+
+	blockCount = 0;
+	pendingSize = 0;
+
+	blockMapInteractor = new PositionOffsetIO(interactor, ".tiz", FileType.DATA_BLOCKS);
+
+	if (! blockMapInteractor.create(mapFileName, indexID)) {
+	    // couldn't create it, so do without
+	    blockMapInteractor = null;
+	}
+
+	return firstPosition;
+    }
+
+    /**
+     * Open an existing compressed data file.
+     * If the block map file is missing, or has fewer blocks
+     * than the data file, the missing blocks are found by
+     * walking the block headers in the data file.
+     * @param channel the data file
+     * @param mapFileName the name of the block map file
+     * @param indexID the ID of the index
+     * @param position the offset in the data file of the first block
+     * @param canWrite can the data file be written
+     * @return the length of the data
+     */
+    public long open(FileChannel channel, String mapFileName, ID indexID, long position, boolean canWrite) throws IOException {
+	dataChannel = channel;
+	writable = canWrite;
+	firstPosition = position;
+
+	blockCount = 0;
+	pendingSize = 0;
+
+	blockMapInteractor = new PositionOffsetIO(interactor, ".tiz", FileType.DATA_BLOCKS);
+
+	if (! blockMapInteractor.open(mapFileName, indexID, writable)) {
+	    // couldn't open it, so do without
+	    blockMapInteractor = null;
+	} else if (blockMapInteractor.length() > 0) {
+	    long[] offsets = new long[(int)blockMapInteractor.length()];
+	    int count = blockMapInteractor.getOffsets(offsets);
+
+	    for (int b=0; b < count; b++) {
+		addBlockOffset(offsets[b], false);
+	    }
+	}
+
+	// find any blocks missing from the map
+	long fileSize = dataChannel.size();
+	long offset = firstPosition;
+	int[] sizes = new int[2];
+
+	if (blockCount > 0) {
+	    offset = blockOffsets[blockCount-1];
+
+	    if (! readBlockHeader(offset, sizes) || sizes[1] < BLOCK_SIZE) {
+		// the last block in the map is the last block
+		offset = fileSize;
+	    } else {
+		offset += BLOCK_HEADER_SIZE + sizes[0];
+	    }
+	}
+
+	int mapped = blockCount;
+
+	while (offset + BLOCK_HEADER_SIZE <= fileSize && readBlockHeader(offset, sizes)) {
+	    addBlockOffset(offset, false);
+
+	    if (sizes[1] < BLOCK_SIZE) {
+		// a short block is always the last one
+		break;
+	    }
+
+	    offset += BLOCK_HEADER_SIZE + sizes[0];
+	}
+
+	// add the blocks found to the block map file
+	// the I/O thread is not running yet, so write them directly
+	if (writable && blockMapInteractor != null && blockCount > mapped) {
+	    ByteBuffer offsetsBuf = ByteBuffer.allocate((blockCount - mapped) * 8);
+
+	    for (int b=mapped; b < blockCount; b++) {
+		offsetsBuf.putLong(blockOffsets[b]);
+	    }
+
+	    offsetsBuf.flip();
+	    blockMapInteractor.appendBlock(offsetsBuf);
+	}
+
+	// load the last block, so it can be filled
+	if (blockCount > 0) {
+	    loadPending(blockCount - 1);
+	}
+
+	return length();
+    }
+
+    /**
+     * Read the header of a block.
+     * @param sizes gets the compressed size and the block size
+     * @return false if there is not a valid block at offset
+     */
+    protected boolean readBlockHeader(long offset, int[] sizes) throws IOException {
+	ByteBuffer headerBuf = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+
+	if (interactor.readFully(dataChannel, headerBuf, offset) != BLOCK_HEADER_SIZE) {
+	    return false;
+	}
+
+	headerBuf.flip();
+
+	sizes[0] = headerBuf.getInt();
+	sizes[1] = headerBuf.getInt();
+
+	// check the sizes are sensible
+	return sizes[1] > 0 && sizes[1] <= BLOCK_SIZE &&
+	    sizes[0] > 0 && sizes[0] <= sizes[1] &&
+	    offset + BLOCK_HEADER_SIZE + sizes[0] <= dataChannel.size();
+    }
+
+    /**
+     * Add a block to the block map.
+     */
+    protected void addBlockOffset(long offset, boolean toFile) throws IOException {
+	if (blockCount == blockOffsets.length) {
+	    long[] bigger = new long[blockOffsets.length * 2];
+	    System.arraycopy(blockOffsets, 0, bigger, 0, blockCount);
+	    blockOffsets = bigger;
+	}
+
+	blockOffsets[blockCount] = offset;
+	blockCount++;
+
+	if (toFile && blockMapInteractor != null) {
+	    blockMapInteractor.append(offset);
+	}
+    }
+
+    /**
+     * Load a block from the data file as the last block.
+     */
+    protected void loadPending(int block) throws IOException {
+	int[] sizes = new int[2];
+
+	if (! readBlockHeader(blockOffsets[block], sizes)) {
+	    throw new IOException("CompressedDataIO: bad block header for block " + block + " at " + blockOffsets[block]);
+	}
+
+	readBlock(blockOffsets[block], sizes[0], sizes[1], pending);
+
+	pendingSize = sizes[1];
+	pendingDiskSize = sizes[0];
+	pendingDirty = false;
+    }
+
+    /**
+     * Get the length of the data, including the header
+     * before the first block.
+     */
+    public synchronized long length() {
+	if (blockCount == 0) {
+	    return firstPosition;
+	} else {
+	    return firstPosition + ((long)(blockCount - 1) * BLOCK_SIZE) + pendingSize;
+	}
+    }
+
+    /**
+     * Add some data to the end of the data.
+     * Each block is compressed and written out as it is filled.
+     * The buffer is not moved.
+     * @return the no of bytes added
+     */
+    public synchronized long append(ByteBuffer buffer) throws IOException {
+	ByteBuffer data = buffer.duplicate();
+	long count = data.remaining();
+
+	while (data.hasRemaining()) {
+	    if (blockCount == 0 || pendingSize == BLOCK_SIZE) {
+		// start a new block
+		long offset = firstPosition;
+
+		if (blockCount > 0) {
+		    // the last block is full
+		    if (pendingDirty) {
+			writePending();
+		    }
+
+		    offset = blockOffsets[blockCount-1] + BLOCK_HEADER_SIZE + pendingDiskSize;
+		}
+
+		addBlockOffset(offset, true);
+
+		pendingSize = 0;
+		pendingDiskSize = 0;
+	    }
+
+	    int size = Math.min(data.remaining(), BLOCK_SIZE - pendingSize);
+
+	    data.get(pending, pendingSize, size);
+	    pendingSize += size;
+	    pendingDirty = true;
+
+	    if (pendingSize == BLOCK_SIZE) {
+		// it's full, so write it out now
+		writePending();
+	    }
+	}
+
+	return count;
+    }
+
+    /**
+     * Compress the last block and write it out.
+     * The write is positional, so the data channel does not move.
+     */
+    protected long writePending() throws IOException {
+	int size = codec.compress(pending, pendingSize, compressed);
+
+	ByteBuffer blockBuf = null;
+
+	if (size < 0 || size >= pendingSize) {
+	    // it didn't get any smaller, so keep it as-is
+	    size = pendingSize;
+	    blockBuf = ByteBuffer.allocate(BLOCK_HEADER_SIZE + size);
+	    blockBuf.putInt(size);
+	    blockBuf.putInt(pendingSize);
+	    blockBuf.put(pending, 0, size);
+	} else {
+	    blockBuf = ByteBuffer.allocate(BLOCK_HEADER_SIZE + size);
+	    blockBuf.putInt(size);
+	    blockBuf.putInt(pendingSize);
+	    blockBuf.put(compressed, 0, size);
+	}
+
+	blockBuf.flip();
+
+	long offset = blockOffsets[blockCount-1];
+	long written = 0;
+
+	while (blockBuf.hasRemaining()) {
+	    written += dataChannel.write(blockBuf, offset + written);
+	}
+
+	pendingDiskSize = size;
+	pendingDirty = false;
+
+	return written;
+    }
+
+    /**
+     * Read some data, starting at a specified offset.
+     * Only the blocks that hold the data are decompressed.
+     * @return the no of bytes read
+     */
+    public long read(ByteBuffer buffer, long offset) throws IOException {
+	long total = 0;
+
+	while (buffer.hasRemaining()) {
+	    long relative = offset - firstPosition;
+	    int block = (int)(relative / BLOCK_SIZE);
+	    int start = (int)(relative % BLOCK_SIZE);
+	    int size = 0;
+
+	    if (relative < 0) {
+		break;
+	    }
+
+	    synchronized (this) {
+		if (block >= blockCount) {
+		    // past the end of the data
+		    break;
+		} else if (block == blockCount - 1) {
+		    // it's the last block, which is held in memory
+		    size = Math.min(buffer.remaining(), pendingSize - start);
+
+		    if (size <= 0) {
+			break;
+		    }
+
+		    buffer.put(pending, start, size);
+		}
+	    }
+
+	    if (size == 0) {
+		byte[] blockData = getBlock(block);
+
+		size = Math.min(buffer.remaining(), blockData.length - start);
+
+		if (size <= 0) {
+		    break;
+		}
+
+		buffer.put(blockData, start, size);
+	    }
+
+	    offset += size;
+	    total += size;
+	}
+
+	return total;
+    }
+
+    /**
+     * Get a decompressed block, from the cache if possible.
+     */
+    protected byte[] getBlock(int block) throws IOException {
+	Long key = Long.valueOf(block);
+	long offset = 0;
+
+	synchronized (blockCache) {
+	    byte[] blockData = (byte[])blockCache.get(key);
+
+	    if (blockData != null) {
+		return blockData;
+	    }
+	}
+
+	synchronized (this) {
+	    offset = blockOffsets[block];
+	}
+
+	int[] sizes = new int[2];
+
+	if (! readBlockHeader(offset, sizes)) {
+	    throw new IOException("CompressedDataIO: bad block header for block " + block + " at " + offset);
+	}
+
+	byte[] blockData = new byte[sizes[1]];
+
+	readBlock(offset, sizes[0], sizes[1], blockData);
+
+	synchronized (blockCache) {
+	    blockCache.put(key, blockData);
+	}
+
+	return blockData;
+    }
+
+    /**
+     * Read a block and decompress it.
+     */
+    protected void readBlock(long offset, int compressedSize, int blockSize, byte[] blockData) throws IOException {
+	ByteBuffer readBuf = ByteBuffer.allocate(compressedSize);
+
+	if (interactor.readFully(dataChannel, readBuf, offset + BLOCK_HEADER_SIZE) != compressedSize) {
+	    throw new IOException("CompressedDataIO: block too short at " + offset);
+	}
+
+	if (compressedSize == blockSize) {
+	    // it was kept as-is
+	    System.arraycopy(readBuf.array(), 0, blockData, 0, blockSize);
+	} else {
+	    codec.decompress(readBuf.array(), compressedSize, blockData, blockSize);
+	}
+    }
+
+    /**
+     * Cut the data back to a specified length.
+     * This is used when an index is opened for appending,
+     * and the data file has more data than the index refers to.
+     */
+    public synchronized long truncate(long newLength) throws IOException {
+	if (newLength >= length()) {
+	    return length();
+	}
+
+	// drop any cached blocks
+	synchronized (blockCache) {
+	    blockCache.clear();
+	}
+
+	long relative = newLength - firstPosition;
+
+	if (relative <= 0) {
+	    // no data at all
+	    blockCount = 0;
+	    pendingSize = 0;
+	    pendingDirty = false;
+	} else {
+	    // the block with the last byte in is the new last block
+	    int block = (int)((relative - 1) / BLOCK_SIZE);
+
+	    if (block != blockCount - 1) {
+		loadPending(block);
+		blockCount = block + 1;
+	    }
+
+	    pendingSize = (int)(relative - ((long)block * BLOCK_SIZE));
+	    pendingDirty = true;
+	}
+
+	if (writable && blockMapInteractor != null) {
+	    blockMapInteractor.truncate(blockCount);
+	}
+
+	return length();
+    }
+
+    /**
+     * Flush out the last block, and the block map.
+     */
+    public synchronized long flush() throws IOException {
+	long written = 0;
+
+	if (writable && pendingDirty) {
+	    written += writePending();
+	}
+
+	if (blockMapInteractor != null) {
+	    written += blockMapInteractor.flush();
+	}
+
+	return written;
+    }
+
+    /**
+     * Force the block map out to disk.
+     * The data file is forced by the index.
+     */
+    public void force() throws IOException {
+	if (blockMapInteractor != null) {
+	    blockMapInteractor.force();
+	}
+    }
+
+    /**
+     * Close the compressed data.
+     * Any pending writes must have been drained first.
+     * If the file is writable it is cut back to the end of the last block.
+     */
+    public synchronized long close() throws IOException {
+	if (writable && dataChannel.isOpen()) {
+	    long end = firstPosition;
+
+	    if (blockCount > 0) {
+		end = blockOffsets[blockCount-1] + BLOCK_HEADER_SIZE + pendingDiskSize;
+	    }
+
+	    if (dataChannel.size() > end) {
+		dataChannel.truncate(end);
+	    }
+	}
+
+	if (blockMapInteractor != null) {
+	    blockMapInteractor.close();
+	}
+
+	synchronized (blockCache) {
+	    blockCache.clear();
+	}
+
+	return length();
+    }
+}
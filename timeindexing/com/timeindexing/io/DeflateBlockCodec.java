@@ -0,0 +1,101 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+// DeflateBlockCodec.java
+
+package com.timeindexing.io;
+
+import java.io.IOException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import java.util.zip.DataFormatException;
+
+/**
+ * A BlockCodec that uses the deflate compression from java.util.zip.
+ */
+public class DeflateBlockCodec implements BlockCodec {
+    // the deflater, which is reused for each block
+    Deflater deflater = null;
+
+    // the compression level
+    int level = Deflater.DEFAULT_COMPRESSION;
+
+    /**
+     * Construct a DeflateBlockCodec.
+     */
+    public DeflateBlockCodec() {
+	this(Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Construct a DeflateBlockCodec with a specified compression level.
+     */
+    public DeflateBlockCodec(int level) {
+	this.level = level;
+    }
+
+    /**
+     * Get the name of the codec.
+     */
+    public String getName() {
+	return "deflate";
+    }
+
+    /**
+     * Compress some bytes.
+     */
+    public synchronized int compress(byte[] in, int length, byte[] out) {
+	if (deflater == null) {
+	    deflater = new Deflater(level);
+	}
+
+	deflater.reset();
+	deflater.setInput(in, 0, length);
+	deflater.finish();
+
+	int size = deflater.deflate(out, 0, out.length);
+
+	if (deflater.finished()) {
+	    return size;
+	} else {
+	    // it didn't fit
+	    return -1;
+	}
+    }
+
+    /**
+     * Decompress some bytes.
+     * Each call has its own Inflater, so many readers
+     * can decompress at the same time.
+     */
+    public void decompress(byte[] in, int length, byte[] out, int outLength) throws IOException {
+	Inflater inflater = new Inflater();
+
+	try {
+	    inflater.setInput(in, 0, length);
+
+	    int size = inflater.inflate(out, 0, outLength);
+
+	    if (size != outLength || ! inflater.finished()) {
+		throw new IOException("DeflateBlockCodec: expected " + outLength + " bytes, got " + size);
+	    }
+	} catch (DataFormatException dfe) {
+	    throw new IOException("DeflateBlockCodec: bad compressed data " + dfe.getMessage());
+	} finally {
+	    inflater.end();
+	}
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+// Durability.java
+
+package com.timeindexing.io;
+
+
+/**
+ * An enumeration of how sure a commit is that the
+ * index and its data are on disk.
+ */
+public interface Durability {
+    /**
+     * A commit hands the data to the IO thread,
+     * and the operating system writes it out when it likes.
+     */
+    public final static Durability NONE = new Durability() {
+	    public String toString() {
+		return "NONE";
+	    }
+	};
+
+
+    /**
+     * A commit waits for a group sync, which forces out
+     * the files for all the commits in a time window at once.
+     */
+    public final static Durability GROUP = new Durability() {
+	    public String toString() {
+		return "GROUP";
+	    }
+	};
+
+
+
+    /**
+     * Every commit forces out the files before it returns.
+     */
+    public final static Durability SYNC = new Durability() {
+	    public String toString() {
+		return "SYNC";
+	    }
+	};
+
+
+
+}
@@ -37,6 +37,7 @@ import com.timeindexing.index.HeaderOption;
 import com.timeindexing.index.IndexOpenException;
 import com.timeindexing.index.IndexCreateException;
 import com.timeindexing.index.IndexTypeException;
+import com.timeindexing.index.ReadExecutor;
 import com.timeindexing.event.*;
 import com.timeindexing.basic.ID;
 import com.timeindexing.basic.SID;
@@ -51,10 +52,18 @@ import java.io.RandomAccessFile;
 import java.io.IOException;
 import java.io.FileNotFoundException;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
+import java.nio.channels.WritableByteChannel;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
  * This does I/O for an Index with external data.
@@ -82,6 +91,47 @@ public class ExternalIndexIO extends AbstractFileIO implements IndexFileInteract
     String dataIndexName = null;
     ID dataIndexID = null;
 
+    // memory mapped index objs.
+    // the mapped windows are kept by window no, so
+    // readers in different windows don't remap each other's
+    boolean mappedIndex = false;
+    Map indexMaps = new ConcurrentHashMap();
+
+    /*
+     * The no of index items in each mapped window of the index file
+     */
+    final static int MAP_WINDOW_ITEMS = 1024 * 1024;
+
+    /*
+     * The most mapped windows kept
+     */
+    final static int MAP_WINDOWS = 16;
+
+    /*
+     * The no of index items the file has to grow by
+     * before a partly mapped window is mapped again
+     */
+    final static int MAP_GROWTH_ITEMS = 64 * 1024;
+
+    // compact index objs
+    boolean compactIndex = false;
+    CompactIndexCodec compactCodec = null;
+    ByteBuffer compactBufWrite = null;
+    String blockFileName = null;
+    PositionOffsetIO blockInteractor = null;
+
+    // the block directory, which is the offset of each block
+    long[] blockOffsets = null;
+    int blockCount = 0;
+
+    // the last block decoded
+    CompactIndexCodec.Block lastBlock = null;
+    Object blockLock = new Object();
+
+    // compressed data objs
+    String compression = null;
+    CompressedDataIO compressedData = null;
+
     /**
      * Construct an External Index.
      */
@@ -142,6 +192,14 @@ public class ExternalIndexIO extends AbstractFileIO implements IndexFileInteract
 		headerInteractor.setOption(HeaderOption.NO_DATA_FILE_HEADER_HO, Boolean.TRUE);
 	    }
 
+	    // process compact_index option
+	    processCompactOption(indexProperties);
+
+	    // process compression option
+	    processCompressionOption(indexProperties);
+
+	    // process checksums option
+	    processChecksumOption(indexProperties);
 
 	    // deal with the headers
 	    indexFile.setLength(0);
@@ -150,6 +208,11 @@ public class ExternalIndexIO extends AbstractFileIO implements IndexFileInteract
 	    long indexHeaderPosition = writeHeader(FileType.EXTERNAL_INDEX);
 	    indexAppendPosition = indexHeaderPosition;
 
+	    // create the block directory of a compact index
+	    if (compactIndex) {
+		createBlockDirectory();
+	    }
+
 	    long dataHeaderPosition = 0;
 
 	    // write a data file header
@@ -158,11 +221,19 @@ public class ExternalIndexIO extends AbstractFileIO implements IndexFileInteract
 		dataHeaderPosition = writeDataHeader(FileType.EXTERNAL_DATA);
 	    }
 
+	    // set up the compressed data blocks
+	    if (compression != null) {
+		dataHeaderPosition = createCompressedData(dataHeaderPosition);
+	    }
+
 	    dataAppendPosition = dataHeaderPosition;
 
 	    // flush out all the data
 	    flush();
 
+	    // process durability option
+	    processDurabilityOption(indexProperties);
+
 	    // get a output thread going
 	    initThread(indexName + hashCode() + "-IOThread");
 	    startThread();
@@ -209,6 +280,9 @@ public class ExternalIndexIO extends AbstractFileIO implements IndexFileInteract
 	    ;
 	}
 
+	// process mapped_index option
+	mappedIndex = Boolean.valueOf((String)indexProperties.get("mappedindex")).booleanValue();
+
 	// now check to see if this index should be opened
 	// as read-only
 	Boolean readOnly = (Boolean)indexProperties.get("readonly");
@@ -223,6 +297,9 @@ public class ExternalIndexIO extends AbstractFileIO implements IndexFileInteract
 	// read the headers
 	long indexHeaderPosition = readMetaData();
 
+	// process durability option
+	processDurabilityOption(indexProperties);
+
 	initThread(indexName + "-" + hashCode() + "-IOThread");
 	startThread();
 
@@ -286,6 +363,9 @@ public class ExternalIndexIO extends AbstractFileIO implements IndexFileInteract
 	    indexFile = new RandomAccessFile(file, openMode);
 	    indexChannel = indexFile.getChannel();
 
+	    // the block directory lives next to the index file
+	    blockFileName = FileUtils.resolveFileName(file.getPath(), ".tib");
+
 	} catch (FileNotFoundException fnfe) {
 	    throw new IndexOpenException("Could not find index file: " + indexFileName);
 	}
@@ -343,10 +423,35 @@ public class ExternalIndexIO extends AbstractFileIO implements IndexFileInteract
     public long readMetaData() throws IOException, IndexOpenException {
 	long indexHeaderPosition = readHeader(FileType.EXTERNAL_INDEX);
 
+	// a compact index needs its block directory
+	if (versionMajor == FileType.COMPACT_RECORDS) {
+	    openBlockDirectory();
+	}
+
+	// the index items have checksums
+	if (Boolean.TRUE.equals(headerInteractor.getOption(HeaderOption.CHECKSUMS_HO))) {
+	    useChecksums();
+	}
+
 	long dataHeaderPosition = 0;
 
 	if (headerInteractor.getOption(HeaderOption.NO_DATA_FILE_HEADER_HO) == Boolean.FALSE) {
 	    dataHeaderPosition = readDataHeader(FileType.EXTERNAL_DATA);
+	}
+
+	// the data is in compressed blocks
+	if (headerInteractor.hasOption(HeaderOption.COMPRESSION_HO)) {
+	    openCompressedData(dataHeaderPosition);
+	}
+
+	// find the items written after the header was flushed.
+	if (compactIndex) {
+	    recoverCompactTail();
+	} else {
+	    recoverTail();
+	}
+
+	if (headerInteractor.getOption(HeaderOption.NO_DATA_FILE_HEADER_HO) == Boolean.FALSE) {
 
 	    // check ID in header == ID in index
 	    // and   ID in header == ID in data 
@@ -380,14 +485,31 @@ public class ExternalIndexIO extends AbstractFileIO implements IndexFileInteract
     }
 
 
+    /**
+     * Get the offset of the record of the item at a position.
+     * Index items are a fixed size, unless the index is compact,
+     * when the record is found in its block.
+     */
+    public long recordOffset(long position) throws IOException {
+	if (compactIndex) {
+	    // find the record in its block
+	    CompactIndexCodec.Block block = compactBlockAt(position);
+
+	    return block.getOffset((int)(position % CompactIndexCodec.BLOCK_ITEMS));
+	} else {
+	    return indexFirstPosition + (position * INDEX_ITEM_SIZE);
+	}
+    }
+
     /**
      * Get the item at index position Position.
      */
-    public synchronized ManagedIndexItem getItem(long position, boolean doLoadData) throws IOException  {
-	// calculate the position to load from
-	long start = indexFirstPosition;
-	long determined = start + (position * INDEX_ITEM_SIZE);
+    public ManagedIndexItem getItem(long position, boolean doLoadData) throws IOException  {
+	// reads are positional, so there is no need
+	// to synchronize here
 
+	// calculate the position to load from
+	long determined = recordOffset(position);
 
 	ManagedIndexItem item = readItem(determined, doLoadData);	
 
@@ -398,6 +520,989 @@ public class ExternalIndexIO extends AbstractFileIO implements IndexFileInteract
 	return item;
     }
 
+    /**
+     * Read ahead a run of items, starting at index position Position,
+     * and post them into the index.
+     * The records are next to each other in the index file, so they
+     * are read in one read.  The data of the items is read in runs
+     * of up to READAHEAD_DATA_SIZE, with one read for each run.
+     * A compact index already reads its records a block at a time,
+     * so it does not read ahead.
+     * @return the no of items read
+     */
+    public int readAhead(long position, int count, boolean doLoadData) throws IOException {
+	if (compactIndex) {
+	    return 0;
+	}
+
+	long start = indexFirstPosition + (position * INDEX_ITEM_SIZE);
+
+	ByteBuffer records = readIndexRecords(start, count);
+
+	if (records == null) {
+	    return 0;
+	}
+
+	int got = records.limit() / INDEX_ITEM_SIZE;
+
+	ManagedIndexItem[] items = new ManagedIndexItem[got];
+
+	int r = 0;
+
+	while (r < got) {
+	    // the data of the next run of items
+	    ByteBuffer window = null;
+	    long windowStart = -1;
+	    long windowEnd = 0;
+	    int runEnd = got;
+
+	    if (doLoadData && compressedData == null) {
+		for (int k=r; k<got; k++) {
+		    int recordStart = k * INDEX_ITEM_SIZE;
+		    long offset = records.getLong(recordStart + 16);
+		    long size = records.getLong(recordStart + 24);
+		    int type = records.getInt(recordStart + 32);
+
+		    if (type == DataType.REFERENCE_VALUE) {
+			continue;
+		    } else if (size > READAHEAD_DATA_SIZE) {
+			// big data is read on its own
+			if (windowStart < 0) {
+			    continue;
+			} else {
+			    runEnd = k;
+			    break;
+			}
+		    } else if (windowStart < 0) {
+			windowStart = offset;
+		    } else if (offset < windowStart || offset + size - windowStart > READAHEAD_DATA_SIZE) {
+			// the data is not in this run
+			runEnd = k;
+			break;
+		    }
+
+		    windowEnd = Math.max(windowEnd, offset + size);
+		}
+
+		// only take the data that has been written out
+		windowEnd = Math.min(windowEnd, dataLimit());
+
+		if (windowStart >= 0 && windowEnd > windowStart) {
+		    window = ByteBuffer.allocate((int)(windowEnd - windowStart));
+		    readDataIntoBuffer(window, windowStart, window.limit());
+		    window.flip();
+		}
+	    }
+
+	    // decode the items in the run
+	    for (; r<runEnd; r++) {
+		ByteBuffer itemBuf = records.duplicate();
+		itemBuf.limit((r + 1) * INDEX_ITEM_SIZE);
+		itemBuf.position(r * INDEX_ITEM_SIZE);
+
+		items[r] = decodeItem(start + (r * INDEX_ITEM_SIZE), itemBuf.slice(), doLoadData, window, windowStart);
+	    }
+	}
+
+	// post the read items into the index
+	getIndex().retrieveItems(items, position, got);
+
+	return got;
+    }
+
+    /**
+     * Read a run of index records, from a byte offset, in one read.
+     * Only the records that are in the index file are read.
+     * The records of a compact index are in blocks, so they are not read.
+     * @return a buffer with the records, or null if there are none
+     */
+    protected ByteBuffer readIndexRecords(long offset, int count) throws IOException {
+	if (compactIndex) {
+	    return null;
+	}
+
+	long end = Math.min(offset + ((long)count * INDEX_ITEM_SIZE), indexLimit());
+	int length = (int)((end - offset) / INDEX_ITEM_SIZE) * INDEX_ITEM_SIZE;
+
+	if (length <= 0) {
+	    return null;
+	}
+
+	ByteBuffer records = ByteBuffer.allocate(length);
+
+	if (readFully(indexChannel, records, offset) != length) {
+	    throw new IOException("Index Items too short: position = " + offset);
+	}
+
+	records.flip();
+
+	return records;
+    }
+
+    /**
+     * Load all of the items, and none of the data, with many threads.
+     * The record of item k is at indexFirstPosition + k * INDEX_ITEM_SIZE,
+     * so the index is split into chunks of LOAD_BLOCK_ITEMS items,
+     * and each chunk is loaded with its own positional reads.
+     * A compact index is loaded as HOLLOW.
+     */
+    protected void loadParallel() throws IOException {
+	if (compactIndex) {
+	    super.loadParallel();
+	} else {
+	    loadParallel(0);
+	}
+    }
+
+    /**
+     * Load the items from position start to the end of the index
+     * with many threads.
+     * The chunks are loaded by ReadExecutor loading threads, and by this
+     * thread, each taking the next chunk until there are none left.
+     * This thread always loads chunks, so the load finishes
+     * even if the ReadExecutor threads are all busy.
+     */
+    protected void loadParallel(long start) throws IOException {
+	long itemCount = headerInteractor.getLength();
+
+	if (start >= itemCount) {
+	    return;
+	}
+
+	long chunks = (itemCount - start + LOAD_BLOCK_ITEMS - 1) / LOAD_BLOCK_ITEMS;
+	int helpers = (int)Math.min(chunks, (long)Runtime.getRuntime().availableProcessors()) - 1;
+
+	ChunkLoader loader = new ChunkLoader(start, itemCount);
+
+	Future[] helping = new Future[helpers];
+
+	for (int h=0; h<helpers; h++) {
+	    helping[h] = ReadExecutor.submitLoad(loader);
+	}
+
+	//System.err.println("loadParallel: " + chunks + " chunks with " + (helpers+1) + " threads");
+
+	IOException error = null;
+
+	try {
+	    loader.call();
+	} catch (IOException ioe) {
+	    error = ioe;
+	}
+
+	// wait for the helpers.
+	// a helper that has not started yet is not needed
+	for (int h=0; h<helpers; h++) {
+	    if (! helping[h].cancel(false)) {
+		try {
+		    helping[h].get();
+		} catch (InterruptedException ie) {
+		    if (error == null) {
+			error = new IOException("Interrupted whilst loading index");
+		    }
+		} catch (ExecutionException ee) {
+		    if (error == null) {
+			error = new IOException(ee.getCause().getMessage());
+		    }
+		}
+	    }
+	}
+
+	if (error != null) {
+	    throw error;
+	}
+    }
+
+    /**
+     * Load a chunk of count items, starting at position.
+     * Any items that readAhead() does not get are read one by one.
+     * @return the no of items loaded
+     */
+    protected int loadChunk(long position, int count) throws IOException {
+	long end = position + count;
+
+	while (position < end) {
+	    int got = readAhead(position, (int)(end - position), false);
+
+	    if (got == 0) {
+		break;
+	    } else {
+		position += got;
+	    }
+	}
+
+	for (; position < end; position++) {
+	    // read an item, and post it into the index
+	    ManagedIndexItem item = readItem(indexFirstPosition + (position * INDEX_ITEM_SIZE), false);
+
+	    getIndex().retrieveItem(item, position);
+	}
+
+	return count;
+    }
+
+    /**
+     * A ChunkLoader loads chunks of the index, taking the
+     * next chunk until there are none left.
+     * The same ChunkLoader is called by all the loading threads.
+     */
+    class ChunkLoader implements Callable {
+	// the position of the next chunk
+	long next = 0;
+
+	// the position after the last item
+	long end = 0;
+
+	// has any thread failed
+	boolean failed = false;
+
+	ChunkLoader(long start, long end) {
+	    this.next = start;
+	    this.end = end;
+	}
+
+	/**
+	 * Load chunks until there are none left.
+	 * @return the no of items loaded by this thread
+	 */
+	public Object call() throws IOException {
+	    long chunk = 0;
+	    long loaded = 0;
+
+	    while ((chunk = nextChunk()) >= 0) {
+		try {
+		    loaded += loadChunk(chunk, (int)Math.min((long)LOAD_BLOCK_ITEMS, end - chunk));
+		} catch (IOException ioe) {
+		    stop();
+		    throw ioe;
+		}
+	    }
+
+	    return Long.valueOf(loaded);
+	}
+
+	/**
+	 * Take the next chunk.
+	 * @return the position of the chunk, or -1 if there are none left
+	 */
+	synchronized long nextChunk() {
+	    if (failed || next >= end) {
+		return -1;
+	    } else {
+		long chunk = next;
+		next += LOAD_BLOCK_ITEMS;
+		return chunk;
+	    }
+	}
+
+	/**
+	 * Stop all the threads taking chunks.
+	 */
+	synchronized void stop() {
+	    failed = true;
+	}
+    }
+
+    /**
+     * Read an IndexItem given an offset.
+     * If the index is memory mapped, the IndexItem is decoded
+     * straight from the mapped region, and the index channel is not moved.
+     * If the index is compact, the IndexItem is decoded from its block.
+     * @param offset the byte offset in the file to start reading an item from
+     */
+    public ByteBuffer readIndexItem(long offset) throws IOException {
+	if (compactIndex) {
+	    CompactIndexCodec.Block block = compactBlockFor(offset);
+	    int index = block.indexOf(offset);
+
+	    if (index < 0) {
+		throw new IOException("Index Item not found: position = " + offset);
+	    } else {
+		return block.getRecord(index);
+	    }
+	}
+
+	if (mappedIndex && offset >= indexFirstPosition) {
+	    MappedWindow window = mapIndex(offset);
+
+	    if (window != null) {
+		// get a view of the IndexItem in the mapped window.
+		// the window's own position is never moved,
+		// so it can be duplicated without a lock
+		ByteBuffer itemBuf = window.map.duplicate();
+
+		int start = (int)(offset - window.start);
+		itemBuf.limit(start + INDEX_ITEM_SIZE);
+		itemBuf.position(start);
+
+		return itemBuf.slice();
+	    }
+	}
+
+	return super.readIndexItem(offset);
+    }
+
+    /**
+     * Get the mapped window of the index that holds the IndexItem at offset.
+     * A window is only mapped, or mapped again, when the item
+     * is not in a window, and the index file has it.
+     * The last window, which is partly mapped, is only mapped again
+     * when the file has grown by MAP_GROWTH_ITEMS, or fills the window,
+     * so a reader of new items doesn't remap for each one.
+     * @return the window, or null if the IndexItem is to be read from the file
+     */
+    protected MappedWindow mapIndex(long offset) throws IOException {
+	long end = offset + INDEX_ITEM_SIZE;
+
+	// windows start on an item boundary
+	// so an item never spans two windows
+	long windowSize = (long)INDEX_ITEM_SIZE * MAP_WINDOW_ITEMS;
+	Long windowNo = Long.valueOf((offset - indexFirstPosition) / windowSize);
+
+	MappedWindow window = (MappedWindow)indexMaps.get(windowNo);
+
+	if (window != null && end <= window.end) {
+	    // it's in the window
+	    return window;
+	}
+
+	long fileSize = indexChannel.size();
+
+	if (end > fileSize) {
+	    // it's not been written out yet
+	    return null;
+	}
+
+	long windowStart = indexFirstPosition + (windowNo.longValue() * windowSize);
+	long windowEnd = Math.min(windowStart + windowSize, fileSize);
+
+	if (window != null && windowEnd < windowStart + windowSize &&
+	    windowEnd - window.end < (long)INDEX_ITEM_SIZE * MAP_GROWTH_ITEMS) {
+	    // it's not grown enough to map again
+	    return null;
+	}
+
+	window = new MappedWindow(indexChannel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowEnd - windowStart), windowStart, windowEnd);
+
+	// keep a few windows
+	if (indexMaps.size() >= MAP_WINDOWS) {
+	    Iterator windowI = indexMaps.keySet().iterator();
+
+	    while (windowI.hasNext() && indexMaps.size() >= MAP_WINDOWS) {
+		if (! windowNo.equals(windowI.next())) {
+		    windowI.remove();
+		}
+	    }
+	}
+
+	indexMaps.put(windowNo, window);
+
+	return window;
+    }
+
+    /**
+     * Get the position in the index of the item which follows
+     * the item that has just been read from position.
+     * Index items are a fixed size, so it is the next slot,
+     * unless the index is compact.
+     */
+    protected long nextIndexPosition(long position, ManagedIndexItem item) throws IOException {
+	if (compactIndex) {
+	    CompactIndexCodec.Block block = compactBlockFor(position);
+
+	    return block.getOffset(block.indexOf(position) + 1);
+	} else {
+	    return position + INDEX_ITEM_SIZE;
+	}
+    }
+
+    /**
+     * Get the offset of the record which follows the record at an offset.
+     * The data is in the data file, so it does not move the next record.
+     */
+    protected long nextRecordOffset(long offset, long dataEnd) throws IOException {
+	return nextIndexPosition(offset, null);
+    }
+
+    /**
+     * Recover the index items written after the header was last flushed.
+     * If the index was not closed, the header and the index file may
+     * not agree.  The records after the last item in the header are
+     * found using the fixed record size, and each one is checked,
+     * so only the unflushed tail of the index is read.
+     * The header is set from the last consistent record,
+     * and anything after it in the index file is dropped.
+     * A compact index is recovered by recoverCompactTail().
+     * @return the no of items in the index
+     */
+    protected long recoverTail() throws IOException {
+	long headerLength = headerInteractor.getLength();
+	long length = headerLength;
+	long indexLimit = indexLimit();
+	long dataLimit = dataLimit();
+
+	// the position after the last item in the header
+	long position = indexFirstPosition;
+
+	if (length > 0) {
+	    position = headerInteractor.getLastOffset().value() + INDEX_ITEM_SIZE;
+	}
+
+	// the header is ahead of the index file,
+	// so drop the items that are not all there
+	if (position > indexLimit) {
+	    long missing = (position - indexLimit + INDEX_ITEM_SIZE - 1) / INDEX_ITEM_SIZE;
+
+	    length = Math.max(0, length - missing);
+	    position = indexFirstPosition + (length * INDEX_ITEM_SIZE);
+	}
+
+	// the data of the last item might not have been written
+	while (length > 0 && ! consistentRecord(readIndexItem(position - INDEX_ITEM_SIZE), -1, dataLimit)) {
+	    length--;
+	    position -= INDEX_ITEM_SIZE;
+	}
+
+	// the data of the next item should follow on
+	long expectedData = -1;
+
+	if (length > 0) {
+	    expectedData = recordDataEnd(readIndexItem(position - INDEX_ITEM_SIZE));
+	}
+
+	// now read forward from the last item
+	while (position + INDEX_ITEM_SIZE <= indexLimit) {
+	    ByteBuffer itemBuf = readIndexItem(position);
+
+	    if (! consistentRecord(itemBuf, expectedData, dataLimit)) {
+		break;
+	    }
+
+	    expectedData = recordDataEnd(itemBuf);
+	    length++;
+	    position += INDEX_ITEM_SIZE;
+	}
+
+	if (length != headerLength) {
+	    setRecoveredHeader(headerLength, length, position - INDEX_ITEM_SIZE);
+	}
+
+	// drop any partial or inconsistent records
+	if (position < indexLimit && ! headerInteractor.isReadOnly()) {
+	    truncateIndex(position);
+	}
+
+	return length;
+    }
+
+    /**
+     * Recover the items of a compact index written after the header
+     * was last flushed.
+     * The records are coded against the ones before them, a block
+     * at a time, so the blocks after the last item in the header
+     * are decoded, each one starting where the one before ends,
+     * and each record is checked.
+     * Only the unflushed tail of the index is read.
+     * The header and the block directory are set from the last
+     * consistent record, and anything after it in the index file
+     * is dropped.
+     * @return the no of items in the index
+     */
+    protected long recoverCompactTail() throws IOException {
+	long headerLength = headerInteractor.getLength();
+	long length = headerLength;
+	long dataLimit = dataLimit();
+
+	// the header is ahead of the index file,
+	// so drop the items that are not all there
+	while (length > 0) {
+	    long blockNo = (length - 1) / CompactIndexCodec.BLOCK_ITEMS;
+	    int index = (int)((length - 1) % CompactIndexCodec.BLOCK_ITEMS);
+
+	    if (blockNo >= blockCount) {
+		length = (long)blockCount * CompactIndexCodec.BLOCK_ITEMS;
+		continue;
+	    }
+
+	    CompactIndexCodec.Block block = decodeBlock(blockNo);
+
+	    if (index >= block.count) {
+		length = (blockNo * CompactIndexCodec.BLOCK_ITEMS) + block.count;
+	    } else if (! consistentRecord(block.getRecord(index), -1, dataLimit)) {
+		length--;
+	    } else {
+		break;
+	    }
+	}
+
+	// the data of the next item should follow on
+	long expectedData = -1;
+
+	// the offset after the last item
+	long position = indexFirstPosition;
+
+	if (length > 0) {
+	    CompactIndexCodec.Block block = compactBlockAt(length - 1);
+	    int index = (int)((length - 1) % CompactIndexCodec.BLOCK_ITEMS);
+
+	    expectedData = recordDataEnd(block.getRecord(index));
+	    position = block.getOffset(index + 1);
+	}
+
+	// the blocks that hold the items
+	truncateBlocks((length + CompactIndexCodec.BLOCK_ITEMS - 1) / CompactIndexCodec.BLOCK_ITEMS);
+
+	// now decode forward from the last item
+	while (position < indexLimit()) {
+	    long blockNo = length / CompactIndexCodec.BLOCK_ITEMS;
+	    int index = (int)(length % CompactIndexCodec.BLOCK_ITEMS);
+
+	    if (index == 0) {
+		// the next block starts where the last one ends
+		truncateBlocks(blockNo);
+		addBlock(position);
+	    }
+
+	    CompactIndexCodec.Block block = decodeBlock(blockNo);
+	    int found = 0;
+
+	    while (index + found < block.count) {
+		ByteBuffer itemBuf = block.getRecord(index + found);
+
+		if (! consistentRecord(itemBuf, expectedData, dataLimit)) {
+		    break;
+		}
+
+		expectedData = recordDataEnd(itemBuf);
+		found++;
+	    }
+
+	    length += found;
+	    position = block.getOffset(index + found);
+
+	    if (index + found < CompactIndexCodec.BLOCK_ITEMS) {
+		// the rest of the block is not consistent
+		break;
+	    }
+	}
+
+	// a block that got no items is dropped
+	truncateBlocks((length + CompactIndexCodec.BLOCK_ITEMS - 1) / CompactIndexCodec.BLOCK_ITEMS);
+
+	synchronized (blockLock) {
+	    // the last block was decoded with what comes after it
+	    lastBlock = null;
+	}
+
+	if (length != headerLength) {
+	    CompactIndexCodec.Block block = compactBlockAt(length - 1);
+
+	    setRecoveredHeader(headerLength, length, block.getOffset((int)((length - 1) % CompactIndexCodec.BLOCK_ITEMS)));
+	}
+
+	if (! headerInteractor.isReadOnly()) {
+	    // drop any partial or inconsistent records
+	    if (position < indexLimit()) {
+		truncateIndex(position);
+	    }
+
+	    // and make the block directory file agree
+	    if (blockInteractor != null && blockInteractor.length() != blockCount) {
+		long known = Math.min(blockInteractor.length(), (long)blockCount);
+
+		blockInteractor.truncate(known);
+
+		for (long b=known; b<blockCount; b++) {
+		    blockInteractor.append(blockOffsets[(int)b]);
+		}
+	    }
+	}
+
+	return length;
+    }
+
+    /**
+     * Cut the block directory down to at most count blocks.
+     * The block directory file is not changed.
+     */
+    protected void truncateBlocks(long count) {
+	synchronized (blockLock) {
+	    blockCount = (int)Math.min(count, (long)blockCount);
+	}
+    }
+
+    /**
+     * Add a block to the block directory, but not to its file.
+     */
+    protected void addBlock(long offset) {
+	synchronized (blockLock) {
+	    if (blockCount == blockOffsets.length) {
+		long[] bigger = new long[blockOffsets.length * 2];
+		System.arraycopy(blockOffsets, 0, bigger, 0, blockCount);
+		blockOffsets = bigger;
+	    }
+
+	    blockOffsets[blockCount] = offset;
+	    blockCount++;
+	}
+    }
+
+    /**
+     * Is an index record consistent with the data file.
+     * The data must be in the data file, and must match the
+     * checksum, if there is one.
+     * @param expectedData the offset the data should be at, or -1 if not known
+     * @param dataLimit the end of the data file
+     */
+    protected boolean consistentRecord(ByteBuffer itemBuf, long expectedData, long dataLimit) {
+	if (checksums && ! RecordChecksum.checkRecord(itemBuf)) {
+	    return false;
+	}
+
+	int start = itemBuf.position();
+	long offset = itemBuf.getLong(start + 16);
+	long size = itemBuf.getLong(start + 24);
+
+	if (offset < 0 || size < 0) {
+	    return false;
+	} else if (expectedData >= 0 && offset != expectedData) {
+	    return false;
+	} else if (offset + size > dataLimit) {
+	    return false;
+	} else if (checksums && size < Integer.MAX_VALUE) {
+	    // data bigger than a buffer is not read
+	    try {
+		checkData(readData(offset, size), offset, RecordChecksum.getDataChecksum(itemBuf));
+	    } catch (IOException ioe) {
+		return false;
+	    }
+	}
+
+	return true;
+    }
+
+    /**
+     * Get the offset just after the data of an index record.
+     */
+    protected long recordDataEnd(ByteBuffer itemBuf) {
+	int start = itemBuf.position();
+
+	return itemBuf.getLong(start + 16) + itemBuf.getLong(start + 24);
+    }
+
+    /**
+     * Get the offset of the end of the index records.
+     */
+    protected long indexLimit() throws IOException {
+	return indexChannel.size();
+    }
+
+    /**
+     * Get the offset of the end of the data.
+     */
+    protected long dataLimit() throws IOException {
+	if (compressedData != null) {
+	    return compressedData.length();
+	} else {
+	    return dataChannel.size();
+	}
+    }
+
+    /**
+     * Drop everything in the index file from a position.
+     */
+    protected void truncateIndex(long position) throws IOException {
+	indexChannel.truncate(position);
+    }
+
+    /**
+     * Set up a compact index, if the compactindex property is set.
+     * A compact index has a different major version.
+     */
+    protected void processCompactOption(IndexProperties indexProperties) {
+	compactIndex = Boolean.valueOf((String)indexProperties.get("compactindex")).booleanValue();
+
+	if (compactIndex) {
+	    versionMajor = FileType.COMPACT_RECORDS;
+	    headerInteractor.setVersionMajor(FileType.COMPACT_RECORDS);
+	}
+    }
+
+    /**
+     * Set up compressed data, if the compression property is set.
+     * The value is the name of a BlockCodec, or true for the default.
+     */
+    protected void processCompressionOption(IndexProperties indexProperties) throws IndexCreateException {
+	String codecName = (String)indexProperties.get("compression");
+
+	if (codecName == null || codecName.equalsIgnoreCase("false")) {
+	    compression = null;
+	} else {
+	    if (codecName.equalsIgnoreCase("true")) {
+		codecName = BlockCodecDirectory.DEFAULT;
+	    }
+
+	    if (BlockCodecDirectory.find(codecName) == null) {
+		throw new IndexCreateException("Unknown compression: " + codecName);
+	    }
+
+	    compression = codecName;
+	    headerInteractor.setOption(HeaderOption.COMPRESSION_HO, compression);
+	}
+    }
+
+    /**
+     * Set up index items with checksums, if the checksums property is set.
+     * A compact index can't have checksums.
+     */
+    protected void processChecksumOption(IndexProperties indexProperties) throws IndexCreateException {
+	if (Boolean.valueOf((String)indexProperties.get("checksums")).booleanValue()) {
+	    if (compactIndex) {
+		throw new IndexCreateException("A compact index can't have checksums");
+	    }
+
+	    headerInteractor.setOption(HeaderOption.CHECKSUMS_HO, Boolean.TRUE);
+	    useChecksums();
+	}
+    }
+
+    /**
+     * Create the compressed data blocks for a new index.
+     * @param position the offset in the data file of the first block
+     */
+    protected long createCompressedData(long position) throws IOException {
+	compressedData = new CompressedDataIO(this, BlockCodecDirectory.find(compression));
+
+	return compressedData.create(dataChannel, dataFileName, indexID, position);
+    }
+
+    /**
+     * Open the compressed data blocks for an existing index.
+     * @param position the offset in the data file of the first block
+     */
+    protected long openCompressedData(long position) throws IOException, IndexOpenException {
+	compression = (String)headerInteractor.getOption(HeaderOption.COMPRESSION_HO);
+
+	BlockCodec codec = BlockCodecDirectory.find(compression);
+
+	if (codec == null) {
+	    throw new IndexOpenException("The index " + indexName + " uses unknown compression: " + compression);
+	}
+
+	boolean writable = ! headerInteractor.isReadOnly() && new File(dataFileName).canWrite();
+
+	compressedData = new CompressedDataIO(this, codec);
+
+	return compressedData.open(dataChannel, dataFileName, indexID, position, writable);
+    }
+
+    /**
+     * Create the block directory for a new compact index.
+     * If the block directory file can't be created, the
+     * directory is only held in memory.
+     */
+    protected void createBlockDirectory() throws IOException {
+	compactIndex = true;
+	compactCodec = new CompactIndexCodec();
+	compactBufWrite = ByteBuffer.allocate(CompactIndexCodec.MAX_RECORD_SIZE);
+
+	blockOffsets = new long[1024];
+	blockCount = 0;
+
+	blockInteractor = new PositionOffsetIO(this, ".tib", FileType.BLOCK_DIRECTORY);
+
+	if (! blockInteractor.create(blockFileName, indexID)) {
+	    // couldn't create it, so do without
+	    blockInteractor = null;
+	}
+    }
+
+    /**
+     * Open the block directory for an existing compact index.
+     * If the block directory file is missing, or has fewer blocks
+     * than the index, the missing blocks are found by
+     * scanning the index from the last known block.
+     */
+    protected void openBlockDirectory() throws IOException {
+	compactIndex = true;
+	compactCodec = new CompactIndexCodec();
+	compactBufWrite = ByteBuffer.allocate(CompactIndexCodec.MAX_RECORD_SIZE);
+
+	boolean writable = ! headerInteractor.isReadOnly();
+
+	long itemCount = headerInteractor.getLength();
+	int expected = (int)((itemCount + CompactIndexCodec.BLOCK_ITEMS - 1) / CompactIndexCodec.BLOCK_ITEMS);
+
+	blockOffsets = new long[Math.max(expected, 1024)];
+	blockCount = 0;
+
+	blockInteractor = new PositionOffsetIO(this, ".tib", FileType.BLOCK_DIRECTORY);
+
+	if (! blockInteractor.open(blockFileName, indexID, writable)) {
+	    // couldn't open it, so do without
+	    blockInteractor = null;
+	} else {
+	    long known = Math.min(blockInteractor.length(), (long)expected);
+
+	    if (known > 0) {
+		long[] offsets = new long[(int)known];
+		blockCount = blockInteractor.getOffsets(offsets);
+		System.arraycopy(offsets, 0, blockOffsets, 0, blockCount);
+	    }
+
+	    if (writable && blockInteractor.length() > blockCount) {
+		// throw away the blocks the index does not have
+		blockInteractor.truncate(blockCount);
+	    }
+	}
+
+	// find any missing blocks
+	if (blockCount < expected) {
+	    ByteBuffer missing = ByteBuffer.allocate(FLUSH_SIZE);
+	    long offset = 0;
+
+	    if (blockCount == 0) {
+		offset = indexFirstPosition;
+	    } else {
+		// the next block starts after the last known one
+		CompactIndexCodec.Block block = decodeBlock(blockCount - 1);
+		offset = block.getOffset(block.count);
+	    }
+
+	    while (blockCount < expected) {
+		blockOffsets[blockCount] = offset;
+		blockCount++;
+
+		if (blockInteractor != null && writable) {
+		    if (! missing.hasRemaining()) {
+			missing.flip();
+			blockInteractor.appendBlock(missing);
+			missing.clear();
+		    }
+
+		    missing.putLong(offset);
+		}
+
+		if (blockCount < expected) {
+		    CompactIndexCodec.Block block = decodeBlock(blockCount - 1);
+		    offset = block.getOffset(block.count);
+		}
+	    }
+
+	    if (blockInteractor != null && writable) {
+		missing.flip();
+		blockInteractor.appendBlock(missing);
+	    }
+	}
+    }
+
+    /**
+     * Add a block to the block directory.
+     */
+    protected long addBlockOffset(long offset) throws IOException {
+	addBlock(offset);
+
+	if (blockInteractor != null) {
+	    return blockInteractor.append(offset);
+	} else {
+	    return blockCount;
+	}
+    }
+
+    /**
+     * Get the decoded block which holds the IndexItem at a position.
+     */
+    protected CompactIndexCodec.Block compactBlockAt(long position) throws IOException {
+	long blockNo = position / CompactIndexCodec.BLOCK_ITEMS;
+	int index = (int)(position % CompactIndexCodec.BLOCK_ITEMS);
+
+	synchronized (blockLock) {
+	    if (lastBlock != null && lastBlock.block == blockNo && index < lastBlock.count) {
+		return lastBlock;
+	    }
+	}
+
+	CompactIndexCodec.Block block = decodeBlock(blockNo);
+
+	if (index >= block.count) {
+	    throw new IOException("Index Item too short: position = " + position);
+	} else {
+	    return block;
+	}
+    }
+
+    /**
+     * Get the decoded block which holds the IndexItem at an offset
+     * in the index file.
+     * The block is found with a binary search of the block directory.
+     */
+    protected CompactIndexCodec.Block compactBlockFor(long offset) throws IOException {
+	int blockNo = 0;
+
+	synchronized (blockLock) {
+	    if (lastBlock != null && lastBlock.holds(offset)) {
+		return lastBlock;
+	    }
+
+	    int low = 0;
+	    int high = blockCount - 1;
+
+	    // find the last block starting at or before offset
+	    while (low < high) {
+		int mid = (low + high + 1) >>> 1;
+
+		if (blockOffsets[mid] <= offset) {
+		    low = mid;
+		} else {
+		    high = mid - 1;
+		}
+	    }
+
+	    blockNo = low;
+	}
+
+	return decodeBlock(blockNo);
+    }
+
+    /**
+     * Read and decode a block of a compact index.
+     * The reads are positional, so the index channel does not move.
+     */
+    protected CompactIndexCodec.Block decodeBlock(long blockNo) throws IOException {
+	long start = 0;
+	long end = 0;
+
+	synchronized (blockLock) {
+	    if (blockNo >= blockCount) {
+		throw new IOException("Index Item block not in index: block = " + blockNo);
+	    }
+
+	    start = blockOffsets[(int)blockNo];
+
+	    if (blockNo + 1 < blockCount) {
+		end = blockOffsets[(int)blockNo + 1];
+	    } else {
+		// the last block goes up to the end of the file
+		end = indexChannel.size();
+	    }
+	}
+
+	long blockSize = Math.min(end - start, (long)CompactIndexCodec.BLOCK_ITEMS * CompactIndexCodec.MAX_RECORD_SIZE);
+	ByteBuffer blockBuf = ByteBuffer.allocate((int)Math.max(blockSize, 0));
+
+	readFully(indexChannel, blockBuf, start);
+
+	blockBuf.flip();
+
+	CompactIndexCodec.Block block = CompactIndexCodec.decode(blockBuf, blockNo, start);
+
+	synchronized (blockLock) {
+	    lastBlock = block;
+	}
+
+	return block;
+    }
+
     /**
      * Align the index for an append of the Data
      */
@@ -412,6 +1517,22 @@ public class ExternalIndexIO extends AbstractFileIO implements IndexFileInteract
      * Processing of the idnex item.
      */
     protected long processIndexItem(ByteBuffer buffer) throws IOException  {
+	if (compactIndex) {
+	    // encode the index item as a compact record
+	    compactBufWrite.clear();
+	    int recordSize = compactCodec.encode(buffer, compactBufWrite);
+	    compactBufWrite.flip();
+
+	    // write the compact record
+	    long count = bufferedIndexWrite(compactBufWrite);
+
+	    indexChannelPosition += recordSize;
+
+	    indexAppendPosition = indexChannelPosition;
+
+	    return count;
+	}
+
 	// write the index item
 	long count = bufferedIndexWrite(buffer);
 
@@ -422,12 +1543,32 @@ public class ExternalIndexIO extends AbstractFileIO implements IndexFileInteract
 	return count;
     }
 
+    /**
+     * Processing of the offset of an index item.
+     * In a compact index, the offset of the first item
+     * in each block is added to the block directory.
+     */
+    protected long processIndexOffset(long indexOffset) throws IOException {
+	if (compactIndex && compactCodec.isBlockStart()) {
+	    return addBlockOffset(indexOffset);
+	} else {
+	    return 0;
+	}
+    }
+
     /**
      * Processing of the data.
      */
     protected long processData(ByteBuffer buffer) throws IOException  {
+	long count = 0;
+
 	// write the data
-	long count= bufferedDataWrite(buffer);
+	if (compressedData != null) {
+	    // the data offsets are into the uncompressed data
+	    count = compressedData.append(buffer);
+	} else {
+	    count = bufferedDataWrite(buffer);
+	}
 
 	dataChannelPosition += buffer.limit();  // was item.getDataSize().value();
 
@@ -455,33 +1596,80 @@ public class ExternalIndexIO extends AbstractFileIO implements IndexFileInteract
     /**
      * Actually read in the data.
      */
-    protected long readDataIntoBuffer(ByteBuffer buffer, long size) throws IOException {
+    protected long readDataIntoBuffer(ByteBuffer buffer, long offset, long size) throws IOException {
 	long readCount = 0;
 
 	// read the data of index item
-	if ((readCount = dataChannel.read(buffer)) != size) {
+	if (compressedData != null) {
+	    readCount = compressedData.read(buffer, offset);
+	} else {
+	    readCount = readFully(dataChannel, buffer, offset);
+	}
+
+	if (readCount != size) {
 	    throw new IOException("Index Item Data too short: position = " +
-				  dataChannel.position() + " expected " +
+				  offset + " expected " +
 				  size + " got read count = " + readCount);
 	}
-	dataChannelPosition += readCount;
 
 	return readCount;
     }	
     
 
+    /**
+     * Force the files of the index out to disk,
+     * including the data file and the block files.
+     */
+    protected void forceFiles() throws IOException {
+	super.forceFiles();
+
+	if (dataChannel != null && dataChannel.isOpen()) {
+	    dataChannel.force(false);
+	}
+
+	if (compressedData != null) {
+	    compressedData.force();
+	}
+
+	if (blockInteractor != null) {
+	    blockInteractor.force();
+	}
+    }
+
+    /**
+     * Copy some data to a channel.
+     * Uncompressed data is transferred straight from the data file.
+     */
+    protected long copyData(long offset, long size, WritableByteChannel channel) throws IOException {
+	if (compressedData != null) {
+	    return super.copyData(offset, size, channel);
+	} else {
+	    return transferFully(dataChannel, offset, size, channel);
+	}
+    }
+
     /**
      * Memory map some data from a channel.
      */
     protected ByteBuffer memoryMapData(long offset, long size) throws IOException {
-	return dataChannel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+	if (compressedData != null) {
+	    // compressed data can't be mapped, so read it
+	    ByteBuffer buffer = ByteBuffer.allocate((int)size);
+
+	    readDataIntoBuffer(buffer, offset, size);
+	    buffer.flip();
+
+	    return buffer;
+	} else {
+	    return dataChannel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+	}
     }
     
    /**
      * Read some data, given a DataReference
      * and return it as a DataHolderObject.
      */
-    public synchronized DataHolderObject convertDataReference(DataReference dataReference) {
+    public DataHolderObject convertDataReference(DataReference dataReference) {
 	try { 
 	    ByteBuffer rawData = readData(dataReference);
 
@@ -544,13 +1732,20 @@ public class ExternalIndexIO extends AbstractFileIO implements IndexFileInteract
 
 	// flush out any reaming data
 	ByteBuffer indexBuffer = indexFlushBuffers.current();
-	indexFlushBuffers.lock();
 	written += flushBuffer(indexChannel, indexBuffer, indexFlushBuffers);
 
 	ByteBuffer dataBuffer = dataFlushBuffers.current();
-	dataFlushBuffers.lock();
 	written += flushBuffer(dataChannel, dataBuffer, dataFlushBuffers);
 
+	// flush out any block offsets
+	if (blockInteractor != null) {
+	    written += blockInteractor.flush();
+	}
+
+	// flush out the last compressed block
+	if (compressedData != null) {
+	    written += compressedData.flush();
+	}
 
 	// flush the header
 	headerInteractor.flush();
@@ -577,8 +1772,23 @@ public class ExternalIndexIO extends AbstractFileIO implements IndexFileInteract
 	//System.err.println("ExternalIndexIO: size at close = " + size);
 
 	indexChannel.close();
+
+	// close the compressed data, which trims the data file
+	if (compressedData != null) {
+	    compressedData.close();
+	}
+
 	dataChannel.close();
 
+	// close the block directory
+	if (blockInteractor != null) {
+	    blockInteractor.close();
+	}
+
+	// drop any mapped windows
+	indexMaps.clear();
+	lastBlock = null;
+
 
 	// close the header
 	headerInteractor.close();
@@ -735,6 +1945,35 @@ public class ExternalIndexIO extends AbstractFileIO implements IndexFileInteract
 	    // so we use the current channel positions
 	    setAppendPosition();
 
+	    // drop any data not in the index
+	    if (compressedData != null) {
+		compressedData.truncate(dataAppendPosition);
+	    }
+
+	    return getAppendPosition();
+
+	} else if (compactIndex) {
+	    // the records are not a fixed size
+	    // so find the last one in its block
+	    long lastPosition = headerInteractor.getLength() - 1;
+	    int index = (int)(lastPosition % CompactIndexCodec.BLOCK_ITEMS);
+
+	    CompactIndexCodec.Block block = compactBlockAt(lastPosition);
+
+	    ManagedFileIndexItem itemM = (ManagedFileIndexItem)readItem(block.getOffset(index), false);
+
+	    // set append position
+	    indexAppendPosition = block.getOffset(index + 1);
+	    dataAppendPosition = dataEndPosition(itemM);
+
+	    // carry on the deltas from the last record
+	    compactCodec.restore(block.getRecord(index), lastPosition + 1);
+
+	    // drop any data not in the index
+	    if (compressedData != null) {
+		compressedData.truncate(dataAppendPosition);
+	    }
+
 	    return getAppendPosition();
 
 	} else { 
@@ -748,14 +1987,40 @@ public class ExternalIndexIO extends AbstractFileIO implements IndexFileInteract
 	    // work out append position
 	    // from index data offset + data size
 	    long indexAppendPoint = lastOffset.value() + headerInteractor.getItemSize();
-	    long dataAppendPoint = itemM.getDataOffset().value() + itemM.getDataSize().value();
+	    long dataAppendPoint = dataEndPosition(itemM);
 
 	    // set append position
 	    indexAppendPosition = indexAppendPoint;
 	    dataAppendPosition = dataAppendPoint;
 
+	    // drop any data not in the index
+	    if (compressedData != null) {
+		compressedData.truncate(dataAppendPosition);
+	    }
+
 	    return getAppendPosition();
 	}
     }
 
+
+    /**
+     * A mapped window of the index file.
+     */
+    static class MappedWindow {
+	// the mapped region
+	MappedByteBuffer map;
+
+	// the offsets in the file it covers
+	long start;
+	long end;
+
+	/**
+	 * Construct a MappedWindow.
+	 */
+	MappedWindow(MappedByteBuffer map, long start, long end) {
+	    this.map = map;
+	    this.start = start;
+	    this.end = end;
+	}
+    }
 }
@@ -55,6 +55,48 @@ public interface FileType {
      */
     public final byte ANNOTATIONS = 0x06;
 
+    /**
+     * A position offsets file
+     */
+    public final byte POSITION_OFFSETS = 0x07;
+
+    /**
+     * A block directory file
+     */
+    public final byte BLOCK_DIRECTORY = 0x08;
+
+    /**
+     * A compressed data block map file
+     */
+    public final byte DATA_BLOCKS = 0x09;
+
+    /**
+     * A segment manifest file
+     */
+    public final byte SEGMENT_MANIFEST = 0x0A;
+
+    /**
+     * A timestamp fence file
+     */
+    public final byte TIMESTAMP_FENCES = 0x0B;
+
+    /**
+     * A data volume file
+     */
+    public final byte DATA_VOLUMES = 0x0C;
+
+    /**
+     * The major version of an index file
+     * that holds fixed size index records.
+     */
+    public final byte FIXED_RECORDS = 0x00;
+
+    /**
+     * The major version of an index file
+     * that holds compact index records, in blocks.
+     */
+    public final byte COMPACT_RECORDS = 0x02;
+
 
     /**
      * T
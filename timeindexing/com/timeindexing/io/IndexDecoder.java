@@ -132,6 +132,13 @@ public class IndexDecoder extends DefaultIndexHeader implements ManagedIndexHead
 
 
 
+    /**
+     * Does the index hold compact records.
+     */
+    public boolean hasCompactRecords() {
+	return getVersionMajor() == FileType.COMPACT_RECORDS;
+    }
+
     /**
      * Does the index header file exist
      */
@@ -221,6 +228,13 @@ public class IndexDecoder extends DefaultIndexHeader implements ManagedIndexHead
 		setVersionMajor((int)readBuf.get());
 		setVersionMinor((int)readBuf.get());
 
+		// check the version is one we know
+		// fixed size records or compact records
+		if (getVersionMajor() != FileType.FIXED_RECORDS &&
+		    getVersionMajor() != FileType.COMPACT_RECORDS) {
+		    throw new IOException("Header read failure. Got unsupported version: " + getVersionMajor() + "." + getVersionMinor());
+		}
+
 		// read index ID
 		setID(new SID(readBuf.getLong()));
 
@@ -249,6 +263,10 @@ public class IndexDecoder extends DefaultIndexHeader implements ManagedIndexHead
 			setIndexType(IndexType.SHADOW);
 			break;
 		    }
+		    case IndexType.SEGMENTED_VALUE: {
+			setIndexType(IndexType.SEGMENTED);
+			break;
+		    }
 		    case IndexType.INCORE_VALUE: {
 			throw new IOException("Header read failure. Got unexpected IndexType: INCORE");
 		    }
@@ -376,6 +394,20 @@ public class IndexDecoder extends DefaultIndexHeader implements ManagedIndexHead
 			 break;
 		     }
 
+		     case HeaderOption.COMPRESSION: {
+			 value = processCompression(HeaderOptionProcess.READ, readBuf);
+			 anOption = HeaderOption.COMPRESSION_HO;
+
+			 break;
+		     }
+
+		     case HeaderOption.CHECKSUMS: {
+			 value = processIsInTimeOrder(HeaderOptionProcess.READ, readBuf);
+			 anOption = HeaderOption.CHECKSUMS_HO;
+
+			 break;
+		     }
+
 		     case HeaderOption.REFERENCEMAPPING: {
 			 value = processReferenceMapping(HeaderOptionProcess.READ, readBuf);
 			 anOption = HeaderOption.REFERENCEMAPPING_HO;
@@ -525,6 +557,20 @@ public class IndexDecoder extends DefaultIndexHeader implements ManagedIndexHead
 	return noDataHeader;
     }
 
+    /**
+     * Process the name of the compression codec
+     */
+    protected Object processCompression(HeaderOptionProcess what, ByteBuffer readBuf) {
+	// the buffer is positioned just after the option byte
+
+	// read the codec name
+	short nameSize = readBuf.getShort();
+	byte[] nameRaw = new byte[nameSize-1];
+	readBuf.get(nameRaw, 0, nameSize-1);
+	readBuf.get();  // get NUL
+	return  new String(nameRaw);
+    }
+
     /**
      * Process the referenced indexes mapping
      */
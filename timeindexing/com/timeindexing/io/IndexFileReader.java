@@ -30,6 +30,8 @@ import com.timeindexing.basic.Position;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 
 /**
  * An interface for readers of indexes.
@@ -56,6 +58,63 @@ public interface IndexFileReader {
      */
     public ManagedIndexItem getItem(long position, boolean withData) throws IOException;
 
+    /**
+     * Get the offset of the record of the item at a position,
+     * from the index files.
+     */
+    public long recordOffset(long position) throws IOException;
+
+    /**
+     * Verify the item whose record is at an offset, straight from the files,
+     * and without posting it into the index.
+     * The record and the data are checked against their checksums,
+     * if the index has them.
+     * @return the offset of the record of the next item
+     */
+    public long verifyRecord(long offset) throws IOException;
+
+    /**
+     * Verify a run of items, from a position, straight from the files,
+     * and without posting them into the index.
+     * @param failures the message for each item that fails is put here,
+     * and the others are set to null
+     */
+    public void verifyRecords(long position, int count, String[] failures);
+
+    /**
+     * Read ahead a run of items, and post them into the index.
+     * @param position the position of the first index item to get
+     * @param count the most items to get
+     * @param withData read the data for the IndexItems if withData is true
+     * @return the no of items read, which may be 0
+     */
+    public int readAhead(long position, int count, boolean withData) throws IOException;
+
+    /**
+     * Get the length in the header when the index was opened,
+     * if the index was recovered.
+     * @return the length in the header, or -1 if the index was not recovered
+     */
+    public long getRecoveredFrom();
+
+    /**
+     * Do the index items have checksums.
+     */
+    public boolean hasChecksums();
+
+    /**
+     * Read the timestamp fences of the index from its fence file.
+     * @return the fences, or null if there is no fence file for the index
+     */
+    public long[] readFences() throws IOException;
+
+    /**
+     * Read the running totals of the data sizes of the index
+     * from its volume file.
+     * @return the totals, or null if there is no volume file for the index
+     */
+    public long[] readVolumes() throws IOException;
+
     /**
      * Read the contents of the item
      * It assumes the index file is alreayd open for writing.
@@ -99,6 +158,19 @@ public interface IndexFileReader {
      */
     public DataHolderObject convertDataReference(DataReference ref) ;
 
+    /**
+     * Get a channel onto some data, given a DataReference.
+     * The data is read from the channel a chunk at a time,
+     * so it can be bigger than a ByteBuffer.
+     */
+    public ReadableByteChannel openDataChannel(DataReference ref) throws IOException;
+
+    /**
+     * Write some data straight to a channel, given an offset and a size.
+     * @return the number of bytes written
+     */
+    public long transferData(long offset, long size, WritableByteChannel channel) throws IOException;
+
     /**
      * Load the index data, based on a specified LoadStyle.
      */
@@ -50,6 +50,17 @@ public interface IndexFileWriter {
      */
     public long writeItem(ManagedIndexItem item) throws IOException;
 
+    /**
+     * Write the timestamp fences of the index to its fence file.
+     */
+    public void writeFences(long[] fences) throws IOException;
+
+    /**
+     * Write the running totals of the data sizes of the index
+     * to its volume file.
+     */
+    public void writeVolumes(long[] volumes) throws IOException;
+
     /**
      * Get the append position
      */
@@ -64,6 +75,18 @@ public interface IndexFileWriter {
      * Flush the  index.
      */
     public long flush() throws IOException;
+
+    /**
+     * Make sure everything flushed so far is on disk,
+     * as the durability mode of the index says.
+     */
+    public long sync() throws IOException;
+
+    /**
+     * Get the metrics for the syncs.
+     */
+    public SyncMetrics getSyncMetrics();
+
     /**
      * Close the  index.
      */
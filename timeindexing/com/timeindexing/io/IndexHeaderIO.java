@@ -170,8 +170,9 @@ public class IndexHeaderIO extends IndexDecoder implements HeaderFileInteractor,
 
     /**
      * Flush the current values to the header file.
+     * This can be called by the I/O thread and by the writer.
      */
-    public long flush()  throws IOException {
+    public synchronized long flush()  throws IOException {
 	long writeCount = 0;
 
 	// sync the incore header with this
@@ -309,6 +310,15 @@ public class IndexHeaderIO extends IndexDecoder implements HeaderFileInteractor,
 	}
     }
 
+    /**
+     * Force the header file out to disk.
+     */
+    public void force() throws IOException {
+	if (channel != null && channel.isOpen()) {
+	    channel.force(false);
+	}
+    }
+
     /**
      * Operation on close
      */
@@ -504,6 +514,16 @@ public class IndexHeaderIO extends IndexDecoder implements HeaderFileInteractor,
 		    break;
 		}
 	
+		case HeaderOption.COMPRESSION: {
+		    spaceNeeded += processCompression(HeaderOptionProcess.SIZE, anOption, null);
+		    break;
+		}
+	
+		case HeaderOption.CHECKSUMS: {
+		    spaceNeeded += processChecksums(HeaderOptionProcess.SIZE, anOption, null);
+		    break;
+		}
+	
 		case HeaderOption.REFERENCEMAPPING: {
 		    spaceNeeded += processReferenceMapping(HeaderOptionProcess.SIZE, anOption, null);
 		    break;
@@ -564,6 +584,16 @@ public class IndexHeaderIO extends IndexDecoder implements HeaderFileInteractor,
 			break;
 		    }
 	
+		    case HeaderOption.COMPRESSION: {
+			processCompression(HeaderOptionProcess.WRITE, anOption, optionBuffer);
+			break;
+		    }
+	
+		    case HeaderOption.CHECKSUMS: {
+			processChecksums(HeaderOptionProcess.WRITE, anOption, optionBuffer);
+			break;
+		    }
+	
 		    case HeaderOption.REFERENCEMAPPING: {
 			processReferenceMapping(HeaderOptionProcess.WRITE, anOption, optionBuffer);
 			break;
@@ -746,6 +776,56 @@ public class IndexHeaderIO extends IndexDecoder implements HeaderFileInteractor,
 
     }
 
+    /**
+     * Do the index records have checksums
+     */
+    protected int processChecksums(HeaderOptionProcess what, HeaderOption anOption, ByteBuffer optionBuffer) {
+	Boolean checksums = (Boolean)getOption(anOption); 
+
+	// 1 for option byte, 1 for boolean
+	int size = 1 + 1;
+
+    	if (what == HeaderOptionProcess.SIZE) {
+	    return size;
+	} else {
+	    // output
+	    optionBuffer.put(anOption.value()); // the option bytes
+	    optionBuffer.put(checksums.booleanValue() ? (byte)1 : (byte)0);
+
+	    return size;
+	}
+
+    }
+
+    /**
+     * The name of the compression codec
+     */
+    protected int processCompression(HeaderOptionProcess what, HeaderOption anOption, ByteBuffer optionBuffer) {
+	// the codec name
+	String codecName = (String)getOption(anOption);
+
+	if (codecName == null || codecName.equals("")) {
+	    ; // nothing to do
+	    return  0;
+	} else {
+	    // 1 for option byte, 2 for the size
+	    // n for the name, and 1 for the NUL
+	    int size = 1 + 2  + codecName.length() + 1;
+
+	    if (what == HeaderOptionProcess.SIZE) {
+		return size;
+	    } else {
+		// output
+		optionBuffer.put(anOption.value()); // the option bytes
+		optionBuffer.putShort((short)(codecName.length()+1)); // the length plus 1 for NUL
+		optionBuffer.put(codecName.getBytes());         	// the name
+		optionBuffer.put((byte)0x00);    	// plus null terminator
+
+		return size;
+	    }
+	}
+    }
+
     /**
      * The referenced indexes mapping
      */
@@ -45,6 +45,8 @@ public class IndexTyper {
     String indexName = null;
     ID indexID = null;
     IndexType indexType = null;
+    int versionMajor = 0;
+    int versionMinor = 0;
 
     /**
      * Construct a typer
@@ -206,8 +208,15 @@ public class IndexTyper {
 
 	    
 		// get the version no
-		readBuf.get();
-		readBuf.get();
+		versionMajor = (int)readBuf.get();
+		versionMinor = (int)readBuf.get();
+
+		// check the version is one we know
+		// fixed size records or compact records
+		if (versionMajor != FileType.FIXED_RECORDS &&
+		    versionMajor != FileType.COMPACT_RECORDS) {
+		    throw new IOException("Header read failure. Got unsupported version: " + versionMajor + "." + versionMinor);
+		}
 
 		// read index ID
 		setID(new SID(readBuf.getLong()));
@@ -240,6 +249,10 @@ public class IndexTyper {
 			setIndexType(IndexType.SHADOW);
 			break;
 		    }
+		    case IndexType.SEGMENTED_VALUE: {
+			setIndexType(IndexType.SEGMENTED);
+			break;
+		    }
 		    case IndexType.INCORE_VALUE: {
 			throw new IOException("Header read failure. Got unexpected IndexType: INCORE");
 		    }
@@ -318,6 +331,27 @@ public class IndexTyper {
 	indexType = type;
     }
 
+    /**
+     * Get the major version no.
+     */
+    public int getVersionMajor() {
+	return versionMajor;
+    }
+
+    /**
+     * Get the minor version no.
+     */
+    public int getVersionMinor() {
+	return versionMinor;
+    }
+
+    /**
+     * Does the index hold compact records.
+     */
+    public boolean hasCompactRecords() {
+	return versionMajor == FileType.COMPACT_RECORDS;
+    }
+
     /**
      * Determine the length of a Header
      */
@@ -53,6 +53,7 @@ import java.io.FileNotFoundException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
+import java.nio.channels.WritableByteChannel;
 import java.net.URI;
 import java.net.URISyntaxException;
 
@@ -73,6 +74,14 @@ public class InlineIndexIO extends AbstractFileIO implements IndexFileInteractor
      */
     boolean trailingHeader = false;
 
+    /*
+     * The position offset file, which maps a position
+     * to the offset of the IndexItem in the index file.
+     */
+    PositionOffsetIO offsetInteractor = null;
+    String offsetFileName = null;
+    boolean noOffsetFile = false;
+
     /**
      * Construct an Inline Index.
      */
@@ -102,6 +111,9 @@ public class InlineIndexIO extends AbstractFileIO implements IndexFileInteractor
 	indexName = (String)indexProperties.get("name");
 	indexID = (ID)indexProperties.get("indexid");
 
+	// process no_offset_file option
+	noOffsetFile = Boolean.valueOf((String)indexProperties.get("nooffsetfile")).booleanValue();
+
 	// create the header
 	headerInteractor.create(originalIndexSpecifier);
 	
@@ -129,8 +141,21 @@ public class InlineIndexIO extends AbstractFileIO implements IndexFileInteractor
 	    long position = writeHeader(FileType.INLINE_INDEX);
 	    indexAppendPosition = position;
 
+	    // create the position offset file
+	    if (! noOffsetFile) {
+		offsetInteractor = new PositionOffsetIO(this);
+
+		if (! offsetInteractor.create(offsetFileName, indexID)) {
+		    // couldn't create it, so do without
+		    offsetInteractor = null;
+		}
+	    }
+
 	    flush();
 
+	    // process durability option
+	    processDurabilityOption(indexProperties);
+
 	    initThread(indexName + "-IOThread");
 	    startThread();
 	
@@ -148,6 +173,9 @@ public class InlineIndexIO extends AbstractFileIO implements IndexFileInteractor
 
 	originalIndexSpecifier = (String)indexProperties.get("indexpath");
 
+	// process no_offset_file option
+	noOffsetFile = Boolean.valueOf((String)indexProperties.get("nooffsetfile")).booleanValue();
+
 	headerInteractor = new IndexHeaderIO(this);
 
 
@@ -248,6 +276,9 @@ public class InlineIndexIO extends AbstractFileIO implements IndexFileInteractor
 
 	long position = readMetaData();
 
+	// process durability option
+	processDurabilityOption(indexProperties);
+
 	initThread(indexName + "-IOThread");
 	startThread();
 
@@ -306,6 +337,9 @@ public class InlineIndexIO extends AbstractFileIO implements IndexFileInteractor
 	    indexFile = new RandomAccessFile(file, openMode);
 	    indexChannel = indexFile.getChannel();
 
+	    // the position offset file sits next to the index file
+	    offsetFileName = FileUtils.resolveFileName(file.getPath(), ".tio");
+
 	    //System.err.println("InlineIndexIO: opened \"" + actualFileName + "\"");
 
 	} catch (FileNotFoundException fnfe) {
@@ -333,10 +367,18 @@ public class InlineIndexIO extends AbstractFileIO implements IndexFileInteractor
 	    headerInteractor.getName().equals(indexName)) {
 	    // The values in the header match up so we
 	    // must be looking in the right place.
+
+	    // find the items written after the header was flushed
+	    recoverTail();
 	    
 	    // sync the read header with the index object
 	    getIndex().syncHeader(headerInteractor);
 
+	    // make sure the position offsets match the index
+	    if (! noOffsetFile) {
+		syncOffsets();
+	    }
+
 	    return position;
 	} else {
 	    // The values in the header are different
@@ -346,14 +388,213 @@ public class InlineIndexIO extends AbstractFileIO implements IndexFileInteractor
 	}
     }
 
+    /**
+     * Recover the index items written after the header was last flushed.
+     * If the index was not closed, the header and the index file may
+     * not agree.  In an inline index each record is followed by its data,
+     * so the records after the last item in the header are found
+     * by following the data sizes, and each one must be whole.
+     * If the last item in the header is not all there, the items
+     * are followed from the first one.
+     * The header is set from the last whole item,
+     * and anything after it in the index file is dropped.
+     * @return the no of items in the index
+     */
+    protected long recoverTail() throws IOException {
+	long headerLength = headerInteractor.getLength();
+	long length = headerLength;
+	long limit = indexChannel.size();
+
+	// the position after the last item in the header,
+	// and the offset of the last item
+	long position = indexFirstPosition;
+	long lastOffset = -1;
+
+	if (length > 0) {
+	    lastOffset = headerInteractor.getLastOffset().value();
+
+	    if (lastOffset + INDEX_ITEM_SIZE <= limit && wholeRecord(readIndexItem(lastOffset), lastOffset, limit)) {
+		position = nextItemOffset(lastOffset);
+	    } else {
+		// the header is ahead of the index file,
+		// so follow the items from the first one
+		length = 0;
+		lastOffset = -1;
+	    }
+	}
+
+	// now read forward from the last item
+	while (position + INDEX_ITEM_SIZE <= limit) {
+	    ByteBuffer itemBuf = readIndexItem(position);
+
+	    if (! wholeRecord(itemBuf, position, limit)) {
+		break;
+	    }
+
+	    lastOffset = position;
+	    length++;
+	    position = itemBuf.getLong(16) + itemBuf.getLong(24);
+	}
+
+	if (length != headerLength) {
+	    setRecoveredHeader(headerLength, length, lastOffset);
+	}
+
+	// drop any partial records
+	if (position < limit && ! headerInteractor.isReadOnly()) {
+	    indexChannel.truncate(position);
+	}
+
+	return length;
+    }
+
+    /**
+     * Is an index record at an offset whole.
+     * The data must follow straight after the record,
+     * and must all be in the index file.
+     */
+    protected boolean wholeRecord(ByteBuffer itemBuf, long offset, long limit) {
+	long dataOffset = itemBuf.getLong(16);
+	long dataSize = itemBuf.getLong(24);
+
+	return dataOffset == offset + INDEX_ITEM_SIZE && dataSize >= 0 && dataOffset + dataSize <= limit;
+    }
+
+    /**
+     * Sync the position offset file with the index.
+     * If the file is missing, or has fewer offsets than the index
+     * has items, the missing offsets are rebuilt by scanning the index
+     * from the last known item.
+     * @return the no of offsets in the position offset file
+     */
+    protected long syncOffsets() throws IOException {
+	boolean writable = ! headerInteractor.isReadOnly();
+
+	if (offsetInteractor == null) {
+	    offsetInteractor = new PositionOffsetIO(this);
+
+	    if (! offsetInteractor.open(offsetFileName, indexID, writable)) {
+		// couldn't open it, so do without
+		offsetInteractor = null;
+		return 0;
+	    }
+	}
+
+	long itemCount = headerInteractor.getLength();
+	long known = offsetInteractor.length();
+
+	if (known > itemCount) {
+	    // there are more offsets than items
+	    if (writable) {
+		offsetInteractor.truncate(itemCount);
+	    }
+
+	} else if (known < itemCount && writable) {
+	    // some offsets are missing, so rebuild them
+	    ByteBuffer offsets = ByteBuffer.allocate(FLUSH_SIZE);
+	    long offset = 0;
+
+	    if (known == 0) {
+		offset = indexFirstPosition;
+	    } else {
+		offset = nextItemOffset(offsetInteractor.getOffset(known-1));
+	    }
+
+	    for (long count = known; count < itemCount; count++) {
+		if (! offsets.hasRemaining()) {
+		    offsets.flip();
+		    offsetInteractor.appendBlock(offsets);
+		    offsets.clear();
+		}
+
+		offsets.putLong(offset);
+
+		offset = nextItemOffset(offset);
+	    }
+
+	    offsets.flip();
+	    offsetInteractor.appendBlock(offsets);
+	}
+
+	return offsetInteractor.length();
+    }
+
+    /**
+     * Determine the offset of the next IndexItem,
+     * given the offset of an IndexItem.
+     * In an inline index, the next item follows straight after the data.
+     */
+    protected long nextItemOffset(long offset) throws IOException {
+	ByteBuffer itemBuf = readIndexItem(offset);
+
+	// the data offset and the data size
+	// follow the index and data timestamps
+	long dataOffset = itemBuf.getLong(16);
+	long dataSize = itemBuf.getLong(24);
+
+	return dataOffset + dataSize;
+    }
+
+    /**
+     * Get the offset of the record of the item at a position.
+     * If there is a position offset file, the offset is taken from it,
+     * otherwise the records are followed from the first one.
+     */
+    public long recordOffset(long position) throws IOException {
+	if (offsetInteractor != null && position < offsetInteractor.length()) {
+	    long offset = offsetInteractor.getOffset(position);
+
+	    if (offset >= 0) {
+		return offset;
+	    }
+	}
+
+	long offset = indexFirstPosition;
+	long limit = dataLimit();
+
+	for (long count=0; count < position; count++) {
+	    if (offset >= limit) {
+		throw new IOException("Index Item not found: position = " + position);
+	    }
+
+	    offset = nextItemOffset(offset);
+	}
+
+	return offset;
+    }
+
+    /**
+     * Get the offset of the record which follows the record at an offset.
+     * In an inline index, the next item follows straight after the data.
+     */
+    protected long nextRecordOffset(long offset, long dataEnd) {
+	return dataEnd;
+    }
+
     /**
      * Get the item at index position Position.
-     * This will load upto position position.
+     * If there is a position offset file, the item is read directly,
+     * otherwise this will load upto position position.
      */
     public synchronized ManagedIndexItem getItem(long position, boolean doLoadData) throws IOException  {
+	if (offsetInteractor != null && position < offsetInteractor.length()) {
+	    // the position offset file knows where the item is
+	    long offset = offsetInteractor.getOffset(position);
+
+	    if (offset >= 0) {
+		ManagedIndexItem item = readItem(offset, doLoadData);	
+
+		// post the read item into the index
+		// this is the Index callback
+		getIndex().retrieveItem(item, position);
+
+		return item;
+	    }
+	}
+
 	// this requires a linear scan down the index
 
-	IndexItem item = null;
+	ManagedIndexItem item = null;
 
 	//System.err.println("InlineIndexIO: getItem " + position);
 
@@ -368,14 +609,80 @@ public class InlineIndexIO extends AbstractFileIO implements IndexFileInteractor
 	    item =  readItem(offset, doLoadData);
 
 	    // set the position for next time
-	    offset = indexChannelPosition;
+	    offset = nextIndexPosition(offset, item);
 
 	    // post the read item into the index
 	    // this is the Index callback
 	    //System.err.println("InlineIndexIO: retrieveItem at position " + count);
 	    getIndex().retrieveItem(item, count);
 	}
-	return null;
+	return item;
+    }
+
+    /**
+     * Read ahead a run of items, starting at index position Position,
+     * and post them into the index.
+     * In an inline index, each record is followed by its data,
+     * so the records and the data are read together in one read,
+     * as far as READAHEAD_DATA_SIZE.
+     * The position offset file is needed to find the first item.
+     * @return the no of items read
+     */
+    public synchronized int readAhead(long position, int count, boolean doLoadData) throws IOException  {
+	if (offsetInteractor == null || position >= offsetInteractor.length()) {
+	    return 0;
+	}
+
+	long start = offsetInteractor.getOffset(position);
+
+	if (start < 0) {
+	    return 0;
+	}
+
+	// read as far as the item after the run,
+	// but only what has been written out
+	long end = -1;
+
+	if (position + count < offsetInteractor.length()) {
+	    end = offsetInteractor.getOffset(position + count);
+	}
+
+	if (end < 0) {
+	    end = dataLimit();
+	}
+
+	end = Math.min(Math.min(end, dataLimit()), start + READAHEAD_DATA_SIZE);
+
+	if (end - start < INDEX_ITEM_SIZE) {
+	    return 0;
+	}
+
+	ByteBuffer window = ByteBuffer.allocate((int)(end - start));
+
+	readFully(indexChannel, window, start);
+	window.flip();
+
+	// decode the items
+	ManagedIndexItem[] items = new ManagedIndexItem[Math.min(count, window.limit() / INDEX_ITEM_SIZE)];
+	long offset = start;
+	int got = 0;
+
+	while (got < count && offset + INDEX_ITEM_SIZE <= start + window.limit()) {
+	    ByteBuffer itemBuf = window.duplicate();
+	    itemBuf.limit((int)(offset - start + INDEX_ITEM_SIZE));
+	    itemBuf.position((int)(offset - start));
+
+	    items[got] = decodeItem(offset, itemBuf.slice(), doLoadData, window, start);
+
+	    // set the position for next time
+	    offset = nextIndexPosition(offset, items[got]);
+	    got++;
+	}
+
+	// post the read items into the index
+	getIndex().retrieveItems(items, position, got);
+
+	return got;
     }
 
     /**
@@ -385,6 +692,27 @@ public class InlineIndexIO extends AbstractFileIO implements IndexFileInteractor
 	 return indexChannelPosition + INDEX_ITEM_SIZE;
     }
 
+    /**
+     * Get the position in the index of the item which follows
+     * the item that has just been read from position.
+     * In an inline index, the next item follows straight after the data.
+     */
+    protected long nextIndexPosition(long position, ManagedIndexItem item) {
+	return dataEndPosition((ManagedFileIndexItem)item);
+    }
+
+
+    /**
+     * Processing of the offset of an index item.
+     * The offset is added to the position offset file.
+     */
+    protected long processIndexOffset(long indexOffset) throws IOException {
+	if (offsetInteractor != null) {
+	    return offsetInteractor.append(indexOffset);
+	} else {
+	    return 0;
+	}
+    }
 
     /**
      * Processing of the idnex item.
@@ -433,15 +761,14 @@ public class InlineIndexIO extends AbstractFileIO implements IndexFileInteractor
     /**
      * Actually read in the data.
      */
-    protected long readDataIntoBuffer(ByteBuffer buffer, long size) throws IOException {
+    protected long readDataIntoBuffer(ByteBuffer buffer, long offset, long size) throws IOException {
 	long readCount = 0;
 
 	// read the data of index item
-	if ((readCount = indexChannel.read(buffer)) != size) {
+	if ((readCount = readFully(indexChannel, buffer, offset)) != size) {
 	    throw new IOException("Index Item Data too short: position = " +
-				  indexChannel.position() + " read count = " + readCount);
+				  offset + " read count = " + readCount);
 	}
-	indexChannelPosition += readCount;
 
 	return readCount;
     }	
@@ -453,6 +780,34 @@ public class InlineIndexIO extends AbstractFileIO implements IndexFileInteractor
     protected ByteBuffer memoryMapData(long offset, long size) throws IOException {
 	return indexChannel.map(FileChannel.MapMode.READ_ONLY, offset, size);
     }
+
+    /**
+     * Force the files of the index out to disk,
+     * including the position offset file.
+     */
+    protected void forceFiles() throws IOException {
+	super.forceFiles();
+
+	if (offsetInteractor != null) {
+	    offsetInteractor.force();
+	}
+    }
+
+    /**
+     * Copy some data to a channel.
+     * The data is transferred straight from the index file.
+     */
+    protected long copyData(long offset, long size, WritableByteChannel channel) throws IOException {
+	return transferFully(indexChannel, offset, size, channel);
+    }
+
+    /**
+     * Get the offset of the end of the data.
+     * The data is in the index file.
+     */
+    protected long dataLimit() throws IOException {
+	return indexChannel.size();
+    }
     
 
     /**
@@ -510,7 +865,7 @@ public class InlineIndexIO extends AbstractFileIO implements IndexFileInteractor
 
 	    // work out append position
 	    // from index data offset + data size
-	    long appendPoint = itemM.getDataOffset().value() + itemM.getDataSize().value();
+	    long appendPoint = dataEndPosition(itemM);
 
 	    // set append position
 	    indexAppendPosition = appendPoint;
@@ -530,9 +885,13 @@ public class InlineIndexIO extends AbstractFileIO implements IndexFileInteractor
 
 	// flush out any reaming data
 	ByteBuffer indexBuffer = indexFlushBuffers.current();
-	indexFlushBuffers.lock();
 	written += flushBuffer(indexChannel, indexBuffer, indexFlushBuffers);
 
+	// flush out any position offsets
+	if (offsetInteractor != null) {
+	    written += offsetInteractor.flush();
+	}
+
 	// flush the header
 	long headerWritten = headerInteractor.flush();
 
@@ -609,6 +968,11 @@ public class InlineIndexIO extends AbstractFileIO implements IndexFileInteractor
     protected void reallyClose() throws IOException {
 	// close the channel
 	indexChannel.close();
+
+	// close the position offset file
+	if (offsetInteractor != null) {
+	    offsetInteractor.close();
+	}
     }
 	
     /**
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+// ItemDataChannel.java
+
+package com.timeindexing.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.ClosedChannelException;
+import java.util.zip.CRC32;
+
+/**
+ * A ReadableByteChannel onto the data of an index item.
+ * Each read is a positional read of the index's data,
+ * so the data is never held in one ByteBuffer,
+ * and items bigger than a ByteBuffer can be read.
+ * If the data has a checksum, it is checked by the read
+ * that gets the last of the data.
+ */
+public class ItemDataChannel implements ReadableByteChannel {
+    // the index I/O object
+    AbstractFileIO fileIO = null;
+
+    // where the data is
+    long offset = 0;
+    long size = 0;
+
+    // how much has been read
+    long position = 0;
+
+    // the checksum of the data, or -1 if there isn't one
+    long checksum = -1;
+    CRC32 crc = null;
+
+    boolean open = true;
+
+    /**
+     * Construct an ItemDataChannel.
+     * @param offset the offset of the data
+     * @param size the size of the data
+     * @param checksum the checksum of the data, or -1 if there isn't one
+     */
+    public ItemDataChannel(AbstractFileIO fileIO, long offset, long size, long checksum) {
+	this.fileIO = fileIO;
+	this.offset = offset;
+	this.size = size;
+	this.checksum = checksum;
+
+	if (checksum >= 0) {
+	    crc = new CRC32();
+	}
+    }
+
+    /**
+     * Read some of the data into dst.
+     * @return the no of bytes read, or -1 at the end of the data
+     */
+    public int read(ByteBuffer dst) throws IOException {
+	if (! open) {
+	    throw new ClosedChannelException();
+	}
+
+	if (position == size) {
+	    // empty data is checked here
+	    checkData();
+
+	    return -1;
+	}
+
+	int count = (int)Math.min(dst.remaining(), size - position);
+
+	if (count == 0) {
+	    return 0;
+	}
+
+	// read into a view of dst
+	ByteBuffer view = dst.slice();
+	view.limit(count);
+
+	fileIO.readDataIntoBuffer(view, offset + position, count);
+
+	if (crc != null) {
+	    view.flip();
+	    RecordChecksum.update(crc, view);
+	}
+
+	dst.position(dst.position() + count);
+	position += count;
+
+	if (position == size) {
+	    // check the data as soon as it has all been read
+	    checkData();
+	}
+
+	return count;
+    }
+
+    /**
+     * Check the data against the checksum, once.
+     */
+    private void checkData() throws IOException {
+	if (crc != null) {
+	    long value = crc.getValue();
+	    crc = null;
+
+	    if (value != checksum) {
+		throw new IOException("Index Item Data checksum failed: offset = " + offset + " size = " + size);
+	    }
+	}
+    }
+
+    /**
+     * Is the channel open.
+     */
+    public boolean isOpen() {
+	return open;
+    }
+
+    /**
+     * Close the channel.
+     */
+    public void close() {
+	open = false;
+    }
+}
@@ -45,6 +45,20 @@ public interface LoadStyle {
 	};
 
 
+    /**
+     * Load all of the index and none of the data,
+     * with many threads at once.
+     * This is for indexes whose records are all the same size,
+     * so the index can be split into chunks that are loaded
+     * independently.  Other indexes are loaded as HOLLOW.
+     */
+    public final static LoadStyle PARALLEL = new LoadStyle() {
+	    public String toString() {
+		return "PARALLEL";
+	    }
+	};
+
+
 
     /**
      * Load nothing.
@@ -0,0 +1,374 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+// PositionOffsetIO.java
+
+package com.timeindexing.io;
+
+import com.timeindexing.basic.ID;
+import com.timeindexing.util.ByteBufferRing;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.io.IOException;
+import java.io.FileNotFoundException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This does I/O for a position offset file.
+ * A position offset file is a sidecar to an index file, which
+ * holds the byte offset of each IndexItem in the index file,
+ * at a fixed width per position.
+ * It allows an index, such as an inline index, where the IndexItems
+ * are not at a fixed stride to go straight to an IndexItem
+ * given its position.
+ * <p>
+ * The file has a small header, followed by one 8 byte offset per position.
+ * <p>
+ * The same layout is used for other sidecars that hold one offset
+ * per entry, such as the block directory of a compact index.
+ */
+public class PositionOffsetIO {
+    // The interactor whose IO thread does the writes
+    AbstractFileIO interactor = null;
+
+    // the file objs
+    String offsetFileName = null;
+    RandomAccessFile offsetFile = null;
+    FileChannel offsetChannel = null;
+    ByteBufferRing offsetFlushBuffers = null;
+
+    // buffers
+    ByteBuffer offsetBufWrite = null;
+    ByteBuffer offsetBufRead = null;
+
+    // The no of offsets held, including those not yet flushed
+    long length = 0;
+
+    // the extension and file type of the file
+    String extension = null;
+    byte fileType = 0;
+
+    /*
+     * The size of the header of the offset file.
+     * T I 3 type, the version, and the index ID
+     */
+    final static int OFFSET_HEADER_SIZE = 4 + 2 + 8;
+
+    /*
+     * The size of each offset
+     */
+    final static int OFFSET_SIZE = 8;
+
+    /**
+     * Construct a PositionOffsetIO.
+     */
+    public PositionOffsetIO(AbstractFileIO fileInteractor) {
+	this(fileInteractor, ".tio", FileType.POSITION_OFFSETS);
+    }
+
+    /**
+     * Construct a PositionOffsetIO for a file with a specified
+     * extension and file type.
+     */
+    public PositionOffsetIO(AbstractFileIO fileInteractor, String ext, byte type) {
+	interactor = fileInteractor;
+	extension = ext;
+	fileType = type;
+	offsetBufWrite = ByteBuffer.allocate(OFFSET_SIZE);
+	offsetBufRead = ByteBuffer.allocate(OFFSET_SIZE);
+	offsetFlushBuffers = new ByteBufferRing(2, AbstractFileIO.FLUSH_SIZE);
+    }
+
+    /**
+     * Create a new offset file, removing any old contents.
+     * @return false if the file could not be created
+     */
+    public boolean create(String filename, ID indexID) throws IOException {
+	if (! open(filename, true)) {
+	    return false;
+	} else {
+	    reset(indexID);
+	    return true;
+	}
+    }
+
+    /**
+     * Open an existing offset file.
+     * If the file does not exist, or it is not the offset file
+     * for the index with the specified ID, the file is reset to
+     * have no offsets in it, and will need to be rebuilt.
+     * @return false if the file could not be opened
+     */
+    public boolean open(String filename, ID indexID, boolean writable) throws IOException {
+	if (! open(filename, writable)) {
+	    return false;
+	} else {
+	    if (checkHeader(indexID)) {
+		// a good offset file
+		// so work out how many offsets there are
+		length = (offsetChannel.size() - OFFSET_HEADER_SIZE) / OFFSET_SIZE;
+
+		if (writable) {
+		    // throw away any partial offset at the end
+		    truncate(length);
+		}
+
+		return true;
+	    } else if (writable) {
+		// not the offsets for this index, so start again
+		reset(indexID);
+		return true;
+	    } else {
+		// can't use it, and can't rebuild it
+		close();
+		return false;
+	    }
+	}
+    }
+
+    /**
+     * Open the actual file.
+     */
+    protected boolean open(String filename, boolean writable) throws IOException {
+	offsetFileName = FileUtils.resolveFileName(filename, extension);
+
+	File file = new File(offsetFileName);
+
+	if (!writable && !file.exists()) {
+	    // nothing to read
+	    return false;
+	}
+
+	try {
+	    offsetFile = new RandomAccessFile(file, writable ? "rw" : "r");
+	    offsetChannel = offsetFile.getChannel();
+	    return true;
+	} catch (FileNotFoundException fnfe) {
+	    // the file can't be opened with the right mode
+	    // e.g. the directory is not writable
+	    return false;
+	}
+    }
+
+    /**
+     * Check the header of the offset file is for the specified index.
+     */
+    protected boolean checkHeader(ID indexID) throws IOException {
+	if (offsetChannel.size() < OFFSET_HEADER_SIZE) {
+	    return false;
+	}
+
+	ByteBuffer headerBuf = ByteBuffer.allocate(OFFSET_HEADER_SIZE);
+
+	offsetChannel.read(headerBuf, 0);
+	headerBuf.flip();
+
+	// check first 4 bytes and the index ID
+	if (headerBuf.get() == FileType.T &&
+	    headerBuf.get() == FileType.I &&
+	    headerBuf.get() == FileType.BYTE_3 &&
+	    headerBuf.get() == fileType) {
+
+	    // skip the version no
+	    headerBuf.get();
+	    headerBuf.get();
+
+	    return headerBuf.getLong() == indexID.value();
+	} else {
+	    return false;
+	}
+    }
+
+    /**
+     * Reset the offset file so it has no offsets in it.
+     */
+    protected void reset(ID indexID) throws IOException {
+	offsetFile.setLength(0);
+
+	ByteBuffer headerBuf = ByteBuffer.allocate(OFFSET_HEADER_SIZE);
+
+	headerBuf.put(FileType.T);
+	headerBuf.put(FileType.I);
+	headerBuf.put(FileType.BYTE_3);
+	headerBuf.put(fileType);
+
+	// version major and minor
+	headerBuf.put((byte)0);
+	headerBuf.put((byte)0);
+
+	// the ID of the index
+	headerBuf.putLong(indexID.value());
+
+	headerBuf.flip();
+	offsetChannel.write(headerBuf, 0);
+	offsetChannel.position(OFFSET_HEADER_SIZE);
+
+	length = 0;
+    }
+
+    /**
+     * Get the no of offsets held.
+     */
+    public long length() {
+	return length;
+    }
+
+    /**
+     * Add the offset of the next IndexItem.
+     */
+    public long append(long offset) throws IOException {
+	offsetBufWrite.clear();
+	offsetBufWrite.putLong(offset);
+	offsetBufWrite.flip();
+
+	interactor.bufferedWrite(offsetBufWrite, offsetChannel, offsetFlushBuffers);
+
+	length++;
+
+	return length;
+    }
+
+    /**
+     * Add a block of offsets directly to the file, without going
+     * via the I/O thread.
+     * This is used when rebuilding the file on open.
+     */
+    public long appendBlock(ByteBuffer offsets) throws IOException {
+	long fileOffset = OFFSET_HEADER_SIZE + (length * OFFSET_SIZE);
+	long count = offsets.remaining() / OFFSET_SIZE;
+
+	while (offsets.hasRemaining()) {
+	    fileOffset += offsetChannel.write(offsets, fileOffset);
+	}
+
+	length += count;
+
+	offsetChannel.position(fileOffset);
+
+	return length;
+    }
+
+    /**
+     * Get the offset of an IndexItem at a specified position.
+     * The read does not move the channel position, so
+     * any appends are not affected.
+     * @return -1 if the position is not available from the file
+     */
+    public long getOffset(long position) throws IOException {
+	long fileOffset = OFFSET_HEADER_SIZE + (position * OFFSET_SIZE);
+
+	offsetBufRead.clear();
+
+	if (offsetChannel.read(offsetBufRead, fileOffset) != OFFSET_SIZE) {
+	    // the offset has not been written out yet
+	    return -1;
+	} else {
+	    offsetBufRead.flip();
+	    return offsetBufRead.getLong();
+	}
+    }
+
+    /**
+     * Get the offsets held in the file, from the start.
+     * The reads do not move the channel position.
+     * @return the no of offsets read
+     */
+    public int getOffsets(long[] offsets) throws IOException {
+	ByteBuffer readBuf = ByteBuffer.allocate(AbstractFileIO.FLUSH_SIZE);
+	long fileOffset = OFFSET_HEADER_SIZE;
+	int count = 0;
+
+	while (count < offsets.length) {
+	    readBuf.clear();
+
+	    int wanted = Math.min(readBuf.capacity(), (offsets.length - count) * OFFSET_SIZE);
+	    readBuf.limit(wanted);
+
+	    int readCount = interactor.readFully(offsetChannel, readBuf, fileOffset);
+
+	    readBuf.flip();
+
+	    while (readBuf.remaining() >= OFFSET_SIZE) {
+		offsets[count] = readBuf.getLong();
+		count++;
+	    }
+
+	    if (readCount < wanted) {
+		// hit the end of the file
+		break;
+	    }
+
+	    fileOffset += readCount;
+	}
+
+	return count;
+    }
+
+    /**
+     * Truncate the offset file to hold a specified number of offsets.
+     */
+    public long truncate(long size) throws IOException {
+	long fileSize = OFFSET_HEADER_SIZE + (size * OFFSET_SIZE);
+
+	if (offsetChannel.size() > fileSize) {
+	    offsetChannel.truncate(fileSize);
+	}
+
+	offsetChannel.position(fileSize);
+
+	length = size;
+
+	return length;
+    }
+
+    /**
+     * Flush out the pending offsets.
+     */
+    public long flush() throws IOException {
+	ByteBuffer offsetBuffer = offsetFlushBuffers.current();
+
+	return interactor.flushBuffer(offsetChannel, offsetBuffer, offsetFlushBuffers);
+    }
+
+    /**
+     * Force the offset file out to disk.
+     */
+    public void force() throws IOException {
+	if (offsetChannel != null && offsetChannel.isOpen()) {
+	    offsetChannel.force(false);
+	}
+    }
+
+    /**
+     * Close the offset file.
+     * Any pending writes must have been drained first.
+     */
+    public long close() throws IOException {
+	long size = 0;
+
+	if (offsetChannel != null) {
+	    size = offsetChannel.size();
+	    offsetChannel.close();
+	    offsetChannel = null;
+	}
+
+	return size;
+    }
+}
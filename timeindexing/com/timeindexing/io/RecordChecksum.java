@@ -0,0 +1,132 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+// RecordChecksum.java
+
+package com.timeindexing.io;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * The checksums of index records and their data.
+ * <p>
+ * When an index has the checksums option, each index record
+ * is CHECKSUM_ITEM_SIZE bytes long.  The normal 52 byte record
+ * is followed by a 4 byte checksum of the data, then a 4 byte
+ * checksum of the first 56 bytes of the record.
+ */
+public class RecordChecksum {
+    /**
+     * The size of an index item without checksums.
+     */
+    public final static int ITEM_SIZE = 52;
+
+    /**
+     * The size of an index item with checksums.
+     */
+    public final static int CHECKSUM_ITEM_SIZE = 60;
+
+    /**
+     * The offset of the data checksum in an index item.
+     */
+    public final static int DATA_CHECKSUM_OFFSET = 52;
+
+    /**
+     * The offset of the record checksum in an index item.
+     */
+    public final static int RECORD_CHECKSUM_OFFSET = 56;
+
+    // the size of the copy buffer for direct and mapped buffers
+    final static int COPY_SIZE = 8 * 1024;
+
+    /**
+     * Get the checksum of the remaining bytes in a buffer.
+     * The position of the buffer is not changed.
+     * @return the checksum as an unsigned 32 bit value
+     */
+    public static long checksum(ByteBuffer buffer) {
+	return checksum(buffer, buffer.position(), buffer.remaining());
+    }
+
+    /**
+     * Get the checksum of length bytes in a buffer, starting at start.
+     * The position of the buffer is not changed.
+     * @return the checksum as an unsigned 32 bit value
+     */
+    public static long checksum(ByteBuffer buffer, int start, int length) {
+	CRC32 crc = new CRC32();
+
+	ByteBuffer view = buffer.duplicate();
+	view.limit(start + length);
+	view.position(start);
+
+	update(crc, view);
+
+	return crc.getValue();
+    }
+
+    /**
+     * Add the remaining bytes in a buffer to a checksum.
+     * The position of the buffer is not changed.
+     */
+    public static void update(CRC32 crc, ByteBuffer buffer) {
+	int length = buffer.remaining();
+
+	if (buffer.hasArray()) {
+	    crc.update(buffer.array(), buffer.arrayOffset() + buffer.position(), length);
+	} else {
+	    // direct and mapped buffers are copied a chunk at a time
+	    ByteBuffer view = buffer.duplicate();
+
+	    byte[] chunk = new byte[Math.min(length, COPY_SIZE)];
+
+	    while (view.hasRemaining()) {
+		int count = Math.min(view.remaining(), chunk.length);
+		view.get(chunk, 0, count);
+		crc.update(chunk, 0, count);
+	    }
+	}
+    }
+
+    /**
+     * Add the data checksum and the record checksum to an index item.
+     * The buffer should have the 52 byte record in it,
+     * and room for the checksums.
+     */
+    public static void put(ByteBuffer itemBuf, long dataChecksum) {
+	itemBuf.putInt((int)dataChecksum);
+	itemBuf.putInt((int)checksum(itemBuf, 0, RECORD_CHECKSUM_OFFSET));
+    }
+
+    /**
+     * Check the record checksum of an index item.
+     * The buffer starts at the index item.
+     */
+    public static boolean checkRecord(ByteBuffer itemBuf) {
+	long expected = itemBuf.getInt(itemBuf.position() + RECORD_CHECKSUM_OFFSET) & 0xFFFFFFFFL;
+
+	return checksum(itemBuf, itemBuf.position(), RECORD_CHECKSUM_OFFSET) == expected;
+    }
+
+    /**
+     * Get the data checksum of an index item.
+     * The buffer starts at the index item.
+     */
+    public static long getDataChecksum(ByteBuffer itemBuf) {
+	return itemBuf.getInt(itemBuf.position() + DATA_CHECKSUM_OFFSET) & 0xFFFFFFFFL;
+    }
+}
@@ -0,0 +1,1431 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+// SegmentedIndexIO.java
+
+package com.timeindexing.io;
+
+import com.timeindexing.index.StoredIndex;
+import com.timeindexing.index.ManagedIndexItem;
+import com.timeindexing.index.IndexProperties;
+import com.timeindexing.index.IndexTimestampSelector;
+import com.timeindexing.index.HeaderOption;
+import com.timeindexing.index.IndexCreateException;
+import com.timeindexing.index.IndexOpenException;
+import com.timeindexing.basic.ID;
+import com.timeindexing.basic.SID;
+import com.timeindexing.time.Timestamp;
+import com.timeindexing.time.TimeCalculator;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.io.IOException;
+import java.io.FileNotFoundException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+import java.util.LinkedList;
+import java.util.Iterator;
+import java.net.URI;
+import java.net.URISyntaxException;
+
+/**
+ * This does I/O for a segmented Index.
+ * <p>
+ * A segmented index is an external index whose index and data
+ * are split over many segments.  Each segment has its own index file
+ * and data file, and a new segment is started when the current one
+ * gets to a certain size, or when the data timestamps cross a
+ * time boundary.
+ * <p>
+ * The segments are listed in a manifest file, which holds the
+ * first position, the data offset, and the first and last
+ * timestamps of each segment.
+ * <p>
+ * Positions, index offsets and data offsets are global, as though
+ * all the segments were one index file and one data file,
+ * so the rest of the index does not know about the segments.
+ * The segment index files and data files have no headers.
+ * <p>
+ * Old segments can be removed from the front of the index.
+ * The positions of the remaining items do not change, but the
+ * start position of the index moves up to the first position
+ * of the first remaining segment.
+ */
+public class SegmentedIndexIO extends ExternalIndexIO implements IndexFileInteractor {
+    // the manifest file objs
+    String manifestFileName = null;
+    RandomAccessFile manifestFile = null;
+    FileChannel manifestChannel = null;
+
+    // the base names of the segment files
+    String segmentIndexBase = null;
+    String segmentDataBase = null;
+
+    // the segments, oldest first.
+    // the array is replaced, not changed, when a segment is added,
+    // so readers can use it without locking
+    volatile Segment[] segments = new Segment[0];
+
+    // the segment being written to
+    Segment current = null;
+
+    // the number of the segment that was current at the last sync
+    volatile int syncedSegment = 0;
+
+    // the segments that have been removed while the index is open.
+    // their files are deleted, but they are kept open until the
+    // next removal, so items already being used can still be read.
+    // after that they are closed as soon as no read is using them
+    List removedSegments = new LinkedList();
+
+    // the size of data and index at which a new segment is started
+    long segmentSize = DEFAULT_SEGMENT_SIZE;
+
+    // the time boundary, in seconds, at which a new segment is started
+    long segmentPeriod = 0;
+
+    /*
+     * The default segment size
+     */
+    public final static long DEFAULT_SEGMENT_SIZE = 1024L * 1024L * 1024L;
+
+    /*
+     * The size of the manifest header.
+     * T I 3 type, the version, the index ID,
+     * the segment size, the segment period, and the no of segments
+     */
+    final static int MANIFEST_HEADER_SIZE = 4 + 2 + 8 + 8 + 8 + 4;
+
+    /*
+     * The size of each segment entry in the manifest
+     */
+    final static int SEGMENT_ENTRY_SIZE = 4 + 8 + 8 + 8 + 8 + 8 + 8 + 8 + 8;
+
+    /**
+     * Construct a segmented Index.
+     */
+    public SegmentedIndexIO(StoredIndex managedIndex) {
+	super(managedIndex);
+    }
+
+    /**
+     * Operation on creation.
+     */
+    public long create(IndexProperties indexProperties) throws IOException, IndexCreateException {
+	creating = true;
+
+	originalIndexSpecifier = (String)indexProperties.get("canonicalpath");
+
+	headerInteractor = new IndexHeaderIO(this);
+
+	// use the original specifier as a first cut for the manifest file name
+	headerFileName = originalIndexSpecifier;
+	indexFileName = (String)indexProperties.get("indexpath");
+
+	dataFileName = (String)indexProperties.get("datapath");
+	indexName = (String)indexProperties.get("name");
+	indexID = (ID)indexProperties.get("indexid");
+
+	// create the header
+	headerInteractor.create(originalIndexSpecifier);
+
+	// determine the URI
+	try {
+	    URI uri = new URI("index", "", FileUtils.removeExtension(originalIndexSpecifier), null);
+
+	    headerInteractor.setURI(uri);
+	    // tell the index
+	    getIndex().setURI(uri);
+	} catch (URISyntaxException use) {
+	    System.err.println("SegmentedIndexIO: setting URI failed using " + originalIndexSpecifier + " => " + FileUtils.removeExtension(originalIndexSpecifier));
+	}
+
+	try {
+	    open();
+
+	    // deal with the options
+
+	    getIndex().setOption(HeaderOption.INDEXPATH_HO, indexFileName);
+	    getIndex().setOption(HeaderOption.DATAPATH_HO, dataFileName);
+
+	    // the segment data files have no header
+	    headerInteractor.setOption(HeaderOption.NO_DATA_FILE_HEADER_HO, Boolean.TRUE);
+
+	    // process segment options
+	    processSegmentOptions(indexProperties);
+
+	    // process checksums option
+	    processChecksumOption(indexProperties);
+
+	    // start the first segment
+	    manifestFile.setLength(0);
+
+	    segments = new Segment[0];
+	    addSegment(new Segment(0, 0, 0), true);
+
+	    indexFirstPosition = 0;
+	    indexChannelPosition = 0;
+	    indexAppendPosition = 0;
+	    dataFirstPosition = 0;
+	    dataChannelPosition = 0;
+	    dataAppendPosition = 0;
+
+	    writeManifest();
+
+	    // flush out all the data
+	    flush();
+
+	    // process durability option
+	    processDurabilityOption(indexProperties);
+
+	    // get a output thread going
+	    initThread(indexName + hashCode() + "-IOThread");
+	    startThread();
+
+	    return indexAppendPosition;
+
+	} catch (IndexOpenException ioe) {
+	    throw new IndexCreateException(ioe.getMessage());
+	}
+    }
+
+    /**
+     * Open an index file  to read it.
+     */
+    public long open(IndexProperties indexProperties) throws IOException, IndexOpenException {
+	creating = false;
+
+	originalIndexSpecifier = (String)indexProperties.get("indexpath");
+
+	headerInteractor = new IndexHeaderIO(this);
+
+	// open the index header
+	headerInteractor.open(originalIndexSpecifier);
+
+	headerFileName = headerInteractor.getHeaderPathName();
+	indexFileName = headerInteractor.getIndexPathName();
+	dataFileName = headerInteractor.getDataPathName();
+
+	// determine the URI
+	// if the index path name is relative we need to make it an absolute path name
+	File indexSpecFile = new File(headerFileName);
+	String uriPath = null;
+
+	if (indexSpecFile.isAbsolute()) {
+	    uriPath = headerFileName;
+	} else {
+	    uriPath = indexSpecFile.getAbsolutePath();
+	}
+
+	try {
+	    headerInteractor.setURI(new URI("index", "", FileUtils.removeExtension(uriPath), null));
+	} catch (URISyntaxException use) {
+	    ;
+	}
+
+	// now check to see if this index should be opened
+	// as read-only
+	Boolean readOnly = (Boolean)indexProperties.get("readonly");
+
+	if (readOnly.equals(Boolean.TRUE)) {
+	    headerInteractor.setReadOnly(true);
+	}
+
+	// open the relevant files
+	open();
+
+	// read the headers
+	long indexHeaderPosition = readMetaData();
+
+	// process durability option
+	processDurabilityOption(indexProperties);
+
+	initThread(indexName + "-" + hashCode() + "-IOThread");
+	startThread();
+
+	return indexHeaderPosition;
+    }
+
+    /**
+     * Open the manifest file, and work out the
+     * names of the segment files.
+     */
+    protected long open() throws IOException, IndexOpenException {
+	// open the manifest file
+	try {
+	    indexFileName = FileUtils.resolveFileName(indexFileName, ".tim");
+
+	    File file = new File(indexFileName);
+
+	    String openMode = null;
+
+	    if (! creating) {
+		// file names can be be realtive
+		// so we have to resolve filenames
+
+		if (! file.isAbsolute()) {
+		    // use the header file name to get the right File
+		    File headerFile = new File(headerFileName);
+
+		    file = new File(headerFile.getParent(), indexFileName);
+		    indexFileName = file.getName();
+		}
+
+		if (file.canWrite() && ! headerInteractor.isReadOnly()) {
+		    openMode = "rw";
+		} else {
+		    openMode = "r";
+		}
+
+	    } else {
+		if (! file.isAbsolute()) {
+		    indexFileName = new File(indexFileName).getName();
+		}
+
+		// can;t create anything without writing
+		openMode = "rw";
+	    }
+
+	    manifestFileName = file.getPath();
+	    manifestFile = new RandomAccessFile(file, openMode);
+	    manifestChannel = manifestFile.getChannel();
+
+	    // the segment index files live next to the manifest
+	    segmentIndexBase = FileUtils.removeExtension(file.getPath());
+
+	} catch (FileNotFoundException fnfe) {
+	    throw new IndexOpenException("Could not find segment manifest file: " + indexFileName);
+	}
+
+	// work out where the segment data files are
+	File dataBase = new File(FileUtils.removeExtension(dataFileName));
+
+	if (! creating && ! dataBase.isAbsolute()) {
+	    File headerFile = new File(headerFileName);
+
+	    dataBase = new File(headerFile.getParent(), dataBase.getPath());
+	}
+
+	segmentDataBase = dataBase.getPath();
+
+	return 0;
+    }
+
+    /**
+     * Read all the meta data.
+     */
+    public long readMetaData() throws IOException, IndexOpenException {
+	// the index items have checksums
+	if (Boolean.TRUE.equals(headerInteractor.getOption(HeaderOption.CHECKSUMS_HO))) {
+	    useChecksums();
+	}
+
+	// read the manifest, and open the segments
+	readManifest();
+
+	// the positions are global, so they start at 0
+	indexFirstPosition = 0;
+	indexChannelPosition = 0;
+	dataFirstPosition = 0;
+	dataChannelPosition = 0;
+
+	indexName = headerInteractor.getName();
+
+	// check ID in header == ID in manifest
+	if (! headerInteractor.getID().equals(indexID)) {
+	    throw new IndexOpenException("The file '" + manifestFileName +
+					 "' is not the segment manifest for the index '" +
+					 headerFileName);
+	}
+
+	// find the items written after the header was flushed
+	recoverTail();
+
+	// the last segment may have had items added
+	// since the manifest was written, so the header
+	// is used for its size and last times
+	if (headerInteractor.getLength() > 0) {
+	    long manifestCount = current.count;
+
+	    current.count = headerInteractor.getLength() - current.firstPosition;
+
+	    if (current.count > 0) {
+		if (manifestCount == 0) {
+		    // the first times are not in the manifest yet
+		    ByteBuffer firstItem = readIndexItem(current.firstPosition * INDEX_ITEM_SIZE);
+
+		    current.firstIndexTS = firstItem.getLong(0);
+		    current.firstDataTS = firstItem.getLong(8);
+		}
+
+		current.lastIndexTS = headerInteractor.getLastTime().value();
+		current.lastDataTS = headerInteractor.getLastDataTime().value();
+	    }
+	}
+
+	// sync the read header with the index object
+	getIndex().syncHeader(headerInteractor);
+
+	return indexFirstPosition;
+    }
+
+    /**
+     * Set up the segment size and segment period
+     * from the segmentsize and segmentperiod properties.
+     */
+    protected void processSegmentOptions(IndexProperties indexProperties) throws IndexCreateException {
+	try {
+	    if (indexProperties.containsKey("segmentsize")) {
+		segmentSize = Long.parseLong((String)indexProperties.get("segmentsize"));
+	    }
+
+	    if (indexProperties.containsKey("segmentperiod")) {
+		segmentPeriod = Long.parseLong((String)indexProperties.get("segmentperiod"));
+	    }
+	} catch (NumberFormatException nfe) {
+	    throw new IndexCreateException("Bad segment option: " + nfe.getMessage());
+	}
+    }
+
+    /**
+     * Get the name of a file of a segment.
+     */
+    protected String segmentFileName(String base, int number, String extension) {
+	String digits = Integer.toString(number);
+
+	StringBuffer name = new StringBuffer(base);
+	name.append('-');
+
+	for (int d = digits.length(); d < 6; d++) {
+	    name.append('0');
+	}
+
+	name.append(digits);
+	name.append(extension);
+
+	return name.toString();
+    }
+
+    /**
+     * Open the files of a segment.
+     * @param create create new files, removing any old contents
+     * @param writable open the files for writing
+     */
+    protected void openSegment(Segment segment, boolean create, boolean writable) throws IOException {
+	File indexSegmentFile = new File(segmentFileName(segmentIndexBase, segment.number, ".tix"));
+	File dataSegmentFile = new File(segmentFileName(segmentDataBase, segment.number, ".tid"));
+
+	String openMode = writable ? "rw" : "r";
+
+	try {
+	    segment.indexFile = new RandomAccessFile(indexSegmentFile, openMode);
+	    segment.indexChannel = segment.indexFile.getChannel();
+
+	    segment.dataFile = new RandomAccessFile(dataSegmentFile, openMode);
+	    segment.dataChannel = segment.dataFile.getChannel();
+	} catch (FileNotFoundException fnfe) {
+	    throw new IOException("Could not open segment " + segment.number + " of " + indexName + ": " + fnfe.getMessage());
+	}
+
+	if (create) {
+	    segment.indexFile.setLength(0);
+	    segment.dataFile.setLength(0);
+	}
+    }
+
+    /**
+     * Add a segment to the end, and make it the current segment.
+     * @param create create new files for the segment
+     */
+    protected void addSegment(Segment segment, boolean create) throws IOException {
+	boolean writable = create || ! headerInteractor.isReadOnly();
+
+	// the earlier segments are kept open for reading
+	openSegment(segment, create, writable);
+
+	Segment[] newSegments = new Segment[segments.length + 1];
+	System.arraycopy(segments, 0, newSegments, 0, segments.length);
+	newSegments[segments.length] = segment;
+
+	segments = newSegments;
+	current = segment;
+
+	// the index and data channels are the current segment
+	indexFile = segment.indexFile;
+	indexChannel = segment.indexChannel;
+	dataFile = segment.dataFile;
+	dataChannel = segment.dataChannel;
+    }
+
+    /**
+     * Start a new segment.
+     * Any pending index items and data are flushed out to the
+     * current segment, and a new segment is started at the append position.
+     */
+    protected void rollSegment() throws IOException {
+	// the pending writes are for the current segment
+	flushBuffer(indexChannel, indexFlushBuffers.current(), indexFlushBuffers);
+	flushBuffer(dataChannel, dataFlushBuffers.current(), dataFlushBuffers);
+
+	// seal the current segment
+	current.dataLength = dataAppendPosition - current.dataBase;
+
+	Segment next = new Segment(current.number + 1, current.firstPosition + current.count, dataAppendPosition);
+
+	addSegment(next, true);
+
+	// the new files are at the start,
+	// which is the append position
+	indexChannelPosition = indexAppendPosition;
+	dataChannelPosition = dataAppendPosition;
+
+	// record the new segment
+	writeManifest();
+
+	//System.err.println("SegmentedIndexIO: rolled to segment " + next.number + " at position " + next.firstPosition);
+    }
+
+    /**
+     * Should a new segment be started before an item is added.
+     */
+    protected boolean needsNewSegment(ManagedIndexItem itemM) {
+	if (current.count == 0) {
+	    // never leave a segment empty
+	    return false;
+	}
+
+	// check the size
+	if (segmentSize > 0) {
+	    long size = (current.count * INDEX_ITEM_SIZE) + (dataAppendPosition - current.dataBase);
+
+	    if (size >= segmentSize) {
+		return true;
+	    }
+	}
+
+	// check the time boundary
+	if (segmentPeriod > 0) {
+	    long firstSeconds = timestampDecoder.decode(current.firstDataTS).getSeconds();
+	    long itemSeconds = itemM.getDataTimestamp().getSeconds();
+
+	    if ((itemSeconds / segmentPeriod) != (firstSeconds / segmentPeriod)) {
+		return true;
+	    }
+	}
+
+	return false;
+    }
+
+    /**
+     * Write the contents of the item.
+     * A new segment is started first, if the current one is full.
+     */
+    public synchronized long writeItem(ManagedIndexItem itemM) throws IOException {
+	if (needsNewSegment(itemM)) {
+	    rollSegment();
+	}
+
+	long count = super.writeItem(itemM);
+
+	// keep the manifest values up to date
+	long indexTS = itemM.getIndexTimestamp().value();
+	long dataTS = itemM.getDataTimestamp().value();
+
+	if (current.count == 0) {
+	    current.firstIndexTS = indexTS;
+	    current.firstDataTS = dataTS;
+	}
+
+	current.lastIndexTS = indexTS;
+	current.lastDataTS = dataTS;
+	current.count++;
+
+	return count;
+    }
+
+    /**
+     * Find the segment that holds a position.
+     * @return null if no segment holds the position
+     */
+    protected Segment segmentAt(long position) {
+	Segment[] all = segments;
+	int low = 0;
+	int high = all.length - 1;
+
+	// find the last segment that starts at or before position
+	while (low <= high) {
+	    int mid = (low + high) >>> 1;
+
+	    if (all[mid].firstPosition <= position) {
+		low = mid + 1;
+	    } else {
+		high = mid - 1;
+	    }
+	}
+
+	if (high < 0) {
+	    return removedSegmentAt(position);
+	} else {
+	    return all[high];
+	}
+    }
+
+    /**
+     * Find the segment that holds a data offset.
+     * @return null if no segment holds the data offset
+     */
+    protected Segment segmentForData(long offset) {
+	Segment[] all = segments;
+	int low = 0;
+	int high = all.length - 1;
+
+	// find the last segment whose data starts at or before offset
+	while (low <= high) {
+	    int mid = (low + high) >>> 1;
+
+	    if (all[mid].dataBase <= offset) {
+		low = mid + 1;
+	    } else {
+		high = mid - 1;
+	    }
+	}
+
+	if (high < 0) {
+	    return removedSegmentForData(offset);
+	} else {
+	    return all[high];
+	}
+    }
+
+    /**
+     * Find the removed segment that holds a position.
+     * @return null if no removed segment holds the position
+     */
+    protected Segment removedSegmentAt(long position) {
+	synchronized (removedSegments) {
+	    Iterator segmentI = removedSegments.iterator();
+
+	    while (segmentI.hasNext()) {
+		Segment segment = (Segment)segmentI.next();
+
+		if (position >= segment.firstPosition && position < segment.firstPosition + segment.count) {
+		    return segment;
+		}
+	    }
+	}
+
+	return null;
+    }
+
+    /**
+     * Find the removed segment that holds a data offset.
+     * @return null if no removed segment holds the data offset
+     */
+    protected Segment removedSegmentForData(long offset) {
+	synchronized (removedSegments) {
+	    Iterator segmentI = removedSegments.iterator();
+
+	    while (segmentI.hasNext()) {
+		Segment segment = (Segment)segmentI.next();
+
+		if (offset >= segment.dataBase && offset < segment.dataBase + segment.dataLength) {
+		    return segment;
+		}
+	    }
+	}
+
+	return null;
+    }
+
+    /**
+     * Remove the segments at the front of the index whose
+     * last data timestamp is before a cutoff time.
+     * The segment being written to is never removed.
+     * The files of the segments are deleted, but they
+     * are kept open until the next removal, so
+     * items already being used can still be read.
+     * The segments removed before are closed now, or
+     * when the last read using them finishes.
+     * @return the no of segments removed
+     */
+    public synchronized int removeSegmentsBefore(Timestamp cutoff) throws IOException {
+	if (headerInteractor.isReadOnly()) {
+	    throw new IOException("Cannot remove segments from read only index " + indexName);
+	}
+
+	// close the segments removed last time
+	retireRemovedSegments();
+
+	Segment[] all = segments;
+	int count = 0;
+
+	// find the segments to remove
+	while (count < all.length - 1 &&
+	       all[count].count > 0 &&
+	       TimeCalculator.lessThan(timestampDecoder.decode(all[count].lastDataTS), cutoff)) {
+	    count++;
+	}
+
+	if (count == 0) {
+	    // nothing to remove
+	    return 0;
+	}
+
+	// keep the removed ones for readers
+	synchronized (removedSegments) {
+	    for (int s=0; s < count; s++) {
+		removedSegments.add(all[s]);
+	    }
+	}
+
+	Segment[] newSegments = new Segment[all.length - count];
+	System.arraycopy(all, count, newSegments, 0, newSegments.length);
+
+	segments = newSegments;
+
+	// the manifest no longer has the removed segments,
+	// so it is written out before the files are deleted
+	writeManifest();
+	manifestChannel.force(false);
+
+	for (int s=0; s < count; s++) {
+	    new File(segmentFileName(segmentIndexBase, all[s].number, ".tix")).delete();
+	    new File(segmentFileName(segmentDataBase, all[s].number, ".tid")).delete();
+
+	    //System.err.println("SegmentedIndexIO: removed segment " + all[s].number + " positions " + all[s].firstPosition + " - " + (all[s].firstPosition + all[s].count - 1));
+	}
+
+	return count;
+    }
+
+    /**
+     * Close the segments that were removed before.
+     * A segment still being read is closed by the last read,
+     * and is kept in the list until then.
+     */
+    protected void retireRemovedSegments() throws IOException {
+	synchronized (removedSegments) {
+	    Iterator segmentI = removedSegments.iterator();
+
+	    while (segmentI.hasNext()) {
+		Segment segment = (Segment)segmentI.next();
+
+		if (segment.retire()) {
+		    segmentI.remove();
+		}
+	    }
+	}
+    }
+
+    /**
+     * Get the no of removed segments whose files are still open.
+     */
+    public int getRemovedSegmentCount() {
+	synchronized (removedSegments) {
+	    Iterator segmentI = removedSegments.iterator();
+	    int count = 0;
+
+	    while (segmentI.hasNext()) {
+		Segment segment = (Segment)segmentI.next();
+
+		if (! segment.isClosed()) {
+		    count++;
+		}
+	    }
+
+	    return count;
+	}
+    }
+
+    /**
+     * Start a read of a segment.
+     * @return the segment, or null if it is null or has been closed
+     */
+    protected Segment acquire(Segment segment) {
+	if (segment == null || ! segment.acquire()) {
+	    return null;
+	} else {
+	    return segment;
+	}
+    }
+
+    /**
+     * End a read of a segment.
+     */
+    protected void release(Segment segment) throws IOException {
+	segment.release();
+    }
+
+    /**
+     * Get the first position in the index.
+     * This is the first position of the first segment.
+     */
+    public long getStartPosition() {
+	return segments[0].firstPosition;
+    }
+
+    /**
+     * Load the index.
+     * If segments have been removed, the items are
+     * loaded from the start position.
+     */
+    public long loadIndex(LoadStyle loadStyle) throws IOException {
+	long start = getStartPosition();
+
+	if (start == 0 || loadStyle == LoadStyle.NONE || loadStyle == LoadStyle.PARALLEL) {
+	    return super.loadIndex(loadStyle);
+	} else {
+	    boolean doLoadData = (loadStyle == LoadStyle.ALL);
+	    long itemCount = headerInteractor.getLength();
+	    long position = start;
+
+	    // read the items a block at a time
+	    while (position < itemCount) {
+		int got = readAhead(position, (int)Math.min(LOAD_BLOCK_ITEMS, itemCount - position), doLoadData);
+
+		if (got == 0) {
+		    break;
+		} else {
+		    position += got;
+		}
+	    }
+
+	    for (; position < itemCount; position++) {
+		// read an item, and post it into the index
+		ManagedIndexItem item = readItem(position * INDEX_ITEM_SIZE, doLoadData);
+
+		getIndex().retrieveItem(item, position);
+	    }
+
+	    calculateAppendPosition();
+	    return indexAppendPosition;
+	}
+    }
+
+    /**
+     * Load the items with many threads.
+     * The load starts at the first position that is still in a segment.
+     */
+    protected void loadParallel() throws IOException {
+	loadParallel(getStartPosition());
+    }
+
+    /**
+     * Read an IndexItem given a global offset.
+     * The IndexItem is read from the segment that holds it.
+     */
+    public ByteBuffer readIndexItem(long offset) throws IOException {
+	long position = (offset - indexFirstPosition) / INDEX_ITEM_SIZE;
+
+	Segment segment = acquire(segmentAt(position));
+
+	if (segment == null) {
+	    throw new IOException("Index Item not in any segment: position = " + position);
+	}
+
+	long segmentOffset = (position - segment.firstPosition) * INDEX_ITEM_SIZE;
+	int readCount = 0;
+
+	ByteBuffer itemBuf = ByteBuffer.allocate(INDEX_ITEM_SIZE);
+
+	try {
+	    readCount = readFully(segment.indexChannel, itemBuf, segmentOffset);
+	} finally {
+	    release(segment);
+	}
+
+	if (readCount != INDEX_ITEM_SIZE) {
+	    throw new IOException("Index Item too short: position = " +
+				  offset + " read count = " + readCount);
+	}
+
+	itemBuf.flip();
+
+	return itemBuf;
+    }
+
+    /**
+     * Read a run of index records, from a global offset, in one read.
+     * The run stops at the end of the segment that holds the first record,
+     * so the records, and their data, are all in one segment.
+     * @return a buffer with the records, or null if there are none
+     */
+    protected ByteBuffer readIndexRecords(long offset, int count) throws IOException {
+	long position = (offset - indexFirstPosition) / INDEX_ITEM_SIZE;
+
+	Segment segment = acquire(segmentAt(position));
+
+	if (segment == null) {
+	    return null;
+	}
+
+	try {
+	    long segmentOffset = (position - segment.firstPosition) * INDEX_ITEM_SIZE;
+	    long end = Math.min(segmentOffset + ((long)count * INDEX_ITEM_SIZE), segment.indexChannel.size());
+	    int length = (int)((end - segmentOffset) / INDEX_ITEM_SIZE) * INDEX_ITEM_SIZE;
+
+	    if (length <= 0) {
+		return null;
+	    }
+
+	    ByteBuffer records = ByteBuffer.allocate(length);
+
+	    if (readFully(segment.indexChannel, records, segmentOffset) != length) {
+		throw new IOException("Index Items too short: position = " + offset);
+	    }
+
+	    records.flip();
+
+	    return records;
+	} finally {
+	    release(segment);
+	}
+    }
+
+    /**
+     * Actually read in the data, from the segment that holds it.
+     */
+    protected long readDataIntoBuffer(ByteBuffer buffer, long offset, long size) throws IOException {
+	Segment segment = acquire(segmentForData(offset));
+
+	if (segment == null) {
+	    throw new IOException("Index Item Data not in any segment: position = " + offset);
+	}
+
+	long readCount = 0;
+
+	try {
+	    readCount = readFully(segment.dataChannel, buffer, offset - segment.dataBase);
+	} finally {
+	    release(segment);
+	}
+
+	if (readCount != size) {
+	    throw new IOException("Index Item Data too short: position = " +
+				  offset + " expected " +
+				  size + " got read count = " + readCount);
+	}
+
+	return readCount;
+    }
+
+    /**
+     * Force the files of the index out to disk.
+     * Every segment written to since the last sync is forced,
+     * as the index may have rolled on to a new segment.
+     */
+    protected void forceFiles() throws IOException {
+	Segment[] all = segments;
+
+	for (int s=0; s < all.length; s++) {
+	    if (all[s].number >= syncedSegment) {
+		if (all[s].indexChannel.isOpen()) {
+		    all[s].indexChannel.force(false);
+		}
+
+		if (all[s].dataChannel.isOpen()) {
+		    all[s].dataChannel.force(false);
+		}
+	    }
+	}
+
+	if (manifestChannel != null && manifestChannel.isOpen()) {
+	    manifestChannel.force(false);
+	}
+
+	headerInteractor.force();
+
+	if (all.length > 0) {
+	    syncedSegment = all[all.length - 1].number;
+	}
+    }
+
+    /**
+     * Copy some data to a channel.
+     * The data is transferred straight from the data files,
+     * one segment at a time.
+     */
+    protected long copyData(long offset, long size, WritableByteChannel channel) throws IOException {
+	long total = 0;
+
+	while (total < size) {
+	    Segment segment = acquire(segmentForData(offset + total));
+
+	    if (segment == null) {
+		break;
+	    }
+
+	    long segmentOffset = offset + total - segment.dataBase;
+	    long count = 0;
+	    long transferred = 0;
+
+	    try {
+		count = Math.min(size - total, segment.dataChannel.size() - segmentOffset);
+		transferred = transferFully(segment.dataChannel, segmentOffset, count, channel);
+	    } finally {
+		release(segment);
+	    }
+
+	    total += transferred;
+
+	    if (transferred < count || count <= 0) {
+		break;
+	    }
+	}
+
+	return total;
+    }
+
+    /**
+     * Memory map some data from the segment that holds it.
+     */
+    protected ByteBuffer memoryMapData(long offset, long size) throws IOException {
+	Segment segment = acquire(segmentForData(offset));
+
+	if (segment == null) {
+	    throw new IOException("Index Item Data not in any segment: position = " + offset);
+	}
+
+	// the mapping stays valid after the segment is closed
+	try {
+	    return segment.dataChannel.map(FileChannel.MapMode.READ_ONLY, offset - segment.dataBase, size);
+	} finally {
+	    release(segment);
+	}
+    }
+
+    /**
+     * Get the global offset of the end of the index records,
+     * which are in the current segment.
+     */
+    protected long indexLimit() throws IOException {
+	return indexFirstPosition + ((current.firstPosition + (current.indexChannel.size() / INDEX_ITEM_SIZE)) * INDEX_ITEM_SIZE);
+    }
+
+    /**
+     * Get the global offset of the end of the data,
+     * which is in the current segment.
+     */
+    protected long dataLimit() throws IOException {
+	return current.dataBase + current.dataChannel.size();
+    }
+
+    /**
+     * Drop everything in the current segment index file from a global position.
+     * Earlier segments were sealed when they were rolled.
+     */
+    protected void truncateIndex(long position) throws IOException {
+	long segmentOffset = position - indexFirstPosition - (current.firstPosition * INDEX_ITEM_SIZE);
+
+	if (segmentOffset >= 0) {
+	    current.indexChannel.truncate(segmentOffset);
+	}
+    }
+
+    /**
+     * Seek to a certain global position in the index.
+     * Only the current segment is written to, so the
+     * channel is only moved if the position is in it.
+     */
+    protected boolean seekToIndex(long position) throws IOException {
+	if (indexChannelPosition != position) {
+	    long segmentOffset = position - indexFirstPosition - (current.firstPosition * INDEX_ITEM_SIZE);
+
+	    if (segmentOffset >= 0) {
+		indexChannel.position(segmentOffset);
+	    }
+
+	    indexChannelPosition = position;
+	    return true;
+	} else {
+	    return false;
+	}
+    }
+
+    /**
+     * Seek to a certain global position in the data.
+     * Only the current segment is written to, so the
+     * channel is only moved if the position is in it.
+     */
+    protected boolean seekToData(long position) throws IOException {
+	if (dataChannelPosition != position) {
+	    long segmentOffset = position - current.dataBase;
+
+	    if (segmentOffset >= 0) {
+		dataChannel.position(segmentOffset);
+	    }
+
+	    dataChannelPosition = position;
+	    return true;
+	} else {
+	    return false;
+	}
+    }
+
+    /**
+     * Find the positions to search for a Timestamp.
+     * This is the segment whose first time is the last one
+     * at or before the Timestamp, up to the first position of
+     * the next segment, so a search of the range is the same
+     * as a search of the whole index.
+     * @param length the no of items in the index, which can be more
+     * than the header says while items are being added
+     * @return a start and end position, or null if
+     * the Timestamp is before the first segment
+     */
+    public long[] segmentBounds(Timestamp t, IndexTimestampSelector selector, long length) {
+	Segment[] all = segments;
+	int low = 0;
+	int high = all.length - 1;
+
+	// find the last segment that starts at or before t
+	while (low <= high) {
+	    int mid = (low + high) >>> 1;
+	    long first = (selector == IndexTimestampSelector.DATA ? all[mid].firstDataTS : all[mid].firstIndexTS);
+
+	    if (all[mid].count > 0 && TimeCalculator.lessThanEquals(timestampDecoder.decode(first), t)) {
+		low = mid + 1;
+	    } else {
+		high = mid - 1;
+	    }
+	}
+
+	if (high < 0) {
+	    return null;
+	}
+
+	long start = all[high].firstPosition;
+	long end = 0;
+
+	if (high == all.length - 1) {
+	    end = length - 1;
+	} else {
+	    end = Math.min(all[high + 1].firstPosition, length - 1);
+	}
+
+	if (end <= start) {
+	    // a search needs two items
+	    start = Math.max(end - 1, 0);
+	}
+
+	return new long[] { start, end };
+    }
+
+    /**
+     * Get the no of segments.
+     */
+    public int getSegmentCount() {
+	return segments.length;
+    }
+
+    /**
+     * Read the manifest, and open all the segments.
+     */
+    protected void readManifest() throws IOException, IndexOpenException {
+	if (manifestChannel.size() < MANIFEST_HEADER_SIZE) {
+	    throw new IndexOpenException("The segment manifest " + manifestFileName + " is too short");
+	}
+
+	ByteBuffer headerBuf = ByteBuffer.allocate(MANIFEST_HEADER_SIZE);
+
+	readFully(manifestChannel, headerBuf, 0);
+	headerBuf.flip();
+
+	// check first 4 bytes
+	if (headerBuf.get() != FileType.T ||
+	    headerBuf.get() != FileType.I ||
+	    headerBuf.get() != FileType.BYTE_3 ||
+	    headerBuf.get() != FileType.SEGMENT_MANIFEST) {
+	    throw new IndexOpenException("The file " + manifestFileName + " is not a segment manifest");
+	}
+
+	// skip the version no
+	headerBuf.get();
+	headerBuf.get();
+
+	indexID = new SID(headerBuf.getLong());
+	segmentSize = headerBuf.getLong();
+	segmentPeriod = headerBuf.getLong();
+
+	int count = headerBuf.getInt();
+
+	if (count < 1) {
+	    throw new IndexOpenException("The segment manifest " + manifestFileName + " has no segments");
+	}
+
+	// now the segments
+	ByteBuffer entryBuf = ByteBuffer.allocate(count * SEGMENT_ENTRY_SIZE);
+
+	if (readFully(manifestChannel, entryBuf, MANIFEST_HEADER_SIZE) != entryBuf.capacity()) {
+	    throw new IndexOpenException("The segment manifest " + manifestFileName + " is too short");
+	}
+
+	entryBuf.flip();
+
+	segments = new Segment[0];
+	current = null;
+
+	for (int s=0; s < count; s++) {
+	    Segment segment = new Segment(entryBuf.getInt(), entryBuf.getLong(), 0);
+
+	    segment.count = entryBuf.getLong();
+	    segment.dataBase = entryBuf.getLong();
+	    segment.dataLength = entryBuf.getLong();
+	    segment.firstIndexTS = entryBuf.getLong();
+	    segment.lastIndexTS = entryBuf.getLong();
+	    segment.firstDataTS = entryBuf.getLong();
+	    segment.lastDataTS = entryBuf.getLong();
+
+	    addSegment(segment, false);
+	}
+    }
+
+    /**
+     * Write out the manifest.
+     * The manifest is small, so all of it is written each time.
+     */
+    protected long writeManifest() throws IOException {
+	Segment[] all = segments;
+
+	ByteBuffer manifestBuf = ByteBuffer.allocate(MANIFEST_HEADER_SIZE + (all.length * SEGMENT_ENTRY_SIZE));
+
+	manifestBuf.put(FileType.T);
+	manifestBuf.put(FileType.I);
+	manifestBuf.put(FileType.BYTE_3);
+	manifestBuf.put(FileType.SEGMENT_MANIFEST);
+
+	// version major and minor
+	manifestBuf.put((byte)0);
+	manifestBuf.put((byte)0);
+
+	manifestBuf.putLong(indexID.value());
+	manifestBuf.putLong(segmentSize);
+	manifestBuf.putLong(segmentPeriod);
+	manifestBuf.putInt(all.length);
+
+	for (int s=0; s < all.length; s++) {
+	    Segment segment = all[s];
+
+	    manifestBuf.putInt(segment.number);
+	    manifestBuf.putLong(segment.firstPosition);
+	    manifestBuf.putLong(segment.count);
+	    manifestBuf.putLong(segment.dataBase);
+	    manifestBuf.putLong(segment.dataLength);
+	    manifestBuf.putLong(segment.firstIndexTS);
+	    manifestBuf.putLong(segment.lastIndexTS);
+	    manifestBuf.putLong(segment.firstDataTS);
+	    manifestBuf.putLong(segment.lastDataTS);
+	}
+
+	manifestBuf.flip();
+
+	long written = 0;
+
+	while (manifestBuf.hasRemaining()) {
+	    written += manifestChannel.write(manifestBuf, written);
+	}
+
+	if (manifestChannel.size() > written) {
+	    manifestChannel.truncate(written);
+	}
+
+	return written;
+    }
+
+    /**
+     * Operation on flush.
+     * Returns how many bytes were written.
+     */
+    public synchronized long flush() throws IOException {
+	long written = super.flush();
+
+	if (! headerInteractor.isReadOnly()) {
+	    written += writeManifest();
+	}
+
+	return written;
+    }
+
+    /**
+     * Operation on close
+     * @return the size of the index
+     */
+    public synchronized long close() throws IOException {
+	long size = 0;
+
+	// flush out any reaming data
+	flush();
+
+	drainWriteQueue();
+
+	// close all the segments
+	Segment[] all = segments;
+
+	for (int s=0; s < all.length; s++) {
+	    size += all[s].indexChannel.size();
+
+	    all[s].indexChannel.close();
+	    all[s].dataChannel.close();
+	}
+
+	// and the removed ones
+	synchronized (removedSegments) {
+	    Iterator segmentI = removedSegments.iterator();
+
+	    while (segmentI.hasNext()) {
+		Segment segment = (Segment)segmentI.next();
+
+		segment.close();
+	    }
+
+	    removedSegments.clear();
+	}
+
+	manifestChannel.close();
+
+	// close the header
+	headerInteractor.close();
+
+	// end thread
+	if (stopThread() == null) {
+	    System.err.println("Thread is null?");
+	}
+
+	return size;
+    }
+
+    /**
+     * Read the data file header.
+     * Nothing to do as there is no header.
+     */
+    public long readDataHeader(byte headerType) throws IOException {
+	return 0;
+    }
+
+    /**
+     * Write the data file header.
+     * Nothing to do as there is no header.
+     */
+    public long writeDataHeader(byte headerType) throws IOException {
+	return 0;
+    }
+
+    /**
+     * A segment of a segmented index.
+     */
+    static class Segment {
+	// the segment no, which is used in the file names
+	int number;
+
+	// the position of the first item in the segment
+	long firstPosition;
+
+	// the no of items in the segment
+	long count = 0;
+
+	// the global offset of the data in the segment
+	long dataBase;
+
+	// the size of the data, when the segment is sealed
+	long dataLength = 0;
+
+	// the first and last timestamps
+	long firstIndexTS = 0;
+	long lastIndexTS = 0;
+	long firstDataTS = 0;
+	long lastDataTS = 0;
+
+	// the files
+	RandomAccessFile indexFile = null;
+	FileChannel indexChannel = null;
+	RandomAccessFile dataFile = null;
+	FileChannel dataChannel = null;
+
+	// the no of reads using the segment
+	int users = 0;
+
+	// is the segment to be closed when the reads finish
+	boolean retired = false;
+
+	/**
+	 * Construct a Segment.
+	 */
+	Segment(int number, long firstPosition, long dataBase) {
+	    this.number = number;
+	    this.firstPosition = firstPosition;
+	    this.dataBase = dataBase;
+	}
+
+	/**
+	 * Start a read of the segment.
+	 * @return false if the segment has been retired
+	 */
+	synchronized boolean acquire() {
+	    if (retired) {
+		return false;
+	    } else {
+		users++;
+		return true;
+	    }
+	}
+
+	/**
+	 * End a read of the segment.
+	 * The last read of a retired segment closes it.
+	 */
+	synchronized void release() throws IOException {
+	    users--;
+
+	    if (retired && users == 0) {
+		close();
+	    }
+	}
+
+	/**
+	 * Retire the segment, so no new reads start.
+	 * It is closed if no read is using it.
+	 * @return true if the segment is closed
+	 */
+	synchronized boolean retire() throws IOException {
+	    retired = true;
+
+	    if (users == 0) {
+		close();
+	    }
+
+	    return isClosed();
+	}
+
+	/**
+	 * Close the files of the segment.
+	 */
+	synchronized void close() throws IOException {
+	    indexChannel.close();
+	    dataChannel.close();
+	}
+
+	/**
+	 * Are the files of the segment closed.
+	 */
+	synchronized boolean isClosed() {
+	    return ! indexChannel.isOpen();
+	}
+    }
+}
@@ -89,12 +89,26 @@ public class  ShadowIndexIO extends ExternalIndexIO implements IndexFileInteract
 
 	    headerInteractor.setOption(HeaderOption.NO_DATA_FILE_HEADER_HO, Boolean.TRUE);
 
+	    // process compact_index option
+	    processCompactOption(indexProperties);
+
+	    // process checksums option
+	    processChecksumOption(indexProperties);
+
 	    long position = writeHeader(FileType.SHADOW_INDEX);
 	    indexAppendPosition = position;
 	    dataAppendPosition = 0;
 
+	    // create the block directory of a compact index
+	    if (compactIndex) {
+		createBlockDirectory();
+	    }
+
 	    flush();
 
+	    // process durability option
+	    processDurabilityOption(indexProperties);
+
 	    initThread(indexName + "-IOThread");
 	    startThread();
 
@@ -138,6 +152,9 @@ public class  ShadowIndexIO extends ExternalIndexIO implements IndexFileInteract
 	    ;
 	}
 
+	// process mapped_index option
+	mappedIndex = Boolean.valueOf((String)indexProperties.get("mappedindex")).booleanValue();
+
 	// now check to see if this index should be opened
 	// as read-only
 	Boolean readOnly = (Boolean)indexProperties.get("readonly");
@@ -152,6 +169,9 @@ public class  ShadowIndexIO extends ExternalIndexIO implements IndexFileInteract
 	// read the headers
 	long position = readMetaData();
 
+	// process durability option
+	processDurabilityOption(indexProperties);
+
 	initThread(indexName + "-IOThread");
 	startThread();
 
@@ -211,6 +231,9 @@ public class  ShadowIndexIO extends ExternalIndexIO implements IndexFileInteract
 	    indexFile = new RandomAccessFile(file, openMode);
 	    indexChannel = indexFile.getChannel();
 
+	    // the block directory lives next to the index file
+	    blockFileName = FileUtils.resolveFileName(file.getPath(), ".tib");
+
 	} catch (FileNotFoundException fnfe) {
 	    throw new IndexOpenException("Could not find index file: " + indexFileName);
 	}
@@ -255,6 +278,23 @@ public class  ShadowIndexIO extends ExternalIndexIO implements IndexFileInteract
  
 	long position = readHeader(FileType.SHADOW_INDEX);
 
+	// a compact index needs its block directory
+	if (versionMajor == FileType.COMPACT_RECORDS) {
+	    openBlockDirectory();
+	}
+
+	// the index items have checksums
+	if (Boolean.TRUE.equals(headerInteractor.getOption(HeaderOption.CHECKSUMS_HO))) {
+	    useChecksums();
+	}
+
+	// find the items written after the header was flushed.
+	if (compactIndex) {
+	    recoverCompactTail();
+	} else {
+	    recoverTail();
+	}
+
 	// check ID in header == ID in index
 	// and   name in header == name in index
 	if (headerInteractor.getID().equals(indexID) && 
@@ -301,6 +341,10 @@ public class  ShadowIndexIO extends ExternalIndexIO implements IndexFileInteract
 	ByteBuffer indexBuffer = indexFlushBuffers.current();
 	written += flushBuffer(indexChannel, indexBuffer, indexFlushBuffers);
 
+	// flush out any block offsets
+	if (blockInteractor != null) {
+	    written += blockInteractor.flush();
+	}
 	// flush the header
 	headerInteractor.flush();
 
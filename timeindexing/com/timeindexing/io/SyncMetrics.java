@@ -0,0 +1,117 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+// SyncMetrics.java
+
+package com.timeindexing.io;
+
+/**
+ * The metrics for the syncs of an index,
+ * which force its files out to disk.
+ * All the times are in nanoseconds.
+ */
+public class SyncMetrics {
+    // the no of syncs
+    long syncs = 0;
+
+    // the no of commits completed by the syncs
+    long commits = 0;
+
+    // the total time spent in syncs
+    long totalTime = 0;
+
+    // the longest sync
+    long maxTime = 0;
+
+    // the last sync
+    long lastTime = 0;
+
+    /**
+     * Record a sync.
+     * @param time how long the sync took
+     * @param commitCount how many commits the sync completed
+     */
+    public synchronized void record(long time, long commitCount) {
+	syncs++;
+	commits += commitCount;
+	totalTime += time;
+	lastTime = time;
+
+	if (time > maxTime) {
+	    maxTime = time;
+	}
+    }
+
+    /**
+     * Get the no of syncs.
+     */
+    public synchronized long getSyncCount() {
+	return syncs;
+    }
+
+    /**
+     * Get the no of commits completed by the syncs.
+     * With group syncs this is more than the no of syncs.
+     */
+    public synchronized long getCommitCount() {
+	return commits;
+    }
+
+    /**
+     * Get the total time spent in syncs.
+     */
+    public synchronized long getTotalTime() {
+	return totalTime;
+    }
+
+    /**
+     * Get the mean time of a sync.
+     */
+    public synchronized long getMeanTime() {
+	if (syncs == 0) {
+	    return 0;
+	} else {
+	    return totalTime / syncs;
+	}
+    }
+
+    /**
+     * Get the time of the longest sync.
+     */
+    public synchronized long getMaxTime() {
+	return maxTime;
+    }
+
+    /**
+     * Get the time of the last sync.
+     */
+    public synchronized long getLastTime() {
+	return lastTime;
+    }
+
+    /**
+     * String
+     */
+    public synchronized String toString() {
+	return "SyncMetrics " +
+	    "syncs: " + syncs +
+	    " commits: " + commits +
+	    " mean: " + getMeanTime() +
+	    " max: " + maxTime +
+	    " last: " + lastTime;
+    }
+}
@@ -30,12 +30,22 @@ import java.nio.channels.FileChannel;
  * A class that represents a write request in the I/O thread.
  * It holds data on the channel being written to, the buffer to
  * write, and the ByteBufferRing the buffer came from.
+ * A gathering write request also holds all of the buffers
+ * to write in one go, the first of which may have come from the ring.
  */
 class WriteRequest {
     FileChannel channel = null;
     ByteBuffer buffer = null;
+    ByteBuffer[] buffers = null;
     ByteBufferRing ring = null;
 
+    /**
+     * Construct an empty WriteRequest,
+     * which is filled in later.
+     */
+    public WriteRequest() {
+    }
+
     /**
      * Construct a WriteRequest.
      */
@@ -44,5 +54,49 @@ class WriteRequest {
 	buffer = bb;
 	ring = r;
     }
+
+    /**
+     * Construct a gathering WriteRequest.
+     * If there is a ring, the first buffer is the one that came from it.
+     */
+    public WriteRequest(FileChannel fc, ByteBuffer[] bbs, ByteBufferRing r) {
+	channel = fc;
+	buffer = bbs[0];
+	buffers = bbs;
+	ring = r;
+    }
+
+    /**
+     * Set the details of a WriteRequest.
+     */
+    public WriteRequest set(FileChannel fc, ByteBuffer bb, ByteBufferRing r) {
+	channel = fc;
+	buffer = bb;
+	buffers = null;
+	ring = r;
+	return this;
+    }
+
+    /**
+     * Set the details of a gathering WriteRequest.
+     */
+    public WriteRequest set(FileChannel fc, ByteBuffer[] bbs, ByteBufferRing r) {
+	channel = fc;
+	buffer = bbs[0];
+	buffers = bbs;
+	ring = r;
+	return this;
+    }
+
+    /**
+     * Clear the details, once the WriteRequest is done.
+     */
+    public WriteRequest clear() {
+	channel = null;
+	buffer = null;
+	buffers = null;
+	ring = null;
+	return this;
+    }
 }
 
@@ -0,0 +1,390 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+// WriteRequestRing.java
+
+
+package com.timeindexing.io;
+
+import com.timeindexing.util.ByteBufferRing;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A ring of preallocated WriteRequest slots, which passes
+ * write requests from the writer of an index to its I/O thread.
+ * <p>
+ * There is a single producer and a single consumer, so no locks are used.
+ * The producer can be any thread that holds the monitor of the
+ * index I/O object, so there is only one at a time.  A second
+ * producer that gets in while a request is being added is an error.
+ * The producer fills the slot at the tail and then publishes it
+ * by moving the tail on.  The consumer writes out the slot at the head
+ * and then frees it by moving the head on.
+ * When the ring is empty the consumer parks, and
+ * when the ring is full the producer parks, until the other side
+ * unparks it.
+ * Each request gets a sequence no, so any thread can wait for
+ * a request to be written.
+ */
+class WriteRequestRing {
+    // the slots
+    WriteRequest[] slots = null;
+
+    // the size of the ring, which is a power of 2
+    int capacity = 0;
+    int mask = 0;
+
+    // the next slot to consume
+    AtomicLong head = new AtomicLong(0);
+
+    // the next slot to produce
+    AtomicLong tail = new AtomicLong(0);
+
+    // the threads that are parked
+    volatile Thread consumerParked = null;
+    volatile Thread producerParked = null;
+
+    // the threads waiting for a request to be written
+    ConcurrentLinkedQueue waiters = new ConcurrentLinkedQueue();
+
+    // is a request being added
+    AtomicBoolean producing = new AtomicBoolean(false);
+
+    // the no of times the producer found the ring full
+    volatile long stalls = 0;
+
+    // the most slots that have been in use at once
+    volatile long maxOccupancy = 0;
+
+    /*
+     * How long a stalled producer, or a drain, parks for
+     * before checking the ring again, in nanoseconds.
+     */
+    final static long RECHECK_NANOS = 1000 * 1000;
+
+    /*
+     * How long a thread waiting for a request parks for
+     * before checking the consumer is still alive, in nanoseconds.
+     * It is unparked as soon as the request is written.
+     */
+    final static long ALIVE_NANOS = 100 * 1000 * 1000;
+
+    /**
+     * Construct a WriteRequestRing.
+     * The size is rounded up to a power of 2.
+     */
+    public WriteRequestRing(int size) {
+	capacity = 1;
+
+	while (capacity < size) {
+	    capacity <<= 1;
+	}
+
+	mask = capacity - 1;
+
+	// preallocate the slots
+	slots = new WriteRequest[capacity];
+
+	for (int s=0; s < capacity; s++) {
+	    slots[s] = new WriteRequest();
+	}
+    }
+
+    /**
+     * Add a write of one buffer.
+     * Called by the producer.
+     * @return the sequence no of the request
+     */
+    public long add(FileChannel channel, ByteBuffer buffer, ByteBufferRing ring) {
+	WriteRequest slot = claim();
+
+	slot.set(channel, buffer, ring);
+
+	return publish();
+    }
+
+    /**
+     * Add a gathering write of many buffers.
+     * Called by the producer.
+     * @return the sequence no of the request
+     */
+    public long add(FileChannel channel, ByteBuffer[] buffers, ByteBufferRing ring) {
+	WriteRequest slot = claim();
+
+	slot.set(channel, buffers, ring);
+
+	return publish();
+    }
+
+    /**
+     * Get the slot at the tail.
+     * If the ring is full, the producer waits for the consumer
+     * to free a slot.
+     * @throws IllegalStateException if another producer is adding a request
+     */
+    protected WriteRequest claim() {
+	if (! producing.compareAndSet(false, true)) {
+	    throw new IllegalStateException("WriteRequestRing: a second producer in " + Thread.currentThread().getName());
+	}
+
+	long t = tail.get();
+
+	if (t - head.get() >= capacity) {
+	    // the ring is full
+	    stalls++;
+
+	    while (t - head.get() >= capacity) {
+		producerParked = Thread.currentThread();
+
+		// check again, in case the consumer freed a slot
+		// before it could see producerParked
+		if (t - head.get() >= capacity) {
+		    wakeConsumer();
+		    LockSupport.parkNanos(RECHECK_NANOS);
+		}
+
+		producerParked = null;
+	    }
+	}
+
+	return slots[(int)(t & mask)];
+    }
+
+    /**
+     * Publish the slot at the tail to the consumer.
+     * @return the sequence no of the request in the slot
+     */
+    protected long publish() {
+	long t = tail.get() + 1;
+
+	tail.set(t);
+
+	// keep the occupancy counter
+	long occupancy = t - head.get();
+
+	if (occupancy > maxOccupancy) {
+	    maxOccupancy = occupancy;
+	}
+
+	producing.set(false);
+
+	wakeConsumer();
+
+	return t - 1;
+    }
+
+    /**
+     * Get the WriteRequest at the head, without removing it.
+     * Called by the consumer.
+     * @return null if the ring is empty
+     */
+    public WriteRequest peek() {
+	long h = head.get();
+
+	if (h == tail.get()) {
+	    return null;
+	} else {
+	    return slots[(int)(h & mask)];
+	}
+    }
+
+    /**
+     * Free the WriteRequest at the head, once it has been written.
+     * Called by the consumer.
+     */
+    public void release() {
+	long h = head.get();
+
+	// drop the references to the buffers
+	slots[(int)(h & mask)].clear();
+
+	head.set(h + 1);
+
+	// wake up a stalled producer
+	Thread producer = producerParked;
+
+	if (producer != null) {
+	    LockSupport.unpark(producer);
+	}
+
+	// and anything waiting for a request
+	if (! waiters.isEmpty()) {
+	    Iterator waiting = waiters.iterator();
+
+	    while (waiting.hasNext()) {
+		LockSupport.unpark((Thread)waiting.next());
+	    }
+	}
+    }
+
+    /**
+     * Wait for some work to arrive.
+     * Called by the consumer.
+     * @return true if there is work, false if the wait ended
+     * with no work to do
+     */
+    public boolean await(long timeout) {
+	if (! isEmpty()) {
+	    return true;
+	}
+
+	consumerParked = Thread.currentThread();
+
+	// check again, in case the producer published
+	// before it could see consumerParked
+	if (isEmpty()) {
+	    LockSupport.parkNanos(timeout * 1000 * 1000);
+	}
+
+	consumerParked = null;
+
+	return ! isEmpty();
+    }
+
+    /**
+     * Wait for the consumer to write out all the work.
+     * Called by a thread other than the consumer.
+     * @return false if the consumer died before the ring was empty
+     */
+    public boolean awaitEmpty(Thread consumer) {
+	while (! isEmpty()) {
+	    if (! consumer.isAlive()) {
+		return false;
+	    }
+
+	    LockSupport.unpark(consumer);
+	    LockSupport.parkNanos(RECHECK_NANOS);
+	}
+
+	return true;
+    }
+
+    /**
+     * Wait for the consumer to write out one request,
+     * and the ones before it, but not the ones after it.
+     * Called by a thread other than the consumer, which
+     * is unparked by the consumer when it frees a slot.
+     * @param request the sequence no of the request
+     * @return false if the consumer died before the request was written
+     */
+    public boolean awaitDone(long request, Thread consumer) {
+	if (isDone(request)) {
+	    return true;
+	}
+
+	Thread waiter = Thread.currentThread();
+
+	// the waiter is added before it checks again,
+	// so it can't miss the consumer freeing the slot
+	waiters.add(waiter);
+
+	try {
+	    while (! isDone(request)) {
+		if (! consumer.isAlive()) {
+		    return false;
+		}
+
+		LockSupport.parkNanos(ALIVE_NANOS);
+	    }
+
+	    return true;
+	} finally {
+	    waiters.remove(waiter);
+	}
+    }
+
+    /**
+     * Get the sequence no of the last request added.
+     * @return -1 if no requests have been added
+     */
+    public long lastRequest() {
+	return tail.get() - 1;
+    }
+
+    /**
+     * Has a request been written out.
+     * @param request the sequence no of the request
+     */
+    public boolean isDone(long request) {
+	return head.get() > request;
+    }
+
+    /**
+     * Wake the consumer if it is parked.
+     */
+    protected void wakeConsumer() {
+	Thread consumer = consumerParked;
+
+	if (consumer != null) {
+	    LockSupport.unpark(consumer);
+	}
+    }
+
+    /**
+     * Is the ring empty.
+     */
+    public boolean isEmpty() {
+	return head.get() == tail.get();
+    }
+
+    /**
+     * How many slots are in use.
+     */
+    public long size() {
+	return tail.get() - head.get();
+    }
+
+    /**
+     * How many slots in total.
+     */
+    public int capacity() {
+	return capacity;
+    }
+
+    /**
+     * The most slots that have been in use at once.
+     */
+    public long getMaxOccupancy() {
+	return maxOccupancy;
+    }
+
+    /**
+     * The no of times the producer found the ring full.
+     */
+    public long getStalls() {
+	return stalls;
+    }
+
+    /**
+     * String
+     */
+    public String toString() {
+	return "WriteRequestRing " +
+	    "capacity: " + capacity +
+	    " size: " + size() +
+	    " max: " + maxOccupancy +
+	    " stalls: " + stalls;
+    }
+}
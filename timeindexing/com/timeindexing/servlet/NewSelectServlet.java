@@ -308,6 +308,15 @@ public class NewSelectServlet extends TimeindexingContextServlet {
 	try {
 	    String filename = (String)properties.get("indexpath");
 	    selecter = allocateSelecter(filename, out);
+
+	    // if the size of the output is known, tell the client.
+	    // select() outputs the same selection that was sized
+	    long size = selecter.outputSize(properties);
+
+	    if (size >= 0) {
+		response.setHeader("Content-Length", Long.toString(size));
+	    }
+
 	    selecter.select(properties);
 
 	} catch (Exception ex) {
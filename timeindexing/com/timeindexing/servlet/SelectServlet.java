@@ -379,6 +379,14 @@ public class SelectServlet extends HttpServlet implements IndexPrimaryEventListe
 	    // add the servlet as an event listener
 	    selecter.addPrimaryEventListener(this);
 
+	    // if the size of the output is known, tell the client.
+	    // select() outputs the same selection that was sized
+	    long size = selecter.outputSize(properties);
+
+	    if (size >= 0) {
+		setContentLength(request, response, size);
+	    }
+
 	    // select the data
 	    selecter.select(properties);
 
@@ -635,6 +643,14 @@ public class SelectServlet extends HttpServlet implements IndexPrimaryEventListe
 	response.setContentType(type);
     }
 
+    /**
+     * Set the content length.
+     * The length can be bigger than an int.
+     */
+    protected void setContentLength(HttpServletRequest request, HttpServletResponse response, long length) {
+	response.setHeader("Content-Length", Long.toString(length));
+    }
+
     /**
      * Get the content type for this response.
      */
@@ -700,6 +716,13 @@ public class SelectServlet extends HttpServlet implements IndexPrimaryEventListe
 	System.err.println(Clock.time.time() + " " + ipe.getName() + ". REMOVE_VIEW" + ". Thread " + Thread.currentThread().getName() );
     }
 
+    /**
+     * A notification that an Index has been recovered when it was opened.
+     */
+    public void recovered(IndexPrimaryEvent ipe) {
+	System.err.println(Clock.time.time() + " " + ipe.getName() + ". RECOVERED" + ". Thread " + Thread.currentThread().getName() );
+    }
+
    /**
      * Wrap a Writer as an Output Stream.
      */
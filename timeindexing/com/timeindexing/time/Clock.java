@@ -90,6 +90,14 @@ public class Clock {
 	return asMillis();
     }
 
+    /**
+     * Return the current time as a long of nanoseconds.
+     * This is the same time as time(), but no Timestamp is made.
+     */
+    public long timeAsNanos() {
+	return getRawTime() * 1000000L;
+    }
+
     /**
      * Get the system time.
      * This gets the clock to the best resolution that the platform will 
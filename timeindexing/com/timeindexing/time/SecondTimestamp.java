@@ -79,6 +79,7 @@ public class SecondTimestamp extends AbstractAbsoluteTimestamp implements Absolu
 	    
 	if (seconds < 0) {			// a before epoch time
 	    value = (-seconds);
+	    value |= BEFORE_EPOCH;
 	} else {
 	    value = seconds;
 	}
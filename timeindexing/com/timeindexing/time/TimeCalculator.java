@@ -568,22 +568,103 @@ public class TimeCalculator {
     }
 
 
+    /*
+     * Primitive times.
+     * A time can be held as a long of nanoseconds from the epoch,
+     * which covers about 292 years either side of the epoch.
+     * These make no objects, so they are used on the search paths.
+     */
+
+    /**
+     * Convert a Timestamp to a long of nanoseconds.
+     */
+    public static long asNanos(Timestamp t) {
+	return t.getSeconds() * 1000000000L + signedNanos(t);
+    }
+
+    /**
+     * Get the nanoseconds of a Timestamp with the sign of the time.
+     * An absolute time before the epoch holds its nanoseconds
+     * as a positive amount, which is taken from its seconds.
+     */
+    static int signedNanos(Timestamp t) {
+	int nanos = t.getNanoSeconds();
+
+	if (t instanceof AbsoluteTimestamp && ((AbsoluteTimestamp)t).isBeforeEpoch()) {
+	    return -nanos;
+	} else {
+	    return nanos;
+	}
+    }
+
+    /**
+     * Convert some seconds and some nanoseconds to a long of nanoseconds.
+     */
+    public static long asNanos(long seconds, int nanos) {
+	return seconds * 1000000000L + nanos;
+    }
+
+    /**
+     * Convert a long of nanoseconds into an AbsoluteTimestamp
+     * in the best scale.
+     */
+    public static AbsoluteTimestamp fromNanos(long nanos) {
+	if (nanos < 0 && nanos > -1000000000L) {
+	    // there are no seconds to carry the sign,
+	    // so set the before epoch bit of the value
+	    long amount = -nanos;
+
+	    if (amount % 1000000 == 0) {
+		return new MillisecondTimestamp((amount / 1000000) | MillisecondTimestamp.BEFORE_EPOCH);
+	    } else if (amount % 1000 == 0) {
+		return new MicrosecondTimestamp((amount / 1000) | MicrosecondTimestamp.BEFORE_EPOCH);
+	    } else {
+		return new NanosecondTimestamp(amount | NanosecondTimestamp.BEFORE_EPOCH);
+	    }
+	} else {
+	    return asAbsoluteTimestamp(nanos / 1000000000L, (int)(nanos % 1000000000L));
+	}
+    }
+
     /*
      * Ordinals: ==, != , <, <=, >, >=
      */
 
     /**
-     * Equals
+     * Compare two Timestamps.
+     * The seconds and nanoseconds of each are only got once,
+     * and the nanoseconds of a time before the epoch count backwards.
+     * @return -1, 0, or 1 as t0 is before, the same as, or after t1
      */
-    public static boolean equals(Timestamp t0, Timestamp t1) {
-	if (t0.getSeconds() == t1.getSeconds() &&
-	    t0.getNanoSeconds() == t1.getNanoSeconds()) {
-	    return true;
+    public static int compare(Timestamp t0, Timestamp t1) {
+	long seconds0 = t0.getSeconds();
+	long seconds1 = t1.getSeconds();
+
+	if (seconds0 < seconds1) {
+	    return -1;
+	} else if (seconds0 > seconds1) {
+	    return 1;
 	} else {
-	    return false;
+	    int nanos0 = signedNanos(t0);
+	    int nanos1 = signedNanos(t1);
+
+	    if (nanos0 < nanos1) {
+		return -1;
+	    } else if (nanos0 > nanos1) {
+		return 1;
+	    } else {
+		return 0;
+	    }
 	}
     }
 
+    /**
+     * Equals
+     */
+    public static boolean equals(Timestamp t0, Timestamp t1) {
+	return compare(t0, t1) == 0;
+    }
+
     /**
      * Not Equals
      */
@@ -595,17 +676,7 @@ public class TimeCalculator {
      * LessThanEquals
      */
     public static boolean lessThanEquals(Timestamp t0, Timestamp t1) {
-	if (t0.getSeconds() < t1.getSeconds()) {
-	    return true;
-	} else if (t0.getSeconds() == t1.getSeconds()) {
-	    if (t0.getNanoSeconds() <= t1.getNanoSeconds()) {
-		return true;
-	    } else {
-		return false;
-	    }
-	} else {
-	    return false;
-	}
+	return compare(t0, t1) <= 0;
     }
 
 
@@ -622,17 +693,7 @@ public class TimeCalculator {
      * GreaterThanEquals
      */
     public static boolean greaterThanEquals(Timestamp t0, Timestamp t1) {
-	if (t0.getSeconds() > t1.getSeconds()) {
-	    return true;
-	} else if (t0.getSeconds() == t1.getSeconds()) {
-	    if (t0.getNanoSeconds() >= t1.getNanoSeconds()) {
-		return true;
-	    } else {
-		return false;
-	    }
-	} else {
-	    return false;
-	}
+	return compare(t0, t1) >= 0;
     }
 
     /**
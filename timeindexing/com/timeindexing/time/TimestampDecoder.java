@@ -113,5 +113,32 @@ public class TimestampDecoder {
 	}
     }
 
-	    
+    /**
+     * Decode a long straight into a long of nanoseconds.
+     * This is the same as TimeCalculator.asNanos() of the decoded
+     * Timestamp, but no Timestamp is made for absolute times
+     * after the epoch, which are nearly all the times in an index.
+     */
+    public long decodeNanos(long value) {
+	// special case if value is 0
+	if (value == 0) {
+	    return 0;
+	}
+
+	//check top 2 bits
+	long valueT = value & Timestamp.TOP_2_MASK;
+
+	if (valueT == Timestamp.MILLISECOND && (value & Timestamp.MILLISECOND_SIGN) == 0) {
+	    return value * 1000000L;
+
+	} else if (valueT == Timestamp.MICROSECOND && (value & Timestamp.MICROSECOND_SIGN) == 0) {
+	    return (value ^ Timestamp.MICROSECOND) * 1000L;
+
+	} else if (valueT == Timestamp.NANOSECOND && (value & Timestamp.NANOSECOND_SIGN) == 0) {
+	    return value ^ Timestamp.NANOSECOND;
+
+	} else {
+	    return TimeCalculator.asNanos(decode(value));
+	}
+    }
 }
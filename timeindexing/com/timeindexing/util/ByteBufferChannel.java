@@ -0,0 +1,77 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+// ByteBufferChannel.java
+
+package com.timeindexing.util;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.ClosedChannelException;
+import java.io.IOException;
+
+/**
+ * A ReadableByteChannel that reads from a ByteBuffer.
+ * The channel has its own view of the buffer, so the
+ * position of the buffer is not changed.
+ */
+public class ByteBufferChannel implements ReadableByteChannel {
+    // the view of the buffer
+    ByteBuffer buffer = null;
+
+    /**
+     * Construct a ByteBufferChannel for the remaining bytes of a buffer.
+     */
+    public ByteBufferChannel(ByteBuffer buffer) {
+	this.buffer = buffer.duplicate();
+    }
+
+    /**
+     * Read some bytes into dst.
+     * @return the no of bytes read, or -1 at the end of the buffer
+     */
+    public int read(ByteBuffer dst) throws IOException {
+	if (buffer == null) {
+	    throw new ClosedChannelException();
+	} else if (! buffer.hasRemaining()) {
+	    return -1;
+	} else {
+	    int count = Math.min(dst.remaining(), buffer.remaining());
+
+	    ByteBuffer slice = buffer.slice();
+	    slice.limit(count);
+
+	    dst.put(slice);
+	    buffer.position(buffer.position() + count);
+
+	    return count;
+	}
+    }
+
+    /**
+     * Is the channel open.
+     */
+    public boolean isOpen() {
+	return buffer != null;
+    }
+
+    /**
+     * Close the channel.
+     */
+    public void close() {
+	buffer = null;
+    }
+}
@@ -27,45 +27,102 @@ import java.nio.ByteBuffer;
  * There will be a 'current' buffer in the ring.
  * A buffer can be locked, so it can;t be used again.
  * A buffer can be freed, so it can be used again.
+ * <p>
+ * The ring is a bounded pool of direct buffers.
+ * The free buffers are held in an array, used as a circular queue,
+ * so locking and unlocking are O(1).
+ * Buffers are allocated on demand, up to a maximum.
+ * When all of them are locked, lock() waits for one to be unlocked.
+ * The default maximum can be set with the
+ * timeindexing.flushbuffers system property.
  */
 public class ByteBufferRing {
-    // A doubly linked list of ByteBuffers that acts as the ring
-    DoubleLinkedList ring = null;
+    // A circular queue of the free buffers
+    ByteBuffer[] free = null;
+    int freeHead = 0;
+    int freeCount = 0;
 
-    // A doubly linked list of buffers that are locked
-    DoubleLinkedList locked = null;
+    // The current buffer
+    ByteBuffer currentBuffer = null;
 
     // the size of the ring
     int ringSize = 0;
 
+    // the max size of the ring
+    int maxSize = 0;
+
     // the size of the buffers in the ring
     int bufferSize = 0;
 
-    // The current buffer position in the ring
-    int currentBufferPosition = 0;
+    // the no of locked buffers
+    int lockedCount = 0;
+
+    // the no of times lock() had to wait for a free buffer
+    long waits = 0;
+
+    /*
+     * The default max no of buffers in a ring.
+     */
+    public final static int DEFAULT_MAX_SIZE = 64;
 
     /**
      * Construct a ByteBufferRing with N ByteBuffers.
+     * The ring can grow to the default max size.
      */
     public ByteBufferRing(int count, int bufSize) {
-	// allocate  the DoubleLinkedList to hold the buffers
-	ring = new DoubleLinkedList();
-	locked = new DoubleLinkedList();
+	this(count, bufSize, Math.max(count, defaultMaxSize()));
+    }
 
+    /**
+     * Construct a ByteBufferRing with N ByteBuffers,
+     * which can grow to max ByteBuffers.
+     */
+    public ByteBufferRing(int count, int bufSize, int max) {
 	bufferSize = bufSize;
-	currentBufferPosition = 0;
+	maxSize = Math.max(max, 1);
+
+	free = new ByteBuffer[maxSize];
 
 	// now allocate the buffer space
-	grow(count);
+	grow(Math.max(count, 1));
+
+	// and set the current buffer
+	currentBuffer = take();
+    }
+
+    /**
+     * Get the default max no of buffers in a ring,
+     * from the timeindexing.flushbuffers system property,
+     * or DEFAULT_MAX_SIZE.
+     */
+    public static int defaultMaxSize() {
+	String sizeProperty = System.getProperty("timeindexing.flushbuffers");
+
+	if (sizeProperty != null) {
+	    try {
+		return Math.max(1, Integer.parseInt(sizeProperty));
+	    } catch (NumberFormatException nfe) {
+		System.err.println("ByteBufferRing: bad timeindexing.flushbuffers " + sizeProperty);
+	    }
+	}
+
+	return DEFAULT_MAX_SIZE;
     }
 
     /**
      * Get the size of the ring.
      */
-    public int size() {
+    public synchronized int size() {
 	return ringSize;
     }
 
+    /**
+     * Get the max size of the ring.
+     */
+    public int getMaxSize() {
+	return maxSize;
+    }
+
     /**
      * Get the size of the buffers in the ring.
      */
@@ -76,42 +133,66 @@ public class ByteBufferRing {
     /**
      * Get the current buffer.
      */
-    public ByteBuffer current() {
-	if (free() > 0) {
-	    return (ByteBuffer)ring.get(currentBufferPosition);
-	} else {
-	    return null;
-	}
+    public synchronized ByteBuffer current() {
+	return currentBuffer;
     }
 
     /**
      * How many free buffers are there.
+     * This includes the current buffer and
+     * the buffers that can still be allocated.
      */
-    public  int free() {
-	return (int)ring.size();
+    public synchronized int free() {
+	return maxSize - lockedCount;
+    }
+
+    /**
+     * How many buffers are locked.
+     */
+    public synchronized int locked() {
+	return lockedCount;
+    }
+
+    /**
+     * How many times lock() had to wait for a free buffer.
+     */
+    public synchronized long getWaits() {
+	return waits;
     }
 
     /**
      * Lock the current buffer.
+     * Another buffer becomes the current buffer.
+     * If there are no free buffers, and the ring is at its max size,
+     * this waits until a buffer is unlocked.
      * Returns the no of free buffers.
      */
-    public int lock() {
-	// get the current buffer
-	ByteBuffer buffer = (ByteBuffer)ring.get(currentBufferPosition);
-
-	// remove it from the ring
-	ring.remove(buffer);
+    public synchronized int lock() {
+	// the current buffer is now locked
+	lockedCount++;
+	currentBuffer = null;
 
-	// put it in the locked list
-	locked.add(buffer);
+	if (freeCount == 0) {
+	    if (ringSize < maxSize) {
+		// we're out of buffers, so get some more
+		grow(Math.min(ringSize, maxSize - ringSize));
+	    } else {
+		// wait for a buffer to be unlocked
+		waits++;
 
-	if (free() == 0) {
-	    // were out of buffers
-	    grow(ringSize);
+		while (freeCount == 0) {
+		    try {
+			wait();
+		    } catch (InterruptedException ie) {
+			// keep waiting, the buffer
+			// must be available to carry on
+		    }
+		}
+	    }
 	}
 
-	// update the current buffer position
-	currentBufferPosition = (currentBufferPosition + 1) % free();
+	// update the current buffer
+	currentBuffer = take();
 
 	return free();
     }
@@ -120,44 +201,71 @@ public class ByteBufferRing {
      * Unlock a buffer.
      * Returns the no of free buffers.
      */
-    public int unlock(ByteBuffer buffer) {
-	// remove it from the locked list
-	locked.remove(buffer);
+    public synchronized int unlock(ByteBuffer buffer) {
+	lockedCount--;
 
-	// put it in the locked list
-	ring.add(buffer);
+	// put it in the free queue
+	put(buffer);
+
+	// wake up anything waiting in lock()
+	notifyAll();
 
 	return free();
     }
 
     /**
-     * Grow the ring by N new buffers.
+     * Grow the ring by N new buffers,
+     * up to the max size.
      */
-    public int grow(int growSize) {
+    public synchronized int grow(int growSize) {
+	int actual = Math.min(growSize, maxSize - ringSize);
+
 	// now allocate the buffer space
-	for (int i=0; i < growSize; i++) {
-	    ByteBuffer aBuffer = ByteBuffer.allocate(bufferSize);
+	for (int i=0; i < actual; i++) {
+	    ByteBuffer aBuffer = ByteBuffer.allocateDirect(bufferSize);
 
-	    ring.add(aBuffer);
-	}
+	    ringSize++;
 
-	ringSize += growSize;
+	    put(aBuffer);
+	}
 
 	//System.err.println("ByteBufferRing grown to " + size());
 	return size();
-	
+
+    }
+
+    /**
+     * Take a buffer from the head of the free queue.
+     */
+    private ByteBuffer take() {
+	ByteBuffer buffer = free[freeHead];
+
+	free[freeHead] = null;
+	freeHead = (freeHead + 1) % maxSize;
+	freeCount--;
+
+	return buffer;
+    }
+
+    /**
+     * Put a buffer on the tail of the free queue.
+     */
+    private void put(ByteBuffer buffer) {
+	free[(freeHead + freeCount) % maxSize] = buffer;
+	freeCount++;
     }
 
     /**
      * String
      */
-    public String toString() {
+    public synchronized String toString() {
 	return "ByteBufferRing " +
 	    "size: " + size() +
+	    " max: " + maxSize +
 	    " free: " + free() +
-	    " locked: " + locked.size() +
-	    " position: " + currentBufferPosition;
+	    " locked: " + lockedCount +
+	    " waits: " + waits;
     }
-	    
-    
+
+
 }
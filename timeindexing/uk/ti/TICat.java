@@ -105,7 +105,7 @@ public class TICat extends TIAbstractRestore {
 	index.setCachePolicy(new RemoveAfterUsePolicy());
 
 	long total = index.getLength();
-	for (long i=0; i<total; i++) {
+	for (long i=index.getFirstPosition(); i<total; i++) {
 	    IndexItem itemN = index.getItem(i);
 	    printIndexItem(itemN, out);
 	}
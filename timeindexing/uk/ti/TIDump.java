@@ -99,7 +99,7 @@ public class TIDump extends TIAbstractRestore {
      */
     protected void printIndex(Index index, OutputStream out) throws TimeIndexException {
 	long total = index.getLength();
-	for (long i=0; i<total; i++) {
+	for (long i=index.getFirstPosition(); i<total; i++) {
 	    IndexItem itemN = index.getItem(i);
 	    printIndexItem(itemN, out);
 	}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+
+package uk.ti;
+
+import com.timeindexing.index.Index;
+import com.timeindexing.index.IndexView;
+import com.timeindexing.index.IndexItem;
+import com.timeindexing.index.IndexType;
+import com.timeindexing.index.FileIndex;
+import com.timeindexing.index.ManagedIndexItem;
+import com.timeindexing.index.DataAbstraction;
+import com.timeindexing.index.DataReference;
+import com.timeindexing.index.DataHolder;
+import com.timeindexing.index.TimeIndexDirectory;
+import com.timeindexing.index.TimeIndexFactory;
+import com.timeindexing.index.TimeIndexException;
+import com.timeindexing.time.MillisecondTimestamp;
+import com.timeindexing.data.ByteBufferItem;
+
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.nio.ByteBuffer;
+
+/**
+ * Test of the asynchronous reads.
+ * getItemAsync(), getItemsAsync() and readDataAsync()
+ * must get the same items and data as the synchronous calls,
+ * with thousands of reads in flight at once.
+ */
+public class TestAsyncReads {
+    static final int COUNT = 5000;
+
+    static int bad = 0;
+
+    public static void main(String [] args) {
+	TimeIndexFactory factory = new TimeIndexFactory();
+
+	Properties properties = new Properties();
+	properties.setProperty("name", "index-TestAsyncReads");
+	properties.setProperty("indexpath", "/tmp/test-async");
+
+	try {
+	    IndexView index = factory.create(IndexType.EXTERNAL, properties);
+
+	    long time = System.currentTimeMillis() - 600000;
+
+	    for (int i=0; i<COUNT; i++) {
+		ByteBuffer buffer = ByteBuffer.allocate(8);
+		buffer.putLong(0, i);
+		index.addItem(new ByteBufferItem(buffer), new MillisecondTimestamp(time + i));
+	    }
+
+	    factory.close(index);
+
+	    Properties openProperties = new Properties();
+	    openProperties.setProperty("indexpath", "/tmp/test-async");
+
+	    index = factory.open(openProperties);
+	    index.setLoadDataAutomatically(false);
+
+	    // thousands of single items in flight
+	    Random random = new Random(16);
+	    int[] positions = new int[COUNT];
+	    Future[] futures = new Future[COUNT];
+
+	    for (int r=0; r<COUNT; r++) {
+		positions[r] = random.nextInt(COUNT);
+		futures[r] = ((Index)index).getItemAsync(positions[r]);
+	    }
+
+	    for (int r=0; r<COUNT; r++) {
+		check((IndexItem)futures[r].get(60, TimeUnit.SECONDS), positions[r]);
+	    }
+
+	    // runs of items
+	    futures = new Future[10];
+
+	    for (int r=0; r<futures.length; r++) {
+		futures[r] = ((Index)index).getItemsAsync(r * 500, 500);
+	    }
+
+	    for (int r=0; r<futures.length; r++) {
+		IndexItem[] items = (IndexItem[])futures[r].get(60, TimeUnit.SECONDS);
+
+		if (items.length != 500) {
+		    System.err.println("TestAsyncReads: got " + items.length + " items, not 500");
+		    bad++;
+		} else {
+		    for (int i=0; i<items.length; i++) {
+			check(items[i], r * 500 + i);
+		    }
+		}
+	    }
+
+	    // the data of items not loaded
+	    FileIndex fileIndex = (FileIndex)TimeIndexDirectory.find(index.getID());
+	    futures = new Future[COUNT/10];
+
+	    for (int r=0; r<futures.length; r++) {
+		positions[r] = random.nextInt(COUNT);
+
+		DataAbstraction data = ((ManagedIndexItem)index.getItem(positions[r])).getDataAbstraction();
+
+		if (data instanceof DataReference) {
+		    futures[r] = fileIndex.readDataAsync(positions[r], (DataReference)data);
+		}
+	    }
+
+	    for (int r=0; r<futures.length; r++) {
+		if (futures[r] == null) {
+		    // the item was read already
+		    continue;
+		}
+
+		long value = ((DataHolder)futures[r].get(60, TimeUnit.SECONDS)).getBytes().getLong(0);
+
+		if (value != positions[r]) {
+		    System.err.println("TestAsyncReads: readDataAsync " + positions[r] + " got " + value);
+		    bad++;
+		}
+	    }
+
+	    factory.close(index);
+
+	} catch (TimeIndexException tie) {
+	    System.err.println("TestAsyncReads: " + tie.getMessage());
+	    System.exit(1);
+	} catch (Exception e) {
+	    System.err.println("TestAsyncReads: " + e);
+	    System.exit(1);
+	}
+
+	if (bad > 0) {
+	    System.err.println("TestAsyncReads: " + bad + " errors");
+	    System.exit(1);
+	} else {
+	    System.out.println("TestAsyncReads: OK");
+	}
+    }
+
+    /**
+     * Check an item is the one at position n.
+     */
+    static void check(IndexItem item, long n) {
+	if (item.getPosition().value() != n) {
+	    System.err.println("TestAsyncReads: item " + n + " at " + item.getPosition());
+	    bad++;
+	} else if (item.getData().getLong(0) != n) {
+	    System.err.println("TestAsyncReads: item " + n + " has data " + item.getData().getLong(0));
+	    bad++;
+	}
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+
+package uk.ti;
+
+import com.timeindexing.index.IndexView;
+import com.timeindexing.index.IndexItem;
+import com.timeindexing.index.IndexType;
+import com.timeindexing.index.TimeIndexFactory;
+import com.timeindexing.index.TimeIndexException;
+import com.timeindexing.time.MillisecondTimestamp;
+import com.timeindexing.data.ByteBufferItem;
+
+import java.util.Properties;
+import java.nio.ByteBuffer;
+
+/**
+ * Test of loading with loadstyle all and hollow,
+ * which load the items a block at a time.
+ * The indexes have more than one load block of items,
+ * and more data than the cache policies hold, so the
+ * HollowAtDataVolume policies hollow items as they are loaded.
+ * Every item must be the same as it was added,
+ * and a hollow load must not take quadratic time.
+ */
+public class TestBlockLoad {
+    static final int COUNT = 80000;
+
+    // a hollow load of COUNT items took minutes
+    // when the cache policy searched its list for every new item
+    static final long MAX_OPEN_MILLIS = 20000;
+
+    static long time = System.currentTimeMillis() - 600000;
+
+    static int bad = 0;
+
+    public static void main(String [] args) {
+	try {
+	    test(IndexType.EXTERNAL, "/tmp/test-block-external", null);
+	    test(IndexType.SEGMENTED, "/tmp/test-block-segmented", "segmentsize");
+	    test(IndexType.EXTERNAL, "/tmp/test-block-compact", "compactindex");
+	    test(IndexType.INLINE, "/tmp/test-block-inline", null);
+
+	} catch (TimeIndexException tie) {
+	    System.err.println("TestBlockLoad: " + tie.getMessage());
+	    System.exit(1);
+	}
+
+	if (bad > 0) {
+	    System.err.println("TestBlockLoad: " + bad + " errors");
+	    System.exit(1);
+	} else {
+	    System.out.println("TestBlockLoad: OK");
+	}
+    }
+
+    static void test(IndexType type, String path, String option) throws TimeIndexException {
+	TimeIndexFactory factory = new TimeIndexFactory();
+
+	Properties properties = new Properties();
+	properties.setProperty("name", "index-TestBlockLoad");
+	properties.setProperty("indexpath", path);
+
+	if ("segmentsize".equals(option)) {
+	    properties.setProperty("segmentsize", "1000000");
+	} else if (option != null) {
+	    properties.setProperty(option, "true");
+	}
+
+	IndexView index = factory.create(type, properties);
+
+	for (int i=0; i<COUNT; i++) {
+	    index.addItem(new ByteBufferItem(ByteBuffer.wrap(data(i))), new MillisecondTimestamp(time + i));
+	}
+
+	factory.close(index);
+
+	load(factory, path, "all");
+	load(factory, path, "hollow");
+    }
+
+    static void load(TimeIndexFactory factory, String path, String loadstyle) throws TimeIndexException {
+	Properties openProperties = new Properties();
+	openProperties.setProperty("indexpath", path);
+	openProperties.setProperty("loadstyle", loadstyle);
+
+	long start = System.currentTimeMillis();
+
+	IndexView index = factory.open(openProperties);
+
+	long elapsed = System.currentTimeMillis() - start;
+
+	if (elapsed > MAX_OPEN_MILLIS) {
+	    System.err.println("TestBlockLoad: " + path + " " + loadstyle + " took " + elapsed + "ms to open");
+	    bad++;
+	}
+
+	if (index.getLength() != COUNT) {
+	    System.err.println("TestBlockLoad: " + path + " " + loadstyle + " has " + index.getLength() + " items");
+	    bad++;
+	}
+
+	// read backwards, so the items hollowed during the load
+	// are read back from the file
+	for (int i=COUNT-1; i>=0; i--) {
+	    IndexItem item = index.getItem(i);
+
+	    if (item.getPosition().value() != i ||
+		item.getDataTimestamp().value() != new MillisecondTimestamp(time + i).value() ||
+		! item.getData().equals(ByteBuffer.wrap(data(i)))) {
+		System.err.println("TestBlockLoad: " + path + " " + loadstyle + " item " + i + " is wrong");
+		bad++;
+	    }
+	}
+
+	factory.close(index);
+    }
+
+    static byte[] data(int i) {
+	byte[] data = new byte[20 + i % 100];
+
+	for (int p=0; p<data.length; p++) {
+	    data[p] = (byte)(i * 7 + p);
+	}
+
+	return data;
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+
+package uk.ti;
+
+import com.timeindexing.index.IndexView;
+import com.timeindexing.index.IndexType;
+import com.timeindexing.index.TimeIndexFactory;
+import com.timeindexing.index.TimeIndexException;
+import com.timeindexing.time.MillisecondTimestamp;
+import com.timeindexing.data.ByteBufferItem;
+import com.timeindexing.util.ByteBufferRing;
+
+import java.util.Properties;
+import java.nio.ByteBuffer;
+
+/**
+ * Test of the bounded pool of flush buffers.
+ * The ring grows to its max size, and then lock() must wait
+ * until a buffer is unlocked, rather than allocate more.
+ * The max size can be set with the timeindexing.flushbuffers
+ * property, and an index must still be written right when
+ * its rings only have 2 buffers.
+ */
+public class TestBufferRing {
+    static final int ITEMS = 5000;
+
+    static int bad = 0;
+
+    public static void main(String [] args) {
+	// give up if anything hangs
+	Thread watchdog = new Thread() {
+		public void run() {
+		    try {
+			Thread.sleep(100000);
+			System.err.println("TestBufferRing: hung");
+			System.exit(1);
+		    } catch (InterruptedException ie) {
+		    }
+		}
+	    };
+	watchdog.setDaemon(true);
+	watchdog.start();
+
+	try {
+	    exhaust();
+	    property();
+	    index();
+
+	} catch (TimeIndexException tie) {
+	    System.err.println("TestBufferRing: " + tie.getMessage());
+	    System.exit(1);
+	} catch (InterruptedException ie) {
+	    System.err.println("TestBufferRing: " + ie.getMessage());
+	    System.exit(1);
+	}
+
+	if (bad > 0) {
+	    System.err.println("TestBufferRing: " + bad + " errors");
+	    System.exit(1);
+	} else {
+	    System.out.println("TestBufferRing: OK");
+	}
+    }
+
+    /**
+     * Lock all the buffers of a ring, and check that
+     * the next lock waits for an unlock.
+     */
+    static void exhaust() throws InterruptedException {
+	final ByteBufferRing ring = new ByteBufferRing(1, 16, 3);
+
+	if (! ring.current().isDirect()) {
+	    System.err.println("TestBufferRing: the buffers are not direct");
+	    bad++;
+	}
+
+	ByteBuffer first = ring.current();
+	ring.lock();
+
+	ByteBuffer second = ring.current();
+	ring.lock();
+
+	if (ring.size() != 3 || ring.locked() != 2 || ring.free() != 1) {
+	    System.err.println("TestBufferRing: after 2 locks " + ring);
+	    bad++;
+	}
+
+	// the last buffer is locked by another thread, which must wait
+	Thread locker = new Thread() {
+		public void run() {
+		    ring.lock();
+		}
+	    };
+
+	locker.start();
+	locker.join(500);
+
+	if (! locker.isAlive()) {
+	    System.err.println("TestBufferRing: lock() did not wait when the ring was full " + ring);
+	    bad++;
+	}
+
+	if (ring.size() != 3) {
+	    System.err.println("TestBufferRing: the ring grew past its max " + ring);
+	    bad++;
+	}
+
+	// an unlock lets it carry on
+	ring.unlock(first);
+	locker.join(5000);
+
+	if (locker.isAlive()) {
+	    System.err.println("TestBufferRing: lock() still waiting after an unlock " + ring);
+	    bad++;
+	}
+
+	// the current buffer counts as free
+	if (ring.getWaits() != 1 || ring.locked() != 2 || ring.free() != 1) {
+	    System.err.println("TestBufferRing: after the wait " + ring);
+	    bad++;
+	}
+
+	// the unlocked buffer is now the current one
+	if (ring.current() != first) {
+	    System.err.println("TestBufferRing: the unlocked buffer was not used again");
+	    bad++;
+	}
+
+	ring.unlock(second);
+
+	if (ring.locked() != 1 || ring.free() != 2) {
+	    System.err.println("TestBufferRing: after an unlock " + ring);
+	    bad++;
+	}
+    }
+
+    /**
+     * Check the max size comes from the property.
+     */
+    static void property() {
+	System.setProperty("timeindexing.flushbuffers", "5");
+
+	ByteBufferRing ring = new ByteBufferRing(2, 16);
+
+	if (ring.getMaxSize() != 5) {
+	    System.err.println("TestBufferRing: max size " + ring.getMaxSize() + " expected 5");
+	    bad++;
+	}
+
+	// a ring starts with at least its initial buffers
+	ring = new ByteBufferRing(8, 16);
+
+	if (ring.getMaxSize() != 8) {
+	    System.err.println("TestBufferRing: max size " + ring.getMaxSize() + " expected 8");
+	    bad++;
+	}
+    }
+
+    /**
+     * Write an index whose rings can only have 2 buffers,
+     * so the writer keeps waiting for the IO thread.
+     */
+    static void index() throws TimeIndexException {
+	System.setProperty("timeindexing.flushbuffers", "2");
+
+	TimeIndexFactory factory = new TimeIndexFactory();
+
+	Properties properties = new Properties();
+	properties.setProperty("name", "index-TestBufferRing");
+	properties.setProperty("indexpath", "/tmp/test-buffer-ring");
+
+	IndexView index = factory.create(IndexType.EXTERNAL, properties);
+
+	long time = System.currentTimeMillis() - 60000;
+
+	for (int i=0; i<ITEMS; i++) {
+	    index.addItem(new ByteBufferItem(ByteBuffer.wrap(data(i))), new MillisecondTimestamp(time + i));
+	}
+
+	factory.close(index);
+
+	System.clearProperty("timeindexing.flushbuffers");
+
+	Properties openProperties = new Properties();
+	openProperties.setProperty("indexpath", "/tmp/test-buffer-ring");
+
+	index = factory.open(openProperties);
+
+	if (index.getLength() != ITEMS) {
+	    System.err.println("TestBufferRing: length " + index.getLength() + " expected " + ITEMS);
+	    bad++;
+	}
+
+	for (int i=0; i<index.getLength(); i++) {
+	    if (! ByteBuffer.wrap(data(i)).equals(index.getItem(i).getData())) {
+		System.err.println("TestBufferRing: item " + i + " is wrong");
+		bad++;
+	    }
+	}
+
+	factory.close(index);
+    }
+
+    /**
+     * The data for item i.
+     */
+    static byte[] data(int i) {
+	byte[] data = new byte[100 + i % 1000];
+
+	for (int p=0; p<data.length; p++) {
+	    data[p] = (byte)(i + p);
+	}
+
+	return data;
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+
+package uk.ti;
+
+import com.timeindexing.index.IndexView;
+import com.timeindexing.index.IndexItem;
+import com.timeindexing.index.IndexType;
+import com.timeindexing.index.TimeIndexFactory;
+import com.timeindexing.index.TimeIndexException;
+import com.timeindexing.index.AddItemException;
+import com.timeindexing.time.MillisecondTimestamp;
+import com.timeindexing.data.ChannelItem;
+
+import java.util.Properties;
+import java.io.ByteArrayInputStream;
+import java.io.RandomAccessFile;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Test of adding data from a channel, and reading it back
+ * through a channel, with checksums.
+ * A damaged byte must be found by the read that gets the last of the data.
+ * Data that is too big for a buffer, or a channel that ends early,
+ * must fail with an IOException, or an AddItemException when added.
+ */
+public class TestChannelItem {
+    static final int SIZE = 100000;
+
+    static int bad = 0;
+
+    public static void main(String [] args) {
+	TimeIndexFactory factory = new TimeIndexFactory();
+
+	Properties properties = new Properties();
+	properties.setProperty("name", "index-TestChannelItem");
+	properties.setProperty("indexpath", "/tmp/test-channel");
+	properties.setProperty("checksums", "true");
+
+	try {
+	    IndexView index = factory.create(IndexType.EXTERNAL, properties);
+
+	    long time = System.currentTimeMillis();
+
+	    // item 0 is streamed from the channel
+	    index.addItem(new ChannelItem(channelOf(0), SIZE), new MillisecondTimestamp(time));
+
+	    // item 1 has its bytes got first
+	    ChannelItem item1 = new ChannelItem(channelOf(1), SIZE);
+
+	    if (! check(item1.getBytes(), 1)) {
+		System.err.println("TestChannelItem: getBytes() is wrong");
+		bad++;
+	    }
+
+	    index.addItem(item1, new MillisecondTimestamp(time + 1));
+
+	    factory.close(index);
+
+	    Properties openProperties = new Properties();
+	    openProperties.setProperty("indexpath", "/tmp/test-channel");
+
+	    // read them back through channels
+	    index = factory.open(openProperties);
+
+	    for (int i=0; i<2; i++) {
+		ByteBuffer data = readAll(index.getItem(i).getDataChannel());
+
+		if (! check(data, i)) {
+		    System.err.println("TestChannelItem: item " + i + " is wrong");
+		    bad++;
+		}
+	    }
+
+	    factory.close(index);
+
+	    // damage the first byte of item 0.
+	    // a damaged last item would be cut off by the recovery on open
+	    RandomAccessFile dataFile = new RandomAccessFile("/tmp/test-channel.tid", "rw");
+	    long offset = dataFile.length() - 2 * SIZE;
+	    dataFile.seek(offset);
+	    int b = dataFile.read();
+	    dataFile.seek(offset);
+	    dataFile.write(b ^ 0xff);
+	    dataFile.close();
+
+	    index = factory.open(openProperties);
+
+	    // don't read the data when the item is got
+	    index.setLoadDataAutomatically(false);
+
+	    ReadableByteChannel channel = index.getItem(0).getDataChannel();
+	    ByteBuffer buffer = ByteBuffer.allocate(SIZE);
+
+	    try {
+		// all the data fits in one read, which must fail
+		channel.read(buffer);
+
+		System.err.println("TestChannelItem: damaged data was not found");
+		bad++;
+	    } catch (IOException ioe) {
+		System.out.println("TestChannelItem: found damage: " + ioe.getMessage());
+	    }
+
+	    factory.close(index);
+
+	    failures(factory);
+
+	} catch (TimeIndexException tie) {
+	    System.err.println("TestChannelItem: " + tie.getMessage());
+	    System.exit(1);
+	} catch (IOException ioe) {
+	    System.err.println("TestChannelItem: " + ioe.getMessage());
+	    System.exit(1);
+	}
+
+	if (bad > 0) {
+	    System.err.println("TestChannelItem: " + bad + " errors");
+	    System.exit(1);
+	} else {
+	    System.out.println("TestChannelItem: OK");
+	}
+    }
+
+    /**
+     * Check that the data of a ChannelItem that can't be read fails.
+     */
+    static void failures(TimeIndexFactory factory) throws TimeIndexException {
+	// too big for a ByteBuffer
+	ChannelItem big = new ChannelItem(channelOf(2), 3L * 1024 * 1024 * 1024);
+
+	try {
+	    big.readBytes();
+
+	    System.err.println("TestChannelItem: readBytes() of 3G did not fail");
+	    bad++;
+	} catch (IOException ioe) {
+	}
+
+	try {
+	    big.getBytes();
+
+	    System.err.println("TestChannelItem: getBytes() of 3G did not fail");
+	    bad++;
+	} catch (IllegalStateException ise) {
+	    if (! (ise.getCause() instanceof IOException)) {
+		System.err.println("TestChannelItem: getBytes() of 3G failed without an IOException");
+		bad++;
+	    }
+	}
+
+	// a channel that ends before the data does
+	Properties properties = new Properties();
+	properties.setProperty("name", "index-TestChannelItem-incore");
+
+	IndexView index = factory.create(IndexType.INCORE, properties);
+
+	try {
+	    index.addItem(new ChannelItem(channelOf(3), SIZE + 1), new MillisecondTimestamp(System.currentTimeMillis()));
+
+	    System.err.println("TestChannelItem: a short channel was added");
+	    bad++;
+	} catch (AddItemException aie) {
+	}
+
+	if (index.getLength() != 0) {
+	    System.err.println("TestChannelItem: incore index has " + index.getLength() + " items");
+	    bad++;
+	}
+
+	factory.close(index);
+    }
+
+    /**
+     * A channel onto the data for item i.
+     */
+    static ReadableByteChannel channelOf(int i) {
+	byte[] data = new byte[SIZE];
+
+	for (int p=0; p<SIZE; p++) {
+	    data[p] = (byte)(i * 7 + p);
+	}
+
+	return Channels.newChannel(new ByteArrayInputStream(data));
+    }
+
+    /**
+     * Read all of a channel, a chunk at a time.
+     */
+    static ByteBuffer readAll(ReadableByteChannel channel) throws IOException {
+	ByteBuffer data = ByteBuffer.allocate(SIZE);
+	ByteBuffer chunk = ByteBuffer.allocate(4096);
+
+	while (channel.read(chunk) >= 0) {
+	    chunk.flip();
+	    data.put(chunk);
+	    chunk.clear();
+	}
+
+	data.flip();
+	return data;
+    }
+
+    /**
+     * Check the data for item i.
+     */
+    static boolean check(ByteBuffer data, int i) {
+	if (data.remaining() != SIZE) {
+	    return false;
+	}
+
+	for (int p=0; p<SIZE; p++) {
+	    if (data.get(data.position() + p) != (byte)(i * 7 + p)) {
+		return false;
+	    }
+	}
+
+	return true;
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+
+package uk.ti;
+
+import com.timeindexing.index.Index;
+import com.timeindexing.index.IndexView;
+import com.timeindexing.index.IndexItem;
+import com.timeindexing.index.IndexType;
+import com.timeindexing.index.IndexTimestampSelector;
+import com.timeindexing.index.TimeIndexFactory;
+import com.timeindexing.index.TimeIndexException;
+import com.timeindexing.time.Lifetime;
+import com.timeindexing.time.TimestampMapping;
+import com.timeindexing.time.MillisecondTimestamp;
+import com.timeindexing.data.ByteBufferItem;
+
+import java.util.Properties;
+import java.io.File;
+import java.nio.ByteBuffer;
+
+/**
+ * Test of an external index with compact records.
+ * The index file must be smaller than with fixed size records,
+ * and the items, their timestamps and locate() must be the same
+ * after a reopen, and after more items are appended.
+ */
+public class TestCompactIndex {
+    static final int COUNT = 5000;
+
+    static long time = System.currentTimeMillis() - 600000;
+
+    static int bad = 0;
+
+    public static void main(String [] args) {
+	TimeIndexFactory factory = new TimeIndexFactory();
+
+	Properties properties = new Properties();
+	properties.setProperty("name", "index-TestCompactIndex");
+	properties.setProperty("indexpath", "/tmp/test-compact");
+	properties.setProperty("compactindex", "true");
+
+	Properties openProperties = new Properties();
+	openProperties.setProperty("indexpath", "/tmp/test-compact");
+
+	try {
+	    IndexView index = factory.create(IndexType.EXTERNAL, properties);
+
+	    for (int i=0; i<COUNT/2; i++) {
+		add(index, i);
+	    }
+
+	    factory.close(index);
+
+	    // append the rest after a reopen
+	    index = factory.open(openProperties);
+	    ((Index)index).activate();
+
+	    for (int i=COUNT/2; i<COUNT; i++) {
+		add(index, i);
+	    }
+
+	    factory.close(index);
+
+	    long size = new File("/tmp/test-compact.tix").length();
+
+	    if (size >= COUNT * 52L) {
+		System.err.println("TestCompactIndex: the index file is " + size + " bytes");
+		bad++;
+	    }
+
+	    index = factory.open(openProperties);
+
+	    if (index.getLength() != COUNT) {
+		System.err.println("TestCompactIndex: the index has " + index.getLength() + " items");
+		bad++;
+	    }
+
+	    for (int i=0; i<COUNT; i++) {
+		IndexItem item = index.getItem(i);
+
+		if (! item.getData().equals(ByteBuffer.wrap(data(i))) ||
+		    item.getDataTimestamp().value() != timeOf(i).value()) {
+		    System.err.println("TestCompactIndex: item " + i + " is wrong");
+		    bad++;
+		}
+	    }
+
+	    for (int i=0; i<COUNT; i+=7) {
+		TimestampMapping mapping = index.locate(timeOf(i), IndexTimestampSelector.DATA, Lifetime.DISCRETE);
+
+		if (mapping.position().value() != i) {
+		    System.err.println("TestCompactIndex: locate " + i + " got " + mapping.position());
+		    bad++;
+		}
+	    }
+
+	    factory.close(index);
+
+	} catch (TimeIndexException tie) {
+	    System.err.println("TestCompactIndex: " + tie.getMessage());
+	    System.exit(1);
+	}
+
+	if (bad > 0) {
+	    System.err.println("TestCompactIndex: " + bad + " errors");
+	    System.exit(1);
+	} else {
+	    System.out.println("TestCompactIndex: OK");
+	}
+    }
+
+    static void add(IndexView index, int i) throws TimeIndexException {
+	index.addItem(new ByteBufferItem(ByteBuffer.wrap(data(i))), timeOf(i));
+    }
+
+    /**
+     * The items are not evenly spaced in time.
+     */
+    static MillisecondTimestamp timeOf(int i) {
+	return new MillisecondTimestamp(time + i * 20L + (i * 13) % 17);
+    }
+
+    static byte[] data(int i) {
+	byte[] data = new byte[1 + (i * 11) % 90];
+
+	for (int p=0; p<data.length; p++) {
+	    data[p] = (byte)(i + p * 5);
+	}
+
+	return data;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+
+package uk.ti;
+
+import com.timeindexing.index.Index;
+import com.timeindexing.index.IndexView;
+import com.timeindexing.index.IndexItem;
+import com.timeindexing.index.IndexType;
+import com.timeindexing.index.TimeIndexFactory;
+import com.timeindexing.index.TimeIndexException;
+import com.timeindexing.time.MillisecondTimestamp;
+import com.timeindexing.data.ByteBufferItem;
+
+import java.util.Properties;
+import java.util.Random;
+import java.io.File;
+import java.nio.ByteBuffer;
+
+/**
+ * Test of an external index with compressed data.
+ * The data file must be smaller than the data,
+ * and the items must be the same after a reopen,
+ * and after more items are appended.
+ */
+public class TestCompression {
+    static final int COUNT = 3000;
+
+    static int bad = 0;
+
+    public static void main(String [] args) {
+	TimeIndexFactory factory = new TimeIndexFactory();
+
+	Properties properties = new Properties();
+	properties.setProperty("name", "index-TestCompression");
+	properties.setProperty("indexpath", "/tmp/test-compression");
+	properties.setProperty("compression", "true");
+
+	Properties openProperties = new Properties();
+	openProperties.setProperty("indexpath", "/tmp/test-compression");
+
+	try {
+	    long time = System.currentTimeMillis() - 60000;
+	    long total = 0;
+
+	    IndexView index = factory.create(IndexType.EXTERNAL, properties);
+
+	    for (int i=0; i<COUNT/2; i++) {
+		index.addItem(new ByteBufferItem(ByteBuffer.wrap(data(i))), new MillisecondTimestamp(time + i));
+		total += data(i).length;
+	    }
+
+	    factory.close(index);
+
+	    // append the rest after a reopen
+	    index = factory.open(openProperties);
+	    ((Index)index).activate();
+
+	    for (int i=COUNT/2; i<COUNT; i++) {
+		index.addItem(new ByteBufferItem(ByteBuffer.wrap(data(i))), new MillisecondTimestamp(time + i));
+		total += data(i).length;
+	    }
+
+	    factory.close(index);
+
+	    if (! new File("/tmp/test-compression.tiz").exists()) {
+		System.err.println("TestCompression: no block map file");
+		bad++;
+	    }
+
+	    long size = new File("/tmp/test-compression.tid").length();
+
+	    if (size >= total) {
+		System.err.println("TestCompression: the data file is " + size + " bytes, for " + total + " bytes of data");
+		bad++;
+	    }
+
+	    // read them in order, then at random
+	    index = factory.open(openProperties);
+
+	    if (index.getLength() != COUNT) {
+		System.err.println("TestCompression: the index has " + index.getLength() + " items");
+		bad++;
+	    }
+
+	    for (int i=0; i<COUNT; i++) {
+		check(index, i);
+	    }
+
+	    factory.close(index);
+
+	    index = factory.open(openProperties);
+
+	    Random random = new Random(1);
+
+	    for (int r=0; r<1000; r++) {
+		check(index, random.nextInt(COUNT));
+	    }
+
+	    factory.close(index);
+
+	} catch (TimeIndexException tie) {
+	    System.err.println("TestCompression: " + tie.getMessage());
+	    System.exit(1);
+	}
+
+	if (bad > 0) {
+	    System.err.println("TestCompression: " + bad + " errors");
+	    System.exit(1);
+	} else {
+	    System.out.println("TestCompression: OK");
+	}
+    }
+
+    static void check(IndexView index, int i) throws TimeIndexException {
+	IndexItem item = index.getItem(i);
+
+	if (! item.getData().equals(ByteBuffer.wrap(data(i)))) {
+	    System.err.println("TestCompression: item " + i + " is wrong");
+	    bad++;
+	}
+    }
+
+    /**
+     * Some text, which compresses well.
+     */
+    static byte[] data(int i) {
+	StringBuffer text = new StringBuffer();
+
+	for (int w=0; w<(i % 20) + 1; w++) {
+	    text.append("item " + i + " word " + w + ". ");
+	}
+
+	return text.toString().getBytes();
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+
+package uk.ti;
+
+import com.timeindexing.index.IndexView;
+import com.timeindexing.index.IndexItem;
+import com.timeindexing.index.IndexType;
+import com.timeindexing.index.TimeIndexFactory;
+import com.timeindexing.index.TimeIndexException;
+import com.timeindexing.data.ByteBufferItem;
+import com.timeindexing.data.ChannelItem;
+
+import java.util.Properties;
+import java.util.Random;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Test of many writers adding to one index, whilst many readers
+ * read the items that have just been added.
+ * The data of a ChannelItem is only in the file once it is written,
+ * so each read has to wait for the data in the write queue,
+ * whilst the writers keep adding more.
+ * Some items are bigger than a flush buffer, so they are
+ * written with a gathering write.
+ * Every item read must be right, and nothing must hang.
+ */
+public class TestConcurrentWrites {
+    static final int WRITERS = 4;
+    static final int READERS = 4;
+    static final int ITEMS = 2000;
+
+    static int bad = 0;
+    static int reads = 0;
+
+    static volatile boolean writing = true;
+
+    public static void main(String [] args) {
+	// give up if anything hangs
+	Thread watchdog = new Thread() {
+		public void run() {
+		    try {
+			Thread.sleep(150000);
+			System.err.println("TestConcurrentWrites: hung");
+			System.exit(1);
+		    } catch (InterruptedException ie) {
+		    }
+		}
+	    };
+	watchdog.setDaemon(true);
+	watchdog.start();
+
+	TimeIndexFactory factory = new TimeIndexFactory();
+
+	Properties properties = new Properties();
+	properties.setProperty("name", "index-TestConcurrentWrites");
+	properties.setProperty("indexpath", "/tmp/test-concurrent-writes");
+	properties.setProperty("checksums", "true");
+
+	try {
+	    final IndexView index = factory.create(IndexType.EXTERNAL, properties);
+
+	    Thread[] writers = new Thread[WRITERS];
+	    Thread[] readers = new Thread[READERS];
+
+	    for (int w=0; w<WRITERS; w++) {
+		final int writer = w;
+
+		writers[w] = new Thread() {
+			public void run() {
+			    write(index, writer);
+			}
+		    };
+	    }
+
+	    for (int r=0; r<READERS; r++) {
+		final int reader = r;
+
+		readers[r] = new Thread() {
+			public void run() {
+			    read(index, reader);
+			}
+		    };
+	    }
+
+	    for (int r=0; r<READERS; r++) {
+		readers[r].start();
+	    }
+
+	    for (int w=0; w<WRITERS; w++) {
+		writers[w].start();
+	    }
+
+	    for (int w=0; w<WRITERS; w++) {
+		writers[w].join();
+	    }
+
+	    writing = false;
+
+	    for (int r=0; r<READERS; r++) {
+		readers[r].join();
+	    }
+
+	    factory.close(index);
+
+	    // check all the items after a reopen
+	    Properties openProperties = new Properties();
+	    openProperties.setProperty("indexpath", "/tmp/test-concurrent-writes");
+
+	    IndexView reopened = factory.open(openProperties);
+
+	    if (reopened.getLength() != WRITERS * ITEMS) {
+		System.err.println("TestConcurrentWrites: length " + reopened.getLength() + " expected " + (WRITERS * ITEMS));
+		addBad();
+	    }
+
+	    for (long i=0; i<reopened.getLength(); i++) {
+		if (! check(reopened.getItem(i).getData())) {
+		    System.err.println("TestConcurrentWrites: item " + i + " is wrong after a reopen");
+		    addBad();
+		}
+	    }
+
+	    factory.close(reopened);
+
+	} catch (TimeIndexException tie) {
+	    System.err.println("TestConcurrentWrites: " + tie.getMessage());
+	    System.exit(1);
+	} catch (InterruptedException ie) {
+	    System.err.println("TestConcurrentWrites: " + ie.getMessage());
+	    System.exit(1);
+	}
+
+	if (reads == 0) {
+	    System.err.println("TestConcurrentWrites: nothing was read whilst writing");
+	    bad++;
+	}
+
+	if (bad > 0) {
+	    System.err.println("TestConcurrentWrites: " + bad + " errors");
+	    System.exit(1);
+	} else {
+	    System.out.println("TestConcurrentWrites: OK " + reads + " reads");
+	}
+    }
+
+    /**
+     * Add ITEMS items to the index.
+     */
+    static void write(IndexView index, int writer) {
+	Random random = new Random(writer);
+
+	try {
+	    for (int i=0; i<ITEMS; i++) {
+		int key = writer * ITEMS + i;
+		int size = (i % 50 == 0) ? 20000 : 4 + random.nextInt(3000);
+
+		// the time and the ID of an item are got before the
+		// index is locked, so the writers take turns to add
+		synchronized (index) {
+		    if (i % 50 == 0) {
+			// bigger than a flush buffer
+			index.addItem(new ByteBufferItem(ByteBuffer.wrap(data(key, size))));
+		    } else {
+			index.addItem(new ChannelItem(channelOf(data(key, size)), size));
+		    }
+		}
+	    }
+	} catch (TimeIndexException tie) {
+	    System.err.println("TestConcurrentWrites: writer " + writer + ": " + tie.getMessage());
+	    addBad();
+	} catch (RuntimeException re) {
+	    System.err.println("TestConcurrentWrites: writer " + writer + ": " + re);
+	    addBad();
+	}
+    }
+
+    /**
+     * Read the latest items from the index, whilst it is being written.
+     */
+    static void read(IndexView index, int reader) {
+	Random random = new Random(100 + reader);
+
+	try {
+	    while (writing) {
+		long length = index.getLength();
+
+		if (length == 0) {
+		    Thread.yield();
+		    continue;
+		}
+
+		// one of the last few items
+		long i = Math.max(0, length - 1 - random.nextInt(8));
+		IndexItem item = index.getItem(i);
+
+		ByteBuffer data = readAll(item.getDataChannel(), item.getDataSize().value());
+
+		if (! check(data)) {
+		    System.err.println("TestConcurrentWrites: reader " + reader + " item " + i + " is wrong");
+		    addBad();
+		}
+
+		addRead();
+	    }
+	} catch (TimeIndexException tie) {
+	    System.err.println("TestConcurrentWrites: reader " + reader + ": " + tie.getMessage());
+	    addBad();
+	} catch (IOException ioe) {
+	    System.err.println("TestConcurrentWrites: reader " + reader + ": " + ioe.getMessage());
+	    addBad();
+	} catch (RuntimeException re) {
+	    System.err.println("TestConcurrentWrites: reader " + reader + ": " + re);
+	    addBad();
+	}
+    }
+
+    /**
+     * The data for an item, which starts with its key.
+     */
+    static byte[] data(int key, int size) {
+	ByteBuffer data = ByteBuffer.allocate(size);
+	data.putInt(key);
+
+	while (data.hasRemaining()) {
+	    data.put((byte)(key + data.position()));
+	}
+
+	return data.array();
+    }
+
+    /**
+     * Check the data of an item against its key.
+     */
+    static boolean check(ByteBuffer data) {
+	if (data.remaining() < 4) {
+	    return false;
+	}
+
+	int start = data.position();
+	int key = data.getInt(start);
+
+	for (int p=4; p<data.remaining(); p++) {
+	    if (data.get(start + p) != (byte)(key + p)) {
+		return false;
+	    }
+	}
+
+	return true;
+    }
+
+    static ReadableByteChannel channelOf(byte[] data) {
+	return Channels.newChannel(new ByteArrayInputStream(data));
+    }
+
+    /**
+     * Read all of a channel, a chunk at a time.
+     */
+    static ByteBuffer readAll(ReadableByteChannel channel, long size) throws IOException {
+	ByteBuffer data = ByteBuffer.allocate((int)size);
+	ByteBuffer chunk = ByteBuffer.allocate(1024);
+
+	while (channel.read(chunk) >= 0) {
+	    chunk.flip();
+	    data.put(chunk);
+	    chunk.clear();
+	}
+
+	data.flip();
+	return data;
+    }
+
+    static synchronized void addBad() {
+	bad++;
+    }
+
+    static synchronized void addRead() {
+	reads++;
+    }
+}
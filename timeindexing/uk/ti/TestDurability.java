@@ -0,0 +1,167 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+
+package uk.ti;
+
+import com.timeindexing.index.IndexView;
+import com.timeindexing.index.IndexType;
+import com.timeindexing.index.FileIndex;
+import com.timeindexing.index.TimeIndexDirectory;
+import com.timeindexing.index.TimeIndexFactory;
+import com.timeindexing.index.TimeIndexException;
+import com.timeindexing.io.SyncMetrics;
+import com.timeindexing.time.MillisecondTimestamp;
+import com.timeindexing.data.ByteBufferItem;
+
+import java.util.Properties;
+import java.nio.ByteBuffer;
+
+/**
+ * Test of the durability modes.
+ * Some threads add items to one index, and commit after each one.
+ * With no durability nothing is synced, with sync every commit
+ * that flushes something is synced, and with group syncs
+ * the commits share syncs.
+ * All the items must be there after a reopen.
+ */
+public class TestDurability extends Thread {
+    static final int THREADS = 4;
+    static final int EACH = 50;
+
+    static int bad = 0;
+
+    // the data time of the next item
+    static long next = System.currentTimeMillis() - 600000;
+
+    IndexView index = null;
+    int number = 0;
+
+    TestDurability(IndexView index, int number) {
+	this.index = index;
+	this.number = number;
+    }
+
+    public static void main(String [] args) {
+	try {
+	    test("none");
+	    test("sync");
+	    test("group");
+
+	} catch (TimeIndexException tie) {
+	    System.err.println("TestDurability: " + tie.getMessage());
+	    System.exit(1);
+	} catch (InterruptedException ie) {
+	    System.err.println("TestDurability: interrupted");
+	    System.exit(1);
+	}
+
+	if (bad > 0) {
+	    System.err.println("TestDurability: " + bad + " errors");
+	    System.exit(1);
+	} else {
+	    System.out.println("TestDurability: OK");
+	}
+    }
+
+    static void test(String durability) throws TimeIndexException, InterruptedException {
+	TimeIndexFactory factory = new TimeIndexFactory();
+
+	Properties properties = new Properties();
+	properties.setProperty("name", "index-TestDurability-" + durability);
+	properties.setProperty("indexpath", "/tmp/test-durability-" + durability);
+	properties.setProperty("durability", durability);
+	properties.setProperty("syncinterval", "5");
+
+	IndexView index = factory.create(IndexType.EXTERNAL, properties);
+
+	TestDurability[] threads = new TestDurability[THREADS];
+
+	for (int t=0; t<THREADS; t++) {
+	    threads[t] = new TestDurability(index, t);
+	    threads[t].start();
+	}
+
+	for (int t=0; t<THREADS; t++) {
+	    threads[t].join();
+	}
+
+	SyncMetrics metrics = ((FileIndex)TimeIndexDirectory.find(index.getID())).getSyncMetrics();
+
+	System.out.println("TestDurability: " + durability + " " + metrics);
+
+	if (durability.equals("none") && metrics.getSyncCount() != 0) {
+	    System.err.println("TestDurability: none had " + metrics.getSyncCount() + " syncs");
+	    bad++;
+	} else if (durability.equals("sync") && (metrics.getSyncCount() == 0 || metrics.getSyncCount() != metrics.getCommitCount())) {
+	    System.err.println("TestDurability: sync had " + metrics.getSyncCount() + " syncs for " + metrics.getCommitCount() + " commits");
+	    bad++;
+	} else if (durability.equals("group") && (metrics.getSyncCount() == 0 || metrics.getSyncCount() > metrics.getCommitCount())) {
+	    System.err.println("TestDurability: group had " + metrics.getSyncCount() + " syncs for " + metrics.getCommitCount() + " commits");
+	    bad++;
+	}
+
+	factory.close(index);
+
+	// all the items must be there
+	Properties openProperties = new Properties();
+	openProperties.setProperty("indexpath", "/tmp/test-durability-" + durability);
+
+	index = factory.open(openProperties);
+
+	boolean[] seen = new boolean[THREADS * EACH];
+
+	for (int i=0; i<index.getLength(); i++) {
+	    seen[index.getItem(i).getData().getInt(0)] = true;
+	}
+
+	for (int s=0; s<seen.length; s++) {
+	    if (! seen[s]) {
+		System.err.println("TestDurability: " + durability + " item " + s + " is missing");
+		bad++;
+	    }
+	}
+
+	factory.close(index);
+    }
+
+    public void run() {
+	try {
+	    for (int j=0; j<EACH; j++) {
+		add(index, number * EACH + j);
+
+		index.commit();
+	    }
+	} catch (TimeIndexException tie) {
+	    System.err.println("TestDurability: thread " + number + " " + tie.getMessage());
+	    bad++;
+	}
+    }
+
+    /**
+     * Add an item, with a data time after the last one.
+     */
+    static synchronized void add(IndexView index, int value) throws TimeIndexException {
+	ByteBuffer data = ByteBuffer.allocate(64);
+	data.putInt(0, value);
+
+	next++;
+
+	index.addItem(new ByteBufferItem(data), new MillisecondTimestamp(next));
+    }
+}
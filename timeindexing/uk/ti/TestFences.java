@@ -0,0 +1,172 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+
+package uk.ti;
+
+import com.timeindexing.index.Index;
+import com.timeindexing.index.IndexView;
+import com.timeindexing.index.IndexType;
+import com.timeindexing.index.IndexTimestampSelector;
+import com.timeindexing.index.AbstractIndex;
+import com.timeindexing.index.TimeIndexDirectory;
+import com.timeindexing.index.TimeIndexFactory;
+import com.timeindexing.index.TimeIndexException;
+import com.timeindexing.time.Lifetime;
+import com.timeindexing.time.Timestamp;
+import com.timeindexing.time.MillisecondTimestamp;
+import com.timeindexing.data.ByteBufferItem;
+
+import java.util.Properties;
+import java.io.File;
+import java.nio.ByteBuffer;
+
+/**
+ * Test of the timestamp fences.
+ * locate() with the fences, kept in a fence file, must give
+ * the same positions as without them, with fewer probes,
+ * including for the items added after a reopen.
+ */
+public class TestFences {
+    static final int COUNT = 10000;
+
+    static long time = System.currentTimeMillis() - 6000000;
+
+    static int bad = 0;
+
+    public static void main(String [] args) {
+	TimeIndexFactory factory = new TimeIndexFactory();
+
+	Properties properties = new Properties();
+	properties.setProperty("name", "index-TestFences");
+	properties.setProperty("indexpath", "/tmp/test-fences");
+	properties.setProperty("fencefile", "true");
+	properties.setProperty("fencestride", "64");
+
+	try {
+	    new File("/tmp/test-fences.tif").delete();
+
+	    IndexView index = factory.create(IndexType.EXTERNAL, properties);
+
+	    for (int i=0; i<COUNT/2; i++) {
+		add(index, i);
+	    }
+
+	    factory.close(index);
+
+	    if (! new File("/tmp/test-fences.tif").exists()) {
+		System.err.println("TestFences: no fence file");
+		bad++;
+	    }
+
+	    // append the rest, with the fences from the file
+	    Properties openProperties = new Properties();
+	    openProperties.setProperty("indexpath", "/tmp/test-fences");
+	    openProperties.setProperty("fencefile", "true");
+	    openProperties.setProperty("fencestride", "64");
+
+	    index = factory.open(openProperties);
+	    ((Index)index).activate();
+
+	    for (int i=COUNT/2; i<COUNT; i++) {
+		add(index, i);
+	    }
+
+	    factory.close(index);
+
+	    // now compare with no fences
+	    Properties plainProperties = new Properties();
+	    plainProperties.setProperty("indexpath", "/tmp/test-fences");
+	    plainProperties.setProperty("fencestride", "0");
+
+	    IndexView fenced = factory.open(openProperties);
+	    long fencedProbes = compare(factory, fenced, plainProperties);
+
+	    System.out.println("TestFences: " + fencedProbes + " probes with fences");
+
+	    factory.close(fenced);
+
+	} catch (TimeIndexException tie) {
+	    System.err.println("TestFences: " + tie.getMessage());
+	    System.exit(1);
+	}
+
+	if (bad > 0) {
+	    System.err.println("TestFences: " + bad + " errors");
+	    System.exit(1);
+	} else {
+	    System.out.println("TestFences: OK");
+	}
+    }
+
+    /**
+     * Compare the locates of the fenced index with a plain one.
+     * The plain one is opened after the fenced one is searched,
+     * as they share one index.
+     * @return the no of probes with the fences
+     */
+    static long compare(TimeIndexFactory factory, IndexView fenced, Properties plainProperties) throws TimeIndexException {
+	Timestamp[] times = new Timestamp[2000];
+	String[][] positions = new String[2][times.length];
+
+	for (int t=0; t<times.length; t++) {
+	    times[t] = new MillisecondTimestamp(time - 500 + (t * 3163L) % (COUNT * 100L + 1000));
+	}
+
+	AbstractIndex fencedIndex = (AbstractIndex)TimeIndexDirectory.find(fenced.getID());
+	fencedIndex.getSearchMetrics().reset();
+
+	for (int t=0; t<times.length; t++) {
+	    Lifetime lifetime = t % 2 == 0 ? Lifetime.CONTINUOUS : Lifetime.DISCRETE;
+	    positions[0][t] = fenced.locate(times[t], IndexTimestampSelector.DATA, lifetime).position().toString();
+	}
+
+	long fencedProbes = fencedIndex.getSearchMetrics().getProbeCount();
+
+	factory.close(fenced);
+
+	IndexView plain = factory.open(plainProperties);
+	AbstractIndex plainIndex = (AbstractIndex)TimeIndexDirectory.find(plain.getID());
+	plainIndex.getSearchMetrics().reset();
+
+	for (int t=0; t<times.length; t++) {
+	    Lifetime lifetime = t % 2 == 0 ? Lifetime.CONTINUOUS : Lifetime.DISCRETE;
+	    positions[1][t] = plain.locate(times[t], IndexTimestampSelector.DATA, lifetime).position().toString();
+
+	    if (! positions[0][t].equals(positions[1][t])) {
+		System.err.println("TestFences: locate " + times[t] + " got " + positions[0][t] + " with fences, " + positions[1][t] + " without");
+		bad++;
+	    }
+	}
+
+	long plainProbes = plainIndex.getSearchMetrics().getProbeCount();
+
+	if (fencedProbes >= plainProbes) {
+	    System.err.println("TestFences: " + fencedProbes + " probes with fences, " + plainProbes + " without");
+	    bad++;
+	}
+
+	factory.close(plain);
+
+	return fencedProbes;
+    }
+
+    static void add(IndexView index, int i) throws TimeIndexException {
+	index.addItem(new ByteBufferItem(ByteBuffer.wrap(new byte[8])), new MillisecondTimestamp(time + i * 100L + (i * 7) % 50));
+    }
+}
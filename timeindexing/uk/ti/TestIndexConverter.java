@@ -0,0 +1,342 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+
+package uk.ti;
+
+import com.timeindexing.index.Index;
+import com.timeindexing.index.IndexView;
+import com.timeindexing.index.IndexItem;
+import com.timeindexing.index.IndexType;
+import com.timeindexing.index.DataType;
+import com.timeindexing.index.TimeIndexFactory;
+import com.timeindexing.index.TimeIndexDirectory;
+import com.timeindexing.index.TimeIndexException;
+import com.timeindexing.time.MillisecondTimestamp;
+import com.timeindexing.data.ByteBufferItem;
+import com.timeindexing.appl.IndexConverter;
+
+import java.util.Properties;
+import java.nio.ByteBuffer;
+import java.io.RandomAccessFile;
+import java.io.IOException;
+
+/**
+ * Test of IndexConverter, as used by TICompact.
+ * An index of items and references to another index is converted
+ * through other index types and back, with the references kept,
+ * and with them resolved.  The timestamps, IDs, annotations, and data
+ * of the items must be the same as the source.
+ * When the reader gets an error part way through, the convert must fail,
+ * and the new index must be closed with the items copied so far.
+ */
+public class TestIndexConverter {
+    static final int ITEMS = 3000;
+
+    static int bad = 0;
+
+    public static void main(String [] args) {
+	try {
+	    createPlain("/tmp/test-convert-plain", false);
+	    createMixed("/tmp/test-convert-mixed");
+
+	    // keep the references, through inline and back to external
+	    convert("/tmp/test-convert-mixed", IndexType.INLINE, null, "/tmp/test-convert-inline", false);
+	    convert("/tmp/test-convert-inline", IndexType.EXTERNAL, "compactindex", "/tmp/test-convert-back", false);
+	    compare("/tmp/test-convert-mixed", "/tmp/test-convert-back", false);
+
+	    // resolve the references
+	    convert("/tmp/test-convert-mixed", IndexType.SEGMENTED, "segmentsize", "/tmp/test-convert-resolved", true);
+	    compare("/tmp/test-convert-mixed", "/tmp/test-convert-resolved", true);
+
+	    // an error part way through
+	    readerError();
+
+	} catch (TimeIndexException tie) {
+	    System.err.println("TestIndexConverter: " + tie.getMessage());
+	    System.exit(1);
+	} catch (IOException ioe) {
+	    System.err.println("TestIndexConverter: " + ioe.getMessage());
+	    System.exit(1);
+	}
+
+	if (bad > 0) {
+	    System.err.println("TestIndexConverter: " + bad + " errors");
+	    System.exit(1);
+	} else {
+	    System.out.println("TestIndexConverter: OK");
+	}
+    }
+
+    /**
+     * Create an external index of ITEMS items.
+     */
+    static void createPlain(String path, boolean checksums) throws TimeIndexException {
+	TimeIndexFactory factory = new TimeIndexFactory();
+
+	Properties properties = new Properties();
+	properties.setProperty("name", "index-TestIndexConverter-plain");
+	properties.setProperty("indexpath", path);
+
+	if (checksums) {
+	    properties.setProperty("checksums", "true");
+	}
+
+	IndexView index = factory.create(IndexType.EXTERNAL, properties);
+
+	long time = System.currentTimeMillis() - 60000;
+
+	for (int i=0; i<ITEMS; i++) {
+	    index.addItem(new ByteBufferItem(ByteBuffer.wrap(data(i))), new MillisecondTimestamp(time + i));
+	}
+
+	factory.close(index);
+    }
+
+    /**
+     * Create an external index of items with annotations,
+     * and references to the plain index.
+     */
+    static void createMixed(String path) throws TimeIndexException {
+	TimeIndexFactory factory = new TimeIndexFactory();
+
+	Properties openProperties = new Properties();
+	openProperties.setProperty("indexpath", "/tmp/test-convert-plain");
+	IndexView plain = factory.open(openProperties);
+
+	Properties properties = new Properties();
+	properties.setProperty("name", "index-TestIndexConverter-mixed");
+	properties.setProperty("indexpath", path);
+
+	IndexView index = factory.create(IndexType.EXTERNAL, properties);
+
+	long time = System.currentTimeMillis() - 30000;
+
+	for (int k=0; k<ITEMS/2; k++) {
+	    index.addItem(new ByteBufferItem(ByteBuffer.wrap(data(ITEMS + k))), new MillisecondTimestamp(time++), k);
+
+	    ((Index)index).addReference(plain.getItem(2 * k), (Index)plain, new MillisecondTimestamp(time++));
+	}
+
+	factory.close(index);
+	factory.close(plain);
+    }
+
+    /**
+     * Convert an index into a new index.
+     */
+    static void convert(String path, IndexType kind, String option, String newPath, boolean resolve) throws TimeIndexException {
+	TimeIndexFactory factory = new TimeIndexFactory();
+
+	IndexView source = open(factory, path);
+
+	Properties createProperties = new Properties();
+	createProperties.setProperty("name", "index-TestIndexConverter-" + kind);
+	createProperties.setProperty("indexpath", newPath);
+
+	if ("segmentsize".equals(option)) {
+	    createProperties.setProperty("segmentsize", "10000");
+	} else if (option != null) {
+	    createProperties.setProperty(option, "true");
+	}
+
+	IndexConverter converter = new IndexConverter((Index)source);
+	converter.setResolveReferences(resolve);
+	converter.setBlockSize(100);
+
+	IndexView newIndex = converter.convert(kind, createProperties);
+
+	if (converter.getCopied() != source.getLength()) {
+	    System.err.println("TestIndexConverter: " + newPath + " copied " + converter.getCopied() + " of " + source.getLength());
+	    bad++;
+	}
+
+	factory.close(newIndex);
+	factory.close(source);
+    }
+
+    /**
+     * Check a converted index is the same as its source.
+     * @param resolved the references were resolved
+     */
+    static void compare(String path, String newPath, boolean resolved) throws TimeIndexException {
+	TimeIndexFactory factory = new TimeIndexFactory();
+
+	IndexView source = open(factory, path);
+	IndexView copy = open(factory, newPath);
+
+	if (copy.getLength() != source.getLength()) {
+	    System.err.println("TestIndexConverter: " + newPath + " has " + copy.getLength() + " items, expected " + source.getLength());
+	    bad++;
+	}
+
+	for (long i=0; i<Math.min(copy.getLength(), source.getLength()); i++) {
+	    IndexItem expected = source.getItem(i);
+	    IndexItem item = copy.getItem(i);
+
+	    if (item.getDataTimestamp().value() != expected.getDataTimestamp().value() ||
+		item.getIndexTimestamp().value() != expected.getIndexTimestamp().value() ||
+		item.getItemID().value() != expected.getItemID().value() ||
+		item.getAnnotationMetaData() != expected.getAnnotationMetaData()) {
+		System.err.println("TestIndexConverter: " + newPath + " item " + i + " has the wrong meta data");
+		bad++;
+	    }
+
+	    if (item.isReference() != (expected.isReference() && ! resolved)) {
+		System.err.println("TestIndexConverter: " + newPath + " item " + i + " reference is " + item.isReference());
+		bad++;
+	    }
+
+	    // a resolved reference has the type of the data it refers to
+	    DataType type = resolved ? follow(expected).getDataType() : expected.getDataType();
+
+	    if (item.getDataType() != type) {
+		System.err.println("TestIndexConverter: " + newPath + " item " + i + " has data type " + item.getDataType());
+		bad++;
+	    }
+
+	    if (! dataOf(item).equals(dataOf(expected))) {
+		System.err.println("TestIndexConverter: " + newPath + " item " + i + " has the wrong data");
+		bad++;
+	    }
+	}
+
+	factory.close(copy);
+	factory.close(source);
+    }
+
+    /**
+     * Damage an item in the middle of an index with checksums,
+     * so the reader of the convert gets an error.
+     */
+    static void readerError() throws TimeIndexException, IOException {
+	createPlain("/tmp/test-convert-checked", true);
+
+	RandomAccessFile dataFile = new RandomAccessFile("/tmp/test-convert-checked.tid", "rw");
+	long offset = dataFile.length() - dataTotal(ITEMS / 2);
+	dataFile.seek(offset);
+	int b = dataFile.read();
+	dataFile.seek(offset);
+	dataFile.write(b ^ 0xff);
+	dataFile.close();
+
+	TimeIndexFactory factory = new TimeIndexFactory();
+
+	IndexView source = open(factory, "/tmp/test-convert-checked");
+
+	Properties createProperties = new Properties();
+	createProperties.setProperty("name", "index-TestIndexConverter-broken");
+	createProperties.setProperty("indexpath", "/tmp/test-convert-broken");
+
+	IndexConverter converter = new IndexConverter((Index)source);
+	converter.setBlockSize(100);
+
+	try {
+	    IndexView newIndex = converter.convert(IndexType.EXTERNAL, createProperties);
+
+	    System.err.println("TestIndexConverter: the convert of a damaged index did not fail");
+	    bad++;
+
+	    factory.close(newIndex);
+
+	} catch (TimeIndexException tie) {
+	    // the reader error is thrown
+	}
+
+	factory.close(source);
+
+	// the new index was closed, so it is not in the directory
+	if (TimeIndexDirectory.find("index:///tmp/test-convert-broken") != null) {
+	    System.err.println("TestIndexConverter: the new index was left open");
+	    bad++;
+	}
+
+	// and has the items before the damaged one
+	IndexView copy = open(factory, "/tmp/test-convert-broken");
+
+	if (copy.getLength() != converter.getCopied() || copy.getLength() > ITEMS / 2) {
+	    System.err.println("TestIndexConverter: the new index has " + copy.getLength() + " items, " + converter.getCopied() + " were copied");
+	    bad++;
+	}
+
+	for (int i=0; i<copy.getLength(); i++) {
+	    if (! copy.getItem(i).getData().equals(ByteBuffer.wrap(data(i)))) {
+		System.err.println("TestIndexConverter: the new index item " + i + " has the wrong data");
+		bad++;
+	    }
+	}
+
+	factory.close(copy);
+    }
+
+    /**
+     * Open an index to read.
+     */
+    static IndexView open(TimeIndexFactory factory, String path) throws TimeIndexException {
+	Properties openProperties = new Properties();
+	openProperties.setProperty("indexpath", path);
+	openProperties.setProperty("loadstyle", "none");
+	openProperties.setProperty("readonly", "true");
+
+	return factory.open(openProperties);
+    }
+
+    /**
+     * Get the data of an item, following any references.
+     */
+    static ByteBuffer dataOf(IndexItem item) throws TimeIndexException {
+	return follow(item).getData();
+    }
+
+    /**
+     * Follow any references from an item.
+     */
+    static IndexItem follow(IndexItem item) throws TimeIndexException {
+	while (item.isReference()) {
+	    item = item.follow();
+	}
+
+	return item;
+    }
+
+    /**
+     * The data for item i.
+     */
+    static byte[] data(int i) {
+	byte[] data = new byte[20 + i % 30];
+
+	for (int p=0; p<data.length; p++) {
+	    data[p] = (byte)(i * 5 + p);
+	}
+
+	return data;
+    }
+
+    /**
+     * The size of the data of the plain items from i to the end.
+     */
+    static long dataTotal(int i) {
+	long total = 0;
+
+	for (int k=i; k<ITEMS; k++) {
+	    total += data(k).length;
+	}
+
+	return total;
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+
+package uk.ti;
+
+import com.timeindexing.index.IndexView;
+import com.timeindexing.index.IndexType;
+import com.timeindexing.index.IndexTimestampSelector;
+import com.timeindexing.index.AbstractIndex;
+import com.timeindexing.index.SearchMetrics;
+import com.timeindexing.index.TimeIndexDirectory;
+import com.timeindexing.index.TimeIndexFactory;
+import com.timeindexing.index.TimeIndexException;
+import com.timeindexing.index.IndexSpecificationException;
+import com.timeindexing.time.Lifetime;
+import com.timeindexing.time.Timestamp;
+import com.timeindexing.time.MillisecondTimestamp;
+import com.timeindexing.data.ByteBufferItem;
+
+import java.util.Properties;
+import java.nio.ByteBuffer;
+
+/**
+ * Test of interpolation search.
+ * locate() with searchstrategy interpolation must give the same
+ * positions as with binary search, for evenly and unevenly
+ * spaced items, and take fewer probes on the evenly spaced ones.
+ */
+public class TestInterpolation {
+    static final int COUNT = 20000;
+
+    static long time = System.currentTimeMillis() - 60000000;
+
+    static int bad = 0;
+
+    public static void main(String [] args) {
+	TimeIndexFactory factory = new TimeIndexFactory();
+
+	try {
+	    create(factory, "/tmp/test-interpolation-even", false);
+	    create(factory, "/tmp/test-interpolation-uneven", true);
+
+	    double binary = compare(factory, "/tmp/test-interpolation-even", offset(COUNT-1, false));
+	    double interpolation = probes;
+
+	    System.out.println("TestInterpolation: even " + binary + " probes binary, " + interpolation + " interpolation");
+
+	    if (interpolation >= binary) {
+		System.err.println("TestInterpolation: no fewer probes on even data");
+		bad++;
+	    }
+
+	    binary = compare(factory, "/tmp/test-interpolation-uneven", offset(COUNT-1, true));
+	    interpolation = probes;
+
+	    System.out.println("TestInterpolation: uneven " + binary + " probes binary, " + interpolation + " interpolation, " + fallbacks + " fallbacks");
+
+	    // a bad strategy is refused
+	    try {
+		factory.open(properties("/tmp/test-interpolation-even", "golden"));
+		System.err.println("TestInterpolation: bad strategy accepted");
+		bad++;
+	    } catch (IndexSpecificationException ise) {
+	    }
+
+	} catch (TimeIndexException tie) {
+	    System.err.println("TestInterpolation: " + tie.getMessage());
+	    System.exit(1);
+	}
+
+	if (bad > 0) {
+	    System.err.println("TestInterpolation: " + bad + " errors");
+	    System.exit(1);
+	} else {
+	    System.out.println("TestInterpolation: OK");
+	}
+    }
+
+    // the mean probes and fallbacks of the last interpolation search
+    static double probes = 0;
+    static long fallbacks = 0;
+
+    /**
+     * Create an index of evenly or unevenly spaced items.
+     */
+    static void create(TimeIndexFactory factory, String path, boolean uneven) throws TimeIndexException {
+	Properties createProperties = new Properties();
+	createProperties.setProperty("name", "index-TestInterpolation");
+	createProperties.setProperty("indexpath", path);
+
+	IndexView index = factory.create(IndexType.EXTERNAL, createProperties);
+
+	for (int i=0; i<COUNT; i++) {
+	    index.addItem(new ByteBufferItem(ByteBuffer.wrap(new byte[8])), new MillisecondTimestamp(time + offset(i, uneven)));
+	}
+
+	factory.close(index);
+    }
+
+    /**
+     * The time of an item from the start.
+     * Uneven items come in bursts, with long gaps between.
+     */
+    static long offset(int i, boolean uneven) {
+	if (uneven) {
+	    return (i / 1000) * 1000000L + (i % 1000) * (i / 1000 + 1) + (long)i * i / 1000;
+	} else {
+	    return i * 100L;
+	}
+    }
+
+    /**
+     * Compare the locates with interpolation search against binary search,
+     * for times across the span of the index.
+     * @return the mean probes of the binary search
+     */
+    static double compare(TimeIndexFactory factory, String path, long span) throws TimeIndexException {
+	IndexView index = factory.open(properties(path, "binary"));
+
+	Timestamp[] times = new Timestamp[2000];
+
+	for (int t=0; t<times.length; t++) {
+	    times[t] = new MillisecondTimestamp(time - 500 + (t * 7919L) % (span + 1000));
+	}
+
+	String[] positions = new String[times.length];
+
+	SearchMetrics metrics = ((AbstractIndex)TimeIndexDirectory.find(index.getID())).getSearchMetrics();
+	metrics.reset();
+
+	for (int t=0; t<times.length; t++) {
+	    positions[t] = index.locate(times[t], IndexTimestampSelector.DATA, lifetime(t)).position().toString();
+	}
+
+	double binary = metrics.getMeanProbes();
+
+	factory.close(index);
+
+	index = factory.open(properties(path, "interpolation"));
+
+	metrics = ((AbstractIndex)TimeIndexDirectory.find(index.getID())).getSearchMetrics();
+	metrics.reset();
+
+	for (int t=0; t<times.length; t++) {
+	    String position = index.locate(times[t], IndexTimestampSelector.DATA, lifetime(t)).position().toString();
+
+	    if (! position.equals(positions[t])) {
+		System.err.println("TestInterpolation: locate " + times[t] + " got " + position + " with interpolation, " + positions[t] + " with binary");
+		bad++;
+	    }
+	}
+
+	probes = metrics.getMeanProbes();
+	fallbacks = metrics.getFallbackCount();
+
+	factory.close(index);
+
+	return binary;
+    }
+
+    static Lifetime lifetime(int t) {
+	return t % 2 == 0 ? Lifetime.CONTINUOUS : Lifetime.DISCRETE;
+    }
+
+    /**
+     * Open properties for a search strategy, with the fences off.
+     */
+    static Properties properties(String path, String strategy) {
+	Properties openProperties = new Properties();
+	openProperties.setProperty("indexpath", path);
+	openProperties.setProperty("searchstrategy", strategy);
+	openProperties.setProperty("fencestride", "0");
+
+	return openProperties;
+    }
+}
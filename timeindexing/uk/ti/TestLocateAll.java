@@ -0,0 +1,118 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+
+package uk.ti;
+
+import com.timeindexing.index.IndexView;
+import com.timeindexing.index.IndexType;
+import com.timeindexing.index.IndexTimestampSelector;
+import com.timeindexing.index.TimeIndexFactory;
+import com.timeindexing.index.TimeIndexException;
+import com.timeindexing.basic.AbsolutePosition;
+import com.timeindexing.basic.EndPointInterval;
+import com.timeindexing.basic.Overlap;
+import com.timeindexing.time.Timestamp;
+import com.timeindexing.time.TimestampMapping;
+import com.timeindexing.time.Lifetime;
+import com.timeindexing.time.MillisecondTimestamp;
+import com.timeindexing.data.ByteBufferItem;
+
+import java.util.Properties;
+import java.nio.ByteBuffer;
+
+/**
+ * Test of locating many timestamps in one go,
+ * in an index and in a selection of it.
+ * Each mapping must be the same as the one from locate().
+ */
+public class TestLocateAll {
+    static final int COUNT = 2000;
+
+    static int bad = 0;
+
+    public static void main(String [] args) {
+	TimeIndexFactory factory = new TimeIndexFactory();
+
+	Properties properties = new Properties();
+	properties.setProperty("name", "index-TestLocateAll");
+	properties.setProperty("indexpath", "/tmp/test-locateall");
+
+	try {
+	    IndexView index = factory.create(IndexType.EXTERNAL, properties);
+
+	    // the items are 10ms apart
+	    long time = System.currentTimeMillis() - 60000;
+
+	    for (int i=0; i<COUNT; i++) {
+		index.addItem(new ByteBufferItem(ByteBuffer.wrap(new byte[16])), new MillisecondTimestamp(time + i * 10));
+	    }
+
+	    factory.close(index);
+
+	    Properties openProperties = new Properties();
+	    openProperties.setProperty("indexpath", "/tmp/test-locateall");
+
+	    index = factory.open(openProperties);
+
+	    // timestamps from before the index to after it,
+	    // some on items, and some between them
+	    Timestamp[] sorted = new Timestamp[500];
+
+	    for (int t=0; t<sorted.length; t++) {
+		sorted[t] = new MillisecondTimestamp(time - 100 + t * 41);
+	    }
+
+	    IndexView selection = index.select(new EndPointInterval(new AbsolutePosition(500), new AbsolutePosition(1500)), IndexTimestampSelector.DATA, Overlap.FREE, Lifetime.CONTINUOUS);
+
+	    compare("index", index, sorted, Lifetime.CONTINUOUS);
+	    compare("index", index, sorted, Lifetime.DISCRETE);
+	    compare("selection", selection, sorted, Lifetime.CONTINUOUS);
+	    compare("selection", selection, sorted, Lifetime.DISCRETE);
+
+	    factory.close(index);
+
+	} catch (TimeIndexException tie) {
+	    System.err.println("TestLocateAll: " + tie.getMessage());
+	    System.exit(1);
+	}
+
+	if (bad > 0) {
+	    System.err.println("TestLocateAll: " + bad + " errors");
+	    System.exit(1);
+	} else {
+	    System.out.println("TestLocateAll: OK");
+	}
+    }
+
+    /**
+     * Compare locateAll() with locate() for each timestamp.
+     */
+    static void compare(String name, IndexView view, Timestamp[] sorted, Lifetime lifetime) {
+	TimestampMapping[] all = view.locateAll(sorted, IndexTimestampSelector.DATA, lifetime);
+
+	for (int t=0; t<sorted.length; t++) {
+	    TimestampMapping one = view.locate(sorted[t], IndexTimestampSelector.DATA, lifetime);
+
+	    if (! one.position().toString().equals(all[t].position().toString())) {
+		System.err.println("TestLocateAll: " + name + " " + lifetime + " " + sorted[t] + " locate " + one.position() + " locateAll " + all[t].position());
+		bad++;
+	    }
+	}
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+
+package uk.ti;
+
+import com.timeindexing.index.Index;
+import com.timeindexing.index.IndexView;
+import com.timeindexing.index.IndexItem;
+import com.timeindexing.index.IndexType;
+import com.timeindexing.index.TimeIndexFactory;
+import com.timeindexing.index.TimeIndexException;
+import com.timeindexing.time.MillisecondTimestamp;
+import com.timeindexing.data.ByteBufferItem;
+
+import java.util.Properties;
+import java.util.Random;
+import java.nio.ByteBuffer;
+
+/**
+ * Test of reading the records of an external index
+ * through a memory map.
+ * Items are appended to a mapped index and read back as they
+ * are added, so the map has to grow, then the index is reopened
+ * and read at random, by one thread and then by many at once.
+ */
+public class TestMappedIndex {
+    static final int COUNT = 4000;
+
+    static int bad = 0;
+
+    public static void main(String [] args) {
+	TimeIndexFactory factory = new TimeIndexFactory();
+
+	Properties properties = new Properties();
+	properties.setProperty("name", "index-TestMappedIndex");
+	properties.setProperty("indexpath", "/tmp/test-mapped");
+
+	Properties openProperties = new Properties();
+	openProperties.setProperty("indexpath", "/tmp/test-mapped");
+	openProperties.setProperty("mappedindex", "true");
+
+	try {
+	    long time = System.currentTimeMillis() - 60000;
+
+	    // create it with the first half of the items
+	    IndexView index = factory.create(IndexType.EXTERNAL, properties);
+
+	    for (int i=0; i<COUNT/2; i++) {
+		index.addItem(new ByteBufferItem(ByteBuffer.wrap(data(i))), new MillisecondTimestamp(time + i));
+	    }
+
+	    factory.close(index);
+
+	    // append the rest to the mapped index
+	    index = factory.open(openProperties);
+	    ((Index)index).activate();
+
+	    for (int i=COUNT/2; i<COUNT; i++) {
+		index.addItem(new ByteBufferItem(ByteBuffer.wrap(data(i))), new MillisecondTimestamp(time + i));
+
+		// every so often, read back an item that is not in the cache
+		if (i % 100 == 0) {
+		    index.commit();
+		    check(index, i - COUNT/2, "while appending");
+		}
+	    }
+
+	    factory.close(index);
+
+	    // read it all at random
+	    index = factory.open(openProperties);
+
+	    if (index.getLength() != COUNT) {
+		System.err.println("TestMappedIndex: the index has " + index.getLength() + " items");
+		bad++;
+	    }
+
+	    Random random = new Random(1);
+
+	    for (int r=0; r<2000; r++) {
+		check(index, random.nextInt(COUNT), "after reopen");
+	    }
+
+	    factory.close(index);
+
+	    // many readers at once
+	    final IndexView shared = factory.open(openProperties);
+	    Thread[] readers = new Thread[8];
+
+	    for (int t=0; t<readers.length; t++) {
+		final int seed = t;
+
+		readers[t] = new Thread() {
+			public void run() {
+			    Random random = new Random(seed);
+
+			    try {
+				for (int r=0; r<2000; r++) {
+				    check(shared, random.nextInt(COUNT), "by reader " + seed);
+				}
+			    } catch (TimeIndexException tie) {
+				System.err.println("TestMappedIndex: reader " + seed + " " + tie.getMessage());
+				addBad();
+			    }
+			}
+		    };
+		readers[t].start();
+	    }
+
+	    for (int t=0; t<readers.length; t++) {
+		try {
+		    readers[t].join();
+		} catch (InterruptedException ie) {
+		}
+	    }
+
+	    factory.close(shared);
+
+	} catch (TimeIndexException tie) {
+	    System.err.println("TestMappedIndex: " + tie.getMessage());
+	    System.exit(1);
+	}
+
+	if (bad > 0) {
+	    System.err.println("TestMappedIndex: " + bad + " errors");
+	    System.exit(1);
+	} else {
+	    System.out.println("TestMappedIndex: OK");
+	}
+    }
+
+    static void check(IndexView index, int i, String when) throws TimeIndexException {
+	IndexItem item = index.getItem(i);
+
+	if (! item.getData().equals(ByteBuffer.wrap(data(i)))) {
+	    System.err.println("TestMappedIndex: " + when + " item " + i + " is wrong");
+	    addBad();
+	}
+    }
+
+    static synchronized void addBad() {
+	bad++;
+    }
+
+    static byte[] data(int i) {
+	byte[] data = new byte[8 + i % 64];
+
+	for (int p=0; p<data.length; p++) {
+	    data[p] = (byte)(i * 3 + p);
+	}
+
+	return data;
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+
+package uk.ti;
+
+import com.timeindexing.index.IndexView;
+import com.timeindexing.index.IndexItem;
+import com.timeindexing.index.IndexType;
+import com.timeindexing.index.TimeIndexFactory;
+import com.timeindexing.index.TimeIndexException;
+import com.timeindexing.time.MillisecondTimestamp;
+import com.timeindexing.data.ByteBufferItem;
+
+import java.util.Properties;
+import java.util.Random;
+import java.io.File;
+import java.nio.ByteBuffer;
+
+/**
+ * Test of the position offset file of an inline index.
+ * Items are got at random after a reopen, then the offset file
+ * is removed, and must be rebuilt when the index is next opened.
+ */
+public class TestOffsetFile {
+    static final int COUNT = 3000;
+
+    static int bad = 0;
+
+    public static void main(String [] args) {
+	TimeIndexFactory factory = new TimeIndexFactory();
+
+	Properties properties = new Properties();
+	properties.setProperty("name", "index-TestOffsetFile");
+	properties.setProperty("indexpath", "/tmp/test-offsets");
+
+	try {
+	    IndexView index = factory.create(IndexType.INLINE, properties);
+
+	    long time = System.currentTimeMillis() - 60000;
+
+	    for (int i=0; i<COUNT; i++) {
+		index.addItem(new ByteBufferItem(ByteBuffer.wrap(data(i))), new MillisecondTimestamp(time + i));
+	    }
+
+	    factory.close(index);
+
+	    if (! new File("/tmp/test-offsets.tio").exists()) {
+		System.err.println("TestOffsetFile: no offset file");
+		bad++;
+	    }
+
+	    check(factory, "after create");
+
+	    // the offset file is rebuilt from the index
+	    new File("/tmp/test-offsets.tio").delete();
+
+	    check(factory, "without an offset file");
+
+	    if (! new File("/tmp/test-offsets.tio").exists()) {
+		System.err.println("TestOffsetFile: the offset file was not rebuilt");
+		bad++;
+	    }
+
+	    check(factory, "after the rebuild");
+
+	} catch (TimeIndexException tie) {
+	    System.err.println("TestOffsetFile: " + tie.getMessage());
+	    System.exit(1);
+	}
+
+	if (bad > 0) {
+	    System.err.println("TestOffsetFile: " + bad + " errors");
+	    System.exit(1);
+	} else {
+	    System.out.println("TestOffsetFile: OK");
+	}
+    }
+
+    /**
+     * Open the index, and get items at random.
+     */
+    static void check(TimeIndexFactory factory, String when) throws TimeIndexException {
+	Properties openProperties = new Properties();
+	openProperties.setProperty("indexpath", "/tmp/test-offsets");
+	openProperties.setProperty("loadstyle", "none");
+
+	IndexView index = factory.open(openProperties);
+
+	if (index.getLength() != COUNT) {
+	    System.err.println("TestOffsetFile: " + when + " the index has " + index.getLength() + " items");
+	    bad++;
+	}
+
+	Random random = new Random(1);
+
+	for (int r=0; r<500; r++) {
+	    int i = random.nextInt(COUNT);
+	    IndexItem item = index.getItem(i);
+
+	    if (! item.getData().equals(ByteBuffer.wrap(data(i)))) {
+		System.err.println("TestOffsetFile: " + when + " item " + i + " is wrong");
+		bad++;
+	    }
+	}
+
+	factory.close(index);
+    }
+
+    /**
+     * The data for item i, which varies in size.
+     */
+    static byte[] data(int i) {
+	byte[] data = new byte[1 + (i * 37) % 200];
+
+	for (int p=0; p<data.length; p++) {
+	    data[p] = (byte)(i + p);
+	}
+
+	return data;
+    }
+}
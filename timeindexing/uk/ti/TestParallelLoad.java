@@ -0,0 +1,120 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+
+package uk.ti;
+
+import com.timeindexing.index.IndexView;
+import com.timeindexing.index.IndexItem;
+import com.timeindexing.index.IndexType;
+import com.timeindexing.index.TimeIndexFactory;
+import com.timeindexing.index.TimeIndexException;
+import com.timeindexing.time.MillisecondTimestamp;
+import com.timeindexing.data.ByteBufferItem;
+
+import java.util.Properties;
+import java.nio.ByteBuffer;
+
+/**
+ * Test of the parallel load style.
+ * Each index is loaded with loadstyle parallel, and every item
+ * must be the same as it was added.
+ * Indexes that are not a fixed stride are loaded as for all.
+ */
+public class TestParallelLoad {
+    static final int COUNT = 20000;
+
+    static long time = System.currentTimeMillis() - 600000;
+
+    static int bad = 0;
+
+    public static void main(String [] args) {
+	try {
+	    test(IndexType.EXTERNAL, "/tmp/test-parallel-external", null);
+	    test(IndexType.SEGMENTED, "/tmp/test-parallel-segmented", "segmentsize");
+	    test(IndexType.EXTERNAL, "/tmp/test-parallel-compact", "compactindex");
+	    test(IndexType.INLINE, "/tmp/test-parallel-inline", null);
+
+	} catch (TimeIndexException tie) {
+	    System.err.println("TestParallelLoad: " + tie.getMessage());
+	    System.exit(1);
+	}
+
+	if (bad > 0) {
+	    System.err.println("TestParallelLoad: " + bad + " errors");
+	    System.exit(1);
+	} else {
+	    System.out.println("TestParallelLoad: OK");
+	}
+    }
+
+    static void test(IndexType type, String path, String option) throws TimeIndexException {
+	TimeIndexFactory factory = new TimeIndexFactory();
+
+	Properties properties = new Properties();
+	properties.setProperty("name", "index-TestParallelLoad");
+	properties.setProperty("indexpath", path);
+
+	if ("segmentsize".equals(option)) {
+	    properties.setProperty("segmentsize", "100000");
+	} else if (option != null) {
+	    properties.setProperty(option, "true");
+	}
+
+	IndexView index = factory.create(type, properties);
+
+	for (int i=0; i<COUNT; i++) {
+	    index.addItem(new ByteBufferItem(ByteBuffer.wrap(data(i))), new MillisecondTimestamp(time + i));
+	}
+
+	factory.close(index);
+
+	Properties openProperties = new Properties();
+	openProperties.setProperty("indexpath", path);
+	openProperties.setProperty("loadstyle", "parallel");
+
+	index = factory.open(openProperties);
+
+	if (index.getLength() != COUNT) {
+	    System.err.println("TestParallelLoad: " + path + " has " + index.getLength() + " items");
+	    bad++;
+	}
+
+	for (int i=0; i<COUNT; i++) {
+	    IndexItem item = index.getItem(i);
+
+	    if (! item.getData().equals(ByteBuffer.wrap(data(i))) ||
+		item.getDataTimestamp().value() != new MillisecondTimestamp(time + i).value()) {
+		System.err.println("TestParallelLoad: " + path + " item " + i + " is wrong");
+		bad++;
+	    }
+	}
+
+	factory.close(index);
+    }
+
+    static byte[] data(int i) {
+	byte[] data = new byte[4 + i % 40];
+
+	for (int p=0; p<data.length; p++) {
+	    data[p] = (byte)(i * 13 + p);
+	}
+
+	return data;
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+
+package uk.ti;
+
+import com.timeindexing.index.IndexView;
+import com.timeindexing.index.IndexItem;
+import com.timeindexing.index.IndexType;
+import com.timeindexing.index.TimeIndexFactory;
+import com.timeindexing.index.TimeIndexException;
+import com.timeindexing.time.MillisecondTimestamp;
+import com.timeindexing.time.TimeCalculator;
+import com.timeindexing.data.ByteBufferItem;
+
+import java.util.Properties;
+import java.util.Random;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Test of many threads reading one index at once.
+ * Each kind of index is opened cold, without loading the data,
+ * and each thread gets items at random positions, and reads the data
+ * through a data channel and with getData().
+ * The reads are positional, so the threads don't share a file position,
+ * and every item must be right.
+ */
+public class TestPositionalReads {
+    static final int ITEMS = 20000;
+    static final int THREADS = 8;
+    static final int READS = 5000;
+
+    static int bad = 0;
+
+    public static void main(String [] args) {
+	try {
+	    test(IndexType.EXTERNAL, "/tmp/test-positional-external", null);
+	    test(IndexType.INLINE, "/tmp/test-positional-inline", null);
+	    test(IndexType.SEGMENTED, "/tmp/test-positional-segmented", "segmentsize");
+	    test(IndexType.EXTERNAL, "/tmp/test-positional-compact", "compactindex");
+
+	} catch (TimeIndexException tie) {
+	    System.err.println("TestPositionalReads: " + tie.getMessage());
+	    System.exit(1);
+	} catch (InterruptedException ie) {
+	    System.err.println("TestPositionalReads: " + ie.getMessage());
+	    System.exit(1);
+	}
+
+	if (bad > 0) {
+	    System.err.println("TestPositionalReads: " + bad + " errors");
+	    System.exit(1);
+	} else {
+	    System.out.println("TestPositionalReads: OK");
+	}
+    }
+
+    /**
+     * Create an index, then read it from many threads at once.
+     * @param option segmentsize or compactindex, or null
+     */
+    static void test(IndexType type, String path, String option) throws TimeIndexException, InterruptedException {
+	TimeIndexFactory factory = new TimeIndexFactory();
+
+	Properties properties = new Properties();
+	properties.setProperty("name", "index-TestPositionalReads");
+	properties.setProperty("indexpath", path);
+
+	if ("segmentsize".equals(option)) {
+	    properties.setProperty("segmentsize", "100000");
+	} else if ("compactindex".equals(option)) {
+	    properties.setProperty("compactindex", "true");
+	}
+
+	IndexView index = factory.create(type, properties);
+
+	for (int i=0; i<ITEMS; i++) {
+	    index.addItem(new ByteBufferItem(ByteBuffer.wrap(data(i))), new MillisecondTimestamp(timeOf(i)));
+	}
+
+	factory.close(index);
+
+	Properties openProperties = new Properties();
+	openProperties.setProperty("indexpath", path);
+
+	final IndexView reopened = factory.open(openProperties);
+
+	// the data is only read when it is asked for
+	reopened.setLoadDataAutomatically(false);
+
+	Thread[] readers = new Thread[THREADS];
+
+	for (int t=0; t<THREADS; t++) {
+	    final int reader = t;
+
+	    readers[t] = new Thread() {
+		    public void run() {
+			read(reopened, reader);
+		    }
+		};
+	}
+
+	long start = System.currentTimeMillis();
+
+	for (int t=0; t<THREADS; t++) {
+	    readers[t].start();
+	}
+
+	for (int t=0; t<THREADS; t++) {
+	    readers[t].join();
+	}
+
+	System.out.println("TestPositionalReads: " + path + " " + (THREADS * READS) + " reads in " + (System.currentTimeMillis() - start) + "ms");
+
+	factory.close(reopened);
+    }
+
+    /**
+     * Read items at random positions, and check them.
+     */
+    static void read(IndexView index, int reader) {
+	Random random = new Random(reader);
+
+	try {
+	    for (int r=0; r<READS; r++) {
+		int i = random.nextInt(ITEMS);
+
+		IndexItem item = index.getItem(i);
+
+		if (TimeCalculator.asNanos(item.getDataTimestamp()) != timeOf(i) * 1000000L) {
+		    System.err.println("TestPositionalReads: reader " + reader + " item " + i + " has the wrong time");
+		    addBad();
+		}
+
+		ByteBuffer data = null;
+
+		if (r % 2 == 0) {
+		    data = readAll(item.getDataChannel(), item.getDataSize().value());
+		} else {
+		    data = item.getData();
+		}
+
+		if (! ByteBuffer.wrap(data(i)).equals(data)) {
+		    System.err.println("TestPositionalReads: reader " + reader + " item " + i + " is wrong");
+		    addBad();
+		}
+	    }
+	} catch (TimeIndexException tie) {
+	    System.err.println("TestPositionalReads: reader " + reader + ": " + tie.getMessage());
+	    addBad();
+	} catch (IOException ioe) {
+	    System.err.println("TestPositionalReads: reader " + reader + ": " + ioe.getMessage());
+	    addBad();
+	}
+    }
+
+    /**
+     * The time of item i, in milliseconds.
+     */
+    static long timeOf(int i) {
+	return 1000000000000L + i * 10;
+    }
+
+    /**
+     * The data for item i.
+     */
+    static byte[] data(int i) {
+	byte[] data = new byte[10 + i % 90];
+
+	for (int p=0; p<data.length; p++) {
+	    data[p] = (byte)(i + p);
+	}
+
+	return data;
+    }
+
+    /**
+     * Read all of a channel, a chunk at a time.
+     */
+    static ByteBuffer readAll(ReadableByteChannel channel, long size) throws IOException {
+	ByteBuffer data = ByteBuffer.allocate((int)size);
+	ByteBuffer chunk = ByteBuffer.allocate(32);
+
+	while (channel.read(chunk) >= 0) {
+	    chunk.flip();
+	    data.put(chunk);
+	    chunk.clear();
+	}
+
+	data.flip();
+	return data;
+    }
+
+    static synchronized void addBad() {
+	bad++;
+    }
+}
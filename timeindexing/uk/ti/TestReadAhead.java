@@ -0,0 +1,168 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+
+package uk.ti;
+
+import com.timeindexing.index.Index;
+import com.timeindexing.index.IndexView;
+import com.timeindexing.index.IndexItem;
+import com.timeindexing.index.IndexType;
+import com.timeindexing.index.TimeIndexFactory;
+import com.timeindexing.index.TimeIndexException;
+import com.timeindexing.time.MillisecondTimestamp;
+import com.timeindexing.data.ByteBufferItem;
+
+import java.util.Properties;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.nio.ByteBuffer;
+
+/**
+ * Test of read ahead with asynchronous reads.
+ * Many cold indexes are read sequentially with getItemsAsync()
+ * at once, with one read thread, so the read ahead and the
+ * reads compete for the pools.
+ * The reads must all finish, and the indexes must close
+ * whilst reads are still going on.
+ */
+public class TestReadAhead {
+    static final int COUNT = 5000;
+
+    static final int INDEXES = 4;
+
+    static int bad = 0;
+
+    public static void main(String [] args) {
+	// one thread for the user reads
+	System.setProperty("timeindexing.readthreads", "1");
+
+	// give up if anything hangs
+	Thread watchdog = new Thread() {
+		public void run() {
+		    try {
+			Thread.sleep(150000);
+			System.err.println("TestReadAhead: hung");
+			System.exit(1);
+		    } catch (InterruptedException ie) {
+		    }
+		}
+	    };
+	watchdog.setDaemon(true);
+	watchdog.start();
+
+	TimeIndexFactory factory = new TimeIndexFactory();
+
+	try {
+	    for (int x=0; x<INDEXES; x++) {
+		create(factory, x);
+	    }
+
+	    // read all of the indexes at once
+	    IndexView[] indexes = open(factory);
+	    Future[] futures = new Future[INDEXES];
+
+	    for (int x=0; x<INDEXES; x++) {
+		futures[x] = ((Index)indexes[x]).getItemsAsync(0, COUNT);
+	    }
+
+	    for (int x=0; x<INDEXES; x++) {
+		IndexItem[] items = (IndexItem[])futures[x].get(60, TimeUnit.SECONDS);
+
+		for (int i=0; i<COUNT; i++) {
+		    if (items[i].getData().getLong(0) != (long)x * COUNT + i) {
+			System.err.println("TestReadAhead: index " + x + " item " + i + " has data " + items[i].getData().getLong(0));
+			bad++;
+		    }
+		}
+	    }
+
+	    for (int x=0; x<INDEXES; x++) {
+		factory.close(indexes[x]);
+	    }
+
+	    // close the indexes whilst they are being read
+	    indexes = open(factory);
+
+	    for (int x=0; x<INDEXES; x++) {
+		futures[x] = ((Index)indexes[x]).getItemsAsync(0, COUNT);
+	    }
+
+	    Thread.sleep(20);
+
+	    for (int x=0; x<INDEXES; x++) {
+		factory.close(indexes[x]);
+	    }
+
+	} catch (TimeoutException te) {
+	    System.err.println("TestReadAhead: read did not finish");
+	    System.exit(1);
+	} catch (TimeIndexException tie) {
+	    System.err.println("TestReadAhead: " + tie.getMessage());
+	    System.exit(1);
+	} catch (Exception e) {
+	    System.err.println("TestReadAhead: " + e);
+	    System.exit(1);
+	}
+
+	if (bad > 0) {
+	    System.err.println("TestReadAhead: " + bad + " errors");
+	    System.exit(1);
+	} else {
+	    System.out.println("TestReadAhead: OK");
+	}
+    }
+
+    /**
+     * Create index x.
+     */
+    static void create(TimeIndexFactory factory, int x) throws TimeIndexException {
+	Properties properties = new Properties();
+	properties.setProperty("name", "index-TestReadAhead-" + x);
+	properties.setProperty("indexpath", "/tmp/test-readahead-" + x);
+
+	IndexView index = factory.create(IndexType.EXTERNAL, properties);
+
+	long time = System.currentTimeMillis() - 600000;
+
+	for (int i=0; i<COUNT; i++) {
+	    ByteBuffer buffer = ByteBuffer.allocate(8);
+	    buffer.putLong(0, (long)x * COUNT + i);
+	    index.addItem(new ByteBufferItem(buffer), new MillisecondTimestamp(time + i));
+	}
+
+	factory.close(index);
+    }
+
+    /**
+     * Open all the indexes, with the default read ahead.
+     */
+    static IndexView[] open(TimeIndexFactory factory) throws TimeIndexException {
+	IndexView[] indexes = new IndexView[INDEXES];
+
+	for (int x=0; x<INDEXES; x++) {
+	    Properties properties = new Properties();
+	    properties.setProperty("indexpath", "/tmp/test-readahead-" + x);
+
+	    indexes[x] = factory.open(properties);
+	}
+
+	return indexes;
+    }
+}
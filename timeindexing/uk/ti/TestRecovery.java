@@ -0,0 +1,226 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+
+package uk.ti;
+
+import com.timeindexing.index.Index;
+import com.timeindexing.index.IndexView;
+import com.timeindexing.index.IndexItem;
+import com.timeindexing.index.IndexType;
+import com.timeindexing.index.FileIndex;
+import com.timeindexing.index.TimeIndexDirectory;
+import com.timeindexing.index.TimeIndexFactory;
+import com.timeindexing.index.TimeIndexException;
+import com.timeindexing.event.IndexPrimaryEvent;
+import com.timeindexing.event.IndexPrimaryEventListener;
+import com.timeindexing.time.MillisecondTimestamp;
+import com.timeindexing.data.ByteBufferItem;
+
+import java.util.Properties;
+import java.util.Arrays;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Test of recovering an index that was not closed.
+ * The header from a commit is put back after more items are added,
+ * and some junk is left at the end of the index file,
+ * as if the process had stopped before the header was written.
+ * The items must be recovered on open, and the listeners told.
+ * A compact index is recovered by decoding its blocks, and the
+ * added items go over a block boundary, so a block is recovered too.
+ */
+public class TestRecovery implements IndexPrimaryEventListener {
+    static final int COMMITTED = 100;
+    static final int ADDED = 50;
+
+    static int bad = 0;
+
+    int recovered = 0;
+
+    public static void main(String [] args) {
+	try {
+	    test(IndexType.EXTERNAL, "/tmp/test-recovery-external", ".tix", false);
+	    test(IndexType.INLINE, "/tmp/test-recovery-inline", ".tii", false);
+	    test(IndexType.EXTERNAL, "/tmp/test-recovery-compact", ".tix", true);
+
+	} catch (TimeIndexException tie) {
+	    System.err.println("TestRecovery: " + tie.getMessage());
+	    System.exit(1);
+	} catch (IOException ioe) {
+	    System.err.println("TestRecovery: " + ioe.getMessage());
+	    System.exit(1);
+	}
+
+	if (bad > 0) {
+	    System.err.println("TestRecovery: " + bad + " errors");
+	    System.exit(1);
+	} else {
+	    System.out.println("TestRecovery: OK");
+	}
+    }
+
+    static void test(IndexType type, String path, String indexExtension, boolean compact) throws TimeIndexException, IOException {
+	TimeIndexFactory factory = new TimeIndexFactory();
+
+	Properties properties = new Properties();
+	properties.setProperty("name", "index-TestRecovery");
+	properties.setProperty("indexpath", path);
+
+	if (compact) {
+	    properties.setProperty("compactindex", "true");
+	}
+
+	IndexView index = factory.create(type, properties);
+
+	// the items are in the past, so more can be added later
+	long time = System.currentTimeMillis() - 60000;
+
+	for (int i=0; i<COMMITTED; i++) {
+	    index.addItem(new ByteBufferItem(ByteBuffer.wrap(data(i))), new MillisecondTimestamp(time + i));
+	}
+
+	index.commit();
+
+	// keep the header as it was at the commit
+	byte[] header = readFile(path + ".tih");
+
+	for (int i=COMMITTED; i<COMMITTED+ADDED; i++) {
+	    index.addItem(new ByteBufferItem(ByteBuffer.wrap(data(i))), new MillisecondTimestamp(time + i));
+	}
+
+	factory.close(index);
+
+	// put the old header back
+	RandomAccessFile headerFile = new RandomAccessFile(path + ".tih", "rw");
+	headerFile.setLength(0);
+	headerFile.write(header);
+	headerFile.close();
+
+	// and leave part of a record at the end of the index
+	byte[] junk = new byte[20];
+
+	if (compact) {
+	    // a compact record that never ends
+	    Arrays.fill(junk, (byte)0xFF);
+	}
+
+	RandomAccessFile indexFile = new RandomAccessFile(path + indexExtension, "rw");
+	indexFile.seek(indexFile.length());
+	indexFile.write(junk);
+	indexFile.close();
+
+	long expected = COMMITTED + ADDED;
+	long recoveredFrom = COMMITTED;
+
+	// it is recovered each time it is opened,
+	// until the index is written again
+	open(path, expected, recoveredFrom, false);
+	open(path, expected, recoveredFrom, true);
+	open(path, expected + 1, -1, false);
+    }
+
+    /**
+     * Open an index, and check it was recovered as expected.
+     * @param append add an item to the index
+     */
+    static void open(String path, long expected, long recoveredFrom, boolean append) throws TimeIndexException {
+	TestRecovery listener = new TestRecovery();
+
+	TimeIndexFactory factory = new TimeIndexFactory();
+	factory.addPrimaryEventListener(listener);
+
+	Properties openProperties = new Properties();
+	openProperties.setProperty("indexpath", path);
+
+	IndexView index = factory.open(openProperties);
+
+	FileIndex fileIndex = (FileIndex)TimeIndexDirectory.find(index.getID());
+
+	if (fileIndex.getRecoveredFrom() != recoveredFrom || listener.recovered != (recoveredFrom < 0 ? 0 : 1)) {
+	    System.err.println("TestRecovery: " + path + " recovered from " + fileIndex.getRecoveredFrom() + " with " + listener.recovered + " events");
+	    bad++;
+	}
+
+	if (append) {
+	    ((Index)index).activate();
+	    index.addItem(new ByteBufferItem(ByteBuffer.wrap(data((int)expected))), new MillisecondTimestamp(System.currentTimeMillis()));
+	    expected++;
+	}
+
+	if (index.getLength() != expected) {
+	    System.err.println("TestRecovery: " + path + " has " + index.getLength() + " items, expected " + expected);
+	    bad++;
+	}
+
+	for (int i=0; i<index.getLength(); i++) {
+	    IndexItem item = index.getItem(i);
+
+	    if (! item.getData().equals(ByteBuffer.wrap(data(i)))) {
+		System.err.println("TestRecovery: " + path + " item " + i + " is wrong");
+		bad++;
+	    }
+	}
+
+	factory.close(index);
+    }
+
+    static byte[] data(int i) {
+	byte[] data = new byte[10 + i % 40];
+
+	for (int p=0; p<data.length; p++) {
+	    data[p] = (byte)(i + p);
+	}
+
+	return data;
+    }
+
+    static byte[] readFile(String fileName) throws IOException {
+	RandomAccessFile file = new RandomAccessFile(fileName, "r");
+	byte[] contents = new byte[(int)file.length()];
+	file.readFully(contents);
+	file.close();
+
+	return contents;
+    }
+
+    public void recovered(IndexPrimaryEvent ipe) {
+	recovered++;
+    }
+
+    public void opened(IndexPrimaryEvent ipe) {
+    }
+
+    public void closed(IndexPrimaryEvent ipe) {
+    }
+
+    public void committed(IndexPrimaryEvent ipe) {
+    }
+
+    public void created(IndexPrimaryEvent ipe) {
+    }
+
+    public void viewAdded(IndexPrimaryEvent ipe) {
+    }
+
+    public void viewRemoved(IndexPrimaryEvent ipe) {
+    }
+}
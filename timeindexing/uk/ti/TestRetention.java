@@ -0,0 +1,217 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+
+package uk.ti;
+
+import com.timeindexing.index.IndexView;
+import com.timeindexing.index.IndexItem;
+import com.timeindexing.index.IndexType;
+import com.timeindexing.index.SegmentedIndex;
+import com.timeindexing.index.TimeIndexDirectory;
+import com.timeindexing.index.TimeIndexFactory;
+import com.timeindexing.index.TimeIndexException;
+import com.timeindexing.time.MillisecondTimestamp;
+import com.timeindexing.time.ElapsedSecondTimestamp;
+import com.timeindexing.basic.AbsolutePosition;
+import com.timeindexing.basic.EndPointInterval;
+import com.timeindexing.data.ByteBufferItem;
+
+import java.util.Properties;
+import java.util.Iterator;
+import java.nio.ByteBuffer;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Test of removing old segments from a SegmentedIndex.
+ * The index is created, the first half is removed,
+ * and the index is reopened and walked from its first position.
+ * The files of removed segments must be closed by the next removal.
+ */
+public class TestRetention {
+    static final int ITEMS = 300;
+
+    public static void main(String [] args) {
+	TimeIndexFactory factory = new TimeIndexFactory();
+
+	Properties properties = new Properties();
+	properties.setProperty("name", "index-TestRetention");
+	properties.setProperty("indexpath", "/tmp/test-retention");
+	// small segments, so there are many of them
+	properties.setProperty("segmentsize", "2000");
+
+	// one item a second, ending now
+	long time = System.currentTimeMillis() - ITEMS * 1000L;
+
+	try {
+	    int bad = 0;
+
+	    IndexView index = factory.create(IndexType.SEGMENTED, properties);
+
+	    for (int i=0; i<ITEMS; i++) {
+		ByteBuffer buffer = ByteBuffer.allocate(10 + i % 50);
+		buffer.put(0, (byte)i);
+
+		index.addItem(new ByteBufferItem(buffer), new MillisecondTimestamp(time + i * 1000L));
+	    }
+
+	    // remove the items older than half the index
+	    long first = index.removeOlderThan(new ElapsedSecondTimestamp(ITEMS / 2));
+
+	    System.out.println("TestRetention: first position " + first);
+
+	    if (first == 0 || first > ITEMS / 2 + 1) {
+		System.err.println("TestRetention: first position " + first + " is wrong");
+		bad++;
+	    }
+
+	    // the removed segments are kept open for readers
+	    SegmentedIndex segmented = (SegmentedIndex)TimeIndexDirectory.find(index.getID());
+	    int removed = segmented.getRemovedSegmentCount();
+
+	    bad += checkOpen(removed, 1);
+
+	    // remove some more, which closes the first ones
+	    long more = index.removeOlderThan(new ElapsedSecondTimestamp(ITEMS / 4));
+
+	    if (more <= first) {
+		System.err.println("TestRetention: second removal got first position " + more);
+		bad++;
+	    }
+
+	    bad += checkOpen(segmented.getRemovedSegmentCount(), 1);
+
+	    if (segmented.getRemovedSegmentCount() > (more - first)) {
+		System.err.println("TestRetention: " + segmented.getRemovedSegmentCount() + " segments open after removing " + (more - first) + " items");
+		bad++;
+	    }
+
+	    first = more;
+
+	    // a removal of nothing closes the rest
+	    index.removeOlderThan(new ElapsedSecondTimestamp(ITEMS / 4));
+
+	    bad += checkOpen(segmented.getRemovedSegmentCount(), 0);
+
+	    factory.close(index);
+
+	    Properties openProperties = new Properties();
+	    openProperties.setProperty("indexpath", "/tmp/test-retention");
+
+	    index = factory.open(openProperties);
+
+	    if (index.getFirstPosition() != first || index.getLength() != ITEMS) {
+		System.err.println("TestRetention: reopened with first position " + index.getFirstPosition() + " length " + index.getLength());
+		bad++;
+	    }
+
+	    // walk the index with an iterator
+	    long position = first;
+	    Iterator iterator = index.iterator();
+
+	    while (iterator.hasNext()) {
+		IndexItem item = (IndexItem)iterator.next();
+
+		if (item == null || item.getData().get(0) != (byte)position) {
+		    System.err.println("TestRetention: item " + position + " is wrong");
+		    bad++;
+		}
+
+		position++;
+	    }
+
+	    if (position != ITEMS) {
+		System.err.println("TestRetention: iterator stopped at " + position);
+		bad++;
+	    }
+
+	    // a selection from 0 starts at the first position
+	    IndexView selection = index.select(new EndPointInterval(new AbsolutePosition(0), new AbsolutePosition(ITEMS - 1)));
+
+	    if (selection.getLength() != ITEMS - first || selection.getItem(0).getData().get(0) != (byte)first) {
+		System.err.println("TestRetention: selection has " + selection.getLength() + " items");
+		bad++;
+	    }
+
+	    factory.close(index);
+
+	    if (bad > 0) {
+		System.err.println("TestRetention: " + bad + " errors");
+		System.exit(1);
+	    } else {
+		System.out.println("TestRetention: OK");
+	    }
+	} catch (TimeIndexException tie) {
+	    System.err.println("TestRetention: " + tie.getMessage());
+	    System.exit(1);
+	}
+    }
+
+    /**
+     * Check the removed segments that are still open
+     * against the deleted files that are still open.
+     * @param least the least no of open removed segments
+     * @return the no of errors
+     */
+    static int checkOpen(int removed, int least) {
+	int deleted = deletedFiles();
+
+	if (removed < least) {
+	    System.err.println("TestRetention: " + removed + " removed segments open, expected at least " + least);
+	    return 1;
+	} else if (least == 0 && removed != 0) {
+	    System.err.println("TestRetention: " + removed + " removed segments still open");
+	    return 1;
+	} else if (deleted >= 0 && deleted != removed * 2) {
+	    System.err.println("TestRetention: " + deleted + " deleted files open for " + removed + " removed segments");
+	    return 1;
+	} else {
+	    return 0;
+	}
+    }
+
+    /**
+     * Count the deleted segment files this process has open.
+     * @return the count, or -1 if it can't be found
+     */
+    static int deletedFiles() {
+	File[] fds = new File("/proc/self/fd").listFiles();
+
+	if (fds == null) {
+	    return -1;
+	}
+
+	int count = 0;
+
+	for (int f=0; f<fds.length; f++) {
+	    try {
+		String path = Files.readSymbolicLink(fds[f].toPath()).toString();
+
+		if (path.indexOf("test-retention") >= 0 && path.endsWith("(deleted)")) {
+		    count++;
+		}
+	    } catch (IOException ioe) {
+		// the fd has gone
+	    }
+	}
+
+	return count;
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+
+package uk.ti;
+
+import com.timeindexing.index.Index;
+import com.timeindexing.index.IndexView;
+import com.timeindexing.index.IndexItem;
+import com.timeindexing.index.IndexType;
+import com.timeindexing.index.TimeIndexFactory;
+import com.timeindexing.index.TimeIndexException;
+import com.timeindexing.time.MillisecondTimestamp;
+import com.timeindexing.data.ByteBufferItem;
+
+import java.util.Properties;
+import java.nio.ByteBuffer;
+
+/**
+ * Test of adding large items from one reused buffer,
+ * as TICreate and TIAppend do.
+ * Small items go between the large ones, so each large item
+ * is written together with the small one before it.
+ * Every item is read back after a reopen and checked.
+ */
+public class TestReuseBuffer {
+    static final int ITEMS = 40;
+    static final int SIZE = 16 * 1024;
+
+    public static void main(String [] args) {
+	try {
+	    int bad = 0;
+
+	    bad += test(IndexType.EXTERNAL, "/tmp/test-reuse-external");
+	    bad += test(IndexType.INLINE, "/tmp/test-reuse-inline");
+
+	    if (bad > 0) {
+		System.err.println("TestReuseBuffer: " + bad + " bad items");
+		System.exit(1);
+	    } else {
+		System.out.println("TestReuseBuffer: OK");
+	    }
+	} catch (TimeIndexException tie) {
+	    System.err.println("TestReuseBuffer: " + tie.getMessage());
+	    System.exit(1);
+	}
+    }
+
+    /**
+     * Create an index, add the items, then reopen it and check them.
+     * Returns the no of bad items.
+     */
+    public static int test(IndexType type, String path) throws TimeIndexException {
+	TimeIndexFactory factory = new TimeIndexFactory();
+
+	Properties properties = new Properties();
+	properties.setProperty("name", "index-TestReuseBuffer");
+	properties.setProperty("indexpath", path);
+
+	IndexView index = factory.create(type, properties);
+
+	ByteBuffer buffer = ByteBuffer.allocate(SIZE);
+	long time = System.currentTimeMillis();
+
+	for (int i=0; i<ITEMS; i++) {
+	    // fill the same buffer with new data
+	    buffer.clear();
+	    buffer.limit(size(i));
+	    fill(buffer, i);
+	    buffer.flip();
+
+	    index.addItem(new ByteBufferItem(buffer), new MillisecondTimestamp(time + i));
+	}
+
+	factory.close(index);
+
+	Properties openProperties = new Properties();
+	openProperties.setProperty("indexpath", path);
+
+	index = factory.open(openProperties);
+
+	int bad = 0;
+
+	if (index.getLength() != ITEMS) {
+	    System.err.println(path + ": length " + index.getLength() + " expected " + ITEMS);
+	    bad++;
+	}
+
+	for (int i=0; i<index.getLength(); i++) {
+	    IndexItem item = index.getItem(i);
+
+	    if (! check(item.getData(), i)) {
+		System.err.println(path + ": item " + i + " is wrong");
+		bad++;
+	    }
+	}
+
+	factory.close(index);
+
+	return bad;
+    }
+
+    /**
+     * The size of item i.
+     */
+    static int size(int i) {
+	if (i % 2 == 0) {
+	    return SIZE;
+	} else {
+	    return 100 + i;
+	}
+    }
+
+    /**
+     * Fill a buffer with data for item i.
+     */
+    static void fill(ByteBuffer buffer, int i) {
+	while (buffer.hasRemaining()) {
+	    buffer.put((byte)(i + buffer.position()));
+	}
+    }
+
+    /**
+     * Check the data for item i.
+     */
+    static boolean check(ByteBuffer data, int i) {
+	if (data.remaining() != size(i)) {
+	    return false;
+	}
+
+	for (int p=0; p<size(i); p++) {
+	    if (data.get(data.position() + p) != (byte)(i + p)) {
+		return false;
+	    }
+	}
+
+	return true;
+    }
+}
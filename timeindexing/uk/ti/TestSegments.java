@@ -0,0 +1,180 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+
+package uk.ti;
+
+import com.timeindexing.index.Index;
+import com.timeindexing.index.IndexView;
+import com.timeindexing.index.IndexItem;
+import com.timeindexing.index.IndexType;
+import com.timeindexing.index.IndexTimestampSelector;
+import com.timeindexing.index.TimeIndexFactory;
+import com.timeindexing.index.TimeIndexException;
+import com.timeindexing.time.Lifetime;
+import com.timeindexing.time.TimestampMapping;
+import com.timeindexing.time.MillisecondTimestamp;
+import com.timeindexing.basic.AbsolutePosition;
+import com.timeindexing.basic.EndPointInterval;
+import com.timeindexing.basic.Overlap;
+import com.timeindexing.data.ByteBufferItem;
+
+import java.util.Properties;
+import java.io.File;
+import java.nio.ByteBuffer;
+
+/**
+ * Test of a SegmentedIndex with small segments.
+ * The index must roll over into many segment files,
+ * and the items, locate() and select() must work across
+ * the segments after a reopen, and after more items are appended.
+ */
+public class TestSegments {
+    static final int COUNT = 1000;
+
+    static long time = System.currentTimeMillis() - 600000;
+
+    static int bad = 0;
+
+    public static void main(String [] args) {
+	// remove the segments of any earlier run
+	File[] old = new File("/tmp").listFiles();
+
+	for (int f=0; f<old.length; f++) {
+	    if (old[f].getName().startsWith("test-segments")) {
+		old[f].delete();
+	    }
+	}
+
+	TimeIndexFactory factory = new TimeIndexFactory();
+
+	Properties properties = new Properties();
+	properties.setProperty("name", "index-TestSegments");
+	properties.setProperty("indexpath", "/tmp/test-segments");
+	// small segments, so there are many of them
+	properties.setProperty("segmentsize", "8000");
+
+	Properties openProperties = new Properties();
+	openProperties.setProperty("indexpath", "/tmp/test-segments");
+
+	try {
+	    IndexView index = factory.create(IndexType.SEGMENTED, properties);
+
+	    for (int i=0; i<COUNT/2; i++) {
+		add(index, i);
+	    }
+
+	    factory.close(index);
+
+	    // append the rest after a reopen
+	    index = factory.open(openProperties);
+	    ((Index)index).activate();
+
+	    for (int i=COUNT/2; i<COUNT; i++) {
+		add(index, i);
+	    }
+
+	    factory.close(index);
+
+	    if (! new File("/tmp/test-segments.tim").exists()) {
+		System.err.println("TestSegments: no manifest");
+		bad++;
+	    }
+
+	    int segments = 0;
+	    File[] files = new File("/tmp").listFiles();
+
+	    for (int f=0; f<files.length; f++) {
+		if (files[f].getName().startsWith("test-segments-") && files[f].getName().endsWith(".tix")) {
+		    segments++;
+		}
+	    }
+
+	    if (segments < 5) {
+		System.err.println("TestSegments: only " + segments + " segments");
+		bad++;
+	    }
+
+	    index = factory.open(openProperties);
+
+	    if (index.getLength() != COUNT) {
+		System.err.println("TestSegments: the index has " + index.getLength() + " items");
+		bad++;
+	    }
+
+	    for (int i=0; i<COUNT; i++) {
+		IndexItem item = index.getItem(i);
+
+		if (! item.getData().equals(ByteBuffer.wrap(data(i)))) {
+		    System.err.println("TestSegments: item " + i + " is wrong");
+		    bad++;
+		}
+	    }
+
+	    for (int i=0; i<COUNT; i+=3) {
+		TimestampMapping mapping = index.locate(timeOf(i), IndexTimestampSelector.DATA, Lifetime.DISCRETE);
+
+		if (mapping.position().value() != i) {
+		    System.err.println("TestSegments: locate " + i + " got " + mapping.position());
+		    bad++;
+		}
+	    }
+
+	    // a selection over many segments
+	    IndexView selection = index.select(new EndPointInterval(new AbsolutePosition(100), new AbsolutePosition(899)), IndexTimestampSelector.DATA, Overlap.FREE, Lifetime.CONTINUOUS);
+
+	    if (selection.getLength() != 800 ||
+		! selection.getItem(0).getData().equals(ByteBuffer.wrap(data(100))) ||
+		! selection.getItem(799).getData().equals(ByteBuffer.wrap(data(899)))) {
+		System.err.println("TestSegments: the selection is wrong");
+		bad++;
+	    }
+
+	    factory.close(index);
+
+	} catch (TimeIndexException tie) {
+	    System.err.println("TestSegments: " + tie.getMessage());
+	    System.exit(1);
+	}
+
+	if (bad > 0) {
+	    System.err.println("TestSegments: " + bad + " errors");
+	    System.exit(1);
+	} else {
+	    System.out.println("TestSegments: OK");
+	}
+    }
+
+    static void add(IndexView index, int i) throws TimeIndexException {
+	index.addItem(new ByteBufferItem(ByteBuffer.wrap(data(i))), timeOf(i));
+    }
+
+    static MillisecondTimestamp timeOf(int i) {
+	return new MillisecondTimestamp(time + i * 100L);
+    }
+
+    static byte[] data(int i) {
+	byte[] data = new byte[20 + i % 30];
+
+	for (int p=0; p<data.length; p++) {
+	    data[p] = (byte)(i * 7 + p);
+	}
+
+	return data;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+
+package uk.ti;
+
+import com.timeindexing.time.Timestamp;
+import com.timeindexing.time.AbsoluteTimestamp;
+import com.timeindexing.time.MillisecondTimestamp;
+import com.timeindexing.time.MicrosecondTimestamp;
+import com.timeindexing.time.NanosecondTimestamp;
+import com.timeindexing.time.SecondTimestamp;
+import com.timeindexing.time.TimeCalculator;
+import com.timeindexing.time.TimestampDecoder;
+
+/**
+ * Test of the primitive nanosecond times.
+ * TimestampDecoder.decodeNanos() must give the same as
+ * TimeCalculator.asNanos() of the decoded Timestamp,
+ * for each scale, and for times before the epoch.
+ * TimeCalculator.fromNanos() must give back the same time,
+ * and longs of nanoseconds must order the same as the Timestamps.
+ */
+public class TestTimeNanos {
+    static TimestampDecoder decoder = new TimestampDecoder();
+
+    // times in nanoseconds, in order
+    static long[] times = {
+	-1234567891234567L, -1500000001L, -1500000000L, -1000000001L, -1000000000L,
+	-999999999L, -500000000L, -1500L, -1000L, -999L, -1L,
+	0L, 1L, 999L, 1000L, 1500L, 500000000L, 999999999L,
+	1000000000L, 1000000001L, 1500000000L, 1500000001L,
+	System.currentTimeMillis() * 1000000L + 123456789L
+    };
+
+    static int bad = 0;
+
+    public static void main(String [] args) {
+	for (int i=0; i<times.length; i++) {
+	    fromNanos(times[i]);
+	}
+
+	for (int i=0; i<times.length; i++) {
+	    for (int j=0; j<times.length; j++) {
+		order(times[i], times[j]);
+	    }
+	}
+
+	// each scale, either side of the epoch
+	long[] seconds = { 0, 1, 2, 1234567890L };
+	int[] nanos = { 0, 1000, 1000000, 123456789, 999999999 };
+
+	for (int s=0; s<seconds.length; s++) {
+	    for (int n=0; n<nanos.length; n++) {
+		for (int sign=1; sign>=-1; sign-=2) {
+		    long secs = sign * seconds[s];
+
+		    if (secs == 0 && sign < 0) {
+			// (0, nanos) is after the epoch
+			continue;
+		    }
+
+		    // a time before the epoch has positive nanos,
+		    // which are taken from the seconds
+		    long expected = secs * 1000000000L + sign * nanos[n];
+
+		    decode(new MillisecondTimestamp(secs, nanos[n]), expected - (sign * nanos[n] % 1000000));
+		    decode(new MicrosecondTimestamp(secs, nanos[n]), expected - (sign * nanos[n] % 1000));
+		    decode(new NanosecondTimestamp(secs, nanos[n]), expected);
+		    decode(new SecondTimestamp(secs, 0), secs * 1000000000L);
+		}
+	    }
+	}
+
+	if (bad > 0) {
+	    System.err.println("TestTimeNanos: " + bad + " errors");
+	    System.exit(1);
+	} else {
+	    System.out.println("TestTimeNanos: OK");
+	}
+    }
+
+    /**
+     * Check a time made from nanos gives the same nanos back,
+     * and decodes the same.
+     */
+    static void fromNanos(long nanos) {
+	AbsoluteTimestamp t = TimeCalculator.fromNanos(nanos);
+
+	if (TimeCalculator.asNanos(t) != nanos) {
+	    System.err.println("TestTimeNanos: fromNanos(" + nanos + ") is " + TimeCalculator.asNanos(t));
+	    bad++;
+	}
+
+	if (nanos != 0 && t.isBeforeEpoch() != (nanos < 0)) {
+	    System.err.println("TestTimeNanos: fromNanos(" + nanos + ") is before the epoch " + t.isBeforeEpoch());
+	    bad++;
+	}
+
+	decode(t, nanos);
+    }
+
+    /**
+     * Check decodeNanos() of the value of a Timestamp
+     * is the same as asNanos() of the decoded Timestamp.
+     */
+    static void decode(Timestamp t, long expected) {
+	long value = t.value();
+
+	long nanos = decoder.decodeNanos(value);
+	long decoded = TimeCalculator.asNanos(decoder.decode(value));
+
+	if (nanos != decoded || nanos != expected) {
+	    System.err.println("TestTimeNanos: " + t.getClass().getName() + " " + Long.toHexString(value) + " decodeNanos " + nanos + " asNanos(decode) " + decoded + " expected " + expected);
+	    bad++;
+	}
+    }
+
+    /**
+     * Check the Timestamps order the same as their nanos.
+     */
+    static void order(long nanos0, long nanos1) {
+	int expected = nanos0 < nanos1 ? -1 : (nanos0 > nanos1 ? 1 : 0);
+
+	int got = TimeCalculator.compare(TimeCalculator.fromNanos(nanos0), TimeCalculator.fromNanos(nanos1));
+
+	if (got != expected) {
+	    System.err.println("TestTimeNanos: compare(" + nanos0 + ", " + nanos1 + ") is " + got);
+	    bad++;
+	}
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+
+package uk.ti;
+
+import com.timeindexing.index.Index;
+import com.timeindexing.index.IndexView;
+import com.timeindexing.index.IndexType;
+import com.timeindexing.index.IndexProperties;
+import com.timeindexing.index.TimeIndexFactory;
+import com.timeindexing.index.TimeIndexException;
+import com.timeindexing.time.MillisecondTimestamp;
+import com.timeindexing.data.ByteBufferItem;
+import com.timeindexing.appl.OutputStreamer;
+
+import java.util.Properties;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Test of outputting an index by transferring the data straight
+ * from the data files.
+ * An incore index holds items of its own, which are written by
+ * the output plugin, and references to items in two file indexes.
+ * The data of items next to each other in a plain index is transferred
+ * in one run, but the data of an index with checksums is read and
+ * checked, so damaged data must make the output fail.
+ */
+public class TestTransfer {
+    static final int ITEMS = 10;
+
+    static int bad = 0;
+
+    public static void main(String [] args) {
+	try {
+	    create("/tmp/test-transfer-plain", false);
+	    create("/tmp/test-transfer-checked", true);
+
+	    // the output is all there
+	    output(false);
+
+	    // damage the first item of the index with checksums.
+	    // a damaged last item would be cut off by the recovery on open
+	    RandomAccessFile dataFile = new RandomAccessFile("/tmp/test-transfer-checked.tid", "rw");
+	    long offset = dataFile.length() - dataTotal(0);
+	    dataFile.seek(offset);
+	    int b = dataFile.read();
+	    dataFile.seek(offset);
+	    dataFile.write(b ^ 0xff);
+	    dataFile.close();
+
+	    // the damage is found
+	    output(true);
+
+	} catch (TimeIndexException tie) {
+	    System.err.println("TestTransfer: " + tie.getMessage());
+	    System.exit(1);
+	} catch (IOException ioe) {
+	    System.err.println("TestTransfer: " + ioe.getMessage());
+	    System.exit(1);
+	}
+
+	if (bad > 0) {
+	    System.err.println("TestTransfer: " + bad + " errors");
+	    System.exit(1);
+	} else {
+	    System.out.println("TestTransfer: OK");
+	}
+    }
+
+    /**
+     * Create an external index of ITEMS items.
+     */
+    static void create(String path, boolean checksums) throws TimeIndexException {
+	TimeIndexFactory factory = new TimeIndexFactory();
+
+	Properties properties = new Properties();
+	properties.setProperty("name", "index-TestTransfer");
+	properties.setProperty("indexpath", path);
+
+	if (checksums) {
+	    properties.setProperty("checksums", "true");
+	}
+
+	IndexView index = factory.create(IndexType.EXTERNAL, properties);
+
+	long time = System.currentTimeMillis() - 60000;
+	int base = checksums ? 100 : 0;
+
+	for (int i=0; i<ITEMS; i++) {
+	    index.addItem(new ByteBufferItem(ByteBuffer.wrap(data(base + i))), new MillisecondTimestamp(time + i));
+	}
+
+	factory.close(index);
+    }
+
+    /**
+     * Output an incore index that holds items of its own,
+     * runs of references to the plain index,
+     * and references to the index with checksums.
+     * The output goes to a file, through a FileChannel,
+     * and to a stream.
+     * @param damaged the index with checksums is damaged,
+     * so the output must fail
+     */
+    static void output(boolean damaged) throws TimeIndexException, IOException {
+	TimeIndexFactory factory = new TimeIndexFactory();
+
+	Properties openProperties = new Properties();
+	openProperties.setProperty("indexpath", "/tmp/test-transfer-plain");
+	IndexView plain = factory.open(openProperties);
+
+	openProperties.setProperty("indexpath", "/tmp/test-transfer-checked");
+	IndexView checked = factory.open(openProperties);
+
+	// don't read the data when the items are got,
+	// so it is only read by the output
+	checked.setLoadDataAutomatically(false);
+	plain.setLoadDataAutomatically(false);
+
+	Properties properties = new Properties();
+	properties.setProperty("name", "index-TestTransfer-incore");
+	IndexView incore = factory.create(IndexType.INCORE, properties);
+
+	ByteArrayOutputStream expected = new ByteArrayOutputStream();
+	long time = System.currentTimeMillis() - 30000;
+
+	for (int k=0; k<ITEMS/2; k++) {
+	    byte[] own = data(200 + k);
+	    incore.addItem(new ByteBufferItem(ByteBuffer.wrap(own)), new MillisecondTimestamp(time++));
+	    expected.write(own);
+
+	    // two items next to each other, in one run
+	    ((Index)incore).addReference(plain.getItem(2 * k), (Index)plain, new MillisecondTimestamp(time++));
+	    ((Index)incore).addReference(plain.getItem(2 * k + 1), (Index)plain, new MillisecondTimestamp(time++));
+	    expected.write(data(2 * k));
+	    expected.write(data(2 * k + 1));
+
+	    ((Index)incore).addReference(checked.getItem(k), (Index)checked, new MillisecondTimestamp(time++));
+	    expected.write(data(100 + k));
+	}
+
+	// to a file
+	try {
+	    FileOutputStream fileOut = new FileOutputStream("/tmp/test-transfer.out");
+	    long count = new OutputStreamer((Index)incore, fileOut).doOutput(new IndexProperties());
+	    fileOut.close();
+
+	    if (damaged) {
+		System.err.println("TestTransfer: damaged data was output to a file");
+		bad++;
+	    } else {
+		check("file", readFile("/tmp/test-transfer.out"), count, expected.toByteArray());
+	    }
+	} catch (RuntimeException re) {
+	    if (! damaged) {
+		System.err.println("TestTransfer: output to a file failed: " + re.getMessage());
+		bad++;
+	    }
+	}
+
+	// to a stream
+	try {
+	    ByteArrayOutputStream streamOut = new ByteArrayOutputStream();
+	    long count = new OutputStreamer((Index)incore, streamOut).doOutput(new IndexProperties());
+
+	    if (damaged) {
+		System.err.println("TestTransfer: damaged data was output to a stream");
+		bad++;
+	    } else {
+		check("stream", streamOut.toByteArray(), count, expected.toByteArray());
+	    }
+	} catch (RuntimeException re) {
+	    if (! damaged) {
+		System.err.println("TestTransfer: output to a stream failed: " + re.getMessage());
+		bad++;
+	    }
+	}
+
+	factory.close(incore);
+	factory.close(checked);
+	factory.close(plain);
+    }
+
+    /**
+     * Check some output.
+     */
+    static void check(String name, byte[] output, long count, byte[] expected) {
+	if (count != expected.length) {
+	    System.err.println("TestTransfer: " + name + " output count " + count + " expected " + expected.length);
+	    bad++;
+	}
+
+	if (! ByteBuffer.wrap(output).equals(ByteBuffer.wrap(expected))) {
+	    System.err.println("TestTransfer: " + name + " output is wrong");
+	    bad++;
+	}
+    }
+
+    /**
+     * The data for item i.
+     */
+    static byte[] data(int i) {
+	byte[] data = new byte[20 + i % 30];
+
+	for (int p=0; p<data.length; p++) {
+	    data[p] = (byte)(i * 3 + p);
+	}
+
+	return data;
+    }
+
+    /**
+     * The size of the data of the items from i to the end.
+     */
+    static long dataTotal(int i) {
+	long total = 0;
+
+	for (int k=i; k<ITEMS; k++) {
+	    total += data(100 + k).length;
+	}
+
+	return total;
+    }
+
+    static byte[] readFile(String fileName) throws IOException {
+	RandomAccessFile file = new RandomAccessFile(fileName, "r");
+	byte[] contents = new byte[(int)file.length()];
+	file.readFully(contents);
+	file.close();
+
+	return contents;
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+
+package uk.ti;
+
+import com.timeindexing.index.IndexView;
+import com.timeindexing.index.IndexType;
+import com.timeindexing.index.FileIndex;
+import com.timeindexing.index.TimeIndexDirectory;
+import com.timeindexing.index.TimeIndexFactory;
+import com.timeindexing.index.TimeIndexException;
+import com.timeindexing.time.MillisecondTimestamp;
+import com.timeindexing.data.ByteBufferItem;
+
+import java.util.Properties;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Test of verifying an index straight from its files, as TIVerify does.
+ * Damaged data and damaged records must be found,
+ * and checksums must be refused by indexes that can't have them,
+ * before any files are made.
+ */
+public class TestVerify {
+    static final int COUNT = 500;
+
+    static int bad = 0;
+
+    public static void main(String [] args) {
+	TimeIndexFactory factory = new TimeIndexFactory();
+
+	try {
+	    // an external index with checksums
+	    Properties properties = new Properties();
+	    properties.setProperty("name", "index-TestVerify");
+	    properties.setProperty("indexpath", "/tmp/test-verify");
+	    properties.setProperty("checksums", "true");
+
+	    create(factory, IndexType.EXTERNAL, properties);
+
+	    expect("/tmp/test-verify", 0);
+
+	    // damage the data of item 100
+	    damage("/tmp/test-verify.tid", dataOffset(100));
+
+	    expect("/tmp/test-verify", 1);
+
+	    // damage the record of item 200
+	    damage("/tmp/test-verify.tix", recordOffset("/tmp/test-verify", 200) + 40);
+
+	    expect("/tmp/test-verify", 2);
+
+	    // an inline index, and a compact index, are checked for readability
+	    properties = new Properties();
+	    properties.setProperty("name", "index-TestVerify-inline");
+	    properties.setProperty("indexpath", "/tmp/test-verify-inline");
+
+	    create(factory, IndexType.INLINE, properties);
+
+	    expect("/tmp/test-verify-inline", 0);
+
+	    properties = new Properties();
+	    properties.setProperty("name", "index-TestVerify-compact");
+	    properties.setProperty("indexpath", "/tmp/test-verify-compact");
+	    properties.setProperty("compactindex", "true");
+
+	    create(factory, IndexType.EXTERNAL, properties);
+
+	    expect("/tmp/test-verify-compact", 0);
+
+	    // checksums are refused before any files are made
+	    properties = new Properties();
+	    properties.setProperty("name", "index-TestVerify-refused");
+	    properties.setProperty("indexpath", "/tmp/test-verify-refused");
+	    properties.setProperty("checksums", "true");
+	    properties.setProperty("compactindex", "true");
+
+	    refused(factory, IndexType.EXTERNAL, properties, "/tmp/test-verify-refused");
+
+	    properties.remove("compactindex");
+
+	    refused(factory, IndexType.INLINE, properties, "/tmp/test-verify-refused");
+
+	} catch (TimeIndexException tie) {
+	    System.err.println("TestVerify: " + tie.getMessage());
+	    System.exit(1);
+	} catch (IOException ioe) {
+	    System.err.println("TestVerify: " + ioe.getMessage());
+	    System.exit(1);
+	}
+
+	if (bad > 0) {
+	    System.err.println("TestVerify: " + bad + " errors");
+	    System.exit(1);
+	} else {
+	    System.out.println("TestVerify: OK");
+	}
+    }
+
+    /**
+     * Create an index with COUNT items, item i has i % 50 + 10 bytes.
+     */
+    static void create(TimeIndexFactory factory, IndexType type, Properties properties) throws TimeIndexException {
+	IndexView index = factory.create(type, properties);
+
+	long time = System.currentTimeMillis();
+
+	for (int i=0; i<COUNT; i++) {
+	    index.addItem(new ByteBufferItem(ByteBuffer.wrap(new byte[size(i)])), new MillisecondTimestamp(time + i));
+	}
+
+	factory.close(index);
+    }
+
+    /**
+     * Verify an index, and check the no of failed items.
+     */
+    static void expect(String path, int expected) throws TimeIndexException {
+	TimeIndexFactory factory = new TimeIndexFactory();
+
+	Properties properties = new Properties();
+	properties.setProperty("indexpath", path);
+	properties.setProperty("readonly", "true");
+	properties.setProperty("mappedindex", "true");
+
+	IndexView index = factory.open(properties);
+	FileIndex fileIndex = (FileIndex)TimeIndexDirectory.find(index.getID());
+
+	int failed = 0;
+	long offset = -1;
+
+	for (long position=index.getFirstPosition(); position<index.getLength(); position++) {
+	    try {
+		if (offset < 0) {
+		    offset = fileIndex.recordOffset(position);
+		}
+
+		offset = fileIndex.verifyRecord(offset);
+	    } catch (IOException ioe) {
+		failed++;
+		offset = -1;
+	    }
+	}
+
+	if (index.getLength() != COUNT) {
+	    System.err.println("TestVerify: " + path + " has " + index.getLength() + " items");
+	    bad++;
+	}
+
+	if (failed != expected) {
+	    System.err.println("TestVerify: " + path + " had " + failed + " failed items, expected " + expected);
+	    bad++;
+	}
+
+	factory.close(index);
+    }
+
+    /**
+     * Check that an index can't be created, and that no files were made.
+     */
+    static void refused(TimeIndexFactory factory, IndexType type, Properties properties, String path) {
+	String[] extensions = { ".tih", ".tix", ".tid", ".tii" };
+
+	for (int e=0; e<extensions.length; e++) {
+	    new File(path + extensions[e]).delete();
+	}
+
+	try {
+	    factory.create(type, properties);
+
+	    System.err.println("TestVerify: " + type + " index with " + properties + " was created");
+	    bad++;
+	} catch (TimeIndexException tie) {
+	    for (int e=0; e<extensions.length; e++) {
+		if (new File(path + extensions[e]).exists()) {
+		    System.err.println("TestVerify: " + path + extensions[e] + " was made");
+		    bad++;
+		}
+	    }
+	}
+    }
+
+    static int size(int i) {
+	return i % 50 + 10;
+    }
+
+    /**
+     * The offset of the data of item i in the data file,
+     * which follows the header.
+     */
+    static long dataOffset(int i) throws IOException {
+	long length = new File("/tmp/test-verify.tid").length();
+	long offset = length;
+
+	for (int p=COUNT-1; p>=i; p--) {
+	    offset -= size(p);
+	}
+
+	return offset;
+    }
+
+    /**
+     * The offset of the record of item i in the index file.
+     */
+    static long recordOffset(String path, int i) throws TimeIndexException {
+	TimeIndexFactory factory = new TimeIndexFactory();
+
+	Properties properties = new Properties();
+	properties.setProperty("indexpath", path);
+	properties.setProperty("readonly", "true");
+
+	IndexView index = factory.open(properties);
+
+	try {
+	    return ((FileIndex)TimeIndexDirectory.find(index.getID())).recordOffset(i);
+	} catch (IOException ioe) {
+	    throw new TimeIndexException(ioe.getMessage());
+	} finally {
+	    factory.close(index);
+	}
+    }
+
+    /**
+     * Flip a byte in a file.
+     */
+    static void damage(String fileName, long offset) throws IOException {
+	RandomAccessFile file = new RandomAccessFile(fileName, "rw");
+	file.seek(offset);
+	int b = file.read();
+	file.seek(offset);
+	file.write(b ^ 0xff);
+	file.close();
+    }
+}
@@ -0,0 +1,273 @@
+/*
+ * Copyright 2003-2008 Stuart Clayman
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+
+
+package uk.ti;
+
+import com.timeindexing.index.IndexView;
+import com.timeindexing.index.IndexType;
+import com.timeindexing.index.IndexProperties;
+import com.timeindexing.index.ManagedIndexItem;
+import com.timeindexing.index.DataReference;
+import com.timeindexing.index.TimeIndexFactory;
+import com.timeindexing.index.TimeIndexException;
+import com.timeindexing.time.MillisecondTimestamp;
+import com.timeindexing.time.ElapsedSecondTimestamp;
+import com.timeindexing.data.ByteBufferItem;
+import com.timeindexing.appl.Selecter;
+
+import java.util.Properties;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Test of the running totals of data sizes.
+ * The totals are checked after a reopen, using the volume file,
+ * on a segmented index that has had segments removed,
+ * and against the output of a Selecter while items are added.
+ * A cold index without a volume file has no size for a Selecter,
+ * and works out its totals without reading the data.
+ */
+public class TestVolumes {
+    static final int ITEMS = 1000;
+
+    static int bad = 0;
+
+    public static void main(String [] args) {
+	try {
+	    test(IndexType.EXTERNAL, "/tmp/test-volumes-external");
+	    test(IndexType.INLINE, "/tmp/test-volumes-inline");
+	    test(IndexType.SEGMENTED, "/tmp/test-volumes-segmented");
+
+	    testCold("/tmp/test-volumes-external");
+
+	    if (bad > 0) {
+		System.err.println("TestVolumes: " + bad + " errors");
+		System.exit(1);
+	    } else {
+		System.out.println("TestVolumes: OK");
+	    }
+	} catch (TimeIndexException tie) {
+	    System.err.println("TestVolumes: " + tie.getMessage());
+	    System.exit(1);
+	} catch (IOException ioe) {
+	    System.err.println("TestVolumes: " + ioe.getMessage());
+	    System.exit(1);
+	}
+    }
+
+    /**
+     * Create an index, reopen it, and check the totals.
+     */
+    public static void test(IndexType type, String path) throws TimeIndexException, IOException {
+	TimeIndexFactory factory = new TimeIndexFactory();
+
+	Properties properties = new Properties();
+	properties.setProperty("name", "index-TestVolumes");
+	properties.setProperty("indexpath", path);
+	properties.setProperty("volumefile", "true");
+	properties.setProperty("segmentsize", "4000");
+
+	// one item a second, ending now
+	long time = System.currentTimeMillis() - ITEMS * 1000L;
+
+	IndexView index = factory.create(type, properties);
+
+	for (int i=0; i<ITEMS; i++) {
+	    index.addItem(new ByteBufferItem(ByteBuffer.allocate(size(i))), new MillisecondTimestamp(time + i * 1000L));
+	}
+
+	check(index, path + " created", 0);
+
+	factory.close(index);
+
+	Properties openProperties = new Properties();
+	openProperties.setProperty("indexpath", path);
+	openProperties.setProperty("volumefile", "true");
+
+	index = factory.open(openProperties);
+
+	check(index, path + " reopened", 0);
+
+	if (type == IndexType.SEGMENTED) {
+	    // remove the older half, and check the rest
+	    index.activate();
+
+	    long first = index.removeOlderThan(new ElapsedSecondTimestamp(ITEMS / 2));
+
+	    factory.close(index);
+
+	    // without the volume file, so the totals are worked out
+	    Properties trimmedProperties = new Properties();
+	    trimmedProperties.setProperty("indexpath", path);
+
+	    index = factory.open(trimmedProperties);
+
+	    check(index, path + " trimmed", first);
+	}
+
+	// the size from a Selecter is what it outputs,
+	// even if items are added in between
+	index.activate();
+
+	ByteArrayOutputStream out = new ByteArrayOutputStream();
+	Selecter selecter = new Selecter(path, out);
+
+	IndexProperties selectProperties = new IndexProperties();
+	selectProperties.putProperty("indexpath", path);
+	selectProperties.putProperty("starttime", "0");
+
+	long size = selecter.outputSize(selectProperties);
+
+	index.addItem(new ByteBufferItem(ByteBuffer.allocate(100)), new MillisecondTimestamp(time + ITEMS * 1000L));
+
+	selecter.select(selectProperties);
+
+	if (size != out.size()) {
+	    System.err.println(path + ": Selecter size " + size + " but output " + out.size());
+	    bad++;
+	}
+
+	factory.close(index);
+    }
+
+    /**
+     * Open an index without its volume file,
+     * and check the totals are not worked out for a Selecter,
+     * and are worked out without the data when asked for.
+     */
+    public static void testCold(String path) throws TimeIndexException, IOException {
+	TimeIndexFactory factory = new TimeIndexFactory();
+
+	// a volume file would give the totals
+	new File(path + ".tiv").delete();
+
+	Properties openProperties = new Properties();
+	openProperties.setProperty("indexpath", path);
+
+	IndexView index = factory.open(openProperties);
+	index.setLoadDataAutomatically(false);
+
+	long length = index.getLength();
+
+	if (index.hasDataVolume(length - 1)) {
+	    System.err.println(path + ": cold volumes known");
+	    bad++;
+	}
+
+	// no size, but the output is the same
+	ByteArrayOutputStream out = new ByteArrayOutputStream();
+	Selecter selecter = new Selecter(path, out);
+
+	IndexProperties selectProperties = new IndexProperties();
+	selectProperties.putProperty("indexpath", path);
+	selectProperties.putProperty("startpos", Long.toString(length - 10));
+	selectProperties.putProperty("endpos", Long.toString(length - 1));
+
+	long size = selecter.outputSize(selectProperties);
+
+	selecter.select(selectProperties);
+
+	if (size != -1) {
+	    System.err.println(path + ": cold Selecter size " + size);
+	    bad++;
+	}
+
+	if (out.size() != expected(ITEMS - 9, ITEMS - 1) + 100) {
+	    System.err.println(path + ": cold Selecter output " + out.size());
+	    bad++;
+	}
+
+	// the totals come from the index records
+	if (index.getDataVolume(0, ITEMS - 1) != expected(0, ITEMS - 1) || ! index.hasDataVolume(ITEMS - 1)) {
+	    System.err.println(path + ": cold volume " + index.getDataVolume(0, ITEMS - 1));
+	    bad++;
+	}
+
+	if (! (((ManagedIndexItem)index.getItem(ITEMS / 2)).getDataAbstraction() instanceof DataReference)) {
+	    System.err.println(path + ": data read for the volumes");
+	    bad++;
+	}
+
+	factory.close(index);
+
+	// a hollow load knows all the totals
+	openProperties.setProperty("loadstyle", "hollow");
+
+	index = factory.open(openProperties);
+
+	if (! index.hasDataVolume(length - 1) || index.getDataVolume(0, ITEMS - 1) != expected(0, ITEMS - 1)) {
+	    System.err.println(path + ": hollow load volumes not known");
+	    bad++;
+	}
+
+	factory.close(index);
+    }
+
+    /**
+     * Check the totals of an index from its first position.
+     */
+    static void check(IndexView index, String name, long first) throws TimeIndexException {
+	if (index.getFirstPosition() != first) {
+	    System.err.println(name + ": first position " + index.getFirstPosition() + " expected " + first);
+	    bad++;
+	    return;
+	}
+
+	for (int start=(int)first; start<ITEMS; start += 37) {
+	    long total = 0;
+
+	    for (int end=start; end<ITEMS; end += 53) {
+		total = expected(start, end);
+
+		if (index.getDataVolume(start, end) != total) {
+		    System.err.println(name + ": volume " + start + " - " + end + " is " + index.getDataVolume(start, end) + " expected " + total);
+		    bad++;
+		}
+
+		// the last item whose data fits in the total
+		if (index.locateDataVolume(start, total) != end) {
+		    System.err.println(name + ": locate " + start + " " + total + " is " + index.locateDataVolume(start, total) + " expected " + end);
+		    bad++;
+		}
+	    }
+	}
+    }
+
+    /**
+     * The expected volume of items start to end.
+     */
+    static long expected(int start, int end) {
+	long total = 0;
+
+	for (int i=start; i<=end; i++) {
+	    total += size(i);
+	}
+
+	return total;
+    }
+
+    /**
+     * The data size of item i.
+     */
+    static int size(int i) {
+	return 1 + (i * 37) % 50;
+    }
+}